@@ -0,0 +1,306 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.Feature.FeatureStatus;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.PolarityType;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.datamodel.impl.SimpleFeature;
+import net.sf.mzmine.datamodel.impl.SimplePeakList;
+import net.sf.mzmine.datamodel.impl.SimplePeakListRow;
+import net.sf.mzmine.datamodel.impl.SimpleScan;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.util.DataPointSorter;
+import net.sf.mzmine.util.SortingDirection;
+import net.sf.mzmine.util.SortingProperty;
+
+import com.google.common.collect.Range;
+
+/**
+ * Generator of synthetic LC-MS data for the benchmarks. The data consist of a
+ * fixed set of compounds (m/z, retention time apex, peak width and height)
+ * which elute as Gaussian peaks, plus random noise. The same compounds are
+ * rendered either as centroided scans or as profile scans with a
+ * zero-intensity baseline. All values are generated from a fixed seed, so
+ * repeated benchmark runs work with identical data.
+ */
+public class SyntheticData {
+
+    public static final double MIN_MZ = 100.0, MAX_MZ = 1500.0;
+
+    // Typical LC-MS run: 30 minutes, features eluting in ~10 seconds
+    public static final double RUN_LENGTH = 30.0;
+    private static final double RT_SIGMA = 0.03;
+
+    private final Random random;
+    private final double featureMZ[], featureRT[], featureHeight[];
+
+    public SyntheticData(long seed, int numberOfFeatures) {
+
+	random = new Random(seed);
+
+	featureMZ = new double[numberOfFeatures];
+	featureRT = new double[numberOfFeatures];
+	featureHeight = new double[numberOfFeatures];
+
+	for (int i = 0; i < numberOfFeatures; i++) {
+	    featureMZ[i] = MIN_MZ + random.nextDouble() * (MAX_MZ - MIN_MZ);
+	    featureRT[i] = random.nextDouble() * RUN_LENGTH;
+	    // Log-normal distribution of heights, spanning ~4 orders of
+	    // magnitude
+	    featureHeight[i] = Math.exp(9 + 2 * random.nextGaussian());
+	}
+    }
+
+    public int getNumberOfFeatures() {
+	return featureMZ.length;
+    }
+
+    public double getFeatureMZ(int index) {
+	return featureMZ[index];
+    }
+
+    public double getFeatureRT(int index) {
+	return featureRT[index];
+    }
+
+    /**
+     * Returns the retention times of numberOfScans scans, evenly spread over
+     * given retention time range
+     */
+    public static double[] retentionTimes(Range<Double> rtRange,
+	    int numberOfScans) {
+	final double start = rtRange.lowerEndpoint();
+	final double length = rtRange.upperEndpoint() - start;
+	double rts[] = new double[numberOfScans];
+	for (int i = 0; i < numberOfScans; i++)
+	    rts[i] = start + length * i / numberOfScans;
+	return rts;
+    }
+
+    /**
+     * Creates a centroided spectrum at given retention time, containing all
+     * compounds eluting at that time plus noisePeaks random noise peaks. The
+     * data points are sorted by m/z.
+     */
+    public DataPoint[] centroidScan(double rt, int noisePeaks) {
+
+	ArrayList<DataPoint> dataPoints = new ArrayList<DataPoint>();
+
+	for (int i = 0; i < featureMZ.length; i++) {
+	    double intensity = elutionIntensity(i, rt);
+	    if (intensity < 1.0)
+		continue;
+	    double mz = featureMZ[i] + random.nextGaussian() * featureMZ[i]
+		    * 2e-6;
+	    dataPoints.add(new SimpleDataPoint(mz, intensity));
+	}
+
+	for (int i = 0; i < noisePeaks; i++) {
+	    double mz = MIN_MZ + random.nextDouble() * (MAX_MZ - MIN_MZ);
+	    double intensity = 50.0 + Math.abs(random.nextGaussian()) * 200.0;
+	    dataPoints.add(new SimpleDataPoint(mz, intensity));
+	}
+
+	DataPoint result[] = dataPoints.toArray(new DataPoint[0]);
+	Arrays.sort(result, new DataPointSorter(SortingProperty.MZ,
+		SortingDirection.Ascending));
+	return result;
+
+    }
+
+    /**
+     * Creates a profile spectrum at given retention time, sampled at
+     * numberOfDataPoints equidistant m/z values. Each centroid of
+     * centroidScan() is rendered as a Gaussian m/z peak spanning several data
+     * points. Data points outside of the peaks have zero intensity, as in
+     * typical profile data.
+     */
+    public DataPoint[] profileScan(double rt, int numberOfDataPoints,
+	    int noisePeaks) {
+
+	final double mzStep = (MAX_MZ - MIN_MZ) / numberOfDataPoints;
+	final double mzSigma = 2.5 * mzStep;
+	final int peakHalfWidth = 12;
+
+	double intensities[] = new double[numberOfDataPoints];
+
+	for (DataPoint centroid : centroidScan(rt, noisePeaks)) {
+	    int center = (int) ((centroid.getMZ() - MIN_MZ) / mzStep);
+	    int from = Math.max(0, center - peakHalfWidth);
+	    int to = Math.min(numberOfDataPoints - 1, center + peakHalfWidth);
+	    for (int i = from; i <= to; i++) {
+		double diff = (MIN_MZ + i * mzStep - centroid.getMZ()) / mzSigma;
+		intensities[i] += centroid.getIntensity()
+			* Math.exp(-0.5 * diff * diff);
+	    }
+	}
+
+	DataPoint dataPoints[] = new DataPoint[numberOfDataPoints];
+	for (int i = 0; i < numberOfDataPoints; i++) {
+	    // Cut the Gaussian tails, so the spectrum has a zero baseline
+	    double intensity = intensities[i] < 1.0 ? 0.0 : intensities[i];
+	    dataPoints[i] = new SimpleDataPoint(MIN_MZ + i * mzStep, intensity);
+	}
+	return dataPoints;
+
+    }
+
+    /**
+     * Creates a raw data file with numberOfScans MS1 scans of given type,
+     * covering the whole run
+     */
+    public RawDataFileImpl createRawDataFile(String name, int numberOfScans,
+	    MassSpectrumType type, int dataPointsPerScan) throws IOException {
+	return createRawDataFile(name, Range.closed(0.0, RUN_LENGTH),
+		numberOfScans, type, dataPointsPerScan);
+    }
+
+    /**
+     * Creates a raw data file with numberOfScans MS1 scans of given type,
+     * covering given retention time range. For profile files,
+     * dataPointsPerScan is the number of data points of each scan, for
+     * centroided files it is the number of noise peaks added to each scan.
+     */
+    public RawDataFileImpl createRawDataFile(String name,
+	    Range<Double> rtRange, int numberOfScans, MassSpectrumType type,
+	    int dataPointsPerScan) throws IOException {
+
+	RawDataFileImpl dataFile = new RawDataFileImpl(name);
+	double rts[] = retentionTimes(rtRange, numberOfScans);
+
+	for (int i = 0; i < numberOfScans; i++) {
+	    DataPoint dataPoints[];
+	    if (type == MassSpectrumType.CENTROIDED)
+		dataPoints = centroidScan(rts[i], dataPointsPerScan);
+	    else
+		dataPoints = profileScan(rts[i], dataPointsPerScan,
+			dataPointsPerScan / 100);
+	    SimpleScan scan = new SimpleScan(dataFile, i + 1, 1, rts[i], 0.0,
+		    0, new int[0], dataPoints, type, PolarityType.POSITIVE, "",
+		    Range.closed(MIN_MZ, MAX_MZ));
+	    dataFile.addScan(scan);
+	}
+
+	dataFile.finishWriting();
+	return dataFile;
+
+    }
+
+    /**
+     * Creates a chromatogram (feature covering all MS1 scans of the data file)
+     * at the m/z of given compound. Besides the compound itself, the
+     * chromatogram contains numberOfPeaks - 1 other peaks at random retention
+     * times and a non-zero noise baseline, so it can be passed to the peak
+     * resolvers.
+     */
+    public Feature createChromatogram(RawDataFile dataFile, int featureIndex,
+	    int numberOfPeaks) {
+
+	final int scanNumbers[] = dataFile.getScanNumbers(1);
+	final double mz = featureMZ[featureIndex];
+
+	double peakRT[] = new double[numberOfPeaks];
+	double peakHeight[] = new double[numberOfPeaks];
+	peakRT[0] = featureRT[featureIndex];
+	peakHeight[0] = featureHeight[featureIndex];
+	for (int i = 1; i < numberOfPeaks; i++) {
+	    peakRT[i] = random.nextDouble() * RUN_LENGTH;
+	    peakHeight[i] = Math.exp(9 + 2 * random.nextGaussian());
+	}
+
+	DataPoint dataPoints[] = new DataPoint[scanNumbers.length];
+	double height = 0, rt = 0, area = 0;
+	int representativeScan = scanNumbers[0];
+	for (int i = 0; i < scanNumbers.length; i++) {
+	    double scanRT = dataFile.getScan(scanNumbers[i]).getRetentionTime();
+	    double intensity = 10.0 + Math.abs(random.nextGaussian()) * 10.0;
+	    for (int p = 0; p < numberOfPeaks; p++) {
+		double diff = (scanRT - peakRT[p]) / RT_SIGMA;
+		intensity += peakHeight[p] * Math.exp(-0.5 * diff * diff);
+	    }
+	    dataPoints[i] = new SimpleDataPoint(mz, intensity);
+	    area += intensity;
+	    if (intensity > height) {
+		height = intensity;
+		rt = scanRT;
+		representativeScan = scanNumbers[i];
+	    }
+	}
+
+	return new SimpleFeature(dataFile, mz, rt, height, area, scanNumbers,
+		dataPoints, FeatureStatus.DETECTED, representativeScan, -1,
+		dataFile.getDataRTRange(1), Range.singleton(mz), Range.closed(
+			0.0, height));
+
+    }
+
+    /**
+     * Creates a peak list with one row per compound. The m/z and retention
+     * time of each row are shifted by random errors, as they would be when the
+     * compounds are detected in different samples.
+     */
+    public PeakList createPeakList(String name, RawDataFile dataFile,
+	    double mzError, double rtError) {
+
+	SimplePeakList peakList = new SimplePeakList(name, dataFile);
+
+	// Features must have at least one data point. The peak lists are used
+	// by peak list methods only, so the data file does not need to contain
+	// the scan.
+	final int scanNumber = 1;
+
+	for (int i = 0; i < featureMZ.length; i++) {
+	    double mz = featureMZ[i] + random.nextGaussian() * mzError;
+	    double rt = featureRT[i] + random.nextGaussian() * rtError;
+	    double height = featureHeight[i];
+	    Feature peak = new SimpleFeature(dataFile, mz, rt, height, height,
+		    new int[] { scanNumber },
+		    new DataPoint[] { new SimpleDataPoint(mz, height) },
+		    FeatureStatus.DETECTED, scanNumber, -1,
+		    Range.singleton(rt), Range.singleton(mz),
+		    Range.singleton(height));
+	    SimplePeakListRow row = new SimplePeakListRow(i + 1);
+	    row.addPeak(dataFile, peak);
+	    peakList.addRow(row);
+	}
+
+	return peakList;
+
+    }
+
+    private double elutionIntensity(int featureIndex, double rt) {
+	double diff = (rt - featureRT[featureIndex]) / RT_SIGMA;
+	if (Math.abs(diff) > 5)
+	    return 0.0;
+	return featureHeight[featureIndex] * Math.exp(-0.5 * diff * diff);
+    }
+
+}
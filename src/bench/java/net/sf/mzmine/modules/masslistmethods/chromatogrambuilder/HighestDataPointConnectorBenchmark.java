@@ -0,0 +1,109 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ * 
+ * This file is part of MZmine 2.
+ * 
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.modules.masslistmethods.chromatogrambuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.mzmine.benchmarks.BenchmarkEnvironment;
+import net.sf.mzmine.benchmarks.SyntheticData;
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.parameters.parametertypes.MZTolerance;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Range;
+
+/**
+ * Benchmark of the chromatogram building: all mass lists of a one-minute
+ * segment (200 scans) are passed to HighestDataPointConnector.addScan(), as
+ * in ChromatogramBuilderTask.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HighestDataPointConnectorBenchmark {
+
+    private static final int NUMBER_OF_SCANS = 200;
+
+    @Param({ "100", "1000" })
+    public int noisePeaksPerScan;
+
+    private RawDataFileImpl dataFile;
+    private int scanNumbers[];
+    private DataPoint massLists[][];
+    private MZTolerance mzTolerance;
+
+    @Setup(Level.Trial)
+    public void prepareData() throws IOException {
+
+	BenchmarkEnvironment.init();
+
+	// 20000 compounds over 30 minutes gives ~670 compounds eluting in the
+	// benchmarked segment
+	SyntheticData data = new SyntheticData(1, 20000);
+	dataFile = data.createRawDataFile("benchmark", Range.closed(10.0, 11.0),
+		NUMBER_OF_SCANS, MassSpectrumType.CENTROIDED, noisePeaksPerScan);
+	scanNumbers = dataFile.getScanNumbers(1);
+
+	massLists = new DataPoint[scanNumbers.length][];
+	for (int i = 0; i < scanNumbers.length; i++)
+	    massLists[i] = dataFile.getScan(scanNumbers[i]).getDataPoints();
+
+	mzTolerance = new MZTolerance(0.001, 5.0);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeFile() {
+	dataFile.close();
+    }
+
+    @Benchmark
+    public Chromatogram[] addScan() {
+
+	HighestDataPointConnector connector = new HighestDataPointConnector(
+		0.05, 1000.0, mzTolerance);
+
+	for (int i = 0; i < scanNumbers.length; i++) {
+	    // addScan() sorts the array in place
+	    connector.addScan(dataFile, scanNumbers[i], massLists[i].clone());
+	}
+
+	return connector.finishChromatograms();
+    }
+
+}
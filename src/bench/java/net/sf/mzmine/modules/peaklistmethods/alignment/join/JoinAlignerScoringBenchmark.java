@@ -0,0 +1,117 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ * 
+ * This file is part of MZmine 2.
+ * 
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.alignment.join;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.mzmine.benchmarks.BenchmarkEnvironment;
+import net.sf.mzmine.benchmarks.SyntheticData;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.PeakListRow;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.impl.SimplePeakList;
+import net.sf.mzmine.datamodel.impl.SimplePeakListRow;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.MZTolerance;
+import net.sf.mzmine.parameters.parametertypes.RTTolerance;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the JoinAlignerTask score calculation: all rows of one peak
+ * list are scored against an aligned peak list holding the rows of another
+ * sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JoinAlignerScoringBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int numberOfRows;
+
+    private JoinAlignerTask task;
+    private PeakListRow rows[];
+    private PeakList alignedPeakList;
+
+    @Setup(Level.Trial)
+    public void prepareData() throws IOException {
+
+	BenchmarkEnvironment.init();
+
+	ParameterSet parameters = new JoinAlignerParameters();
+	parameters.getParameter(JoinAlignerParameters.peakListName).setValue(
+		"Aligned peak list");
+	parameters.getParameter(JoinAlignerParameters.MZTolerance).setValue(
+		new MZTolerance(0.001, 5.0));
+	parameters.getParameter(JoinAlignerParameters.MZWeight).setValue(10.0);
+	parameters.getParameter(JoinAlignerParameters.RTTolerance).setValue(
+		new RTTolerance(true, 0.2));
+	parameters.getParameter(JoinAlignerParameters.RTWeight).setValue(1.0);
+	parameters.getParameter(JoinAlignerParameters.SameChargeRequired)
+		.setValue(false);
+	parameters.getParameter(JoinAlignerParameters.SameIDRequired)
+		.setValue(false);
+	parameters.getParameter(JoinAlignerParameters.compareIsotopePattern)
+		.setValue(false);
+	task = new JoinAlignerTask(null, parameters);
+
+	SyntheticData data = new SyntheticData(1, numberOfRows);
+	RawDataFile file1 = new RawDataFileImpl("sample 1");
+	RawDataFile file2 = new RawDataFileImpl("sample 2");
+	PeakList peakList1 = data.createPeakList("sample 1", file1, 0.0005,
+		0.05);
+	PeakList peakList2 = data.createPeakList("sample 2", file2, 0.0005,
+		0.05);
+
+	// The aligned peak list already contains the rows of the first sample
+	alignedPeakList = new SimplePeakList("Aligned peak list",
+		new RawDataFile[] { file1, file2 });
+	for (PeakListRow row : peakList1.getRows()) {
+	    SimplePeakListRow alignedRow = new SimplePeakListRow(row.getID());
+	    alignedRow.addPeak(file1, row.getPeak(file1));
+	    alignedPeakList.addRow(alignedRow);
+	}
+
+	rows = peakList2.getRows();
+    }
+
+    @Benchmark
+    public RowVsRowScore[] calculateScores() throws Exception {
+	return task.calculateScores(rows, alignedPeakList);
+    }
+
+}
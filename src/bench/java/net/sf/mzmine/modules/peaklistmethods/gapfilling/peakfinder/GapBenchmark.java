@@ -0,0 +1,112 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ * 
+ * This file is part of MZmine 2.
+ * 
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.gapfilling.peakfinder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.mzmine.benchmarks.BenchmarkEnvironment;
+import net.sf.mzmine.benchmarks.SyntheticData;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.datamodel.PeakListRow;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.datamodel.impl.SimplePeakListRow;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Range;
+
+/**
+ * Benchmark of the gap filling: a single gap is offered all scans of a
+ * two-minute segment, as in PeakFinderTask.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GapBenchmark {
+
+    @Param({ "CENTROIDED", "PROFILE" })
+    public MassSpectrumType spectrumType;
+
+    private RawDataFileImpl dataFile;
+    private Scan scans[];
+    private Range<Double> mzRange, rtRange;
+
+    @Setup(Level.Trial)
+    public void prepareData() throws IOException {
+
+	BenchmarkEnvironment.init();
+
+	SyntheticData data = new SyntheticData(1, 20000);
+	int pointsPerScan = spectrumType == MassSpectrumType.CENTROIDED ? 500
+		: 100000;
+	dataFile = data.createRawDataFile("benchmark", Range.closed(10.0, 12.0),
+		400, spectrumType, pointsPerScan);
+
+	int scanNumbers[] = dataFile.getScanNumbers(1);
+	scans = new Scan[scanNumbers.length];
+	for (int i = 0; i < scanNumbers.length; i++)
+	    scans[i] = dataFile.getScan(scanNumbers[i]);
+
+	// Search for the first compound eluting in the segment
+	int feature = 0;
+	while (!Range.closed(10.5, 11.5).contains(data.getFeatureRT(feature)))
+	    feature++;
+	double mz = data.getFeatureMZ(feature);
+	double rt = data.getFeatureRT(feature);
+	mzRange = Range.closed(mz - 0.005, mz + 0.005);
+	rtRange = Range.closed(rt - 0.1, rt + 0.1);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeFile() {
+	dataFile.close();
+    }
+
+    @Benchmark
+    public PeakListRow offerNextScan() {
+
+	PeakListRow row = new SimplePeakListRow(1);
+	Gap gap = new Gap(row, dataFile, mzRange, rtRange, 0.2);
+
+	for (Scan scan : scans)
+	    gap.offerNextScan(scan);
+	gap.noMoreOffers();
+
+	return row;
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ * 
+ * This file is part of MZmine 2.
+ * 
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.mzmine.benchmarks.BenchmarkEnvironment;
+import net.sf.mzmine.benchmarks.SyntheticData;
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.baseline.BaselinePeakDetector;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.baseline.BaselinePeakDetectorParameters;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.minimumsearch.MinimumSearchPeakDetector;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.minimumsearch.MinimumSearchPeakDetectorParameters;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.noiseamplitude.NoiseAmplitudePeakDetector;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.noiseamplitude.NoiseAmplitudePeakDetectorParameters;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.savitzkygolay.SavitzkyGolayPeakDetector;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.savitzkygolay.SavitzkyGolayPeakDetectorParameters;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Range;
+
+/**
+ * Benchmark of the peak resolvers, resolving a single chromatogram covering
+ * all MS1 scans of the data file, as in DeconvolutionTask. The CentWave
+ * resolver is not included, because it runs in an external R session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PeakResolverBenchmark {
+
+    @Param({ "BaselinePeakDetector", "MinimumSearchPeakDetector",
+	    "NoiseAmplitudePeakDetector", "SavitzkyGolayPeakDetector" })
+    public String resolverName;
+
+    @Param({ "6000" })
+    public int numberOfScans;
+
+    private RawDataFileImpl dataFile;
+    private Feature chromatogram;
+    private int scanNumbers[];
+    private double retentionTimes[], intensities[];
+    private PeakResolver resolver;
+    private ParameterSet parameters;
+
+    @Setup(Level.Trial)
+    public void prepareData() throws IOException {
+
+	BenchmarkEnvironment.init();
+
+	prepareResolver();
+
+	// The scans themselves are not read by the resolvers, so we only need
+	// a few compounds to fill them
+	SyntheticData data = new SyntheticData(1, 100);
+	dataFile = data.createRawDataFile("benchmark", numberOfScans,
+		MassSpectrumType.CENTROIDED, 0);
+	chromatogram = data.createChromatogram(dataFile, 0, 5);
+
+	scanNumbers = dataFile.getScanNumbers(1);
+	retentionTimes = new double[scanNumbers.length];
+	intensities = new double[scanNumbers.length];
+	for (int i = 0; i < scanNumbers.length; i++) {
+	    retentionTimes[i] = dataFile.getScan(scanNumbers[i])
+		    .getRetentionTime();
+	    DataPoint dp = chromatogram.getDataPoint(scanNumbers[i]);
+	    intensities[i] = dp != null ? dp.getIntensity() : 0.0;
+	}
+    }
+
+    @TearDown(Level.Trial)
+    public void closeFile() {
+	dataFile.close();
+    }
+
+    @Benchmark
+    public Feature[] resolvePeaks() {
+	// Some resolvers modify the intensities array
+	return resolver.resolvePeaks(chromatogram, scanNumbers,
+		retentionTimes, intensities.clone(), parameters);
+    }
+
+    private void prepareResolver() {
+
+	final Range<Double> peakDuration = Range.closed(0.0, 1.0);
+	final double minimumHeight = 1000.0;
+
+	if (resolverName.equals("BaselinePeakDetector")) {
+	    resolver = new BaselinePeakDetector();
+	    parameters = new BaselinePeakDetectorParameters();
+	    parameters.getParameter(
+		    BaselinePeakDetectorParameters.MIN_PEAK_HEIGHT).setValue(
+		    minimumHeight);
+	    parameters.getParameter(
+		    BaselinePeakDetectorParameters.PEAK_DURATION).setValue(
+		    peakDuration);
+	    parameters.getParameter(
+		    BaselinePeakDetectorParameters.BASELINE_LEVEL).setValue(
+		    100.0);
+	    return;
+	}
+
+	if (resolverName.equals("MinimumSearchPeakDetector")) {
+	    resolver = new MinimumSearchPeakDetector();
+	    parameters = new MinimumSearchPeakDetectorParameters();
+	    parameters
+		    .getParameter(
+			    MinimumSearchPeakDetectorParameters.CHROMATOGRAPHIC_THRESHOLD_LEVEL)
+		    .setValue(0.5);
+	    parameters.getParameter(
+		    MinimumSearchPeakDetectorParameters.SEARCH_RT_RANGE)
+		    .setValue(0.05);
+	    parameters.getParameter(
+		    MinimumSearchPeakDetectorParameters.MIN_RELATIVE_HEIGHT)
+		    .setValue(0.01);
+	    parameters.getParameter(
+		    MinimumSearchPeakDetectorParameters.MIN_ABSOLUTE_HEIGHT)
+		    .setValue(minimumHeight);
+	    parameters.getParameter(
+		    MinimumSearchPeakDetectorParameters.MIN_RATIO).setValue(
+		    2.0);
+	    parameters.getParameter(
+		    MinimumSearchPeakDetectorParameters.PEAK_DURATION)
+		    .setValue(peakDuration);
+	    return;
+	}
+
+	if (resolverName.equals("NoiseAmplitudePeakDetector")) {
+	    resolver = new NoiseAmplitudePeakDetector();
+	    parameters = new NoiseAmplitudePeakDetectorParameters();
+	    parameters.getParameter(
+		    NoiseAmplitudePeakDetectorParameters.MIN_PEAK_HEIGHT)
+		    .setValue(minimumHeight);
+	    parameters.getParameter(
+		    NoiseAmplitudePeakDetectorParameters.PEAK_DURATION)
+		    .setValue(peakDuration);
+	    parameters.getParameter(
+		    NoiseAmplitudePeakDetectorParameters.NOISE_AMPLITUDE)
+		    .setValue(50.0);
+	    return;
+	}
+
+	if (resolverName.equals("SavitzkyGolayPeakDetector")) {
+	    resolver = new SavitzkyGolayPeakDetector();
+	    parameters = new SavitzkyGolayPeakDetectorParameters();
+	    parameters.getParameter(
+		    SavitzkyGolayPeakDetectorParameters.MIN_PEAK_HEIGHT)
+		    .setValue(minimumHeight);
+	    parameters.getParameter(
+		    SavitzkyGolayPeakDetectorParameters.PEAK_DURATION)
+		    .setValue(peakDuration);
+	    parameters
+		    .getParameter(
+			    SavitzkyGolayPeakDetectorParameters.DERIVATIVE_THRESHOLD_LEVEL)
+		    .setValue(0.2);
+	    return;
+	}
+
+	throw new IllegalArgumentException("Unknown peak resolver "
+		+ resolverName);
+    }
+
+}
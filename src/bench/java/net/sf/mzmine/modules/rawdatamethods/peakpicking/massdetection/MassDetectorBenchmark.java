@@ -0,0 +1,162 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ * 
+ * This file is part of MZmine 2.
+ * 
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.mzmine.benchmarks.BenchmarkEnvironment;
+import net.sf.mzmine.benchmarks.SyntheticData;
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.centroid.CentroidMassDetectorParameters;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.exactmass.ExactMassDetectorParameters;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.localmaxima.LocalMaxMassDetectorParameters;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.recursive.RecursiveMassDetectorParameters;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.wavelet.WaveletMassDetectorParameters;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of all mass detectors listed in MassDetectionParameters, applied
+ * to a single stored scan. The time includes reading the scan from the
+ * temporary file, as in MassDetectionTask.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MassDetectorBenchmark {
+
+    @Param({ "CentroidMassDetector", "ExactMassDetector",
+	    "LocalMaxMassDetector", "RecursiveMassDetector",
+	    "WaveletMassDetector" })
+    public String detectorName;
+
+    @Param({ "CENTROIDED", "PROFILE" })
+    public MassSpectrumType spectrumType;
+
+    private RawDataFileImpl dataFile;
+    private Scan scan;
+    private MassDetector detector;
+    private ParameterSet parameters;
+
+    @Setup(Level.Trial)
+    public void prepareData() throws IOException {
+
+	BenchmarkEnvironment.init();
+
+	for (MassDetector md : MassDetectionParameters.massDetectors) {
+	    if (md.getClass().getSimpleName().equals(detectorName))
+		detector = md;
+	}
+	if (detector == null)
+	    throw new IllegalArgumentException("Unknown mass detector "
+		    + detectorName);
+
+	parameters = createParameters(detector);
+
+	SyntheticData data = new SyntheticData(1, 5000);
+	int pointsPerScan = spectrumType == MassSpectrumType.CENTROIDED ? 500
+		: 100000;
+	dataFile = data.createRawDataFile("benchmark", 10, spectrumType,
+		pointsPerScan);
+	scan = dataFile.getScan(5);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeFile() {
+	dataFile.close();
+    }
+
+    @Benchmark
+    public DataPoint[] getMassValues() {
+	return detector.getMassValues(scan, parameters);
+    }
+
+    private static ParameterSet createParameters(MassDetector detector) {
+
+	final double noiseLevel = 1000.0;
+
+	if (detector.getParameterSetClass() == CentroidMassDetectorParameters.class) {
+	    ParameterSet p = new CentroidMassDetectorParameters();
+	    p.getParameter(CentroidMassDetectorParameters.noiseLevel)
+		    .setValue(noiseLevel);
+	    return p;
+	}
+
+	if (detector.getParameterSetClass() == ExactMassDetectorParameters.class) {
+	    ParameterSet p = new ExactMassDetectorParameters();
+	    p.getParameter(ExactMassDetectorParameters.noiseLevel).setValue(
+		    noiseLevel);
+	    return p;
+	}
+
+	if (detector.getParameterSetClass() == LocalMaxMassDetectorParameters.class) {
+	    ParameterSet p = new LocalMaxMassDetectorParameters();
+	    p.getParameter(LocalMaxMassDetectorParameters.noiseLevel)
+		    .setValue(noiseLevel);
+	    return p;
+	}
+
+	if (detector.getParameterSetClass() == RecursiveMassDetectorParameters.class) {
+	    ParameterSet p = new RecursiveMassDetectorParameters();
+	    p.getParameter(RecursiveMassDetectorParameters.noiseLevel)
+		    .setValue(noiseLevel);
+	    p.getParameter(RecursiveMassDetectorParameters.minimumMZPeakWidth)
+		    .setValue(0.001);
+	    p.getParameter(RecursiveMassDetectorParameters.maximumMZPeakWidth)
+		    .setValue(0.2);
+	    return p;
+	}
+
+	if (detector.getParameterSetClass() == WaveletMassDetectorParameters.class) {
+	    ParameterSet p = new WaveletMassDetectorParameters();
+	    p.getParameter(WaveletMassDetectorParameters.noiseLevel).setValue(
+		    noiseLevel);
+	    p.getParameter(WaveletMassDetectorParameters.scaleLevel).setValue(
+		    3);
+	    p.getParameter(WaveletMassDetectorParameters.waveletWindow)
+		    .setValue(0.3);
+	    return p;
+	}
+
+	throw new IllegalArgumentException("No benchmark parameters for "
+		+ detector.getName());
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ * 
+ * This file is part of MZmine 2.
+ * 
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.mzmine.benchmarks.SyntheticData;
+import net.sf.mzmine.datamodel.DataPoint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the scan storage: writing and reading data points of a single
+ * centroided (2000 points) or profile (100000 points) scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RawDataFileImplBenchmark {
+
+    @Param({ "2000", "100000" })
+    public int dataPointsPerScan;
+
+    private DataPoint dataPoints[];
+    private RawDataFileImpl dataFile;
+    private int storageID;
+
+    @Setup(Level.Trial)
+    public void prepareData() {
+	SyntheticData data = new SyntheticData(1, 5000);
+	dataPoints = data.profileScan(15.0, dataPointsPerScan, 100);
+    }
+
+    /**
+     * A fresh data file for each iteration, so the temporary file does not
+     * grow during the whole trial
+     */
+    @Setup(Level.Iteration)
+    public void openFile() throws IOException {
+	dataFile = new RawDataFileImpl("benchmark");
+	storageID = dataFile.storeDataPoints(dataPoints);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeFile() {
+	dataFile.close();
+    }
+
+    @Benchmark
+    public int storeDataPoints() throws IOException {
+	return dataFile.storeDataPoints(dataPoints);
+    }
+
+    @Benchmark
+    public DataPoint[] readDataPoints() throws IOException {
+	return dataFile.readDataPoints(storageID);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ * 
+ * This file is part of MZmine 2.
+ * 
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.mzmine.benchmarks.SyntheticData;
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.util.ScanUtils.BinningType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Range;
+
+/**
+ * Benchmark of the ScanUtils methods used in the inner loops of peak
+ * detection, gap filling and visualization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ScanUtilsBenchmark {
+
+    @Param({ "CENTROIDED", "PROFILE" })
+    public MassSpectrumType spectrumType;
+
+    private RawDataFileImpl dataFile;
+    private Scan scan;
+    private DataPoint dataPoints[];
+    private double mzValues[], intensityValues[];
+    private Range<Double> mzRange;
+
+    @Setup(Level.Trial)
+    public void prepareData() throws IOException {
+
+	SyntheticData data = new SyntheticData(1, 5000);
+	int pointsPerScan = spectrumType == MassSpectrumType.CENTROIDED ? 500
+		: 100000;
+	dataFile = data.createRawDataFile("benchmark", 10, spectrumType,
+		pointsPerScan);
+	scan = dataFile.getScan(5);
+	dataPoints = scan.getDataPoints();
+
+	mzValues = new double[dataPoints.length];
+	intensityValues = new double[dataPoints.length];
+	for (int i = 0; i < dataPoints.length; i++) {
+	    mzValues[i] = dataPoints[i].getMZ();
+	    intensityValues[i] = dataPoints[i].getIntensity();
+	}
+
+	// Typical gap filling window
+	mzRange = Range.closed(500.0, 500.01);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeFile() {
+	dataFile.close();
+    }
+
+    @Benchmark
+    public DataPoint findBasePeak() {
+	return ScanUtils.findBasePeak(scan, mzRange);
+    }
+
+    @Benchmark
+    public double[] binValues() {
+	return ScanUtils.binValues(mzValues, intensityValues,
+		Range.closed(SyntheticData.MIN_MZ, SyntheticData.MAX_MZ), 1000,
+		true, BinningType.MAX);
+    }
+
+    @Benchmark
+    public MassSpectrumType detectSpectrumType() {
+	return ScanUtils.detectSpectrumType(dataPoints);
+    }
+
+}
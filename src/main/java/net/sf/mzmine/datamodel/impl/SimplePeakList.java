@@ -22,9 +22,7 @@ package net.sf.mzmine.datamodel.impl;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
 import java.util.Vector;
 
 import net.sf.mzmine.datamodel.Feature;
@@ -34,6 +32,7 @@ import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.desktop.impl.projecttree.PeakListTreeModel;
 import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.project.impl.MZmineProjectImpl;
+import net.sf.mzmine.util.DoubleRange;
 
 import com.google.common.collect.Range;
 
@@ -163,9 +162,12 @@ public class SimplePeakList implements PeakList {
 	    Range<Double> mzRange) {
 	Vector<PeakListRow> rowsInside = new Vector<PeakListRow>();
 
+	// Primitive ranges avoid boxing the m/z and RT of every row
+	DoubleRange rtLimits = DoubleRange.fromRange(rtRange);
+	DoubleRange mzLimits = DoubleRange.fromRange(mzRange);
 	for (PeakListRow row : peakListRows) {
-	    if (rtRange.contains(row.getAverageRT())
-		    && mzRange.contains(row.getAverageMZ()))
+	    if (rtLimits.contains(row.getAverageRT())
+		    && mzLimits.contains(row.getAverageMZ()))
 		rowsInside.add(row);
 	}
 
@@ -173,9 +175,8 @@ public class SimplePeakList implements PeakList {
     }
 
     public void addRow(PeakListRow row) {
-	List<RawDataFile> myFiles = Arrays.asList(this.getRawDataFiles());
 	for (RawDataFile testFile : row.getRawDataFiles()) {
-	    if (!myFiles.contains(testFile))
+	    if (!hasRawDataFile(testFile))
 		throw (new IllegalArgumentException("Data file " + testFile
 			+ " is not in this peak list"));
 	}
@@ -184,13 +185,8 @@ public class SimplePeakList implements PeakList {
 	    maxDataPointIntensity = row.getDataPointMaxIntensity();
 	}
 
-	if (mzRange == null) {
-	    mzRange = Range.singleton(row.getAverageMZ());
-	    rtRange = Range.singleton(row.getAverageRT());
-	} else {
-	    mzRange = mzRange.span(Range.singleton(row.getAverageMZ()));
-	    rtRange = rtRange.span(Range.singleton(row.getAverageRT()));
-	}
+	// The m/z and RT ranges are calculated by updateMaxIntensity() when
+	// requested, so there is no need to span them here for every row
     }
 
     /**
@@ -226,9 +222,11 @@ public class SimplePeakList implements PeakList {
 	    Range<Double> rtRange, Range<Double> mzRange) {
 	Vector<Feature> peaksInside = new Vector<Feature>();
 
+	DoubleRange rtLimits = DoubleRange.fromRange(rtRange);
+	DoubleRange mzLimits = DoubleRange.fromRange(mzRange);
 	Feature[] peaks = getPeaks(file);
 	for (Feature p : peaks) {
-	    if (rtRange.contains(p.getRT()) && mzRange.contains(p.getMZ()))
+	    if (rtLimits.contains(p.getRT()) && mzLimits.contains(p.getMZ()))
 		peaksInside.add(p);
 	}
 
@@ -261,20 +259,22 @@ public class SimplePeakList implements PeakList {
 	maxDataPointIntensity = 0;
 	mzRange = null;
 	rtRange = null;
+	if (peakListRows.isEmpty())
+	    return;
+
+	double lowMz = Double.POSITIVE_INFINITY, highMz = Double.NEGATIVE_INFINITY;
+	double lowRt = Double.POSITIVE_INFINITY, highRt = Double.NEGATIVE_INFINITY;
 	for (PeakListRow peakListRow : peakListRows) {
 	    if (peakListRow.getDataPointMaxIntensity() > maxDataPointIntensity)
 		maxDataPointIntensity = peakListRow.getDataPointMaxIntensity();
 
-	    if (mzRange == null) {
-		mzRange = Range.singleton(peakListRow.getAverageMZ());
-		rtRange = Range.singleton(peakListRow.getAverageRT());
-	    } else {
-		mzRange = mzRange.span(Range.singleton(peakListRow
-			.getAverageMZ()));
-		rtRange = rtRange.span(Range.singleton(peakListRow
-			.getAverageRT()));
-	    }
+	    lowMz = Math.min(lowMz, peakListRow.getAverageMZ());
+	    highMz = Math.max(highMz, peakListRow.getAverageMZ());
+	    lowRt = Math.min(lowRt, peakListRow.getAverageRT());
+	    highRt = Math.max(highRt, peakListRow.getAverageRT());
 	}
+	mzRange = Range.closed(lowMz, highMz);
+	rtRange = Range.closed(lowRt, highRt);
     }
 
     /**
@@ -300,7 +300,11 @@ public class SimplePeakList implements PeakList {
     }
 
     public boolean hasRawDataFile(RawDataFile hasFile) {
-	return Arrays.asList(dataFiles).contains(hasFile);
+	for (RawDataFile dataFile : dataFiles) {
+	    if (dataFile.equals(hasFile))
+		return true;
+	}
+	return false;
     }
 
     public PeakListRow getPeakRow(Feature peak) {
@@ -108,13 +108,16 @@ public class SimpleScan implements Scan {
 	    @Nonnull Range<Double> mzRange) {
 
 	int startIndex, endIndex;
+	final double lowMz = mzRange.lowerEndpoint();
+	final double highMz = mzRange.upperEndpoint();
+
 	for (startIndex = 0; startIndex < dataPoints.length; startIndex++) {
-	    if (dataPoints[startIndex].getMZ() >= mzRange.lowerEndpoint())
+	    if (dataPoints[startIndex].getMZ() >= lowMz)
 		break;
 	}
 
 	for (endIndex = startIndex; endIndex < dataPoints.length; endIndex++) {
-	    if (dataPoints[endIndex].getMZ() > mzRange.upperEndpoint())
+	    if (dataPoints[endIndex].getMZ() > highMz)
 		break;
 	}
 
@@ -161,18 +164,23 @@ public class SimpleScan implements Scan {
 	if (dataPoints.length > 0) {
 
 	    basePeak = dataPoints[0];
-	    mzRange = Range.singleton(dataPoints[0].getMZ());
+	    double lowMz = dataPoints[0].getMZ(), highMz = lowMz;
 
 	    for (DataPoint dp : dataPoints) {
 
 		if (dp.getIntensity() > basePeak.getIntensity())
 		    basePeak = dp;
 
-		mzRange = mzRange.span(Range.singleton(dp.getMZ()));
+		if (dp.getMZ() < lowMz)
+		    lowMz = dp.getMZ();
+		if (dp.getMZ() > highMz)
+		    highMz = dp.getMZ();
 		totalIonCurrent += dp.getIntensity();
 
 	    }
 
+	    mzRange = Range.closed(lowMz, highMz);
+
 	}
 
     }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.desktop.impl;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+
+import javax.swing.BorderFactory;
+import javax.swing.BoxLayout;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
+import net.sf.mzmine.taskcontrol.impl.TaskMetricsReport;
+import net.sf.mzmine.util.ExceptionUtils;
+import net.sf.mzmine.util.GUIUtils;
+
+/**
+ * Window showing the metrics of all tasks submitted to the task controller
+ */
+public class TaskMetricsWindow extends JFrame implements ActionListener {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    private final MetricsTableModel tableModel;
+
+    public TaskMetricsWindow() {
+
+	super("Task metrics");
+
+	setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+
+	tableModel = new MetricsTableModel();
+	JTable table = new JTable(tableModel);
+	table.setAutoCreateRowSorter(true);
+	table.getTableHeader().setReorderingAllowed(false);
+	table.getColumnModel().getColumn(2).setPreferredWidth(300);
+
+	JScrollPane scrollPane = new JScrollPane(table);
+	scrollPane.setPreferredSize(new Dimension(900, 300));
+
+	JPanel pnlButtons = new JPanel();
+	pnlButtons.setLayout(new BoxLayout(pnlButtons, BoxLayout.X_AXIS));
+	pnlButtons.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+	GUIUtils.addButton(pnlButtons, "Refresh", null, this, "REFRESH");
+	GUIUtils.addButton(pnlButtons, "Export CSV", null, this, "EXPORT_CSV");
+	GUIUtils.addButton(pnlButtons, "Export JSON", null, this,
+		"EXPORT_JSON");
+
+	setLayout(new BorderLayout());
+	add(scrollPane, BorderLayout.CENTER);
+	add(pnlButtons, BorderLayout.SOUTH);
+	pack();
+
+	setLocationRelativeTo(MZmineCore.getDesktop().getMainWindow());
+
+    }
+
+    public void actionPerformed(ActionEvent e) {
+
+	String command = e.getActionCommand();
+
+	if (command.equals("REFRESH")) {
+	    tableModel.refresh();
+	    return;
+	}
+
+	JFileChooser fileChooser = new JFileChooser();
+	fileChooser.setApproveButtonText("Export");
+	int result = fileChooser.showSaveDialog(this);
+	if (result != JFileChooser.APPROVE_OPTION)
+	    return;
+	File outputFile = fileChooser.getSelectedFile();
+
+	// Export the current state, not the state of the last refresh
+	TaskMetrics metrics[] = MZmineCore.getTaskController()
+		.getTaskMetrics();
+
+	try {
+	    if (command.equals("EXPORT_CSV"))
+		TaskMetricsReport.writeCSV(metrics, outputFile);
+	    if (command.equals("EXPORT_JSON"))
+		TaskMetricsReport.writeJSON(metrics, outputFile);
+	} catch (Exception ex) {
+	    MZmineCore.getDesktop().displayErrorMessage(
+		    this,
+		    "Error writing to file " + outputFile + ": "
+			    + ExceptionUtils.exceptionToString(ex));
+	}
+
+    }
+
+    private static class MetricsTableModel extends AbstractTableModel {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final String columns[] = { "Batch step", "Method",
+		"Task", "Queue time (s)", "Run time (s)", "CPU time (s)",
+		"Allocated (MB)", "Data points read", "Data points written",
+		"Data files" };
+
+	private TaskMetrics metrics[];
+
+	MetricsTableModel() {
+	    metrics = MZmineCore.getTaskController().getTaskMetrics();
+	}
+
+	void refresh() {
+	    metrics = MZmineCore.getTaskController().getTaskMetrics();
+	    fireTableDataChanged();
+	}
+
+	public int getRowCount() {
+	    return metrics.length;
+	}
+
+	public int getColumnCount() {
+	    return columns.length;
+	}
+
+	public String getColumnName(int column) {
+	    return columns[column];
+	}
+
+	public Class<?> getColumnClass(int column) {
+	    switch (column) {
+	    case 3:
+	    case 4:
+	    case 5:
+	    case 6:
+		return Double.class;
+	    case 7:
+	    case 8:
+		return Long.class;
+	    }
+	    return String.class;
+	}
+
+	public Object getValueAt(int row, int column) {
+	    TaskMetrics m = metrics[row];
+	    switch (column) {
+	    case 0:
+		return m.getBatchStep();
+	    case 1:
+		return m.getTaskClass();
+	    case 2:
+		return m.getTaskDescription();
+	    case 3:
+		return m.getQueueTime() / 1000.0;
+	    case 4:
+		return m.getRunTime() / 1000.0;
+	    case 5:
+		return m.getCpuTime() < 0 ? null : m.getCpuTime() / 1000.0;
+	    case 6:
+		return m.getAllocatedBytes() < 0 ? null : m
+			.getAllocatedBytes() / (1024.0 * 1024.0);
+	    case 7:
+		return m.getDataPointsRead();
+	    case 8:
+		return m.getDataPointsWritten();
+	    case 9:
+		StringBuilder sb = new StringBuilder();
+		for (String dataFile : m.getDataFiles()) {
+		    if (sb.length() > 0)
+			sb.append(", ");
+		    sb.append(dataFile);
+		}
+		return sb.toString();
+	    }
+	    return null;
+	}
+
+    }
+
+}
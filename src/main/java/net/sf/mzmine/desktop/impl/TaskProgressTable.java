@@ -58,7 +58,7 @@ public class TaskProgressTable extends JPanel implements ActionListener {
     private JPopupMenu popupMenu;
     private JMenu priorityMenu;
     private JMenuItem cancelTaskMenuItem, cancelAllMenuItem,
-	    highPriorityMenuItem, normalPriorityMenuItem;
+	    highPriorityMenuItem, normalPriorityMenuItem, showMetricsMenuItem;
 
     /**
      * Constructor
@@ -97,6 +97,8 @@ public class TaskProgressTable extends JPanel implements ActionListener {
 		this);
 	cancelAllMenuItem = GUIUtils.addMenuItem(popupMenu, "Cancel all tasks",
 		this);
+	showMetricsMenuItem = GUIUtils.addMenuItem(popupMenu,
+		"Show task metrics", this);
 
 	// Addd popup menu to the task table
 	taskTable.setComponentPopupMenu(popupMenu);
@@ -128,6 +130,12 @@ public class TaskProgressTable extends JPanel implements ActionListener {
 
 	Object src = event.getSource();
 
+	if (src == showMetricsMenuItem) {
+	    TaskMetricsWindow metricsWindow = new TaskMetricsWindow();
+	    metricsWindow.setVisible(true);
+	    return;
+	}
+
 	if (src == cancelTaskMenuItem) {
 	    if (selectedTask == null)
 		return;
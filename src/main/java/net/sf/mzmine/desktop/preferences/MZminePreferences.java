@@ -26,8 +26,13 @@ import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.parameters.Parameter;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.impl.SimpleParameterSet;
+import net.sf.mzmine.parameters.parametertypes.ComboParameter;
 import net.sf.mzmine.parameters.parametertypes.OptionalModuleParameter;
+import net.sf.mzmine.parameters.parametertypes.OptionalParameter;
+import net.sf.mzmine.parameters.parametertypes.TextParameter;
 import net.sf.mzmine.parameters.parametertypes.WindowSettingsParameter;
+import net.sf.mzmine.project.impl.DataPointsCodec;
+import net.sf.mzmine.project.impl.DataPointsCodecs;
 import net.sf.mzmine.util.ExitCode;
 
 import org.w3c.dom.Element;
@@ -52,11 +57,27 @@ public class MZminePreferences extends SimpleParameterSet {
 	    "Use proxy", "Use proxy for internet connection?",
 	    new ProxySettings());
 
+    public static final OptionalParameter<TextParameter> scratchDirectories = new OptionalParameter<TextParameter>(
+	    new TextParameter(
+		    "Scratch directories",
+		    "Directories for temporary files with scan data, one per line. If not set, the system temporary directory is used."));
+
+    public static final ComboParameter<ScratchPlacement> scratchPlacement = new ComboParameter<ScratchPlacement>(
+	    "Scratch file placement",
+	    "Selection of the scratch directory for each new temporary file",
+	    ScratchPlacement.values(), ScratchPlacement.ROUND_ROBIN);
+
+    public static final ComboParameter<DataPointsCodec> dataPointsCodec = new ComboParameter<DataPointsCodec>(
+	    "Scan data storage",
+	    "Format of the scan data of new raw data files, in temporary files and projects",
+	    DataPointsCodecs.getCodecs(), DataPointsCodecs.FLOAT32);
+
     public static final WindowSettingsParameter windowSetttings = new WindowSettingsParameter();
 
     public MZminePreferences() {
 	super(new Parameter[] { mzFormat, rtFormat, intensityFormat,
-		numOfThreads, proxySettings, windowSetttings });
+		numOfThreads, proxySettings, scratchDirectories,
+		scratchPlacement, dataPointsCodec, windowSetttings });
     }
 
     @Override
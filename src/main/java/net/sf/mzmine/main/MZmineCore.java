@@ -41,6 +41,7 @@ import net.sf.mzmine.desktop.impl.MainWindow;
 import net.sf.mzmine.desktop.preferences.MZminePreferences;
 import net.sf.mzmine.main.NewVersionCheck.CheckType;
 import net.sf.mzmine.main.impl.MZmineConfigurationImpl;
+import net.sf.mzmine.main.jobserver.JobServer;
 import net.sf.mzmine.modules.MZmineModule;
 import net.sf.mzmine.modules.MZmineRunnableModule;
 import net.sf.mzmine.modules.batchmode.BatchModeModule;
@@ -50,6 +51,7 @@ import net.sf.mzmine.project.ProjectManager;
 import net.sf.mzmine.project.impl.MZmineProjectImpl;
 import net.sf.mzmine.project.impl.ProjectManagerImpl;
 import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
 import net.sf.mzmine.taskcontrol.TaskController;
 import net.sf.mzmine.taskcontrol.impl.TaskControllerImpl;
 import net.sf.mzmine.util.ExitCode;
@@ -66,6 +68,8 @@ public final class MZmineCore {
     private static Desktop desktop;
     private static ProjectManagerImpl projectManager;
 
+    private static final String SERVER_OPTION = "-server";
+
     private static Map<Class<?>, MZmineModule> initializedModules = new Hashtable<Class<?>, MZmineModule>();
 
     /**
@@ -93,9 +97,6 @@ public final class MZmineCore {
 
 	logger.info("Starting MZmine " + getMZmineVersion());
 
-	// Remove old temporary files, if we find any
-	TmpFileCleanup.removeOldTemporaryFiles();
-
 	logger.fine("Loading core classes..");
 
 	// create instance of configuration
@@ -200,6 +201,10 @@ public final class MZmineCore {
 	    }
 	}
 
+	// Remove old temporary files from the configured scratch directories,
+	// if we find any
+	TmpFileCleanup.removeOldTemporaryFiles();
+
 	// if we have GUI, show it now
 	if (desktop.getMainWindow() != null) {
 
@@ -226,6 +231,12 @@ public final class MZmineCore {
 	    Runtime.getRuntime().addShutdownHook(shutDownHook);
 	}
 
+	// run the job server, if requested
+	if ((args.length > 0) && args[0].equals(SERVER_OPTION)) {
+	    startJobServer(args);
+	    return;
+	}
+
 	// if arguments were specified (= running without GUI), run the batch
 	// mode
 	if (args.length > 0) {
@@ -244,6 +255,51 @@ public final class MZmineCore {
 
     }
 
+    /**
+     * Starts the job server, which keeps running until the JVM is terminated.
+     * Arguments: -server queueDirectory [-port port] [-jobs maxJobs]
+     */
+    private static void startJobServer(String args[]) {
+
+	File queueDirectory = null;
+	int port = 0;
+	// The jobs share the task threads, so running more jobs than threads
+	// only keeps more projects in memory
+	int maxJobs = SharedTaskExecutor.getNumOfThreads();
+
+	try {
+	    for (int i = 1; i < args.length; i++) {
+		if (args[i].equals("-port"))
+		    port = Integer.parseInt(args[++i]);
+		else if (args[i].equals("-jobs"))
+		    maxJobs = Integer.parseInt(args[++i]);
+		else if (queueDirectory == null)
+		    queueDirectory = new File(args[i]);
+		else
+		    throw new IllegalArgumentException("Unknown argument "
+			    + args[i]);
+	    }
+	} catch (RuntimeException e) {
+	    logger.severe("Invalid job server arguments: " + e);
+	    queueDirectory = null;
+	}
+
+	if (queueDirectory == null) {
+	    logger.severe("Usage: " + SERVER_OPTION
+		    + " <queue directory> [-port <port>] [-jobs <max jobs>]");
+	    System.exit(1);
+	}
+
+	try {
+	    JobServer server = new JobServer(queueDirectory, port, maxJobs);
+	    server.start();
+	} catch (IOException e) {
+	    logger.log(Level.SEVERE, "Could not start the job server", e);
+	    System.exit(1);
+	}
+
+    }
+
     @Nonnull
     public static TaskController getTaskController() {
 	return taskController;
@@ -20,6 +20,7 @@
 package net.sf.mzmine.main;
 
 import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.project.impl.ScratchStorage;
 import net.sf.mzmine.taskcontrol.Task;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.taskcontrol.impl.WrappedTask;
@@ -60,5 +61,8 @@ class ShutDownHook extends Thread {
 	    dataFile.close();
 	}
 
+	// Report the I/O of each scratch directory
+	ScratchStorage.logStatistics();
+
     }
 }
\ No newline at end of file
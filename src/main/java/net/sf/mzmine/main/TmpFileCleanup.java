@@ -24,9 +24,15 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.sf.mzmine.main.jobserver.BatchJob;
+import net.sf.mzmine.project.impl.ScratchStorage;
+
 class TmpFileCleanup {
 
     private static Logger logger = Logger.getLogger(TmpFileCleanup.class
@@ -35,10 +41,27 @@ class TmpFileCleanup {
     static void removeOldTemporaryFiles() {
 
 	logger.fine("Checking for old temporary files...");
+
+	// Check all scratch directories, and the system temporary directory,
+	// which was used before scratch directories were configured
+	Set<File> tempDirs = new LinkedHashSet<File>();
+	tempDirs.add(new File(System.getProperty("java.io.tmpdir"))
+		.getAbsoluteFile());
+	for (File scratchDir : ScratchStorage.getConfiguredDirectories())
+	    tempDirs.add(scratchDir.getAbsoluteFile());
+
+	for (File tempDir : tempDirs) {
+	    removeOldTemporaryFiles(tempDir);
+	    removeOldJobDirectories(tempDir);
+	}
+
+    }
+
+    private static void removeOldTemporaryFiles(File tempDir) {
+
 	try {
 
 	    // Find all temporary files with the mask mzmine*.scans
-	    File tempDir = new File(System.getProperty("java.io.tmpdir"));
 	    File remainingTmpFiles[] = tempDir.listFiles(new FilenameFilter() {
 		public boolean accept(File dir, String name) {
 		    return name.matches("mzmine.*\\.scans");
@@ -70,7 +93,58 @@ class TmpFileCleanup {
 		}
 	} catch (IOException e) {
 	    logger.log(Level.WARNING,
-		    "Error while checking for old temporary files", e);
+		    "Error while checking for old temporary files in "
+			    + tempDir, e);
+	}
+
+    }
+
+    /**
+     * Removes the scratch directories of job server jobs (mzmine-job-*) that
+     * were not finished, e.g. because MZmine crashed. A running job keeps its
+     * lock file locked, see BatchJob.
+     */
+    private static void removeOldJobDirectories(File tempDir) {
+
+	File jobDirs[] = tempDir.listFiles(new FilenameFilter() {
+	    public boolean accept(File dir, String name) {
+		return name.startsWith("mzmine-job-");
+	    }
+	});
+
+	if (jobDirs == null)
+	    return;
+
+	for (File jobDir : jobDirs) {
+
+	    // Skip directories created by someone else
+	    File lockFile = new File(jobDir, BatchJob.SCRATCH_LOCK_FILE);
+	    if ((!jobDir.isDirectory()) || (!lockFile.canWrite()))
+		continue;
+
+	    try {
+		RandomAccessFile rac = new RandomAccessFile(lockFile, "rw");
+		FileLock lock;
+		try {
+		    lock = rac.getChannel().tryLock();
+		} catch (OverlappingFileLockException e) {
+		    // Locked by a job of this MZmine instance
+		    lock = null;
+		} finally {
+		    rac.close();
+		}
+
+		if (lock != null) {
+		    logger.finest("Removing unused job scratch directory "
+			    + jobDir);
+		    BatchJob.deleteDirectory(jobDir);
+		}
+	    } catch (IOException e) {
+		logger.log(Level.WARNING,
+			"Error while checking old job scratch directory "
+				+ jobDir, e);
+	    }
+
 	}
 
     }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.main.jobserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.modules.batchmode.BatchModeModule;
+import net.sf.mzmine.project.impl.MZmineProjectImpl;
+import net.sf.mzmine.util.ExitCode;
+
+/**
+ * A batch run by the job server. Each job has its own project and its own
+ * directory for the temporary scan data files. While the job runs, it is bound
+ * to the threads working on it, so that the project manager, the scratch
+ * storage and the job log can tell the jobs apart. The binding is not
+ * inherited by new threads: the job thread binds the job itself, and the
+ * threads working on the tasks it submits bind it together with the metrics
+ * of the task, see TaskMetrics.setCurrentMetrics().
+ */
+public class BatchJob implements Runnable {
+
+    private static Logger logger = Logger.getLogger(BatchJob.class.getName());
+
+    private static final ThreadLocal<BatchJob> currentJob = new ThreadLocal<BatchJob>();
+
+    /**
+     * Name of the file in the scratch directory of a job, which is locked
+     * while the job runs. The scratch directories of jobs that were not
+     * finished (e.g. because MZmine crashed) are removed on the next start
+     * when this file is not locked, see TmpFileCleanup.
+     */
+    public static final String SCRATCH_LOCK_FILE = "job.lock";
+
+    private final String name;
+    private final File batchFile, logFile, scratchDirectory;
+
+    private volatile MZmineProject project;
+    private volatile ExitCode exitCode = ExitCode.UNKNOWN;
+
+    /**
+     * @param name
+     *            Name of the job, used in the log
+     * @param batchFile
+     *            Batch queue XML file
+     * @param logFile
+     *            File where the log messages of the job are written
+     * @param scratchDirectory
+     *            Directory for the temporary files of the job, created when
+     *            the job starts and removed when it finishes
+     */
+    public BatchJob(String name, File batchFile, File logFile,
+	    File scratchDirectory) {
+	this.name = name;
+	this.batchFile = batchFile;
+	this.logFile = logFile;
+	this.scratchDirectory = scratchDirectory;
+	this.project = new MZmineProjectImpl();
+    }
+
+    /**
+     * Returns the job bound to the current thread, or null if the thread does
+     * not work on any job
+     */
+    public static BatchJob getCurrentJob() {
+	return currentJob.get();
+    }
+
+    /**
+     * Binds given job to the current thread, or unbinds the current job if
+     * job is null
+     */
+    public static void setCurrentJob(BatchJob job) {
+	if (job == null)
+	    currentJob.remove();
+	else
+	    currentJob.set(job);
+    }
+
+    public String getName() {
+	return name;
+    }
+
+    public File getBatchFile() {
+	return batchFile;
+    }
+
+    public File getLogFile() {
+	return logFile;
+    }
+
+    /**
+     * Returns the directory of the job, which contains its log file
+     */
+    public File getJobDirectory() {
+	return logFile.getAbsoluteFile().getParentFile();
+    }
+
+    public File getScratchDirectory() {
+	return scratchDirectory;
+    }
+
+    public MZmineProject getProject() {
+	return project;
+    }
+
+    /**
+     * Replaces the project of this job, e.g. when the batch opens a project
+     * file
+     */
+    public void setProject(MZmineProject project) {
+	this.project = project;
+    }
+
+    public ExitCode getExitCode() {
+	return exitCode;
+    }
+
+    public void run() {
+
+	JobLogHandler logHandler = null;
+	RandomAccessFile scratchLockFile = null;
+	setCurrentJob(this);
+
+	try {
+
+	    try {
+		logHandler = new JobLogHandler(this);
+		Logger.getLogger("").addHandler(logHandler);
+	    } catch (IOException e) {
+		logger.log(Level.WARNING, "Could not create log file "
+			+ logFile + " for job " + name, e);
+	    }
+
+	    if ((!scratchDirectory.isDirectory()) && (!scratchDirectory.mkdirs())) {
+		logger.severe("Could not create scratch directory "
+			+ scratchDirectory + " for job " + name);
+		exitCode = ExitCode.ERROR;
+		return;
+	    }
+
+	    try {
+		scratchLockFile = new RandomAccessFile(new File(
+			scratchDirectory, SCRATCH_LOCK_FILE), "rw");
+		FileLock lock = scratchLockFile.getChannel().tryLock();
+		if (lock == null)
+		    logger.warning("Could not lock scratch directory "
+			    + scratchDirectory + " for job " + name);
+	    } catch (IOException e) {
+		logger.log(Level.WARNING, "Could not lock scratch directory "
+			+ scratchDirectory + " for job " + name, e);
+	    }
+
+	    logger.info("Starting job " + name + " from batch file "
+		    + batchFile);
+	    final long startTime = System.currentTimeMillis();
+
+	    exitCode = BatchModeModule.runBatch(project, batchFile);
+
+	    logger.info("Finished job " + name + " with exit code " + exitCode
+		    + " in " + (System.currentTimeMillis() - startTime) + " ms");
+
+	} catch (Throwable e) {
+	    logger.log(Level.SEVERE, "Error while running job " + name, e);
+	    exitCode = ExitCode.ERROR;
+	} finally {
+
+	    // Release the temporary files of the job. The job is still
+	    // referenced by the metrics of its tasks, so we also drop the
+	    // project.
+	    for (RawDataFile dataFile : project.getDataFiles())
+		dataFile.close();
+	    if (scratchLockFile != null) {
+		// Closing the file releases the lock
+		try {
+		    scratchLockFile.close();
+		} catch (IOException e) {
+		    logger.log(Level.WARNING, "Could not unlock scratch directory "
+			    + scratchDirectory, e);
+		}
+	    }
+	    deleteDirectory(scratchDirectory);
+	    project = new MZmineProjectImpl();
+
+	    if (logHandler != null) {
+		Logger.getLogger("").removeHandler(logHandler);
+		logHandler.close();
+	    }
+	    setCurrentJob(null);
+
+	}
+
+    }
+
+    /**
+     * Removes given directory with all its content
+     */
+    public static void deleteDirectory(File directory) {
+	File files[] = directory.listFiles();
+	if (files != null) {
+	    for (File file : files) {
+		if (file.isDirectory())
+		    deleteDirectory(file);
+		else if (!file.delete())
+		    logger.warning("Could not delete temporary file " + file);
+	    }
+	}
+	directory.delete();
+    }
+
+    public String toString() {
+	return name;
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.main.jobserver;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.StreamHandler;
+
+import net.sf.mzmine.util.logging.ConsoleFormatter;
+
+/**
+ * java.util.logging handler that writes the messages logged by the threads of
+ * one job into the log file of the job. The handler is registered on the root
+ * logger while the job runs, so the messages still go to the console as well.
+ */
+class JobLogHandler extends StreamHandler {
+
+    private final BatchJob job;
+
+    JobLogHandler(BatchJob job) throws IOException {
+	super(new FileOutputStream(job.getLogFile()), new ConsoleFormatter());
+	this.job = job;
+	setLevel(Level.INFO);
+    }
+
+    /**
+     * @see java.util.logging.StreamHandler#isLoggable(java.util.logging.LogRecord)
+     */
+    public boolean isLoggable(LogRecord record) {
+	return (BatchJob.getCurrentJob() == job) && super.isLoggable(record);
+    }
+
+    /**
+     * @see java.util.logging.StreamHandler#publish(java.util.logging.LogRecord)
+     */
+    public synchronized void publish(LogRecord record) {
+	if (!isLoggable(record))
+	    return;
+	super.publish(record);
+	flush();
+    }
+
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.main.jobserver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.mzmine.project.impl.ScratchStorage;
+import net.sf.mzmine.util.ExitCode;
+
+/**
+ * Headless server which keeps one MZmine instance running and executes batch
+ * files submitted by other programs, so that the startup of MZmine and the JIT
+ * warm-up are paid only once. Batches can be submitted in two ways:
+ * 
+ * 1) File-drop queue: batch files (*.xml) copied into the queue directory are
+ * picked up in the order of their modification time. To avoid picking up a
+ * partially written file, write it under a different name first and then
+ * rename it to *.xml. Each job gets a directory queue/jobs/NAME containing the
+ * batch file, the log of the job (NAME.log), the checkpoint of the batch if
+ * checkpoints are enabled, the task metrics report (named after the batch
+ * file, e.g. NAME-metrics.csv and NAME-metrics.json) and, when the job is
+ * finished, a file named
+ * "exitcode" containing 0 for success or 1 for failure.
+ * 
+ * 2) Local socket: a client connects to the port on the loopback interface
+ * and sends the absolute path of a batch file as a single line. When the job
+ * finishes, the server sends back the log of the job followed by a line
+ * "EXIT 0" or "EXIT 1" and closes the connection.
+ * 
+ * Each job runs in its own project with its own scratch directory (see
+ * BatchJob). At most maxJobs jobs run side by side, further jobs wait in the
+ * queue. The processing tasks of all jobs wait in the queue of the task
+ * controller, which runs as many of them at a time as set in the MZmine
+ * preferences, and tasks that split their work share one pool of the same
+ * size (SharedTaskExecutor). The batch threads coordinating the jobs, and the
+ * few modules that start threads of their own, are not counted.
+ */
+public class JobServer {
+
+    private static Logger logger = Logger.getLogger(JobServer.class.getName());
+
+    public static final String JOBS_DIRECTORY = "jobs";
+    public static final String EXIT_CODE_FILE = "exitcode";
+
+    // Interval of checking the queue directory for new batch files
+    private static final int QUEUE_POLL_INTERVAL = 1000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File queueDirectory, jobsDirectory;
+    private final int port;
+    private final ExecutorService jobExecutor;
+    private final AtomicInteger jobCounter = new AtomicInteger();
+
+    /**
+     * @param queueDirectory
+     *            Directory watched for new batch files
+     * @param port
+     *            Port of the local socket, or 0 to accept jobs only from the
+     *            queue directory
+     * @param maxJobs
+     *            Maximum number of jobs running side by side
+     */
+    public JobServer(File queueDirectory, int port, int maxJobs) {
+	this.queueDirectory = queueDirectory.getAbsoluteFile();
+	this.jobsDirectory = new File(this.queueDirectory, JOBS_DIRECTORY);
+	this.port = port;
+	this.jobExecutor = Executors.newFixedThreadPool(Math.max(1, maxJobs));
+    }
+
+    /**
+     * Starts the threads watching the queue directory and listening on the
+     * socket. The threads keep running until the JVM is terminated.
+     */
+    public void start() throws IOException {
+
+	if ((!jobsDirectory.isDirectory()) && (!jobsDirectory.mkdirs()))
+	    throw new IOException("Could not create directory "
+		    + jobsDirectory);
+
+	Thread queueThread = new Thread(new Runnable() {
+	    public void run() {
+		watchQueueDirectory();
+	    }
+	}, "Job server queue thread");
+	queueThread.start();
+
+	if (port > 0) {
+	    final ServerSocket serverSocket = new ServerSocket(port, 50,
+		    InetAddress.getLoopbackAddress());
+	    Thread socketThread = new Thread(new Runnable() {
+		public void run() {
+		    acceptConnections(serverSocket);
+		}
+	    }, "Job server socket thread");
+	    socketThread.start();
+	    logger.info("Job server listening on port " + port);
+	}
+
+	logger.info("Job server watching queue directory " + queueDirectory);
+
+    }
+
+    /**
+     * Submits a batch file. The log and the exit code of the job are written
+     * into given job directory. The returned future gives the job when it is
+     * finished.
+     */
+    public Future<BatchJob> submit(File batchFile, File jobDirectory) {
+
+	final int jobNumber = jobCounter.incrementAndGet();
+	String name = jobDirectory.getName();
+
+	// Spread the jobs over the configured scratch directories. The
+	// directory of the job is created when the job starts.
+	File scratchDirectories[] = ScratchStorage.getConfiguredDirectories();
+	File scratchParent = scratchDirectories[jobNumber
+		% scratchDirectories.length];
+	File scratchDirectory = new File(scratchParent, "mzmine-job-"
+		+ UUID.randomUUID());
+
+	File logFile = new File(jobDirectory, name + ".log");
+	final BatchJob job = new BatchJob(name, batchFile, logFile,
+		scratchDirectory);
+
+	logger.info("Queued job " + name + " (batch file " + batchFile + ")");
+
+	return jobExecutor.submit(new Callable<BatchJob>() {
+	    public BatchJob call() {
+		try {
+		    job.run();
+		} finally {
+		    writeExitCode(job.getJobDirectory(), job.getExitCode());
+		}
+		return job;
+	    }
+	});
+
+    }
+
+    private void watchQueueDirectory() {
+
+	while (true) {
+
+	    File batchFiles[] = queueDirectory.listFiles(new FilenameFilter() {
+		public boolean accept(File dir, String name) {
+		    return name.toLowerCase().endsWith(".xml");
+		}
+	    });
+
+	    if (batchFiles != null) {
+		Arrays.sort(batchFiles, new Comparator<File>() {
+		    public int compare(File f1, File f2) {
+			return Long.compare(f1.lastModified(),
+				f2.lastModified());
+		    }
+		});
+		for (File batchFile : batchFiles) {
+		    try {
+			submitQueuedFile(batchFile);
+		    } catch (Exception e) {
+			logger.log(Level.SEVERE, "Could not submit batch file "
+				+ batchFile, e);
+		    }
+		}
+	    }
+
+	    try {
+		Thread.sleep(QUEUE_POLL_INTERVAL);
+	    } catch (InterruptedException e) {
+		// Ignore
+	    }
+
+	}
+
+    }
+
+    /**
+     * Moves a batch file from the queue directory into a new job directory
+     * and submits it
+     */
+    private void submitQueuedFile(File batchFile) throws IOException {
+
+	File jobDirectory = createJobDirectory(batchFile.getName());
+
+	File movedBatchFile = new File(jobDirectory, batchFile.getName());
+	if (!batchFile.renameTo(movedBatchFile)) {
+	    jobDirectory.delete();
+	    throw new IOException("Could not move " + batchFile + " to "
+		    + jobDirectory);
+	}
+
+	// The batch file is no longer in the queue, so the job must end with
+	// an exit code even if it cannot be submitted
+	try {
+	    submit(movedBatchFile, jobDirectory);
+	} catch (RuntimeException e) {
+	    writeExitCode(jobDirectory, ExitCode.ERROR);
+	    throw e;
+	}
+
+    }
+
+    private void acceptConnections(ServerSocket serverSocket) {
+	while (true) {
+	    try {
+		final Socket socket = serverSocket.accept();
+		Thread connectionThread = new Thread(new Runnable() {
+		    public void run() {
+			handleConnection(socket);
+		    }
+		}, "Job server connection " + socket.getPort());
+		connectionThread.start();
+	    } catch (IOException e) {
+		logger.log(Level.SEVERE, "Error accepting connection", e);
+	    }
+	}
+    }
+
+    /**
+     * Reads the batch file name from the socket, runs the job and sends back
+     * its log and exit code
+     */
+    private void handleConnection(Socket socket) {
+
+	try {
+
+	    BufferedReader reader = new BufferedReader(new InputStreamReader(
+		    socket.getInputStream(), UTF8));
+	    OutputStream output = socket.getOutputStream();
+
+	    String line = reader.readLine();
+	    File batchFile = (line == null) ? null : new File(line.trim());
+	    if ((batchFile == null) || (!batchFile.canRead())) {
+		output.write(("Cannot read batch file " + line + "\nEXIT 1\n")
+			.getBytes(UTF8));
+		return;
+	    }
+
+	    File jobDirectory = createJobDirectory(batchFile.getName());
+	    BatchJob job = submit(batchFile, jobDirectory).get();
+
+	    // Send the log and the exit code of the job
+	    File logFile = job.getLogFile();
+	    if (logFile.exists()) {
+		InputStream logStream = new FileInputStream(logFile);
+		try {
+		    byte buffer[] = new byte[8192];
+		    int len;
+		    while ((len = logStream.read(buffer)) > 0)
+			output.write(buffer, 0, len);
+		} finally {
+		    logStream.close();
+		}
+	    }
+	    String exitCode = (job.getExitCode() == ExitCode.OK) ? "0" : "1";
+	    output.write(("EXIT " + exitCode + "\n").getBytes(UTF8));
+	    output.flush();
+
+	} catch (Exception e) {
+	    logger.log(Level.SEVERE, "Error while handling job connection", e);
+	    // The client waits for the exit code
+	    try {
+		socket.getOutputStream().write(
+			("Error: " + e + "\nEXIT 1\n").getBytes(UTF8));
+	    } catch (IOException e2) {
+		// Ignore, the client is gone
+	    }
+	} finally {
+	    try {
+		socket.close();
+	    } catch (IOException e) {
+		// Ignore
+	    }
+	}
+
+    }
+
+    /**
+     * Creates a new directory for a job, named after the batch file
+     */
+    private synchronized File createJobDirectory(String batchFileName)
+	    throws IOException {
+
+	String baseName = batchFileName;
+	if (baseName.lastIndexOf('.') > 0)
+	    baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+
+	File jobDirectory = new File(jobsDirectory, baseName);
+	for (int i = 2; jobDirectory.exists(); i++)
+	    jobDirectory = new File(jobsDirectory, baseName + "-" + i);
+
+	if (!jobDirectory.mkdirs())
+	    throw new IOException("Could not create directory " + jobDirectory);
+	return jobDirectory;
+
+    }
+
+    /**
+     * Writes the exit code of a finished job into its job directory. The file
+     * is written under a temporary name first, so it appears complete.
+     */
+    private static void writeExitCode(File jobDirectory, ExitCode exitCode) {
+	File tempFile = new File(jobDirectory, EXIT_CODE_FILE + ".tmp");
+	File exitCodeFile = new File(jobDirectory, EXIT_CODE_FILE);
+	try {
+	    Writer writer = new FileWriter(tempFile);
+	    try {
+		writer.write((exitCode == ExitCode.OK ? "0" : "1") + "\n");
+	    } finally {
+		writer.close();
+	    }
+	    if (!tempFile.renameTo(exitCodeFile))
+		throw new IOException("Could not move " + tempFile + " to "
+			+ exitCodeFile);
+	} catch (IOException e) {
+	    logger.log(Level.SEVERE, "Could not write exit code into "
+		    + jobDirectory, e);
+	}
+    }
+
+}
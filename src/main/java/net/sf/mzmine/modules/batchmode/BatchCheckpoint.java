@@ -0,0 +1,240 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.modules.batchmode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.projectmethods.projectload.ProjectLoaderParameters;
+import net.sf.mzmine.modules.projectmethods.projectload.ProjectOpeningTask;
+import net.sf.mzmine.modules.projectmethods.projectsave.ProjectSavingTask;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.project.impl.MZmineProjectImpl;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Checkpoint of a batch run. A checkpoint consists of the project saved in
+ * the standard MZmine project format, and a small properties file recording
+ * the last finished step. Both files are named after a digest of the batch
+ * queue, so that a checkpoint is only used to resume the same batch.
+ */
+class BatchCheckpoint {
+
+    private static final String LAST_STEP_PROPERTY = "lastFinishedStep";
+    private static final String BATCH_DIGEST_PROPERTY = "batchDigest";
+    private static final String TIME_PROPERTY = "time";
+
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final String batchDigest;
+    private final File projectFile, stateFile;
+
+    // Project opened by restore(), its data points are mapped from
+    // projectFile
+    private MZmineProject restoredProject;
+
+    BatchCheckpoint(File directory, BatchQueue queue) throws Exception {
+	this.batchDigest = digestQueue(queue);
+	final String baseName = "batch-" + batchDigest.substring(0, 12);
+	this.projectFile = new File(directory, baseName + ".mzmine");
+	this.stateFile = new File(directory, baseName + ".checkpoint");
+    }
+
+    /**
+     * Returns the index of the last batch step finished before the checkpoint
+     * was saved, or -1 if there is no usable checkpoint
+     */
+    int getLastFinishedStep() {
+
+	if ((!stateFile.exists()) || (!projectFile.exists()))
+	    return -1;
+
+	Properties state = new Properties();
+	try {
+	    InputStream in = new FileInputStream(stateFile);
+	    try {
+		state.load(in);
+	    } finally {
+		in.close();
+	    }
+	} catch (IOException e) {
+	    logger.warning("Could not read batch checkpoint " + stateFile
+		    + ": " + e);
+	    return -1;
+	}
+
+	if (!batchDigest.equals(state.getProperty(BATCH_DIGEST_PROPERTY)))
+	    return -1;
+
+	try {
+	    return Integer.parseInt(state.getProperty(LAST_STEP_PROPERTY));
+	} catch (NumberFormatException e) {
+	    return -1;
+	}
+
+    }
+
+    /**
+     * Saves the project and marks lastFinishedStep as finished. The state file
+     * is replaced only after the project has been saved, so an interrupted
+     * save leaves the previous checkpoint intact.
+     */
+    void save(MZmineProject project, int lastFinishedStep) throws Exception {
+
+	logger.info("Saving batch checkpoint after step # "
+		+ (lastFinishedStep + 1) + " to " + projectFile);
+
+	// Saving the project changes its file, keep the original one
+	final File originalProjectFile = project.getProjectFile();
+
+	ParameterSet saveParameters = new ProjectLoaderParameters();
+	saveParameters.getParameter(ProjectLoaderParameters.projectFile)
+		.setValue(projectFile);
+	Task savingTask = new ProjectSavingTask(project, saveParameters);
+	savingTask.run();
+
+	((MZmineProjectImpl) project).setProjectFile(originalProjectFile);
+
+	if (savingTask.getStatus() != TaskStatus.FINISHED)
+	    throw new IOException(savingTask.getErrorMessage());
+
+	Properties state = new Properties();
+	state.setProperty(BATCH_DIGEST_PROPERTY, batchDigest);
+	state.setProperty(LAST_STEP_PROPERTY, String.valueOf(lastFinishedStep));
+	state.setProperty(TIME_PROPERTY, new Date().toString());
+
+	File tempFile = new File(stateFile.getPath() + ".tmp");
+	OutputStream out = new FileOutputStream(tempFile);
+	try {
+	    state.store(out, "MZmine batch checkpoint");
+	} finally {
+	    out.close();
+	}
+	if (stateFile.exists() && !stateFile.delete())
+	    throw new IOException("Could not delete old file " + stateFile);
+	if (!tempFile.renameTo(stateFile))
+	    throw new IOException("Could not move " + tempFile + " to "
+		    + stateFile);
+
+    }
+
+    /**
+     * Opens the project saved in the checkpoint and makes it the current
+     * project. Returns the opened project.
+     */
+    MZmineProject restore() throws Exception {
+
+	logger.info("Restoring batch checkpoint from " + projectFile);
+
+	ParameterSet openParameters = new ProjectLoaderParameters();
+	openParameters.getParameter(ProjectLoaderParameters.projectFile)
+		.setValue(projectFile);
+	Task openingTask = new ProjectOpeningTask(openParameters);
+	openingTask.run();
+
+	if (openingTask.getStatus() != TaskStatus.FINISHED)
+	    throw new IOException(openingTask.getErrorMessage());
+
+	// The checkpoint file is deleted when the batch finishes, so the
+	// project should not refer to it
+	MZmineProject project = MZmineCore.getProjectManager()
+		.getCurrentProject();
+	((MZmineProjectImpl) project).setProjectFile(null);
+	restoredProject = project;
+	return project;
+
+    }
+
+    /**
+     * Deletes the checkpoint files, called when the batch has finished. The
+     * data points of a restored project are first copied out of the
+     * checkpoint project file.
+     */
+    void delete() {
+
+	if (stateFile.exists() && !stateFile.delete())
+	    logger.warning("Could not delete batch checkpoint file "
+		    + stateFile);
+
+	if (restoredProject != null) {
+	    try {
+		for (RawDataFile dataFile : restoredProject.getDataFiles()) {
+		    if (dataFile instanceof RawDataFileImpl)
+			((RawDataFileImpl) dataFile).unmapFile(projectFile);
+		}
+	    } catch (IOException e) {
+		logger.warning("Could not copy data points out of "
+			+ projectFile + ", the file is not deleted: " + e);
+		return;
+	    }
+	    restoredProject = null;
+	}
+
+	if (projectFile.exists() && !projectFile.delete())
+	    logger.warning("Could not delete batch checkpoint file "
+		    + projectFile);
+
+    }
+
+    private static String digestQueue(BatchQueue queue) throws Exception {
+
+	Document document = DocumentBuilderFactory.newInstance()
+		.newDocumentBuilder().newDocument();
+	Element queueElement = document.createElement("batch");
+	document.appendChild(queueElement);
+	queue.saveToXml(queueElement);
+
+	ByteArrayOutputStream xml = new ByteArrayOutputStream();
+	Transformer transformer = TransformerFactory.newInstance()
+		.newTransformer();
+	transformer.transform(new DOMSource(document), new StreamResult(xml));
+
+	MessageDigest digest = MessageDigest.getInstance("SHA-1");
+	StringBuilder hex = new StringBuilder();
+	for (byte b : digest.digest(xml.toByteArray()))
+	    hex.append(String.format("%02x", b));
+	return hex.toString();
+
+    }
+
+}
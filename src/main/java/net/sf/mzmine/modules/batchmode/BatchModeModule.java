@@ -20,7 +20,11 @@
 package net.sf.mzmine.modules.batchmode;
 
 import java.io.File;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,12 +34,17 @@ import javax.xml.parsers.DocumentBuilderFactory;
 
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.main.jobserver.BatchJob;
 import net.sf.mzmine.modules.MZmineModuleCategory;
 import net.sf.mzmine.modules.MZmineProcessingModule;
 import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.DirectoryParameter;
+import net.sf.mzmine.parameters.parametertypes.OptionalParameter;
 import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.taskcontrol.impl.TaskMetricsReport;
 import net.sf.mzmine.util.ExitCode;
 
 import org.w3c.dom.Document;
@@ -95,11 +104,31 @@ public class BatchModeModule implements MZmineProcessingModule {
 	    Document parsedBatchXML = docBuilder.parse(batchFile);
 	    BatchQueue newQueue = BatchQueue.loadFromXml(parsedBatchXML
 		    .getDocumentElement());
-	    ParameterSet parameters = new BatchModeParameters();
+
+	    // Other batch settings (pipelining, checkpoints) are taken from
+	    // the MZmine configuration
+	    ParameterSet parameters = MZmineCore.getConfiguration()
+		    .getModuleParameters(BatchModeModule.class)
+		    .cloneParameterSet();
 	    parameters.getParameter(BatchModeParameters.batchQueue).setValue(
 		    newQueue);
-	    Task batchTask = new BatchTask(project, parameters);
+
+	    // Jobs of the job server may run the same batch side by side, so
+	    // each job keeps its checkpoint in its own directory
+	    final BatchJob job = BatchJob.getCurrentJob();
+	    if (job != null) {
+		OptionalParameter<DirectoryParameter> checkpointParameter = parameters
+			.getParameter(BatchModeParameters.checkpointDirectory);
+		if (Boolean.TRUE.equals(checkpointParameter.getValue()))
+		    checkpointParameter.getEmbeddedParameter().setValue(
+			    job.getJobDirectory());
+	    }
+
+	    BatchTask batchTask = new BatchTask(project, parameters);
+	    batchTask.setResumeFromCheckpoint(true);
+	    final long batchStartTime = System.currentTimeMillis();
 	    batchTask.run();
+	    writeMetricsReport(batchFile, batchStartTime);
 	    if (batchTask.getStatus() == TaskStatus.FINISHED)
 		return ExitCode.OK;
 	    else
@@ -112,6 +141,55 @@ public class BatchModeModule implements MZmineProcessingModule {
 
     }
 
+    /**
+     * Writes the metrics of all tasks submitted since batchStartTime into
+     * CSV and JSON reports. When running in the job server, the reports are
+     * written into the job directory and only include the tasks of the
+     * current job. Otherwise they are written next to the batch file, with
+     * the start time of the batch in their name, so that repeated runs of the
+     * same batch do not overwrite each other's reports.
+     */
+    private static void writeMetricsReport(File batchFile, long batchStartTime) {
+
+	final BatchJob job = BatchJob.getCurrentJob();
+	ArrayList<TaskMetrics> batchMetrics = new ArrayList<TaskMetrics>();
+	for (TaskMetrics metrics : MZmineCore.getTaskController()
+		.getTaskMetrics()) {
+	    if ((metrics.getQueuedTime() >= batchStartTime)
+		    && (metrics.getJob() == job))
+		batchMetrics.add(metrics);
+	}
+
+	String baseName = batchFile.getName();
+	if (baseName.lastIndexOf('.') > 0)
+	    baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+	File reportDirectory;
+	if (job != null) {
+	    reportDirectory = job.getJobDirectory();
+	    baseName = baseName + "-metrics";
+	} else {
+	    reportDirectory = batchFile.getAbsoluteFile().getParentFile();
+	    DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd-HHmmss");
+	    baseName = baseName + "-metrics-"
+		    + dateFormat.format(new Date(batchStartTime));
+	}
+	File csvFile = new File(reportDirectory, baseName + ".csv");
+	File jsonFile = new File(reportDirectory, baseName + ".json");
+
+	try {
+	    TaskMetrics metricsArray[] = batchMetrics
+		    .toArray(new TaskMetrics[0]);
+	    TaskMetricsReport.writeCSV(metricsArray, csvFile);
+	    TaskMetricsReport.writeJSON(metricsArray, jsonFile);
+	    logger.info("Batch metrics report written to " + csvFile + " and "
+		    + jsonFile);
+	} catch (Exception e) {
+	    // Failure to write the report should not fail the batch
+	    logger.log(Level.WARNING, "Could not write batch metrics report", e);
+	}
+
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
 	return BatchModeParameters.class;
@@ -21,13 +21,38 @@ package net.sf.mzmine.modules.batchmode;
 
 import net.sf.mzmine.parameters.Parameter;
 import net.sf.mzmine.parameters.impl.SimpleParameterSet;
+import net.sf.mzmine.parameters.parametertypes.BooleanParameter;
+import net.sf.mzmine.parameters.parametertypes.DirectoryParameter;
+import net.sf.mzmine.parameters.parametertypes.IntegerParameter;
+import net.sf.mzmine.parameters.parametertypes.OptionalParameter;
 
 public class BatchModeParameters extends SimpleParameterSet {
 
     public static final BatchQueueParameter batchQueue = new BatchQueueParameter();
 
+    public static final BooleanParameter pipelined = new BooleanParameter(
+	    "Pipeline per-file steps",
+	    "If checked, consecutive steps which process each raw data file or peak list separately "
+		    + "(e.g. mass detection, chromatogram building, deconvolution, deisotoping) are run "
+		    + "independently for each raw data file, so a file can continue with the next step "
+		    + "while other files are still being processed. Steps which combine multiple files, "
+		    + "such as alignment or gap filling, wait until all files are finished.",
+	    false);
+
+    public static final OptionalParameter<DirectoryParameter> checkpointDirectory = new OptionalParameter<DirectoryParameter>(
+	    new DirectoryParameter(
+		    "Checkpoint directory",
+		    "If selected, the project is saved into this directory during the batch, so that an "
+			    + "interrupted batch started from the command line can be resumed from the last "
+			    + "checkpoint instead of the first step. The checkpoint is deleted when the batch finishes."));
+
+    public static final IntegerParameter checkpointInterval = new IntegerParameter(
+	    "Checkpoint interval",
+	    "Number of batch steps between two checkpoints", 1, 1, null);
+
     public BatchModeParameters() {
-	super(new Parameter[] { batchQueue });
+	super(new Parameter[] { batchQueue, pipelined, checkpointDirectory,
+		checkpointInterval });
     }
 
 }
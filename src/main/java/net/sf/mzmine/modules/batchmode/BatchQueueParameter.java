@@ -84,7 +84,8 @@ public class BatchQueueParameter implements
     @Override
     public BatchQueueParameter cloneParameter() {
 	final BatchQueueParameter copy = new BatchQueueParameter();
-	copy.setValue(value.clone());
+	if (value != null)
+	    copy.setValue(value.clone());
 	return copy;
     }
 
@@ -19,18 +19,36 @@
 
 package net.sf.mzmine.modules.batchmode;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.MZmineModuleCategory;
 import net.sf.mzmine.modules.MZmineProcessingModule;
 import net.sf.mzmine.modules.MZmineProcessingStep;
+import net.sf.mzmine.parameters.Parameter;
 import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.UserParameter;
+import net.sf.mzmine.parameters.parametertypes.DirectoryParameter;
+import net.sf.mzmine.parameters.parametertypes.OptionalParameter;
+import net.sf.mzmine.parameters.parametertypes.PeakListsParameter;
+import net.sf.mzmine.parameters.parametertypes.RawDataFilesParameter;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskController;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ExceptionUtils;
 import net.sf.mzmine.util.ExitCode;
 
 /**
@@ -40,35 +58,132 @@ public class BatchTask extends AbstractTask {
 
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
-    private int totalSteps, processedSteps;
+    /**
+     * Categories of modules which process each raw data file or peak list
+     * independently of the others. Consecutive steps of these modules can be
+     * pipelined per data file.
+     */
+    private static final EnumSet<MZmineModuleCategory> pipelineCategories = EnumSet
+	    .of(MZmineModuleCategory.RAWDATAFILTERING,
+		    MZmineModuleCategory.PEAKPICKING,
+		    MZmineModuleCategory.PEAKLISTPICKING,
+		    MZmineModuleCategory.ISOTOPES,
+		    MZmineModuleCategory.PEAKLISTFILTERING);
+
+    private int totalSteps;
+    private double processedSteps;
 
     private MZmineProject project;
     private BatchQueue queue;
+    private boolean pipelined;
+
+    private File checkpointDirectory;
+    private int checkpointInterval;
+    private boolean resumeFromCheckpoint = false;
 
     BatchTask(MZmineProject project, ParameterSet parameters) {
 	this.project = project;
 	this.queue = parameters.getParameter(BatchModeParameters.batchQueue)
 		.getValue();
+	Boolean pipelinedValue = parameters.getParameter(
+		BatchModeParameters.pipelined).getValue();
+	this.pipelined = (pipelinedValue != null) && pipelinedValue;
+
+	OptionalParameter<DirectoryParameter> checkpointParameter = parameters
+		.getParameter(BatchModeParameters.checkpointDirectory);
+	Boolean checkpointEnabled = checkpointParameter.getValue();
+	if ((checkpointEnabled != null) && checkpointEnabled)
+	    checkpointDirectory = checkpointParameter.getEmbeddedParameter()
+		    .getValue();
+	Integer intervalValue = parameters.getParameter(
+		BatchModeParameters.checkpointInterval).getValue();
+	checkpointInterval = (intervalValue == null) ? 1 : Math.max(1,
+		intervalValue);
+
 	totalSteps = queue.size();
     }
 
+    /**
+     * If set, the batch resumes from the last checkpoint of the same batch
+     * queue, if there is one. The project of the checkpoint replaces the
+     * current project.
+     */
+    void setResumeFromCheckpoint(boolean resume) {
+	this.resumeFromCheckpoint = resume;
+    }
+
     public void run() {
 
 	setStatus(TaskStatus.PROCESSING);
 	logger.info("Starting a batch of " + totalSteps + " steps");
 
-	for (int i = 0; i < totalSteps; i++) {
+	int i = 0;
+
+	BatchCheckpoint checkpoint = null;
+	if (checkpointDirectory != null) {
+	    try {
+		checkpoint = new BatchCheckpoint(checkpointDirectory, queue);
+		int lastFinishedStep = checkpoint.getLastFinishedStep();
+		if (resumeFromCheckpoint && (lastFinishedStep >= 0)) {
+		    logger.info("Resuming the batch after step # "
+			    + (lastFinishedStep + 1));
+		    project = checkpoint.restore();
+		    i = lastFinishedStep + 1;
+		    processedSteps = i;
+		}
+	    } catch (Exception e) {
+		setStatus(TaskStatus.ERROR);
+		setErrorMessage("Could not resume batch from checkpoint: "
+			+ ExceptionUtils.exceptionToString(e));
+		return;
+	    }
+	}
+
+	int lastCheckpointStep = i - 1;
 
-	    processQueueStep(i);
-	    processedSteps++;
+	while (i < totalSteps) {
+
+	    // Find the last step of a sequence of per-file steps starting at i
+	    int lastStep = i;
+	    if (pipelined) {
+		while ((lastStep + 1 < totalSteps)
+			&& isPipelineStep(lastStep)
+			&& isPipelineStep(lastStep + 1))
+		    lastStep++;
+	    }
+
+	    if (lastStep > i)
+		processPipelinedSteps(i, lastStep);
+	    else
+		processQueueStep(i);
+
+	    i = lastStep + 1;
+	    processedSteps = i;
 
 	    // If we are canceled or ran into error, stop here
 	    if (isCanceled() || (getStatus() == TaskStatus.ERROR)) {
 		return;
 	    }
 
+	    // Save a checkpoint, unless this was the last step
+	    if ((checkpoint != null) && (i < totalSteps)
+		    && (lastStep - lastCheckpointStep >= checkpointInterval)) {
+		try {
+		    checkpoint.save(project, lastStep);
+		    lastCheckpointStep = lastStep;
+		} catch (Exception e) {
+		    setStatus(TaskStatus.ERROR);
+		    setErrorMessage("Could not save batch checkpoint: "
+			    + ExceptionUtils.exceptionToString(e));
+		    return;
+		}
+	    }
+
 	}
 
+	if (checkpoint != null)
+	    checkpoint.delete();
+
 	logger.info("Finished a batch of " + totalSteps + " steps");
 	setStatus(TaskStatus.FINISHED);
 
@@ -111,8 +226,7 @@ public class BatchTask extends AbstractTask {
 	boolean allTasksFinished = false;
 
 	// Submit the tasks to the task controller for processing
-	MZmineCore.getTaskController().addTasks(
-		currentStepTasks.toArray(new Task[0]));
+	submitStepTasks(currentStepTasks, stepNumber, method);
 
 	while (!allTasksFinished) {
 
@@ -167,10 +281,393 @@ public class BatchTask extends AbstractTask {
 
     }
 
+    /**
+     * Submits the tasks of given step to the task controller and labels their
+     * metrics with the step
+     */
+    private void submitStepTasks(List<Task> stepTasks, int stepNumber,
+	    MZmineProcessingModule method) {
+
+	TaskController taskController = MZmineCore.getTaskController();
+	taskController.addTasks(stepTasks.toArray(new Task[0]));
+
+	final String stepName = "Step " + (stepNumber + 1) + ": "
+		+ method.getName();
+	for (Task stepTask : stepTasks) {
+	    TaskMetrics metrics = taskController.getTaskMetrics(stepTask);
+	    if (metrics != null)
+		metrics.setBatchStep(stepName);
+	}
+
+    }
+
+    /**
+     * Returns true if given step processes each raw data file or peak list
+     * separately, so it can be run for each data file independently
+     */
+    private boolean isPipelineStep(int stepNumber) {
+	MZmineProcessingStep<?> step = queue.get(stepNumber);
+	MZmineProcessingModule method = (MZmineProcessingModule) step
+		.getModule();
+	if (!pipelineCategories.contains(method.getModuleCategory()))
+	    return false;
+	return getInputParameter(step.getParameterSet()) != null;
+    }
+
+    /**
+     * Returns the raw data files or peak lists parameter which selects the
+     * input of a step, or null if there is no such parameter or more than one
+     */
+    private static Parameter<String[]> getInputParameter(
+	    ParameterSet parameters) {
+	Parameter<String[]> inputParameter = null;
+	for (Parameter<?> p : parameters.getParameters()) {
+	    if ((p instanceof RawDataFilesParameter)
+		    || (p instanceof PeakListsParameter)) {
+		if (inputParameter != null)
+		    return null;
+		@SuppressWarnings("unchecked")
+		Parameter<String[]> selection = (Parameter<String[]>) p;
+		inputParameter = selection;
+	    }
+	}
+	return inputParameter;
+    }
+
+    /**
+     * Runs steps firstStep..lastStep (all of them per-file steps, see
+     * isPipelineStep()) separately for each raw data file in the project. The
+     * next step of a data file is started as soon as the previous step of the
+     * same data file finishes, regardless of the other data files. Returns
+     * when all data files went through all the steps.
+     */
+    private void processPipelinedSteps(int firstStep, int lastStep) {
+
+	RawDataFile dataFiles[] = project.getDataFiles();
+
+	logger.info("Starting pipelined steps # " + (firstStep + 1) + " - "
+		+ (lastStep + 1) + " for " + dataFiles.length + " data files");
+
+	List<PipelineLane> lanes = new ArrayList<PipelineLane>();
+	for (RawDataFile dataFile : dataFiles) {
+	    lanes.add(new PipelineLane(dataFile, firstStep));
+	}
+
+	// Peak lists or files which do not belong to a single data file are
+	// processed in a separate lane
+	PipelineLane otherLane = new PipelineLane(null, firstStep);
+	lanes.add(otherLane);
+
+	while (true) {
+
+	    // If we canceled the batch, cancel all running tasks
+	    if (isCanceled()) {
+		cancelLaneTasks(lanes);
+		return;
+	    }
+
+	    boolean allLanesFinished = true;
+	    double finishedLaneSteps = 0;
+
+	    for (PipelineLane lane : lanes) {
+
+		boolean laneRunning = false;
+
+		for (Task laneTask : lane.tasks) {
+
+		    TaskStatus laneTaskStatus = laneTask.getStatus();
+
+		    // If there was an error, we have to stop the whole batch
+		    if (laneTaskStatus == TaskStatus.ERROR) {
+			setStatus(TaskStatus.ERROR);
+			setErrorMessage(laneTask.getErrorMessage());
+			cancelLaneTasks(lanes);
+			return;
+		    }
+
+		    // If user canceled any of the tasks, we have to cancel
+		    // the whole batch
+		    if (laneTaskStatus == TaskStatus.CANCELED) {
+			setStatus(TaskStatus.CANCELED);
+			cancelLaneTasks(lanes);
+			return;
+		    }
+
+		    if (laneTaskStatus != TaskStatus.FINISHED)
+			laneRunning = true;
+		}
+
+		// Start the next step(s) of this lane. Steps which do not
+		// produce any tasks for this lane are skipped immediately.
+		while ((!laneRunning) && (lane.nextStep <= lastStep)) {
+		    startLaneStep(lane, otherLane, lanes);
+		    if (getStatus() == TaskStatus.ERROR) {
+			cancelLaneTasks(lanes);
+			return;
+		    }
+		    laneRunning = !lane.tasks.isEmpty();
+		}
+
+		int laneFinishedSteps = lane.nextStep - firstStep;
+		if (laneRunning) {
+		    laneFinishedSteps--;
+		    allLanesFinished = false;
+		}
+		finishedLaneSteps += laneFinishedSteps;
+	    }
+
+	    processedSteps = firstStep + finishedLaneSteps / lanes.size();
+
+	    if (allLanesFinished)
+		return;
+
+	    // Wait 1s before checking the tasks again
+	    synchronized (this) {
+		try {
+		    this.wait(1000);
+		} catch (InterruptedException e) {
+		    // ignore
+		}
+	    }
+
+	}
+
+    }
+
+    /**
+     * Starts the next step of given lane, restricting the input of the step to
+     * the raw data files or peak lists which belong to the lane
+     */
+    private void startLaneStep(PipelineLane lane, PipelineLane otherLane,
+	    List<PipelineLane> lanes) {
+
+	final int stepNumber = lane.nextStep;
+	lane.nextStep++;
+	lane.tasks.clear();
+
+	MZmineProcessingStep<?> currentStep = queue.get(stepNumber);
+	MZmineProcessingModule method = (MZmineProcessingModule) currentStep
+		.getModule();
+	ParameterSet laneParameters = currentStep.getParameterSet()
+		.cloneParameterSet();
+	Parameter<String[]> inputParameter = getInputParameter(laneParameters);
+
+	// Select the input items of this lane. The items are passed to the
+	// module as specific objects, not by name, so that items of other
+	// lanes with the same name are not picked up.
+	ArrayList<Object> laneInput = new ArrayList<Object>();
+	if (inputParameter instanceof RawDataFilesParameter) {
+	    RawDataFilesParameter dataFilesParameter =
+		    (RawDataFilesParameter) inputParameter;
+	    ArrayList<RawDataFile> laneFiles = new ArrayList<RawDataFile>();
+	    for (RawDataFile dataFile : dataFilesParameter
+		    .getMatchingRawDataFiles()) {
+		if (findLane(dataFile, lanes, otherLane) == lane)
+		    laneFiles.add(dataFile);
+	    }
+	    dataFilesParameter.setSpecificRawDataFiles(laneFiles
+		    .toArray(new RawDataFile[0]));
+	    laneInput.addAll(laneFiles);
+	} else {
+	    PeakListsParameter peakListsParameter =
+		    (PeakListsParameter) inputParameter;
+	    ArrayList<PeakList> lanePeakLists = new ArrayList<PeakList>();
+	    for (PeakList peakList : peakListsParameter
+		    .getMatchingPeakLists()) {
+		if (findLane(peakList, lanes, otherLane) == lane)
+		    lanePeakLists.add(peakList);
+	    }
+	    peakListsParameter.setSpecificPeakLists(lanePeakLists
+		    .toArray(new PeakList[0]));
+	    laneInput.addAll(lanePeakLists);
+	}
+
+	if (laneInput.isEmpty())
+	    return;
+
+	logger.info("Starting step # " + (stepNumber + 1) + " for "
+		+ laneInput);
+
+	ArrayList<String> messages = new ArrayList<String>();
+	if (!laneParameters.checkParameterValues(messages)) {
+	    setStatus(TaskStatus.ERROR);
+	    setErrorMessage("Invalid parameter settings for module " + method
+		    + ": " + Arrays.toString(messages.toArray()));
+	    return;
+	}
+
+	// The lane project records the items created by the tasks of this
+	// lane, so their lane is known when the next step starts
+	ExitCode exitCode = method.runModule(new LaneProject(project, lane),
+		laneParameters, lane.tasks);
+
+	if (exitCode != ExitCode.OK) {
+	    setStatus(TaskStatus.ERROR);
+	    setErrorMessage("Could not start batch step " + method.getName());
+	    return;
+	}
+
+	if (!lane.tasks.isEmpty())
+	    submitStepTasks(lane.tasks, stepNumber, method);
+
+    }
+
+    /**
+     * Finds the lane of given raw data file. Raw data files which were neither
+     * present at the start of the pipelined steps nor created by a task of one
+     * of the lanes are processed in the other lane.
+     */
+    private PipelineLane findLane(RawDataFile dataFile,
+	    List<PipelineLane> lanes, PipelineLane otherLane) {
+	for (PipelineLane lane : lanes) {
+	    if (lane.dataFiles.contains(dataFile))
+		return lane;
+	}
+	return otherLane;
+    }
+
+    /**
+     * Finds the lane of given peak list. A peak list belongs to the lane which
+     * created it, or otherwise to the lane of its raw data file, if it has
+     * exactly one.
+     */
+    private PipelineLane findLane(PeakList peakList, List<PipelineLane> lanes,
+	    PipelineLane otherLane) {
+	for (PipelineLane lane : lanes) {
+	    if (lane.peakLists.contains(peakList))
+		return lane;
+	}
+	RawDataFile peakListFiles[] = peakList.getRawDataFiles();
+	if (peakListFiles.length == 1)
+	    return findLane(peakListFiles[0], lanes, otherLane);
+	return otherLane;
+    }
+
+    private void cancelLaneTasks(List<PipelineLane> lanes) {
+	for (PipelineLane lane : lanes) {
+	    for (Task laneTask : lane.tasks)
+		laneTask.cancel();
+	}
+    }
+
+    /**
+     * Processing state of one data file in the pipelined mode
+     */
+    private static class PipelineLane {
+
+	/**
+	 * The original raw data file and all raw data files derived from it
+	 */
+	final Set<RawDataFile> dataFiles = Collections
+		.synchronizedSet(new HashSet<RawDataFile>());
+
+	/**
+	 * Peak lists created by the tasks of this lane
+	 */
+	final Set<PeakList> peakLists = Collections
+		.synchronizedSet(new HashSet<PeakList>());
+
+	/**
+	 * Tasks of the current step
+	 */
+	final ArrayList<Task> tasks = new ArrayList<Task>();
+
+	int nextStep;
+
+	PipelineLane(RawDataFile dataFile, int firstStep) {
+	    if (dataFile != null)
+		dataFiles.add(dataFile);
+	    nextStep = firstStep;
+	}
+
+    }
+
+    /**
+     * Project passed to the modules of one lane. All calls are forwarded to
+     * the batch project, and the raw data files and peak lists added by the
+     * tasks are recorded as members of the lane.
+     */
+    private static class LaneProject implements MZmineProject {
+
+	private final MZmineProject project;
+	private final PipelineLane lane;
+
+	LaneProject(MZmineProject project, PipelineLane lane) {
+	    this.project = project;
+	    this.lane = lane;
+	}
+
+	public File getProjectFile() {
+	    return project.getProjectFile();
+	}
+
+	public void addParameter(UserParameter<?, ?> parameter) {
+	    project.addParameter(parameter);
+	}
+
+	public void removeParameter(UserParameter<?, ?> parameter) {
+	    project.removeParameter(parameter);
+	}
+
+	public boolean hasParameter(UserParameter<?, ?> parameter) {
+	    return project.hasParameter(parameter);
+	}
+
+	public UserParameter<?, ?>[] getParameters() {
+	    return project.getParameters();
+	}
+
+	public void setParameterValue(UserParameter<?, ?> parameter,
+		RawDataFile rawDataFile, Object value) {
+	    project.setParameterValue(parameter, rawDataFile, value);
+	}
+
+	public Object getParameterValue(UserParameter<?, ?> parameter,
+		RawDataFile rawDataFile) {
+	    return project.getParameterValue(parameter, rawDataFile);
+	}
+
+	public void addFile(RawDataFile newFile) {
+	    lane.dataFiles.add(newFile);
+	    project.addFile(newFile);
+	}
+
+	public void removeFile(RawDataFile file) {
+	    project.removeFile(file);
+	}
+
+	public RawDataFile[] getDataFiles() {
+	    return project.getDataFiles();
+	}
+
+	public void addPeakList(PeakList peakList) {
+	    lane.peakLists.add(peakList);
+	    project.addPeakList(peakList);
+	}
+
+	public void removePeakList(PeakList peakList) {
+	    project.removePeakList(peakList);
+	}
+
+	public PeakList[] getPeakLists() {
+	    return project.getPeakLists();
+	}
+
+	public PeakList[] getPeakLists(RawDataFile file) {
+	    return project.getPeakLists(file);
+	}
+
+	public void notifyObjectChanged(Object object,
+		boolean structureChanged) {
+	    project.notifyObjectChanged(object, structureChanged);
+	}
+
+    }
+
     public double getFinishedPercentage() {
 	if (totalSteps == 0)
 	    return 0;
-	return (double) processedSteps / totalSteps;
+	return processedSteps / totalSteps;
     }
 
     public String getTaskDescription() {
@@ -32,8 +32,6 @@ import net.sf.mzmine.util.DataPointSorter;
 import net.sf.mzmine.util.SortingDirection;
 import net.sf.mzmine.util.SortingProperty;
 
-import com.google.common.collect.Range;
-
 public class HighestDataPointConnector {
 
     private ParameterSet parameters;
@@ -76,9 +74,7 @@ public class HighestDataPointConnector {
 	    for (Chromatogram testChrom : buildingChromatograms) {
 
 		DataPoint lastMzPeak = testChrom.getLastMzPeak();
-		Range<Double> toleranceRange = mzTolerance
-			.getToleranceRange(lastMzPeak.getMZ());
-		if (toleranceRange.contains(mzPeak.getMZ())) {
+		if (mzTolerance.contains(lastMzPeak.getMZ(), mzPeak.getMZ())) {
 		    if ((bestChromatogram == null)
 			    || (testChrom.getLastMzPeak().getIntensity() > bestChromatogram
 				    .getLastMzPeak().getIntensity())) {
@@ -19,10 +19,19 @@
 
 package net.sf.mzmine.modules.peaklistmethods.alignment.join;
 
-import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.IsotopePattern;
@@ -38,7 +47,9 @@ import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.parametertypes.MZTolerance;
 import net.sf.mzmine.parameters.parametertypes.RTTolerance;
 import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.PeakListRowIndex;
 import net.sf.mzmine.util.PeakUtils;
 import net.sf.mzmine.util.RangeUtils;
 
@@ -48,6 +59,9 @@ class JoinAlignerTask extends AbstractTask {
 
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
+    // Number of rows scored by one thread at a time
+    private static final int ROWS_PER_CHUNK = 256;
+
     private final MZmineProject project;
     private PeakList peakLists[], alignedPeakList;
 
@@ -159,88 +173,45 @@ class JoinAlignerTask extends AbstractTask {
 	// Iterate source peak lists
 	for (PeakList peakList : peakLists) {
 
-	    // Create a sorted set of scores matching
-	    TreeSet<RowVsRowScore> scoreSet = new TreeSet<RowVsRowScore>();
-
 	    PeakListRow allRows[] = peakList.getRows();
 
-	    // Calculate scores for all possible alignments of this row
-	    for (PeakListRow row : allRows) {
-
-		if (isCanceled())
-		    return;
-
-		// Calculate limits for a row with which the row can be aligned
-		Range<Double> mzRange = mzTolerance.getToleranceRange(row
-			.getAverageMZ());
-		Range<Double> rtRange = rtTolerance.getToleranceRange(row
-			.getAverageRT());
-
-		// Get all rows of the aligned peaklist within parameter limits
-		PeakListRow candidateRows[] = alignedPeakList
-			.getRowsInsideScanAndMZRange(rtRange, mzRange);
-
-		// Calculate scores and store them
-		for (PeakListRow candidate : candidateRows) {
-
-		    if (sameChargeRequired) {
-			if (!PeakUtils.compareChargeState(row, candidate))
-			    continue;
-		    }
-
-		    if (sameIDRequired) {
-			if (!PeakUtils.compareIdentities(row, candidate))
-			    continue;
-		    }
-
-		    if (compareIsotopePattern) {
-			IsotopePattern ip1 = row.getBestIsotopePattern();
-			IsotopePattern ip2 = candidate.getBestIsotopePattern();
-
-			if ((ip1 != null) && (ip2 != null)) {
-			    ParameterSet isotopeParams = parameters
-				    .getParameter(
-					    JoinAlignerParameters.compareIsotopePattern)
-				    .getEmbeddedParameters();
-
-			    if (!IsotopePatternScoreCalculator.checkMatch(ip1,
-				    ip2, isotopeParams)) {
-				continue;
-			    }
-			}
-		    }
-
-		    RowVsRowScore score = new RowVsRowScore(row, candidate,
-			    RangeUtils.rangeLength(mzRange) / 2.0, mzWeight,
-			    RangeUtils.rangeLength(rtRange) / 2.0, rtWeight);
-
-		    scoreSet.add(score);
-
-		}
-
-		processedRows++;
-
+	    // Calculate scores for all possible alignments of the rows
+	    RowVsRowScore scores[];
+	    try {
+		scores = calculateScores(allRows, alignedPeakList);
+	    } catch (Exception e) {
+		logger.log(Level.SEVERE, "Could not calculate alignment scores",
+			e);
+		setStatus(TaskStatus.ERROR);
+		setErrorMessage("Could not calculate alignment scores: "
+			+ e.toString());
+		return;
 	    }
 
+	    if (isCanceled())
+		return;
+
 	    // Create a table of mappings for best scores
-	    Hashtable<PeakListRow, PeakListRow> alignmentMapping = new Hashtable<PeakListRow, PeakListRow>();
+	    HashMap<PeakListRow, PeakListRow> alignmentMapping = new HashMap<PeakListRow, PeakListRow>();
 
-	    // Iterate scores by descending order
-	    Iterator<RowVsRowScore> scoreIterator = scoreSet.iterator();
-	    while (scoreIterator.hasNext()) {
+	    // Aligned rows which are already filled
+	    Set<PeakListRow> filledRows = Collections
+		    .newSetFromMap(new IdentityHashMap<PeakListRow, Boolean>());
 
-		RowVsRowScore score = scoreIterator.next();
+	    // Iterate scores by descending order
+	    for (RowVsRowScore score : scores) {
 
 		// Check if the row is already mapped
 		if (alignmentMapping.containsKey(score.getPeakListRow()))
 		    continue;
 
 		// Check if the aligned row is already filled
-		if (alignmentMapping.containsValue(score.getAlignedRow()))
+		if (filledRows.contains(score.getAlignedRow()))
 		    continue;
 
 		alignmentMapping.put(score.getPeakListRow(),
 			score.getAlignedRow());
+		filledRows.add(score.getAlignedRow());
 
 	    }
 
@@ -284,4 +255,135 @@ class JoinAlignerTask extends AbstractTask {
 
     }
 
+    /**
+     * Calculates the scores of all possible alignments of given rows to the
+     * rows of the aligned peak list. The rows are scored in parallel, in
+     * chunks of ROWS_PER_CHUNK rows. The returned array is sorted by
+     * descending score.
+     */
+    RowVsRowScore[] calculateScores(final PeakListRow allRows[],
+	    PeakList alignedPeakList) throws Exception {
+
+	// Index of the aligned rows, the aligned peak list does not change
+	// while the scores are calculated
+	final PeakListRowIndex alignedRowIndex = new PeakListRowIndex(
+		alignedPeakList.getRows());
+
+	final ExecutorService executor = SharedTaskExecutor.newExecutor();
+
+	List<RowVsRowScore> allScores = new ArrayList<RowVsRowScore>();
+	try {
+
+	    List<Future<List<RowVsRowScore>>> futures = new ArrayList<Future<List<RowVsRowScore>>>();
+	    for (int chunk = 0; chunk < allRows.length; chunk += ROWS_PER_CHUNK) {
+		final int firstRow = chunk;
+		final int lastRow = Math.min(allRows.length, chunk
+			+ ROWS_PER_CHUNK);
+		futures.add(executor
+			.submit(new Callable<List<RowVsRowScore>>() {
+			    @Override
+			    public List<RowVsRowScore> call() {
+				return calculateScores(allRows, firstRow,
+					lastRow, alignedRowIndex);
+			    }
+			}));
+	    }
+
+	    // Merge the scores in the order of the rows
+	    for (int i = 0; i < futures.size(); i++) {
+		try {
+		    allScores.addAll(futures.get(i).get());
+		} catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    if (cause instanceof Exception)
+			throw (Exception) cause;
+		    if (cause instanceof Error)
+			throw (Error) cause;
+		    throw e;
+		}
+		processedRows += Math.min(ROWS_PER_CHUNK, allRows.length - i
+			* ROWS_PER_CHUNK);
+	    }
+
+	} finally {
+	    executor.shutdownNow();
+	}
+
+	RowVsRowScore scores[] = allScores.toArray(new RowVsRowScore[0]);
+	Arrays.sort(scores);
+	return scores;
+    }
+
+    /**
+     * Calculates the scores of the rows from firstRow (inclusive) to lastRow
+     * (exclusive). Called from the scoring threads.
+     */
+    private List<RowVsRowScore> calculateScores(PeakListRow allRows[],
+	    int firstRow, int lastRow, PeakListRowIndex alignedRowIndex) {
+
+	List<RowVsRowScore> scores = new ArrayList<RowVsRowScore>();
+
+	// Calculate scores for all possible alignments of this row
+	for (int rowNumber = firstRow; rowNumber < lastRow; rowNumber++) {
+
+	    if (isCanceled())
+		return scores;
+
+	    final PeakListRow row = allRows[rowNumber];
+
+	    // Calculate limits for a row with which the row can be aligned
+	    Range<Double> mzRange = mzTolerance.getToleranceRange(row
+		    .getAverageMZ());
+	    Range<Double> rtRange = rtTolerance.getToleranceRange(row
+		    .getAverageRT());
+
+	    // Get all rows of the aligned peaklist within parameter limits
+	    PeakListRow candidateRows[] = alignedRowIndex
+		    .getRowsInsideScanAndMZRange(rtRange, mzRange);
+
+	    // Calculate scores and store them
+	    for (int candidateNumber = 0; candidateNumber < candidateRows.length; candidateNumber++) {
+
+		final PeakListRow candidate = candidateRows[candidateNumber];
+
+		if (sameChargeRequired) {
+		    if (!PeakUtils.compareChargeState(row, candidate))
+			continue;
+		}
+
+		if (sameIDRequired) {
+		    if (!PeakUtils.compareIdentities(row, candidate))
+			continue;
+		}
+
+		if (compareIsotopePattern) {
+		    IsotopePattern ip1 = row.getBestIsotopePattern();
+		    IsotopePattern ip2 = candidate.getBestIsotopePattern();
+
+		    if ((ip1 != null) && (ip2 != null)) {
+			ParameterSet isotopeParams = parameters.getParameter(
+				JoinAlignerParameters.compareIsotopePattern)
+				.getEmbeddedParameters();
+
+			if (!IsotopePatternScoreCalculator.checkMatch(ip1, ip2,
+				isotopeParams)) {
+			    continue;
+			}
+		    }
+		}
+
+		RowVsRowScore score = new RowVsRowScore(row, candidate,
+			rowNumber, candidateNumber,
+			RangeUtils.rangeLength(mzRange) / 2.0, mzWeight,
+			RangeUtils.rangeLength(rtRange) / 2.0, rtWeight);
+
+		scores.add(score);
+
+	    }
+
+	}
+
+	return scores;
+    }
+
 }
@@ -29,11 +29,18 @@ class RowVsRowScore implements Comparable<RowVsRowScore> {
     private PeakListRow peakListRow, alignedRow;
     double score;
 
+    // Position of the peak list row and number of the candidate aligned row,
+    // used to order scores which are equal
+    private final int rowNumber, candidateNumber;
+
     RowVsRowScore(PeakListRow peakListRow, PeakListRow alignedRow,
-	    double mzMaxDiff, double mzWeight, double rtMaxDiff, double rtWeight) {
+	    int rowNumber, int candidateNumber, double mzMaxDiff,
+	    double mzWeight, double rtMaxDiff, double rtWeight) {
 
 	this.peakListRow = peakListRow;
 	this.alignedRow = alignedRow;
+	this.rowNumber = rowNumber;
+	this.candidateNumber = candidateNumber;
 
 	// Calculate differences between m/z and RT values
 	double mzDiff = Math.abs(peakListRow.getAverageMZ()
@@ -74,12 +81,15 @@ class RowVsRowScore implements Comparable<RowVsRowScore> {
      */
     public int compareTo(RowVsRowScore object) {
 
-	// We must never return 0, because the TreeSet in JoinAlignerTask would
-	// treat such elements as equal
-	if (score < object.getScore())
-	    return 1;
-	else
-	    return -1;
+	// Sort by descending score. Equal scores are ordered by descending row
+	// and candidate number, so the order does not depend on the order in
+	// which the scores were calculated.
+	int result = Double.compare(object.score, score);
+	if (result == 0)
+	    result = Integer.compare(object.rowNumber, rowNumber);
+	if (result == 0)
+	    result = Integer.compare(object.candidateNumber, candidateNumber);
+	return result;
 
     }
 
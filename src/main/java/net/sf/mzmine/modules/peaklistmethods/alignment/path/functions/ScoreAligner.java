@@ -38,6 +38,7 @@ import net.sf.mzmine.datamodel.impl.SimplePeakList;
 import net.sf.mzmine.modules.peaklistmethods.alignment.path.PathAlignerParameters;
 import net.sf.mzmine.modules.peaklistmethods.alignment.path.scorer.RTScore;
 import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
 
 public class ScoreAligner implements Aligner {
 
@@ -89,7 +90,7 @@ public class ScoreAligner implements Aligner {
 	final List<AlignmentPath> paths = Collections
 		.synchronizedList(new LinkedList<AlignmentPath>());
 	final List<AlignmentPath> completePaths = new ArrayList<AlignmentPath>();
-	final int numThreads = Runtime.getRuntime().availableProcessors();
+	final int numThreads = SharedTaskExecutor.getNumOfThreads();
 	final AlignerThread aligners[] = new AlignerThread[numThreads];
 
 	Runnable barrierTask = new Runnable() {
@@ -29,9 +29,6 @@ import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.parametertypes.MZTolerance;
 import net.sf.mzmine.parameters.parametertypes.RTTolerance;
 import net.sf.mzmine.util.PeakUtils;
-import net.sf.mzmine.util.RangeUtils;
-
-import com.google.common.collect.Range;
 
 public class RTScore implements ScoreCalculator {
 
@@ -46,11 +43,8 @@ public class RTScore implements ScoreCalculator {
 		    PathAlignerParameters.RTTolerance).getValue();
 	    mzTolerance = parameters.getParameter(
 		    PathAlignerParameters.MZTolerance).getValue();
-	    Range<Double> rtRange = rtTolerance.getToleranceRange(path.getRT());
-	    Range<Double> mzRange = mzTolerance.getToleranceRange(path.getMZ());
-
-	    if (!rtRange.contains(peak.getAverageRT())
-		    || !mzRange.contains(peak.getAverageMZ())) {
+	    if (!rtTolerance.contains(path.getRT(), peak.getAverageRT())
+		    || !mzTolerance.contains(path.getMZ(), peak.getAverageMZ())) {
 		return WORST_SCORE;
 	    }
 
@@ -58,8 +52,13 @@ public class RTScore implements ScoreCalculator {
 
 	    double rtDiff = Math.abs(path.getRT() - peak.getAverageRT());
 
-	    double score = ((mzDiff / (RangeUtils.rangeLength(mzRange) / 2.0)))
-		    + ((rtDiff / (RangeUtils.rangeLength(rtRange) / 2.0)));
+	    double mzRangeLength = mzTolerance.upper(path.getMZ())
+		    - mzTolerance.lower(path.getMZ());
+	    double rtRangeLength = rtTolerance.upper(path.getRT())
+		    - rtTolerance.lower(path.getRT());
+
+	    double score = ((mzDiff / (mzRangeLength / 2.0)))
+		    + ((rtDiff / (rtRangeLength / 2.0)));
 
 	    if (parameters.getParameter(
 		    PathAlignerParameters.SameChargeRequired).getValue()) {
@@ -108,11 +107,8 @@ public class RTScore implements ScoreCalculator {
 		.getParameter(PathAlignerParameters.RTTolerance).getValue();
 	mzTolerance = parameters
 		.getParameter(PathAlignerParameters.MZTolerance).getValue();
-	Range<Double> rtRange = rtTolerance.getToleranceRange(path.getRT());
-	Range<Double> mzRange = mzTolerance.getToleranceRange(path.getMZ());
-
-	if (!rtRange.contains(peak.getAverageRT())
-		|| !mzRange.contains(peak.getAverageMZ())) {
+	if (!rtTolerance.contains(path.getRT(), peak.getAverageRT())
+		|| !mzTolerance.contains(path.getMZ(), peak.getAverageMZ())) {
 	    return false;
 	}
 	return true;
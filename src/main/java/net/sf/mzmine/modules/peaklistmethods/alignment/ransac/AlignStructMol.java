@@ -28,8 +28,6 @@ public class AlignStructMol implements Comparator<AlignStructMol> {
     public PeakListRow row1, row2;
     public double RT, RT2;
     public boolean Aligned = false;
-    public boolean ransacMaybeInLiers;
-    public boolean ransacAlsoInLiers;
 
     public AlignStructMol(PeakListRow row1, PeakListRow row2) {
 	this.row1 = row1;
@@ -60,10 +58,11 @@ public class AlignStructMol implements Comparator<AlignStructMol> {
     }
 
     public int compare(AlignStructMol arg0, AlignStructMol arg1) {
-	if (arg0.RT < arg1.RT) {
-	    return -1;
-	} else {
-	    return 1;
-	}
+	// Points with the same RT are ordered by RT2, so the sorted order does
+	// not depend on the original order of the points
+	int result = Double.compare(arg0.RT, arg1.RT);
+	if (result == 0)
+	    result = Double.compare(arg0.RT2, arg1.RT2);
+	return result;
     }
 }
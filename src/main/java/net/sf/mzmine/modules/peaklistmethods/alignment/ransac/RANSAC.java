@@ -19,21 +19,43 @@
 package net.sf.mzmine.modules.peaklistmethods.alignment.ransac;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
+import net.sf.mzmine.util.DoubleRange;
 
 import org.apache.commons.math.analysis.polynomials.PolynomialFunction;
 import org.apache.commons.math.optimization.fitting.PolynomialFitter;
 import org.apache.commons.math.optimization.general.GaussNewtonOptimizer;
 
-import com.google.common.collect.Range;
-
+/**
+ * RANSAC model search. The iterations are independent of each other, so they
+ * are evaluated in parallel. Each iteration keeps its inliers in its own bit
+ * sets and draws its random points from its own generator, seeded by the
+ * iteration number, so the result does not depend on the number of threads
+ * and repeated runs give the same alignment.
+ */
 public class RANSAC {
 
+    private static final Logger logger = Logger.getLogger(RANSAC.class
+	    .getName());
+
+    // Base seed of the random generators of the iterations
+    private static final long SEED = 0x5A4E4D494E45L;
+
+    // Number of iterations evaluated by one thread at a time
+    private static final int ITERATIONS_PER_CHUNK = 16;
+
     /**
      * input: data - a set of observed data points n - the minimum number of
      * data values required to fit the model k - the maximum number of
@@ -46,10 +68,12 @@ public class RANSAC {
     private int n;
     private double d = 1;
     private int k = 0;
-    private int AlsoNumber;
     private double numRatePoints, t;
     private boolean Linear;
 
+    // Retention times of the data points, sorted by RT
+    private double rt[], rt2[];
+
     public RANSAC(ParameterSet parameters) {
 
 	this.numRatePoints = parameters.getParameter(
@@ -115,6 +139,35 @@ public class RANSAC {
 		+ (Math.sqrt(1 - b) / b);
     }
 
+    /**
+     * Result of one or more RANSAC iterations: the model with the lowest error
+     * and the data points which fit it
+     */
+    private static class Model {
+	final int iteration;
+	final double error;
+	final BitSet inliers;
+
+	Model(int iteration, double error, BitSet inliers) {
+	    this.iteration = iteration;
+	    this.error = error;
+	    this.inliers = inliers;
+	}
+
+	/**
+	 * Returns true if this model is better than given model. Models with
+	 * equal error are ordered by the iteration number, so the result does
+	 * not depend on the order in which the iterations were evaluated.
+	 */
+	boolean isBetterThan(Model model) {
+	    if (model == null)
+		return true;
+	    if (error != model.error)
+		return error < model.error;
+	    return iteration < model.iteration;
+	}
+    }
+
     /**
      * RANSAC algorithm
      * 
@@ -122,57 +175,108 @@ public class RANSAC {
      *            vector with the points which represent all possible
      *            alignments.
      */
-    public void ransac(List<AlignStructMol> data) {
-	double besterr = 9.9E99;
-
-	for (int iterations = 0; iterations < k; iterations++) {
-	    AlsoNumber = n;
-	    // Get the initial points
-	    boolean initN = getInitN(data);
-	    if (!initN) {
-		continue;
-	    }
+    public void ransac(List<AlignStructMol> data) throws Exception {
 
-	    // Calculate the model
-	    fittPolinomialFunction(data, Linear);
+	// The initial points are chosen by their retention time
+	Collections.sort(data, new AlignStructMol());
 
-	    // If the model has the minimun number of points
-	    if (AlsoNumber >= d) {
-		// Get the error of the model based on the number of points
-		double error = 9.9E99;
-		try {
-		    error = newError(data);
-		} catch (Exception ex) {
-		    Logger.getLogger(RANSAC.class.getName()).log(Level.SEVERE,
-			    null, ex);
-		}
+	final int size = data.size();
+	rt = new double[size];
+	rt2 = new double[size];
+	for (int i = 0; i < size; i++) {
+	    rt[i] = data.get(i).RT;
+	    rt2[i] = data.get(i).RT2;
+	}
 
-		// If the error is less than the error of the last model
-		if (error < besterr) {
-		    besterr = error;
-		    for (int i = 0; i < data.size(); i++) {
-			AlignStructMol alignStruct = data.get(i);
-			if (alignStruct.ransacAlsoInLiers
-				|| alignStruct.ransacMaybeInLiers) {
-			    alignStruct.Aligned = true;
-			} else {
-			    alignStruct.Aligned = false;
-			}
+	final ExecutorService executor = SharedTaskExecutor.newExecutor();
 
-			alignStruct.ransacAlsoInLiers = false;
-			alignStruct.ransacMaybeInLiers = false;
+	Model bestModel = null;
+	try {
 
+	    List<Future<Model>> futures = new ArrayList<Future<Model>>();
+	    for (int chunk = 0; chunk < k; chunk += ITERATIONS_PER_CHUNK) {
+		final int firstIteration = chunk;
+		final int lastIteration = Math.min(k, chunk
+			+ ITERATIONS_PER_CHUNK);
+		futures.add(executor.submit(new Callable<Model>() {
+		    @Override
+		    public Model call() {
+			Model best = null;
+			for (int i = firstIteration; i < lastIteration; i++) {
+			    Model model = evaluateIteration(i);
+			    if ((model != null) && model.isBetterThan(best))
+				best = model;
+			}
+			return best;
 		    }
+		}));
+	    }
+
+	    for (Future<Model> future : futures) {
+		Model model;
+		try {
+		    model = future.get();
+		} catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    if (cause instanceof Exception)
+			throw (Exception) cause;
+		    if (cause instanceof Error)
+			throw (Error) cause;
+		    throw e;
 		}
+		if ((model != null) && model.isBetterThan(bestModel))
+		    bestModel = model;
 	    }
-	    // remove the model
-	    for (int i = 0; i < data.size(); i++) {
-		AlignStructMol alignStruct = data.get(i);
-		alignStruct.ransacAlsoInLiers = false;
-		alignStruct.ransacMaybeInLiers = false;
+
+	} finally {
+	    executor.shutdownNow();
+	}
+
+	// Mark the points of the best model as aligned
+	if (bestModel != null) {
+	    for (int i = 0; i < size; i++) {
+		data.get(i).Aligned = bestModel.inliers.get(i);
 	    }
+	}
+    }
+
+    /**
+     * Evaluates one RANSAC iteration: fits the model to randomly chosen
+     * initial points and finds the points which fit the model.
+     * 
+     * @return the model, or null if it does not fit enough points
+     */
+    private Model evaluateIteration(int iteration) {
+
+	final Random random = new Random(SEED + iteration
+		* 0x9E3779B97F4A7C15L);
+
+	// Get the initial points
+	BitSet maybeInLiers = getInitN(random);
+	if (maybeInLiers == null) {
+	    return null;
+	}
+
+	// Calculate the model
+	BitSet alsoInLiers = new BitSet(rt.length);
+	int alsoNumber = n + fittPolinomialFunction(maybeInLiers, alsoInLiers);
 
+	// If the model has the minimun number of points
+	if (alsoNumber < d) {
+	    return null;
 	}
+
+	// Get the error of the model based on the number of points
+	BitSet inliers = (BitSet) alsoInLiers.clone();
+	inliers.or(maybeInLiers);
+	double error = 9.9E99;
+	try {
+	    error = newError(inliers);
+	} catch (Exception ex) {
+	    logger.log(Level.SEVERE, null, ex);
+	}
+
+	return new Model(iteration, error, inliers);
     }
 
     /**
@@ -180,25 +284,24 @@ public class RANSAC {
      * number of points. If the fractions contain enough number of points took
      * one point from each part.
      * 
-     * @param data
-     *            vector with the points which represent all possible
-     *            alignments.
-     * @return false if there is any problem.
+     * @param random
+     *            random generator of the iteration.
+     * @return the initial points, or null if there is any problem.
      */
-    private boolean getInitN(List<AlignStructMol> data) {
-	if (data.size() > n) {
-	    Collections.sort(data, new AlignStructMol());
-	    double min = data.get(0).RT;
-	    double max = data.get(data.size() - 1).RT;
+    private BitSet getInitN(Random random) {
+	final int size = rt.length;
+	if (size > n) {
+	    BitSet maybeInLiers = new BitSet(size);
+	    double min = rt[0];
+	    double max = rt[size - 1];
 
-	    Range<Double> rtRange = Range.closed(min, ((max - min) / 2) + min);
+	    DoubleRange rtRange = new DoubleRange(min, ((max - min) / 2) + min);
 
 	    int cont = 0, bucle = 0;
 	    while (cont < n / 2 && bucle < 1000) {
-		int index = (int) (data.size() * Math.random());
-		if (!data.get(index).ransacMaybeInLiers
-			&& rtRange.contains(data.get(index).RT)) {
-		    data.get(index).ransacMaybeInLiers = true;
+		int index = (int) (size * random.nextDouble());
+		if (!maybeInLiers.get(index) && rtRange.contains(rt[index])) {
+		    maybeInLiers.set(index);
 		    cont++;
 
 		}
@@ -206,97 +309,92 @@ public class RANSAC {
 		bucle++;
 	    }
 	    if (bucle >= 1000) {
-		getN(data, (n / 2) - cont);
+		getN(random, maybeInLiers, (n / 2) - cont);
 	    }
 
 	    bucle = 0;
-	    rtRange = Range.closed(((max - min) / 2) + min, max);
+	    rtRange = new DoubleRange(((max - min) / 2) + min, max);
 
 	    while (cont < n && bucle < 1000) {
 
-		int index = (int) (data.size() * Math.random());
-		if (!data.get(index).ransacMaybeInLiers
-			&& rtRange.contains(data.get(index).RT)) {
-		    data.get(index).ransacMaybeInLiers = true;
+		int index = (int) (size * random.nextDouble());
+		if (!maybeInLiers.get(index) && rtRange.contains(rt[index])) {
+		    maybeInLiers.set(index);
 		    cont++;
 		}
 		bucle++;
 	    }
 	    if (bucle >= 1000) {
-		getN(data, n - cont);
+		getN(random, maybeInLiers, n - cont);
 	    }
-	    return true;
+	    return maybeInLiers;
 	} else {
-	    return false;
+	    return null;
 	}
     }
 
-    private void getN(List<AlignStructMol> data, int newN) {
+    private void getN(Random random, BitSet maybeInLiers, int newN) {
 	if (newN < 1) {
 	    return;
 	}
 	int cont = 0;
 	while (cont < newN) {
-	    int index = (int) (data.size() * Math.random());
-	    if (!data.get(index).ransacMaybeInLiers) {
-		data.get(index).ransacMaybeInLiers = true;
+	    int index = (int) (rt.length * random.nextDouble());
+	    if (!maybeInLiers.get(index)) {
+		maybeInLiers.set(index);
 		cont++;
 	    }
 	}
     }
 
-    private void fittPolinomialFunction(List<AlignStructMol> data,
-	    boolean linear) {
-	List<AlignStructMol> points = new ArrayList<AlignStructMol>();
+    /**
+     * Fits the model to the initial points and marks all points which fit the
+     * model in alsoInLiers.
+     * 
+     * @return number of points which fit the model
+     */
+    private int fittPolinomialFunction(BitSet maybeInLiers, BitSet alsoInLiers) {
 
 	int degree = 3;
-	if (linear) {
+	if (Linear) {
 	    degree = 1;
 	}
 
 	PolynomialFitter fitter = new PolynomialFitter(degree,
 		new GaussNewtonOptimizer(true));
-	for (int i = 0; i < data.size(); i++) {
-	    AlignStructMol point = data.get(i);
-	    if (point.ransacMaybeInLiers) {
-		points.add(point);
-		fitter.addObservedPoint(1, point.RT, point.RT2);
-	    }
+	for (int i = maybeInLiers.nextSetBit(0); i >= 0; i = maybeInLiers
+		.nextSetBit(i + 1)) {
+	    fitter.addObservedPoint(1, rt[i], rt2[i]);
 	}
+
+	int alsoNumber = 0;
 	try {
 	    PolynomialFunction function = fitter.fit();
-	    for (AlignStructMol point : data) {
-		double y = point.RT2;
-		double bestY = function.value(point.RT);
+	    for (int i = 0; i < rt.length; i++) {
+		double y = rt2[i];
+		double bestY = function.value(rt[i]);
 		if (Math.abs(y - bestY) < t) {
-		    point.ransacAlsoInLiers = true;
-		    AlsoNumber++;
-		} else {
-		    point.ransacAlsoInLiers = false;
+		    alsoInLiers.set(i);
+		    alsoNumber++;
 		}
 	    }
 	} catch (Exception ex) {
+	    alsoInLiers.clear();
+	    alsoNumber = 0;
 	}
+	return alsoNumber;
     }
 
     /**
      * calculate the error in the model
      * 
-     * @param data
-     *            vector with the points which represent all possible
-     *            alignments.
-     * @param regression
-     *            regression of the alignment points
+     * @param inliers
+     *            points which fit the model.
      * @return the error in the model
      */
-    private double newError(List<AlignStructMol> data) throws Exception {
+    private double newError(BitSet inliers) throws Exception {
 
-	double numT = 1;
-	for (int i = 0; i < data.size(); i++) {
-	    if (data.get(i).ransacAlsoInLiers || data.get(i).ransacMaybeInLiers) {
-		numT++;
-	    }
-	}
+	double numT = 1 + inliers.cardinality();
 	return 1 / numT;
 
     }
@@ -46,6 +46,7 @@ import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.parameters.dialogs.ParameterSetupDialog;
 import net.sf.mzmine.parameters.parametertypes.MZTolerance;
 import net.sf.mzmine.parameters.parametertypes.RTTolerance;
+import net.sf.mzmine.util.PeakListRowIndex;
 
 import com.google.common.collect.Range;
 
@@ -188,6 +189,7 @@ public class RansacAlignerSetupDialog extends ParameterSetupDialog implements
 	    PeakList peakListY, RawDataFile file, RawDataFile file2) {
 
 	Vector<AlignStructMol> alignMol = new Vector<AlignStructMol>();
+	PeakListRowIndex rowIndexY = new PeakListRowIndex(peakListY.getRows());
 
 	for (PeakListRow row : peakListX.getRows()) {
 
@@ -202,7 +204,7 @@ public class RansacAlignerSetupDialog extends ParameterSetupDialog implements
 		    .getAverageRT());
 
 	    // Get all rows of the aligned peaklist within parameter limits
-	    PeakListRow candidateRows[] = peakListY
+	    PeakListRow candidateRows[] = rowIndexY
 		    .getRowsInsideScanAndMZRange(rtRange, mzRange);
 
 	    for (PeakListRow candidateRow : candidateRows) {
@@ -39,6 +39,7 @@ import net.sf.mzmine.parameters.parametertypes.MZTolerance;
 import net.sf.mzmine.parameters.parametertypes.RTTolerance;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.PeakListRowIndex;
 import net.sf.mzmine.util.PeakUtils;
 import net.sf.mzmine.util.RangeUtils;
 
@@ -213,6 +214,11 @@ class RansacAlignerTask extends AbstractTask {
 
 	PeakListRow allRows[] = peakList.getRows();
 
+	// Index of the aligned rows, the aligned peak list does not change
+	// until the mapping is complete
+	PeakListRowIndex alignedRowIndex = new PeakListRowIndex(
+		alignedPeakList.getRows());
+
 	for (PeakListRow row : allRows) {
 	    // Calculate limits for a row with which the row can be aligned
 	    Range<Double> mzRange = mzTolerance.getToleranceRange(row
@@ -231,7 +237,7 @@ class RansacAlignerTask extends AbstractTask {
 	    Range<Double> rtRange = rtToleranceAfter.getToleranceRange(rt);
 
 	    // Get all rows of the aligned peaklist within parameter limits
-	    PeakListRow candidateRows[] = alignedPeakList
+	    PeakListRow candidateRows[] = alignedRowIndex
 		    .getRowsInsideScanAndMZRange(rtRange, mzRange);
 
 	    for (PeakListRow candidate : candidateRows) {
@@ -373,6 +379,7 @@ class RansacAlignerTask extends AbstractTask {
 	    PeakList peakListY) {
 
 	List<AlignStructMol> alignMol = new ArrayList<AlignStructMol>();
+	PeakListRowIndex rowIndexY = new PeakListRowIndex(peakListY.getRows());
 	for (PeakListRow row : peakListX.getRows()) {
 
 	    if (isCanceled()) {
@@ -385,7 +392,7 @@ class RansacAlignerTask extends AbstractTask {
 		    .getAverageRT());
 
 	    // Get all rows of the aligned peaklist within parameter limits
-	    PeakListRow candidateRows[] = peakListY
+	    PeakListRow candidateRows[] = rowIndexY
 		    .getRowsInsideScanAndMZRange(rtRange, mzRange);
 
 	    for (PeakListRow candidateRow : candidateRows) {
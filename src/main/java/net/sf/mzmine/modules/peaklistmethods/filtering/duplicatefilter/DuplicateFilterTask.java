@@ -184,13 +184,13 @@ public class DuplicateFilterTask extends AbstractTask {
 					secondRow);
 
 			// Compare m/z
-			final boolean sameMZ = mzTolerance.getToleranceRange(
-				firstRow.getAverageMZ()).contains(
+			final boolean sameMZ = mzTolerance.contains(
+				firstRow.getAverageMZ(),
 				secondRow.getAverageMZ());
 
 			// Compare rt
-			final boolean sameRT = rtTolerance.getToleranceRange(
-				firstRow.getAverageRT()).contains(
+			final boolean sameRT = rtTolerance.contains(
+				firstRow.getAverageRT(),
 				secondRow.getAverageRT());
 
 			// Duplicate peaks?
@@ -159,11 +159,10 @@ public class ComplexSearchTask extends AbstractTask {
 	    PeakListRow row2) {
 
 	// Check retention time condition
-	Range<Double> rtRange = rtTolerance.getToleranceRange(complexRow
-		.getAverageRT());
-	if (!rtRange.contains(row1.getAverageRT()))
+	final double complexRT = complexRow.getAverageRT();
+	if (!rtTolerance.contains(complexRT, row1.getAverageRT()))
 	    return false;
-	if (!rtRange.contains(row2.getAverageRT()))
+	if (!rtTolerance.contains(complexRT, row2.getAverageRT()))
 	    return false;
 
 	// Check mass condition
@@ -171,8 +170,7 @@ public class ComplexSearchTask extends AbstractTask {
 		- (2 * ionType.getAddedMass());
 	double detectedMass = complexRow.getAverageMZ()
 		- ionType.getAddedMass();
-	Range<Double> mzRange = mzTolerance.getToleranceRange(detectedMass);
-	if (!mzRange.contains(expectedMass))
+	if (!mzTolerance.contains(detectedMass, expectedMass))
 	    return false;
 
 	// Check height condition
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.MZTolerance;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Database gateway which keeps the responses of another gateway in a disk
+ * cache, so repeated searches for the same masses do not query the database
+ * server again. Each response is stored in its own file, named by a hash of
+ * the query. Responses older than the given time to live are queried again.
+ * 
+ * Queries which are not found in the cache are throttled by a rate limiter
+ * shared by all gateways of the same database, so parallel searches do not
+ * overload the database servers.
+ */
+class CachedDBGateway implements DBGateway {
+
+    private static final Logger logger = Logger.getLogger(CachedDBGateway.class
+	    .getName());
+
+    // Default location of the cache, next to the configuration file
+    public static final File DEFAULT_CACHE_DIR = new File("conf/onlinedbcache");
+
+    private static final Map<OnlineDatabase, RateLimiter> rateLimiters = new EnumMap<>(
+	    OnlineDatabase.class);
+
+    private final OnlineDatabase database;
+    private final DBGateway gateway;
+    private final File cacheDir;
+    private final long timeToLive;
+    private final RateLimiter rateLimiter;
+
+    /**
+     * @param database
+     *            the database queried by gateway
+     * @param gateway
+     *            the gateway retrieving the data from the server
+     * @param cacheDir
+     *            cache directory, or null if the responses should not be
+     *            cached
+     * @param timeToLive
+     *            maximum age of cached responses, in milliseconds
+     */
+    CachedDBGateway(OnlineDatabase database, DBGateway gateway, File cacheDir,
+	    long timeToLive) {
+	this.database = database;
+	this.gateway = gateway;
+	this.timeToLive = timeToLive;
+	this.rateLimiter = getRateLimiter(database);
+
+	if (cacheDir != null) {
+	    cacheDir = new File(cacheDir, database.name());
+	    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+		logger.warning("Could not create cache directory " + cacheDir
+			+ ", database responses will not be cached");
+		cacheDir = null;
+	    }
+	}
+	this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Sets the maximum number of queries per second sent to given database
+     */
+    static void setQueryRate(OnlineDatabase database, double queriesPerSecond) {
+	getRateLimiter(database).setRate(queriesPerSecond);
+    }
+
+    private static synchronized RateLimiter getRateLimiter(
+	    OnlineDatabase database) {
+	RateLimiter limiter = rateLimiters.get(database);
+	if (limiter == null) {
+	    limiter = RateLimiter.create(Double.MAX_VALUE);
+	    rateLimiters.put(database, limiter);
+	}
+	return limiter;
+    }
+
+    /**
+     * The results of the search do not depend on the database specific
+     * parameters (access tokens), so those are not part of the cache key.
+     */
+    @Override
+    public String[] findCompounds(double mass, MZTolerance mzTolerance,
+	    int numOfResults, ParameterSet parameters) throws IOException {
+
+	final String key = "search:" + mass + ":"
+		+ mzTolerance.getMzTolerance() + ":"
+		+ mzTolerance.getPpmTolerance() + ":" + numOfResults;
+	final File cacheFile = getCacheFile("search-", key);
+
+	Properties cached = readCacheFile(cacheFile);
+	if (cached != null) {
+	    try {
+		int count = Integer.parseInt(cached.getProperty("count"));
+		String ids[] = new String[count];
+		for (int i = 0; i < count; i++) {
+		    ids[i] = cached.getProperty("id." + i);
+		    if (ids[i] == null)
+			throw new IOException("Missing ID " + i);
+		}
+		return ids;
+	    } catch (Exception e) {
+		logger.log(Level.FINE, "Invalid cache file " + cacheFile, e);
+	    }
+	}
+
+	rateLimiter.acquire();
+	final String ids[] = gateway.findCompounds(mass, mzTolerance,
+		numOfResults, parameters);
+
+	if (cacheFile != null) {
+	    Properties response = new Properties();
+	    response.setProperty("count", String.valueOf(ids.length));
+	    for (int i = 0; i < ids.length; i++)
+		response.setProperty("id." + i, ids[i]);
+	    writeCacheFile(cacheFile, response);
+	}
+
+	return ids;
+    }
+
+    @Override
+    public DBCompound getCompound(String ID, ParameterSet parameters)
+	    throws IOException {
+
+	final File cacheFile = getCacheFile("compound-", "compound:" + ID);
+
+	Properties cached = readCacheFile(cacheFile);
+	if (cached != null) {
+	    try {
+		final String url2D = cached.getProperty("url2D");
+		final String url3D = cached.getProperty("url3D");
+		return new DBCompound(database, cached.getProperty("id"),
+			cached.getProperty("name"),
+			cached.getProperty("formula"), new URL(
+				cached.getProperty("url")),
+			url2D == null ? null : new URL(url2D),
+			url3D == null ? null : new URL(url3D));
+	    } catch (Exception e) {
+		logger.log(Level.FINE, "Invalid cache file " + cacheFile, e);
+	    }
+	}
+
+	rateLimiter.acquire();
+	final DBCompound compound = gateway.getCompound(ID, parameters);
+
+	if (cacheFile != null) {
+	    Properties response = new Properties();
+	    setProperty(response, "id",
+		    compound.getPropertyValue(DBCompound.PROPERTY_ID));
+	    setProperty(response, "name", compound.getName());
+	    setProperty(response, "formula",
+		    compound.getPropertyValue(DBCompound.PROPERTY_FORMULA));
+	    setProperty(response, "url",
+		    compound.getPropertyValue(DBCompound.PROPERTY_URL));
+	    if (compound.get2DStructureURL() != null)
+		setProperty(response, "url2D", compound.get2DStructureURL()
+			.toString());
+	    if (compound.get3DStructureURL() != null)
+		setProperty(response, "url3D", compound.get3DStructureURL()
+			.toString());
+	    writeCacheFile(cacheFile, response);
+	}
+
+	return compound;
+    }
+
+    private static void setProperty(Properties properties, String name,
+	    String value) {
+	if (value != null)
+	    properties.setProperty(name, value);
+    }
+
+    /**
+     * Returns the cache file of given query, or null if caching is disabled
+     */
+    private File getCacheFile(String prefix, String key) {
+
+	if (cacheDir == null)
+	    return null;
+
+	try {
+	    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+	    byte hash[] = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+	    StringBuilder fileName = new StringBuilder(prefix);
+	    for (byte b : hash)
+		fileName.append(String.format("%02x", b));
+	    fileName.append(".properties");
+	    return new File(cacheDir, fileName.toString());
+	} catch (NoSuchAlgorithmException e) {
+	    // SHA-1 is supported by every Java platform
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * Returns the contents of given cache file, or null if the file does not
+     * exist or has expired
+     */
+    private Properties readCacheFile(File cacheFile) {
+
+	if ((cacheFile == null) || (!cacheFile.exists()))
+	    return null;
+
+	if (System.currentTimeMillis() - cacheFile.lastModified() > timeToLive)
+	    return null;
+
+	Properties properties = new Properties();
+	try {
+	    InputStream is = new FileInputStream(cacheFile);
+	    try {
+		properties.load(is);
+	    } finally {
+		is.close();
+	    }
+	} catch (IOException e) {
+	    logger.log(Level.FINE, "Could not read cache file " + cacheFile, e);
+	    return null;
+	}
+	return properties;
+    }
+
+    /**
+     * Writes given response to the cache. The file is written under a
+     * temporary name first, so concurrent readers never see a partial file.
+     */
+    private void writeCacheFile(File cacheFile, Properties properties) {
+	File tmpFile = null;
+	try {
+	    tmpFile = File.createTempFile("response", ".tmp", cacheDir);
+	    OutputStream os = new FileOutputStream(tmpFile);
+	    try {
+		properties.store(os, database.getName());
+	    } finally {
+		os.close();
+	    }
+	    Files.move(tmpFile.toPath(), cacheFile.toPath(),
+		    StandardCopyOption.REPLACE_EXISTING);
+	} catch (IOException e) {
+	    logger.log(Level.WARNING, "Could not write cache file "
+		    + cacheFile, e);
+	    if (tmpFile != null)
+		tmpFile.delete();
+	}
+    }
+
+}
@@ -23,6 +23,7 @@ import net.sf.mzmine.datamodel.IonizationType;
 import net.sf.mzmine.parameters.Parameter;
 import net.sf.mzmine.parameters.impl.SimpleParameterSet;
 import net.sf.mzmine.parameters.parametertypes.ComboParameter;
+import net.sf.mzmine.parameters.parametertypes.IntegerParameter;
 import net.sf.mzmine.parameters.parametertypes.PeakListsParameter;
 
 public class PeakListIdentificationParameters extends SimpleParameterSet {
@@ -32,12 +33,28 @@ public class PeakListIdentificationParameters extends SimpleParameterSet {
     public static final ComboParameter<IonizationType> ionizationType = new ComboParameter<IonizationType>(
 	    "Ionization type", "Ionization type", IonizationType.values());
 
+    public static final IntegerParameter parallelQueries = new IntegerParameter(
+	    "Parallel queries",
+	    "Maximum number of queries sent to the database at the same time",
+	    4, 1, null);
+
+    public static final IntegerParameter queryRate = new IntegerParameter(
+	    "Queries per second",
+	    "Maximum number of queries sent to the database per second. Responses found in the cache are not limited.",
+	    3, 1, null);
+
+    public static final IntegerParameter cacheExpiration = new IntegerParameter(
+	    "Cache expiration (days)",
+	    "Database responses are stored on disk and reused by later searches for this number of days. If 0, the responses are not cached.",
+	    30, 0, null);
+
     public PeakListIdentificationParameters() {
 	super(new Parameter[] { peakLists,
 		SingleRowIdentificationParameters.DATABASE, ionizationType,
 		SingleRowIdentificationParameters.MAX_RESULTS,
 		SingleRowIdentificationParameters.MZ_TOLERANCE,
-		SingleRowIdentificationParameters.ISOTOPE_FILTER });
+		SingleRowIdentificationParameters.ISOTOPE_FILTER,
+		parallelQueries, queryRate, cacheExpiration });
     }
 
 }
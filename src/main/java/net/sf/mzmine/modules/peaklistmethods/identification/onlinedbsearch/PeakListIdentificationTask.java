@@ -19,8 +19,19 @@
 
 package net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -64,9 +75,12 @@ public class PeakListIdentificationTask extends AbstractTask {
     private final boolean isotopeFilter;
     private final ParameterSet isotopeFilterParameters;
     private final IonizationType ionType;
-    private DBGateway gateway;
+    private final int parallelQueries, queryRate, cacheExpiration;
     private PeakListRow currentRow;
 
+    // Gateways which are not used by any query at the moment
+    private final BlockingQueue<DBGateway> gateways = new LinkedBlockingQueue<DBGateway>();
+
     /**
      * Create the identification task.
      * 
@@ -81,7 +95,6 @@ public class PeakListIdentificationTask extends AbstractTask {
 	peakList = list;
 	numItems = 0;
 	finishedItems = 0;
-	gateway = null;
 	currentRow = null;
 
 	db = parameters
@@ -98,6 +111,12 @@ public class PeakListIdentificationTask extends AbstractTask {
 		.getEmbeddedParameters();
 	ionType = parameters.getParameter(
 		PeakListIdentificationParameters.ionizationType).getValue();
+	parallelQueries = parameters.getParameter(
+		PeakListIdentificationParameters.parallelQueries).getValue();
+	queryRate = parameters.getParameter(
+		PeakListIdentificationParameters.queryRate).getValue();
+	cacheExpiration = parameters.getParameter(
+		PeakListIdentificationParameters.cacheExpiration).getValue();
     }
 
     @Override
@@ -125,8 +144,18 @@ public class PeakListIdentificationTask extends AbstractTask {
 
 		setStatus(TaskStatus.PROCESSING);
 
-		// Create database gateway.
-		gateway = db.getModule().getGatewayClass().newInstance();
+		// Create database gateways, one for each parallel query, so the
+		// gateways do not need to be thread-safe.
+		final OnlineDatabase database = db.getModule();
+		final File cacheDir = cacheExpiration > 0 ? CachedDBGateway.DEFAULT_CACHE_DIR
+			: null;
+		final long timeToLive = TimeUnit.DAYS.toMillis(cacheExpiration);
+		CachedDBGateway.setQueryRate(database, queryRate);
+		for (int i = 0; i < parallelQueries; i++) {
+		    gateways.add(new CachedDBGateway(database, database
+			    .getGatewayClass().newInstance(), cacheDir,
+			    timeToLive));
+		}
 
 		// Identify the peak list rows starting from the biggest peaks.
 		final PeakListRow[] rows = peakList.getRows();
@@ -136,12 +165,45 @@ public class PeakListIdentificationTask extends AbstractTask {
 		// Initialize counters.
 		numItems = rows.length;
 
-		// Process rows.
-		for (finishedItems = 0; !isCanceled()
-			&& finishedItems < numItems; finishedItems++) {
-
-		    // Retrieve results for each row.
-		    retrieveIdentification(rows[finishedItems]);
+		// Query the database for all rows in parallel. The results are
+		// processed in the order of the rows.
+		final ExecutorService executor = Executors
+			.newFixedThreadPool(parallelQueries);
+		try {
+		    final List<Future<DBCompound[]>> results = new ArrayList<Future<DBCompound[]>>(
+			    numItems);
+		    for (final PeakListRow row : rows) {
+			results.add(executor
+				.submit(new Callable<DBCompound[]>() {
+				    @Override
+				    public DBCompound[] call() throws IOException,
+					    InterruptedException {
+					return retrieveCompounds(row);
+				    }
+				}));
+		    }
+
+		    // Process rows.
+		    for (finishedItems = 0; !isCanceled()
+			    && finishedItems < numItems; finishedItems++) {
+
+			final DBCompound[] compounds;
+			try {
+			    compounds = results.get(finishedItems).get();
+			} catch (ExecutionException e) {
+			    final Throwable cause = e.getCause();
+			    if (cause instanceof Exception)
+				throw (Exception) cause;
+			    if (cause instanceof Error)
+				throw (Error) cause;
+			    throw e;
+			}
+
+			// Add results for each row.
+			addIdentities(rows[finishedItems], compounds);
+		    }
+		} finally {
+		    executor.shutdownNow();
 		}
 
 		if (!isCanceled()) {
@@ -159,39 +221,71 @@ public class PeakListIdentificationTask extends AbstractTask {
     }
 
     /**
-     * Search the database for the peak's identity.
+     * Search the database for the peak's identity. Called from the query
+     * threads.
      * 
      * @param row
      *            the peak list row.
+     * @return the compounds found in the database.
      * @throws IOException
      *             if there are i/o problems.
+     * @throws InterruptedException
+     *             if the task was canceled while waiting for a gateway.
      */
-    private void retrieveIdentification(final PeakListRow row)
-	    throws IOException {
+    private DBCompound[] retrieveCompounds(final PeakListRow row)
+	    throws IOException, InterruptedException {
 
-	currentRow = row;
-
-	// Determine peak charge.
-	final Feature bestPeak = row.getBestPeak();
-	int charge = bestPeak.getCharge();
-	if (charge <= 0) {
-	    charge = 1;
-	}
+	if (isCanceled())
+	    return new DBCompound[0];
 
 	// Calculate mass value.
+	final int charge = getCharge(row);
 	final double massValue = (row.getAverageMZ() - ionType.getAddedMass())
 		* (double) charge;
 
+	final DBGateway gateway = gateways.take();
+	try {
+
+	    // Process each one of the result ID's.
+	    final String[] findCompounds = gateway.findCompounds(massValue,
+		    mzTolerance, numOfResults, db.getParameterSet());
+	    final DBCompound[] compounds = new DBCompound[findCompounds.length];
+	    for (int i = 0; i < findCompounds.length; i++) {
+		if (isCanceled())
+		    return new DBCompound[0];
+		compounds[i] = gateway.getCompound(findCompounds[i],
+			db.getParameterSet());
+	    }
+	    return compounds;
+
+	} finally {
+	    gateways.add(gateway);
+	}
+    }
+
+    /**
+     * Add the compounds retrieved from the database to the peak list row.
+     * 
+     * @param row
+     *            the peak list row.
+     * @param compounds
+     *            the compounds found in the database.
+     */
+    private void addIdentities(final PeakListRow row,
+	    final DBCompound[] compounds) {
+
+	currentRow = row;
+
+	// Determine peak charge.
+	final Feature bestPeak = row.getBestPeak();
+	final int charge = getCharge(row);
+
 	// Isotope pattern.
 	final IsotopePattern rowIsotopePattern = bestPeak.getIsotopePattern();
 
-	// Process each one of the result ID's.
-	final String[] findCompounds = gateway.findCompounds(massValue,
-		mzTolerance, numOfResults, db.getParameterSet());
-	for (int i = 0; !isCanceled() && i < findCompounds.length; i++) {
+	for (int i = 0; !isCanceled() && i < compounds.length; i++) {
 
-	    final DBCompound compound = gateway.getCompound(findCompounds[i],
-		    db.getParameterSet());
+	    final DBCompound compound = compounds[i];
 	    final String formula = compound
 		    .getPropertyValue(PeakIdentity.PROPERTY_FORMULA);
 
@@ -228,4 +322,15 @@ public class PeakListIdentificationTask extends AbstractTask {
 	    MZmineCore.getDesktop().getMainWindow().repaint();
 	}
     }
+
+    /**
+     * Determine peak charge.
+     */
+    private static int getCharge(final PeakListRow row) {
+	int charge = row.getBestPeak().getCharge();
+	if (charge <= 0) {
+	    charge = 1;
+	}
+	return charge;
+    }
 }
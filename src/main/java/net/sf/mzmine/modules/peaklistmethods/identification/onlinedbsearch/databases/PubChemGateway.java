@@ -20,6 +20,7 @@
 package net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch.databases;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URL;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -34,10 +35,12 @@ import net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch.DBGat
 import net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch.OnlineDatabase;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.parametertypes.MZTolerance;
+import net.sf.mzmine.util.InetUtils;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 import com.google.common.collect.Range;
 
@@ -74,7 +77,9 @@ public class PubChemGateway implements DBGateway {
 	try {
 	    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
 	    DocumentBuilder builder = dbf.newDocumentBuilder();
-	    Document parsedResult = builder.parse(pubchemUrl.toString());
+	    Document parsedResult = builder.parse(new InputSource(
+		    new StringReader(InetUtils.retrieveData(new URL(pubchemUrl
+			    .toString())))));
 
 	    XPathFactory factory = XPathFactory.newInstance();
 	    XPath xpath = factory.newXPath();
@@ -112,7 +117,8 @@ public class PubChemGateway implements DBGateway {
 
 	    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
 	    DocumentBuilder builder = dbf.newDocumentBuilder();
-	    Document parsedResult = builder.parse(url);
+	    Document parsedResult = builder.parse(new InputSource(
+		    new StringReader(InetUtils.retrieveData(new URL(url)))));
 
 	    XPathFactory factory = XPathFactory.newInstance();
 	    XPath xpath = factory.newXPath();
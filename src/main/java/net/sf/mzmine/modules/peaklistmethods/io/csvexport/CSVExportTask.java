@@ -19,8 +19,18 @@
 
 package net.sf.mzmine.modules.peaklistmethods.io.csvexport;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.Feature.FeatureStatus;
@@ -30,13 +40,26 @@ import net.sf.mzmine.datamodel.PeakListRow;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ExceptionUtils;
 import net.sf.mzmine.util.RangeUtils;
 
 class CSVExportTask extends AbstractTask {
 
+    /**
+     * Rows are encoded to text in chunks of this size. The chunks are encoded
+     * in parallel and written to the file in the original order.
+     */
+    private static final int ROWS_PER_CHUNK = 500;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private static final Pattern controlCharacters = Pattern
+	    .compile("[\\p{Cntrl}]");
+
     private PeakList peakList;
-    private int processedRows = 0, totalRows = 0;
+    private volatile int processedRows = 0, totalRows = 0;
 
     // parameter values
     private File fileName;
@@ -44,6 +67,7 @@ class CSVExportTask extends AbstractTask {
     private ExportRowCommonElement[] commonElements;
     private String[] identityElements;
     private ExportRowDataFileElement[] dataFileElements;
+    private boolean compress;
 
     CSVExportTask(ParameterSet parameters) {
 
@@ -63,6 +87,12 @@ class CSVExportTask extends AbstractTask {
 	dataFileElements = parameters.getParameter(
 		CSVExportParameters.exportDataFileItems).getValue();
 
+	Boolean compressValue = parameters.getParameter(
+		CSVExportParameters.compress).getValue();
+	compress = (compressValue != null) && compressValue;
+	if (compress && !fileName.getName().endsWith(".gz"))
+	    fileName = new File(fileName.getPath() + ".gz");
+
     }
 
     public double getFinishedPercentage() {
@@ -81,9 +111,16 @@ class CSVExportTask extends AbstractTask {
 	setStatus(TaskStatus.PROCESSING);
 
 	// Open file
-	FileWriter writer;
+	Writer writer;
 	try {
-	    writer = new FileWriter(fileName);
+	    OutputStream out;
+	    if (compress)
+		out = new GZIPOutputStream(new FileOutputStream(fileName),
+			WRITE_BUFFER_SIZE);
+	    else
+		out = new BufferedOutputStream(new FileOutputStream(fileName),
+			WRITE_BUFFER_SIZE);
+	    writer = new OutputStreamWriter(out);
 	} catch (Exception e) {
 	    setStatus(TaskStatus.ERROR);
 	    setErrorMessage("Could not open file " + fileName + " for writing.");
@@ -109,12 +146,12 @@ class CSVExportTask extends AbstractTask {
 
     }
 
-    private void exportPeakList(PeakList peakList, FileWriter writer) {
+    private void exportPeakList(PeakList peakList, Writer writer) {
 
-	RawDataFile rawDataFiles[] = peakList.getRawDataFiles();
+	final RawDataFile rawDataFiles[] = peakList.getRawDataFiles();
 
 	// Buffer for writing
-	StringBuffer line = new StringBuffer();
+	StringBuilder line = new StringBuilder();
 
 	// Write column headers
 	// Common elements
@@ -155,128 +192,169 @@ class CSVExportTask extends AbstractTask {
 	    return;
 	}
 
-	// Write data rows
-	for (PeakListRow peakListRow : peakList.getRows()) {
+	// Write data rows. The chunks of rows are encoded by a pool of
+	// threads, while this thread writes the encoded chunks in order. The
+	// number of chunks in progress is limited, to limit memory use.
+	final PeakListRow rows[] = peakList.getRows();
+	final int numOfThreads = SharedTaskExecutor.getNumOfThreads();
+	final int maxPendingChunks = numOfThreads * 2;
+	ExecutorService encoders = SharedTaskExecutor.newExecutor();
+	ArrayDeque<Future<String>> pendingChunks = new ArrayDeque<Future<String>>();
+	int nextChunkStart = 0;
 
-	    // Cancel?
-	    if (isCanceled()) {
-		return;
-	    }
+	try {
 
-	    // Reset the buffer
-	    line.setLength(0);
+	    while ((nextChunkStart < rows.length) || !pendingChunks.isEmpty()) {
 
-	    // Common elements
-	    length = commonElements.length;
-	    for (int i = 0; i < length; i++) {
-		switch (commonElements[i]) {
-		case ROW_ID:
-		    line.append(peakListRow.getID() + fieldSeparator);
-		    break;
-		case ROW_MZ:
-		    line.append(peakListRow.getAverageMZ() + fieldSeparator);
-		    break;
-		case ROW_RT:
-		    line.append(peakListRow.getAverageRT() + fieldSeparator);
-		    break;
-		case ROW_COMMENT:
-		    String comment = escapeStringForCSV(peakListRow
-			    .getComment());
-		    line.append(comment + fieldSeparator);
-		    break;
-		case ROW_PEAK_NUMBER:
-		    int numDetected = 0;
-		    for (Feature p : peakListRow.getPeaks()) {
-			if (p.getFeatureStatus() == FeatureStatus.DETECTED) {
-			    numDetected++;
-			}
-		    }
-		    line.append(numDetected + fieldSeparator);
-		    break;
+		// Cancel?
+		if (isCanceled()) {
+		    return;
 		}
-	    }
 
-	    // Identity elements
-	    length = identityElements.length;
-	    PeakIdentity peakIdentity = peakListRow.getPreferredPeakIdentity();
-	    if (peakIdentity != null) {
-		for (int i = 0; i < length; i++) {
-		    String propertyValue = escapeStringForCSV(peakIdentity
-			    .getPropertyValue(identityElements[i]));
-		    line.append(propertyValue + fieldSeparator);
-		}
-	    } else {
-		for (int i = 0; i < length; i++) {
-		    line.append(fieldSeparator);
+		while ((pendingChunks.size() < maxPendingChunks)
+			&& (nextChunkStart < rows.length)) {
+		    final int chunkStart = nextChunkStart;
+		    final int chunkEnd = Math.min(rows.length, chunkStart
+			    + ROWS_PER_CHUNK);
+		    pendingChunks.add(encoders.submit(new Callable<String>() {
+			public String call() {
+			    StringBuilder chunk = new StringBuilder();
+			    for (int i = chunkStart; i < chunkEnd; i++)
+				encodeRow(rows[i], rawDataFiles, chunk);
+			    return chunk.toString();
+			}
+		    }));
+		    nextChunkStart = chunkEnd;
 		}
+
+		String chunk = pendingChunks.poll().get();
+		writer.write(chunk);
+
+		processedRows = Math.min(totalRows, processedRows
+			+ ROWS_PER_CHUNK);
 	    }
 
-	    // Data file elements
-	    length = dataFileElements.length;
-	    for (RawDataFile dataFile : rawDataFiles) {
-		for (int i = 0; i < length; i++) {
-		    Feature peak = peakListRow.getPeak(dataFile);
-		    if (peak != null) {
-			switch (dataFileElements[i]) {
-			case PEAK_STATUS:
-			    line.append(peak.getFeatureStatus()
-				    + fieldSeparator);
-			    break;
-			case PEAK_MZ:
-			    line.append(peak.getMZ() + fieldSeparator);
-			    break;
-			case PEAK_RT:
-			    line.append(peak.getRT() + fieldSeparator);
-			    break;
-			case PEAK_RT_START:
-			    line.append(peak.getRawDataPointsRTRange().lowerEndpoint() + fieldSeparator);
-			    break;
-			case PEAK_RT_END:
-			    line.append(peak.getRawDataPointsRTRange().upperEndpoint() + fieldSeparator);
-			    break;
-			case PEAK_HEIGHT:
-			    line.append(peak.getHeight() + fieldSeparator);
-			    break;
-			case PEAK_AREA:
-			    line.append(peak.getArea() + fieldSeparator);
-			    break;
-			case PEAK_CHARGE:
-			    line.append(peak.getCharge() + fieldSeparator);
-			    break;
-			case PEAK_DATAPOINTS:
-			    line.append(peak.getScanNumbers().length + fieldSeparator);
-			    break;
-			case PEAK_DURATION:
-			    line.append(RangeUtils.rangeLength(peak
-				    .getRawDataPointsRTRange())
-				    + fieldSeparator);
-			    break;
-			}
-		    } else {
-			switch (dataFileElements[i]) {
-			case PEAK_STATUS:
-			    line.append(FeatureStatus.UNKNOWN + fieldSeparator);
-			    break;
-			default:
-			    line.append("0" + fieldSeparator);
-			    break;
-			}
+	} catch (Exception e) {
+	    setStatus(TaskStatus.ERROR);
+	    setErrorMessage("Could not write to file " + fileName + ": "
+		    + ExceptionUtils.exceptionToString(e));
+	    return;
+	} finally {
+	    encoders.shutdownNow();
+	}
+    }
+
+    /**
+     * Appends one line of the CSV file representing given row to the buffer.
+     * This method is called from multiple threads at once.
+     */
+    private void encodeRow(PeakListRow peakListRow,
+	    RawDataFile rawDataFiles[], StringBuilder line) {
+
+	// Common elements
+	int length = commonElements.length;
+	for (int i = 0; i < length; i++) {
+	    switch (commonElements[i]) {
+	    case ROW_ID:
+		line.append(peakListRow.getID()).append(fieldSeparator);
+		break;
+	    case ROW_MZ:
+		line.append(peakListRow.getAverageMZ()).append(fieldSeparator);
+		break;
+	    case ROW_RT:
+		line.append(peakListRow.getAverageRT()).append(fieldSeparator);
+		break;
+	    case ROW_COMMENT:
+		String comment = escapeStringForCSV(peakListRow.getComment());
+		line.append(comment).append(fieldSeparator);
+		break;
+	    case ROW_PEAK_NUMBER:
+		int numDetected = 0;
+		for (Feature p : peakListRow.getPeaks()) {
+		    if (p.getFeatureStatus() == FeatureStatus.DETECTED) {
+			numDetected++;
 		    }
 		}
+		line.append(numDetected).append(fieldSeparator);
+		break;
 	    }
+	}
 
-	    line.append("\n");
-
-	    try {
-		writer.write(line.toString());
-	    } catch (Exception e) {
-		setStatus(TaskStatus.ERROR);
-		setErrorMessage("Could not write to file " + fileName);
-		return;
+	// Identity elements
+	length = identityElements.length;
+	PeakIdentity peakIdentity = peakListRow.getPreferredPeakIdentity();
+	if (peakIdentity != null) {
+	    for (int i = 0; i < length; i++) {
+		String propertyValue = escapeStringForCSV(peakIdentity
+			.getPropertyValue(identityElements[i]));
+		line.append(propertyValue).append(fieldSeparator);
 	    }
+	} else {
+	    for (int i = 0; i < length; i++) {
+		line.append(fieldSeparator);
+	    }
+	}
 
-	    processedRows++;
+	// Data file elements
+	length = dataFileElements.length;
+	for (RawDataFile dataFile : rawDataFiles) {
+
+	    // Look up the peak only once for all the elements
+	    Feature peak = peakListRow.getPeak(dataFile);
+
+	    for (int i = 0; i < length; i++) {
+		if (peak != null) {
+		    switch (dataFileElements[i]) {
+		    case PEAK_STATUS:
+			line.append(peak.getFeatureStatus());
+			break;
+		    case PEAK_MZ:
+			line.append(peak.getMZ());
+			break;
+		    case PEAK_RT:
+			line.append(peak.getRT());
+			break;
+		    case PEAK_RT_START:
+			line.append(peak.getRawDataPointsRTRange()
+				.lowerEndpoint());
+			break;
+		    case PEAK_RT_END:
+			line.append(peak.getRawDataPointsRTRange()
+				.upperEndpoint());
+			break;
+		    case PEAK_HEIGHT:
+			line.append(peak.getHeight());
+			break;
+		    case PEAK_AREA:
+			line.append(peak.getArea());
+			break;
+		    case PEAK_CHARGE:
+			line.append(peak.getCharge());
+			break;
+		    case PEAK_DATAPOINTS:
+			line.append(peak.getScanNumbers().length);
+			break;
+		    case PEAK_DURATION:
+			line.append(RangeUtils.rangeLength(peak
+				.getRawDataPointsRTRange()));
+			break;
+		    }
+		} else {
+		    switch (dataFileElements[i]) {
+		    case PEAK_STATUS:
+			line.append(FeatureStatus.UNKNOWN);
+			break;
+		    default:
+			line.append('0');
+			break;
+		    }
+		}
+		line.append(fieldSeparator);
+	    }
 	}
+
+	line.append('\n');
+
     }
 
     private String escapeStringForCSV(final String inputString) {
@@ -286,12 +364,12 @@ class CSVExportTask extends AbstractTask {
 
 	// Remove all special characters (particularly \n would mess up our CSV
 	// format).
-	String result = inputString.replaceAll("[\\p{Cntrl}]", " ");
+	String result = controlCharacters.matcher(inputString).replaceAll(" ");
 
 	// If the text contains fieldSeparator, we will add
 	// parenthesis
 	if (result.contains(fieldSeparator)) {
-	    result = "\"" + result.replaceAll("\"", "'") + "\"";
+	    result = "\"" + result.replace('"', '\'') + "\"";
 	}
 
 	return result;
@@ -22,6 +22,7 @@ package net.sf.mzmine.modules.peaklistmethods.io.sqlexport;
 import net.sf.mzmine.parameters.Parameter;
 import net.sf.mzmine.parameters.impl.SimpleParameterSet;
 import net.sf.mzmine.parameters.parametertypes.BooleanParameter;
+import net.sf.mzmine.parameters.parametertypes.IntegerParameter;
 import net.sf.mzmine.parameters.parametertypes.PeakListsParameter;
 import net.sf.mzmine.parameters.parametertypes.StringParameter;
 
@@ -45,9 +46,24 @@ public class SQLExportParameters extends SimpleParameterSet {
     public static final BooleanParameter emptyExport = new BooleanParameter(
 	    "Export empty peak list", "If selected, an empty peak list will be exported with null values for all column other than the rawdatafile and any constant values."); 
 
+    public static final IntegerParameter batchSize = new IntegerParameter(
+	    "Batch size",
+	    "Number of records sent to the database at once", 1000, 1, null);
+
+    public static final IntegerParameter commitInterval = new IntegerParameter(
+	    "Commit interval",
+	    "Number of records after which the transaction is committed. If 0, all records are committed at the end of the export.",
+	    0, 0, null);
+
+    public static final BooleanParameter multiRowInsert = new BooleanParameter(
+	    "Multi-row INSERT",
+	    "If selected, each batch is sent as a single INSERT statement with multiple VALUES rows. This is usually faster, but not supported by all databases.",
+	    false);
+
     public SQLExportParameters() {
 	super(new Parameter[] { peakList, connectionString, tableName,
-		exportColumns, emptyExport });
+		exportColumns, emptyExport, batchSize, commitInterval,
+		multiRowInsert });
     }
 
 }
@@ -25,6 +25,7 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.Feature;
@@ -35,25 +36,56 @@ import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
-import net.sf.mzmine.modules.peaklistmethods.io.mztabexport.MzTabExportParameters;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.RangeUtils;
 import net.sf.mzmine.util.ScanUtils;
 
+/**
+ * Exports the peak list rows into a database table. A single prepared INSERT
+ * statement is reused for the whole export. The records are sent to the
+ * database in batches of batchSize records, either as JDBC batches or, in the
+ * multi-row mode, as one INSERT statement with multiple VALUES tuples.
+ */
 class SQLExportTask extends AbstractTask {
 
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    /*
+     * Maximum number of parameters in one multi-row INSERT statement. Most
+     * databases limit the number of bind parameters per statement (e.g.
+     * SQLite to 32766, PostgreSQL and MySQL to 65535).
+     */
+    private static final int MAX_STATEMENT_PARAMETERS = 32766;
+
     private final PeakList peakList;
     private final String connectionString;
     private final String tableName;
     private final SQLColumnSettings exportColumns;
     private final boolean emptyExport;
+    private final int batchSize, commitInterval;
+    private final boolean multiRowInsert;
 
     private int processedRows = 0, totalRows = 0;
 
     private Connection dbConnection;
 
+    // Data types of the exported columns
+    private SQLExportDataType columnTypes[];
+    private String columnValues[];
+
+    // True if any data file element is exported, in that case one record is
+    // written for each raw data file of a peak list row
+    private boolean loopDataFiles;
+
+    // Records waiting to be sent to the database
+    private Object pendingRecords[][];
+    private int numPendingRecords = 0, uncommittedRecords = 0;
+
+    // Statement inserting pendingRecords.length records
+    private PreparedStatement statement;
+
     SQLExportTask(ParameterSet parameters) {
 
 	this.peakList = parameters.getParameter(SQLExportParameters.peakList)
@@ -67,6 +99,12 @@ class SQLExportTask extends AbstractTask {
 		SQLExportParameters.exportColumns).getValue();
 	this.emptyExport = parameters.getParameter(
 		SQLExportParameters.emptyExport).getValue();
+	this.batchSize = parameters.getParameter(
+		SQLExportParameters.batchSize).getValue();
+	this.commitInterval = parameters.getParameter(
+		SQLExportParameters.commitInterval).getValue();
+	this.multiRowInsert = parameters.getParameter(
+		SQLExportParameters.multiRowInsert).getValue();
 
     }
 
@@ -88,6 +126,24 @@ class SQLExportTask extends AbstractTask {
 	// Get number of rows
 	totalRows = peakList.getNumberOfRows();
 
+	final int numColumns = exportColumns.getRowCount();
+	columnTypes = new SQLExportDataType[numColumns];
+	columnValues = new String[numColumns];
+	loopDataFiles = false;
+	for (int i = 0; i < numColumns; i++) {
+	    columnTypes[i] = (SQLExportDataType) exportColumns.getValueAt(i, 1);
+	    columnValues[i] = (String) exportColumns.getValueAt(i, 2);
+	    if (isDataFileElement(columnTypes[i]))
+		loopDataFiles = true;
+	}
+
+	int recordsPerStatement = Math.max(1, batchSize);
+	if (multiRowInsert && numColumns > 0) {
+	    recordsPerStatement = Math.min(recordsPerStatement,
+		    Math.max(1, MAX_STATEMENT_PARAMETERS / numColumns));
+	}
+	pendingRecords = new Object[recordsPerStatement][];
+
 	try {
 	    this.dbConnection = DriverManager.getConnection(connectionString);
 	} catch (SQLException e) {
@@ -101,11 +157,15 @@ class SQLExportTask extends AbstractTask {
 
 	try {
 	    dbConnection.setAutoCommit(false);
-	    
+
+	    int statementRecords = multiRowInsert ? recordsPerStatement : 1;
+	    statement = dbConnection
+		    .prepareStatement(createInsertSQL(statementRecords));
+
 	    // If select, an empty row with just the raw data file
 	    // information will be exported
 	    if (rows.length < 1 && emptyExport) {
-		exportPeakListRow(null);
+		addRecord(createEmptyRecord());
 	    }
 	    else {
 		for (PeakListRow row : rows) {
@@ -115,11 +175,19 @@ class SQLExportTask extends AbstractTask {
 		    processedRows++;
 		}
 	    }
+
+	    flushRecords();
+	    statement.close();
 	    dbConnection.commit();
 	    dbConnection.close();
 	} catch (SQLException e) {
 	    setStatus(TaskStatus.ERROR);
 	    setErrorMessage("Error running SQL query: " + e.toString());
+	    try {
+		dbConnection.close();
+	    } catch (SQLException e2) {
+		// Ignore, the original error has been reported already
+	    }
 	    return;
 	}
 
@@ -128,185 +196,269 @@ class SQLExportTask extends AbstractTask {
 
     }
 
-    private void exportPeakListRow(PeakListRow row) throws SQLException {
+    /**
+     * Creates the INSERT statement for given number of records
+     */
+    private String createInsertSQL(int numRecords) {
 
-	// Cancel?
-	if (isCanceled()) {
-	    return;
-	}
-
-	// Value for looping through raw data files
-	boolean loopDataFiles = false;
+	final int numColumns = columnTypes.length;
 
 	StringBuilder sql = new StringBuilder();
 	sql.append("INSERT INTO ");
 	sql.append(tableName);
 	sql.append(" (");
-	for (int i = 0; i < exportColumns.getRowCount(); i++) {
+	for (int i = 0; i < numColumns; i++) {
 	    sql.append(exportColumns.getValueAt(i, 0));
-	    if (i < exportColumns.getRowCount() - 1)
+	    if (i < numColumns - 1)
 		sql.append(",");
 	}
-	sql.append(" ) VALUES (");
-	for (int i = 0; i < exportColumns.getRowCount(); i++) {
-	    sql.append("?");
-	    if (i < exportColumns.getRowCount() - 1)
+	sql.append(" ) VALUES ");
+	for (int r = 0; r < numRecords; r++) {
+	    if (r > 0)
 		sql.append(",");
+	    sql.append("(");
+	    for (int i = 0; i < numColumns; i++) {
+		sql.append("?");
+		if (i < numColumns - 1)
+		    sql.append(",");
+	    }
+	    sql.append(")");
 	}
-	sql.append(")");
-
-	PreparedStatement statement = dbConnection.prepareStatement(sql
-		.toString());
-	
-	if (row == null) {
-	    for (int i = 0; i < exportColumns.getRowCount(); i++) {
-		SQLExportDataType dataType = (SQLExportDataType) exportColumns
-		    .getValueAt(i, 1);
-		String dataValue = (String) exportColumns.getValueAt(i, 2);
-		switch (dataType) {
-		    case CONSTANT:
-			statement.setString(i + 1, dataValue);
-			break;
-		    case RAWFILE:
-			RawDataFile rawdatafiles[] = peakList.getRawDataFiles();
-			statement.setString(i + 1, rawdatafiles[0].getName());
-			break;
-		    default:
-			statement.setString(i + 1, null);
-			break;
-		}
+	return sql.toString();
+    }
+
+    private void exportPeakListRow(PeakListRow row) throws SQLException {
+
+	// Cancel?
+	if (isCanceled()) {
+	    return;
+	}
+
+	for (RawDataFile rawDataFile : row.getRawDataFiles()) {
+
+	    addRecord(createRecord(row, rawDataFile));
+
+	    // If no data file elements are selected then don't loop through
+	    // all data files in peak list
+	    if (!loopDataFiles) {
+		break;
 	    }
-	    statement.executeUpdate();
 	}
-	
-	else {
-	    for (RawDataFile rawDataFile : row.getRawDataFiles()) {
-		Feature peak = row.getPeak(rawDataFile);
-
-		for (int i = 0; i < exportColumns.getRowCount(); i++) {
-		    SQLExportDataType dataType = (SQLExportDataType) exportColumns
-			.getValueAt(i, 1);
-		    String dataValue = (String) exportColumns.getValueAt(i, 2);
-		    switch (dataType) {
-		    case CONSTANT:
-			statement.setString(i + 1, dataValue);
-			break;
-		    case MZ:
-			statement.setDouble(i + 1, row.getAverageMZ());
-			break;
-		    case RT:
-			statement.setDouble(i + 1, row.getAverageRT());
-			break;
-		    case ID:
-			statement.setInt(i + 1, row.getID());
-			break;
-		    case PEAKCHARGE:
-			statement.setDouble(i + 1, peak.getCharge());
-			loopDataFiles = true;
+    }
+
+    /**
+     * Returns the record exported when the peak list is empty, containing only
+     * the constant values and the name of the first raw data file
+     */
+    private Object[] createEmptyRecord() {
+
+	Object record[] = new Object[columnTypes.length];
+	for (int i = 0; i < columnTypes.length; i++) {
+	    switch (columnTypes[i]) {
+	    case CONSTANT:
+		record[i] = columnValues[i];
+		break;
+	    case RAWFILE:
+		RawDataFile rawdatafiles[] = peakList.getRawDataFiles();
+		record[i] = rawdatafiles[0].getName();
+		break;
+	    default:
+		break;
+	    }
+	}
+	return record;
+    }
+
+    /**
+     * Returns the values of all exported columns for given row and raw data
+     * file. Null values are exported as SQL NULL, byte arrays as BLOBs.
+     */
+    private Object[] createRecord(PeakListRow row, RawDataFile rawDataFile) {
+
+	Feature peak = row.getPeak(rawDataFile);
+
+	Object record[] = new Object[columnTypes.length];
+	for (int i = 0; i < columnTypes.length; i++) {
+	    switch (columnTypes[i]) {
+	    case CONSTANT:
+		record[i] = columnValues[i];
+		break;
+	    case MZ:
+		record[i] = row.getAverageMZ();
+		break;
+	    case RT:
+		record[i] = row.getAverageRT();
+		break;
+	    case ID:
+		record[i] = row.getID();
+		break;
+	    case PEAKCHARGE:
+		record[i] = (double) peak.getCharge();
+		break;
+	    case PEAKDURATION:
+		record[i] = RangeUtils.rangeLength(peak
+			.getRawDataPointsRTRange());
+		break;
+	    case PEAKSTATUS:
+		record[i] = peak.getFeatureStatus().name();
+		break;
+	    case PEAKMZ:
+		record[i] = peak.getMZ();
+		break;
+	    case PEAKRT:
+		record[i] = peak.getRT();
+		break;
+	    case PEAKRT_START:
+		record[i] = peak.getRawDataPointsRTRange().lowerEndpoint();
+		break;
+	    case PEAKRT_END:
+		record[i] = peak.getRawDataPointsRTRange().upperEndpoint();
+		break;
+	    case PEAKHEIGHT:
+		record[i] = peak.getHeight();
+		break;
+	    case PEAKAREA:
+		record[i] = peak.getArea();
+		break;
+	    case DATAPOINTS:
+		record[i] = (double) peak.getScanNumbers().length;
+		break;
+	    case RAWFILE:
+		record[i] = rawDataFile.getName();
+		break;
+	    case HEIGHT:
+		record[i] = row.getAverageHeight();
+		break;
+	    case AREA:
+		record[i] = row.getAverageArea();
+		break;
+	    case COMMENT:
+		record[i] = row.getComment();
+		break;
+	    case IDENTITY:
+		PeakIdentity id = row.getPreferredPeakIdentity();
+		if (id != null) {
+		    record[i] = id.getName();
+		}
+		break;
+	    case ISOTOPEPATTERN:
+		IsotopePattern isotopes = row.getBestIsotopePattern();
+		if (isotopes == null) {
+		    break;
+		}
+		DataPoint dataPoints[] = isotopes.getDataPoints();
+		record[i] = ScanUtils.encodeDataPointsToBytes(dataPoints);
+		break;
+	    case MSMS:
+		int msmsScanNum = row.getBestPeak()
+			.getMostIntenseFragmentScanNumber();
+		// Check if there is any MS/MS scan
+		if (msmsScanNum <= 0) {
+		    break;
+		}
+		RawDataFile dataFile = row.getBestPeak().getDataFile();
+		Scan msmsScan = dataFile.getScan(msmsScanNum);
+		MassList msmsMassList = msmsScan.getMassList(columnValues[i]);
+		// Check if there is a masslist for the scan
+		if (msmsMassList == null) {
 		    break;
-		    case PEAKDURATION:
-			statement.setDouble(i + 1, RangeUtils.rangeLength(peak
-			    .getRawDataPointsRTRange()));
-			loopDataFiles = true;
-			break;
-		    case PEAKSTATUS:
-			statement.setString(i + 1, peak.getFeatureStatus().name());
-			loopDataFiles = true;
-			break;
-		    case PEAKMZ:
-			statement.setDouble(i + 1, peak.getMZ());
-			loopDataFiles = true;
-			break;
-		    case PEAKRT:
-			statement.setDouble(i + 1, peak.getRT());
-			loopDataFiles = true;
-			break;
-		    case PEAKRT_START:
-			statement.setDouble(i + 1, peak.getRawDataPointsRTRange().lowerEndpoint());
-			loopDataFiles = true;
-			break;
-		    case PEAKRT_END:
-			statement.setDouble(i + 1, peak.getRawDataPointsRTRange().upperEndpoint());
-			loopDataFiles = true;
-			break;
-		    case PEAKHEIGHT:
-			statement.setDouble(i + 1, peak.getHeight());
-			loopDataFiles = true;
-			break;
-		    case PEAKAREA:
-			statement.setDouble(i + 1, peak.getArea());
-			loopDataFiles = true;
-			break;
-		    case DATAPOINTS:
-			statement.setDouble(i + 1, peak.getScanNumbers().length);
-			loopDataFiles = true;
-			break;
-		    case RAWFILE:
-			statement.setString(i + 1, rawDataFile.getName());
-			loopDataFiles = true;
-			break;
-		    case HEIGHT:
-			statement.setDouble(i + 1, row.getAverageHeight());
-			break;
-		    case AREA:
-			statement.setDouble(i + 1, row.getAverageArea());
-			break;
-		    case COMMENT:
-			statement.setString(i + 1, row.getComment());
-			break;
-		    case IDENTITY:
-			PeakIdentity id = row.getPreferredPeakIdentity();
-			if (id != null) {
-			    statement.setString(i + 1, id.getName());
-			} else {
-			    statement.setNull(i + 1, Types.VARCHAR);
-			}
-			break;
-		    case ISOTOPEPATTERN:
-			IsotopePattern isotopes = row.getBestIsotopePattern();
-			if (isotopes == null) {
-			    statement.setNull(i + 1, Types.BLOB);
-			    break;
-			}
-			DataPoint dataPoints[] = isotopes.getDataPoints();
-			byte bytes[] = ScanUtils
-			    .encodeDataPointsToBytes(dataPoints);
-			ByteArrayInputStream is = new ByteArrayInputStream(bytes);
-			statement.setBlob(i + 1, is);
-			break;
-		    case MSMS:
-			int msmsScanNum = row.getBestPeak()
-			    .getMostIntenseFragmentScanNumber();
-			// Check if there is any MS/MS scan
-			if (msmsScanNum <= 0) {
-			    statement.setNull(i + 1, Types.BLOB);
-			    break;
-			}
-			RawDataFile dataFile = row.getBestPeak().getDataFile();
-			Scan msmsScan = dataFile.getScan(msmsScanNum);
-			MassList msmsMassList = msmsScan.getMassList(dataValue);
-			// Check if there is a masslist for the scan
-			if (msmsMassList == null) {
-			    statement.setNull(i + 1, Types.BLOB);
-			    break;
-			}
-			dataPoints = msmsMassList.getDataPoints();
-			bytes = ScanUtils.encodeDataPointsToBytes(dataPoints);
-			is = new ByteArrayInputStream(bytes);
-			statement.setBlob(i + 1, is);
-			break;
-		    default:
-			break;
-		    }
 		}
-		statement.executeUpdate();
+		dataPoints = msmsMassList.getDataPoints();
+		record[i] = ScanUtils.encodeDataPointsToBytes(dataPoints);
+		break;
+	    default:
+		break;
+	    }
+	}
+	return record;
+    }
 
-		// If no data file elements are selected then don't loop through all
-		// data files in peak list
-	   	if (!loopDataFiles) {
-	   	    break;
-	   	}
+    private void addRecord(Object record[]) throws SQLException {
+	pendingRecords[numPendingRecords++] = record;
+	if (numPendingRecords == pendingRecords.length)
+	    flushRecords();
+    }
+
+    /**
+     * Sends all pending records to the database and commits the transaction,
+     * if the commit interval has been reached
+     */
+    private void flushRecords() throws SQLException {
+
+	if (numPendingRecords == 0)
+	    return;
+
+	if (multiRowInsert) {
+	    PreparedStatement insert = statement;
+	    // The last statement of the export may contain less records
+	    if (numPendingRecords < pendingRecords.length)
+		insert = dbConnection
+			.prepareStatement(createInsertSQL(numPendingRecords));
+	    for (int r = 0; r < numPendingRecords; r++) {
+		setValues(insert, r * columnTypes.length, pendingRecords[r]);
+	    }
+	    insert.executeUpdate();
+	    if (insert != statement)
+		insert.close();
+	} else {
+	    for (int r = 0; r < numPendingRecords; r++) {
+		setValues(statement, 0, pendingRecords[r]);
+		statement.addBatch();
 	    }
+	    statement.executeBatch();
+	}
+
+	uncommittedRecords += numPendingRecords;
+	for (int r = 0; r < numPendingRecords; r++)
+	    pendingRecords[r] = null;
+	numPendingRecords = 0;
+
+	if ((commitInterval > 0) && (uncommittedRecords >= commitInterval)) {
+	    logger.finest("Committing " + uncommittedRecords
+		    + " records into table " + tableName);
+	    dbConnection.commit();
+	    uncommittedRecords = 0;
+	}
+    }
+
+    private void setValues(PreparedStatement insert, int offset,
+	    Object record[]) throws SQLException {
+	for (int i = 0; i < record.length; i++) {
+	    final int index = offset + i + 1;
+	    final Object value = record[i];
+	    if (value instanceof Double) {
+		insert.setDouble(index, (Double) value);
+	    } else if (value instanceof Integer) {
+		insert.setInt(index, (Integer) value);
+	    } else if (value instanceof String) {
+		insert.setString(index, (String) value);
+	    } else if (value instanceof byte[]) {
+		insert.setBlob(index, new ByteArrayInputStream((byte[]) value));
+	    } else if ((columnTypes[i] == SQLExportDataType.ISOTOPEPATTERN)
+		    || (columnTypes[i] == SQLExportDataType.MSMS)) {
+		insert.setNull(index, Types.BLOB);
+	    } else {
+		insert.setNull(index, Types.VARCHAR);
+	    }
+	}
+    }
+
+    private static boolean isDataFileElement(SQLExportDataType dataType) {
+	switch (dataType) {
+	case PEAKSTATUS:
+	case PEAKMZ:
+	case PEAKRT:
+	case PEAKRT_START:
+	case PEAKRT_END:
+	case PEAKDURATION:
+	case PEAKHEIGHT:
+	case PEAKAREA:
+	case PEAKCHARGE:
+	case DATAPOINTS:
+	case RAWFILE:
+	    return true;
+	default:
+	    return false;
 	}
     }
 }
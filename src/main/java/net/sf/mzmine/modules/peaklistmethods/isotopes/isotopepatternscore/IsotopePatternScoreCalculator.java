@@ -32,8 +32,6 @@ import net.sf.mzmine.util.DataPointSorter;
 import net.sf.mzmine.util.SortingDirection;
 import net.sf.mzmine.util.SortingProperty;
 
-import com.google.common.collect.Range;
-
 public class IsotopePatternScoreCalculator {
 
     public static boolean checkMatch(IsotopePattern ip1, IsotopePattern ip2,
@@ -100,10 +98,8 @@ public class IsotopePatternScoreCalculator {
 	// tolerance
 	for (int i = 0; i < mergedDPArray.length - 1; i++) {
 
-	    Range<Double> toleranceRange = mzTolerance
-		    .getToleranceRange(mergedDPArray[i].getMZ());
-
-	    if (!toleranceRange.contains(mergedDPArray[i + 1].getMZ()))
+	    if (!mzTolerance.contains(mergedDPArray[i].getMZ(),
+		    mergedDPArray[i + 1].getMZ()))
 		continue;
 
 	    double summedIntensity = mergedDPArray[i].getIntensity()
@@ -23,6 +23,12 @@ import static net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.De
 import static net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.DeconvolutionParameters.PEAK_RESOLVER;
 import static net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.DeconvolutionParameters.SUFFIX;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,6 +45,7 @@ import net.sf.mzmine.datamodel.impl.SimplePeakListRow;
 import net.sf.mzmine.modules.MZmineProcessingStep;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 
 public class DeconvolutionTask extends AbstractTask {
@@ -47,6 +54,9 @@ public class DeconvolutionTask extends AbstractTask {
     private static final Logger LOG = Logger.getLogger(DeconvolutionTask.class
 	    .getName());
 
+    // Number of chromatograms resolved by one thread at a time.
+    private static final int CHROMATOGRAMS_PER_CHUNK = 100;
+
     // Peak lists.
     private final MZmineProject project;
     private final PeakList originalPeakList;
@@ -145,9 +155,10 @@ public class DeconvolutionTask extends AbstractTask {
      *            holds the chromatogram to deconvolve.
      * @return a new peak list holding the resolved peaks.
      */
-    private PeakList resolvePeaks(final PeakList peakList) {
+    private PeakList resolvePeaks(final PeakList peakList) throws Exception {
 
-	// Get data file information.
+	// Get data file information. The scan numbers and retention times are
+	// shared by all resolver threads.
 	final RawDataFile dataFile = peakList.getRawDataFile(0);
 	final int[] scanNumbers = dataFile.getScanNumbers(1);
 	final int scanCount = scanNumbers.length;
@@ -162,6 +173,8 @@ public class DeconvolutionTask extends AbstractTask {
 
 	final MZmineProcessingStep<PeakResolver> resolver = parameters
 		.getParameter(PEAK_RESOLVER).getValue();
+	final PeakResolver resolverModule = resolver.getModule();
+	final ParameterSet resolverParams = resolver.getParameterSet();
 
 	// Create new peak list.
 	final PeakList resolvedPeaks = new SimplePeakList(peakList + " "
@@ -184,38 +197,163 @@ public class DeconvolutionTask extends AbstractTask {
 	totalRows = peakList.getNumberOfRows();
 	int peakId = 1;
 
-	// Process each chromatogram.
+	// Process each chromatogram. The chunks of chromatograms are resolved
+	// by a pool of threads, while this thread adds the resolved peaks to
+	// the peak list in the original order of the chromatograms, so the
+	// peak IDs do not depend on the number of threads. The number of
+	// chunks in progress is limited, to limit memory use.
 	final Feature[] chromatograms = peakList.getPeaks(dataFile);
 	final int chromatogramCount = chromatograms.length;
-	for (int index = 0; !isCanceled() && index < chromatogramCount; index++) {
+	final int numOfThreads = SharedTaskExecutor.getNumOfThreads();
+	final int maxPendingChunks = numOfThreads * 2;
+	final ExecutorService resolvers = SharedTaskExecutor.newExecutor();
+	final ArrayDeque<Future<Feature[][]>> pendingChunks = new ArrayDeque<Future<Feature[][]>>();
+	int nextChunkStart = 0;
+
+	try {
+
+	    while (!isCanceled()
+		    && (nextChunkStart < chromatogramCount || !pendingChunks
+			    .isEmpty())) {
+
+		while (pendingChunks.size() < maxPendingChunks
+			&& nextChunkStart < chromatogramCount) {
+
+		    final int chunkStart = nextChunkStart;
+		    final int chunkEnd = Math.min(chromatogramCount, chunkStart
+			    + CHROMATOGRAMS_PER_CHUNK);
+		    pendingChunks.add(resolvers
+			    .submit(new Callable<Feature[][]>() {
+				public Feature[][] call() {
+				    return resolveChromatograms(chromatograms,
+					    chunkStart, chunkEnd, scanNumbers,
+					    retentionTimes, resolverModule,
+					    resolverParams);
+				}
+			    }));
+		    nextChunkStart = chunkEnd;
+		}
 
-	    final Feature chromatogram = chromatograms[index];
+		final Feature[][] chunk;
+		try {
+		    chunk = pendingChunks.poll().get();
+		} catch (ExecutionException e) {
+
+		    // Report the exception thrown by the resolver.
+		    final Throwable cause = e.getCause();
+		    if (cause instanceof Exception)
+			throw (Exception) cause;
+		    if (cause instanceof Error)
+			throw (Error) cause;
+		    throw e;
+		}
 
-	    // Load the intensities into array.
-	    final double[] intensities = new double[scanCount];
-	    for (int i = 0; i < scanCount; i++) {
+		// Add peaks to the new peak list.
+		for (final Feature[] peaks : chunk) {
+
+		    // Chunk was not finished because the task was canceled.
+		    if (peaks == null)
+			break;
+
+		    for (final Feature peak : peaks) {
+
+			final PeakListRow newRow = new SimplePeakListRow(
+				peakId++);
+			newRow.addPeak(dataFile, peak);
+			resolvedPeaks.addRow(newRow);
+		    }
 
-		final DataPoint dp = chromatogram.getDataPoint(scanNumbers[i]);
-		intensities[i] = dp != null ? dp.getIntensity() : 0.0;
+		    processedRows++;
+		}
+	    }
+
+	} finally {
+	    resolvers.shutdownNow();
+	}
+
+	return resolvedPeaks;
+    }
+
+    /**
+     * Resolves the chromatograms from chunkStart (inclusive) to chunkEnd
+     * (exclusive). This method is called from multiple threads at once.
+     *
+     * @return the resolved peaks of each chromatogram of the chunk, null for
+     *         the chromatograms skipped because the task was canceled.
+     */
+    private Feature[][] resolveChromatograms(final Feature[] chromatograms,
+	    final int chunkStart, final int chunkEnd, final int[] scanNumbers,
+	    final double[] retentionTimes, final PeakResolver resolverModule,
+	    final ParameterSet resolverParams) {
+
+	final int scanCount = scanNumbers.length;
+	final boolean windowed = resolverModule.supportsWindowedInput();
+
+	// Intensities of all MS1 scans, reused for all chromatograms of this
+	// chunk. Only the chromatogram's data points are filled in, and the
+	// array is cleared again after each chromatogram.
+	final double[] intensities = new double[scanCount];
+
+	final Feature[][] resolved = new Feature[chunkEnd - chunkStart][];
+
+	for (int index = chunkStart; !isCanceled() && index < chunkEnd; index++) {
+
+	    final Feature chromatogram = chromatograms[index];
+
+	    // Load the intensities into array and find the window of scans
+	    // between the first and last data point. Both arrays of scan
+	    // numbers are sorted, so they can be walked through in parallel.
+	    int first = -1, last = -1;
+	    int i = 0;
+	    for (final int scanNumber : chromatogram.getScanNumbers()) {
+
+		while (i < scanCount && scanNumbers[i] < scanNumber)
+		    i++;
+		if (i == scanCount)
+		    break;
+		if (scanNumbers[i] != scanNumber)
+		    continue;
+
+		final DataPoint dp = chromatogram.getDataPoint(scanNumber);
+		if (dp == null)
+		    continue;
+
+		intensities[i] = dp.getIntensity();
+		if (first < 0)
+		    first = i;
+		last = i;
 	    }
 
 	    // Resolve peaks.
-	    final PeakResolver resolverModule = resolver.getModule();
-	    final ParameterSet resolverParams = resolver.getParameterSet();
-	    final Feature[] peaks = resolverModule.resolvePeaks(chromatogram,
-		    scanNumbers, retentionTimes, intensities, resolverParams);
+	    final Feature[] peaks;
+	    if (!windowed) {
+
+		peaks = resolverModule.resolvePeaks(chromatogram, scanNumbers,
+			retentionTimes, intensities, resolverParams);
+
+		// The resolver may have modified any of the intensities.
+		Arrays.fill(intensities, 0.0);
+
+	    } else if (first < 0) {
 
-	    // Add peaks to the new peak list.
-	    for (final Feature peak : peaks) {
+		// Nothing to resolve in an empty chromatogram.
+		peaks = new Feature[0];
 
-		final PeakListRow newRow = new SimplePeakListRow(peakId++);
-		newRow.addPeak(dataFile, peak);
-		resolvedPeaks.addRow(newRow);
+	    } else {
+
+		final double[] windowIntensities = Arrays.copyOfRange(
+			intensities, first, last + 1);
+		Arrays.fill(intensities, first, last + 1, 0.0);
+
+		peaks = resolverModule.resolvePeaks(chromatogram,
+			Arrays.copyOfRange(scanNumbers, first, last + 1),
+			Arrays.copyOfRange(retentionTimes, first, last + 1),
+			windowIntensities, resolverParams);
 	    }
 
-	    processedRows++;
+	    resolved[index - chunkStart] = peaks;
 	}
 
-	return resolvedPeaks;
+	return resolved;
     }
 }
@@ -30,10 +30,27 @@ public interface PeakResolver extends MZmineModule {
      * arrays (scanNumbers, retentionTimes and intensities) are provided,
      * although the contents of these arrays can also be obtained from the
      * chromatogram itself. The size of these arrays must be same, and must be
-     * equal to the number of scans covered by given chromatogram.
+     * equal to the number of scans covered by given chromatogram. Unless
+     * supportsWindowedInput() returns true, the arrays cover all MS1 scans of
+     * the data file.
+     * 
+     * Chromatograms are resolved in parallel and the scanNumbers and
+     * retentionTimes arrays may be shared by several threads, so they must not
+     * be modified. The intensities array belongs to the caller and may be
+     * modified.
      */
     public Feature[] resolvePeaks(Feature chromatogram, int scanNumbers[],
 	    double retentionTimes[], double intensities[],
 	    ParameterSet parameters);
 
+    /**
+     * Returns true if the result of resolvePeaks() only depends on the scans
+     * between the first and last data point of the chromatogram. In that case
+     * the arrays passed to resolvePeaks() only cover this window of MS1 scans,
+     * which saves a lot of memory for short chromatograms in long runs.
+     * Resolvers calculating statistics over the whole chromatogram (noise
+     * levels, quantiles etc.) must return false.
+     */
+    public boolean supportsWindowedInput();
+
 }
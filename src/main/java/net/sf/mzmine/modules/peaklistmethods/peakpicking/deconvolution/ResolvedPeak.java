@@ -71,11 +71,30 @@ public class ResolvedPeak implements Feature {
      * Initializes this peak using data points from a given chromatogram -
      * regionStart marks the index of the first data point (inclusive),
      * regionEnd marks the index of the last data point (inclusive). The
-     * selected region MUST NOT contain any zero-intensity data points,
-     * otherwise exception is thrown.
+     * indexes refer to all MS1 scans of the data file. The selected region
+     * MUST NOT contain any zero-intensity data points, otherwise exception is
+     * thrown.
      */
     public ResolvedPeak(Feature chromatogram, int regionStart, int regionEnd) {
 
+	// Note that we cannot use chromatogram.getScanNumbers() here, because
+	// the chromatogram may already have been deconvoluted -> scan numbers
+	// would be a subset of all scans. The regionStart and regionEnd indexes
+	// refer to all MS1 scans, therefore we use datafile.getScanNumbers(1)
+	this(chromatogram, chromatogram.getDataFile().getScanNumbers(1), null,
+		regionStart, regionEnd);
+    }
+
+    /**
+     * Initializes this peak using data points from a given chromatogram. The
+     * regionStart and regionEnd indexes refer to the given scanNumbers and
+     * retentionTimes arrays, as passed to PeakResolver.resolvePeaks(). These
+     * arrays may cover only a window of the MS1 scans. If retentionTimes is
+     * null, the retention times are obtained from the data file.
+     */
+    public ResolvedPeak(Feature chromatogram, int chromatogramScanNumbers[],
+	    double retentionTimes[], int regionStart, int regionEnd) {
+
 	assert regionEnd > regionStart;
 
 	this.dataFile = chromatogram.getDataFile();
@@ -83,16 +102,18 @@ public class ResolvedPeak implements Feature {
 	// Make an array of scan numbers of this peak
 	scanNumbers = new int[regionEnd - regionStart + 1];
 
-	// Note that we cannot use chromatogram.getScanNumbers() here, because
-	// the chromatogram may already have been deconvoluted -> scan numbers
-	// would be a subset of all scans. The regionStart and regionEnd indexes
-	// refer to all MS1 scans, therefore we use datafile.getScanNumbers(1)
-	int chromatogramScanNumbers[] = chromatogram.getDataFile()
-		.getScanNumbers(1);
-
 	System.arraycopy(chromatogramScanNumbers, regionStart, scanNumbers, 0,
 		regionEnd - regionStart + 1);
 
+	final double scanRetentionTimes[] = new double[scanNumbers.length];
+	for (int i = 0; i < scanNumbers.length; i++) {
+	    if (retentionTimes != null)
+		scanRetentionTimes[i] = retentionTimes[regionStart + i];
+	    else
+		scanRetentionTimes[i] = dataFile.getScan(scanNumbers[i])
+			.getRetentionTime();
+	}
+
 	dataPointMZValues = new double[regionEnd - regionStart + 1];
 	dataPointIntensityValues = new double[regionEnd - regionStart + 1];
 
@@ -118,13 +139,12 @@ public class ResolvedPeak implements Feature {
 	    if (rawDataPointsIntensityRange == null) {
 		rawDataPointsIntensityRange = Range
 			.singleton(dp.getIntensity());
-		rawDataPointsRTRange = Range.singleton(dataFile.getScan(
-			scanNumbers[i]).getRetentionTime());
+		rawDataPointsRTRange = Range
+			.singleton(scanRetentionTimes[i]);
 		rawDataPointsMZRange = Range.singleton(dp.getMZ());
 	    } else {
 		rawDataPointsRTRange = rawDataPointsRTRange.span(Range
-			.singleton(dataFile.getScan(scanNumbers[i])
-				.getRetentionTime()));
+			.singleton(scanRetentionTimes[i]));
 		rawDataPointsIntensityRange = rawDataPointsIntensityRange
 			.span(Range.singleton(dp.getIntensity()));
 		rawDataPointsMZRange = rawDataPointsMZRange.span(Range
@@ -133,7 +153,7 @@ public class ResolvedPeak implements Feature {
 
 	    if (height < dp.getIntensity()) {
 		height = dp.getIntensity();
-		rt = dataFile.getScan(scanNumbers[i]).getRetentionTime();
+		rt = scanRetentionTimes[i];
 		representativeScan = scanNumbers[i];
 	    }
 	}
@@ -146,10 +166,8 @@ public class ResolvedPeak implements Feature {
 	for (int i = 1; i < scanNumbers.length; i++) {
 
 	    // For area calculation, we use retention time in seconds
-	    double previousRT = dataFile.getScan(scanNumbers[i - 1])
-		    .getRetentionTime() * 60d;
-	    double currentRT = dataFile.getScan(scanNumbers[i])
-		    .getRetentionTime() * 60d;
+	    double previousRT = scanRetentionTimes[i - 1] * 60d;
+	    double currentRT = scanRetentionTimes[i] * 60d;
 
 	    double previousHeight = dataPointIntensityValues[i - 1];
 	    double currentHeight = dataPointIntensityValues[i];
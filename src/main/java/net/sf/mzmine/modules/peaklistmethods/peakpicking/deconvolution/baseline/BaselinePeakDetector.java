@@ -100,7 +100,8 @@ public class BaselinePeakDetector implements PeakResolver {
 
 		    // Create a new ResolvedPeak and add it.
 		    resolvedPeaks.add(new ResolvedPeak(chromatogram,
-			    currentRegionStart, currentRegionEnd));
+			    scanNumbers, retentionTimes, currentRegionStart,
+			    currentRegionEnd));
 		}
 
 		// Find next peak region, starting from next data point.
@@ -112,6 +113,15 @@ public class BaselinePeakDetector implements PeakResolver {
 	return resolvedPeaks.toArray(new ResolvedPeak[resolvedPeaks.size()]);
     }
 
+    /**
+     * Regions are bounded by missing data points, so the scans outside of the
+     * chromatogram's data points never affect the result.
+     */
+    @Override
+    public boolean supportsWindowedInput() {
+	return true;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
 	return BaselinePeakDetectorParameters.class;
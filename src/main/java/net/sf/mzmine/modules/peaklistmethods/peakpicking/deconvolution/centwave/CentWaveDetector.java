@@ -72,6 +72,16 @@ public class CentWaveDetector implements PeakResolver {
 	return NAME;
     }
 
+    /**
+     * The wavelet transform and noise estimation of centWave work on the
+     * whole chromatogram.
+     */
+    @Override
+    public boolean supportsWindowedInput() {
+
+	return false;
+    }
+
     @Nonnull
     @Override
     public Class<? extends ParameterSet> getParameterSetClass() {
@@ -129,7 +139,7 @@ public class CentWaveDetector implements PeakResolver {
 				- retentionTimes[start])) {
 
 			    resolvedPeaks.add(new ResolvedPeak(chromatogram,
-				    start, end));
+				    scanNumbers, retentionTimes, start, end));
 			}
 
 			start = end;
@@ -122,6 +122,7 @@ public class MinimumSearchPeakDetector implements PeakResolver {
 						- retentionTimes[currentRegionStart])) {
 
 			    resolvedPeaks.add(new ResolvedPeak(chromatogram,
+				    scanNumbers, retentionTimes,
 				    currentRegionStart, currentRegionEnd));
 			}
 
@@ -184,7 +185,8 @@ public class MinimumSearchPeakDetector implements PeakResolver {
 						    - retentionTimes[currentRegionStart])) {
 
 				resolvedPeaks.add(new ResolvedPeak(
-					chromatogram, currentRegionStart,
+					chromatogram, scanNumbers,
+					retentionTimes, currentRegionStart,
 					currentRegionEnd));
 			    }
 
@@ -202,6 +204,15 @@ public class MinimumSearchPeakDetector implements PeakResolver {
 	return resolvedPeaks.toArray(new Feature[resolvedPeaks.size()]);
     }
 
+    /**
+     * The chromatographic threshold is a quantile of all intensities,
+     * including the zeros outside of the chromatogram's data points.
+     */
+    @Override
+    public boolean supportsWindowedInput() {
+	return false;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
 	return MinimumSearchPeakDetectorParameters.class;
@@ -110,7 +110,8 @@ public class NoiseAmplitudePeakDetector implements PeakResolver {
 		    if (currentPeakEnd - currentPeakStart > 0) {
 
 			final ResolvedPeak peak = new ResolvedPeak(
-				chromatogram, currentPeakStart, currentPeakEnd);
+				chromatogram, scanNumbers, retentionTimes,
+				currentPeakStart, currentPeakEnd);
 			if (peakDuration.contains(RangeUtils.rangeLength(peak
 				.getRawDataPointsRTRange()))
 				&& peak.getHeight() >= minimumPeakHeight) {
@@ -188,6 +189,15 @@ public class NoiseAmplitudePeakDetector implements PeakResolver {
 	return noiseThreshold;
     }
 
+    /**
+     * The noise level is estimated from the intensity distribution of all
+     * scans.
+     */
+    @Override
+    public boolean supportsWindowedInput() {
+	return false;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
 	return NoiseAmplitudePeakDetectorParameters.class;
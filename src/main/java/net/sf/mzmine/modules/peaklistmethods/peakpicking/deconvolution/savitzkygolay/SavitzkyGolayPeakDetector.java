@@ -24,7 +24,6 @@ import static net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.sa
 import static net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.savitzkygolay.SavitzkyGolayPeakDetectorParameters.PEAK_DURATION;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -88,9 +87,9 @@ public class SavitzkyGolayPeakDetector implements PeakResolver {
 			    .getValue());
 
 	    // Search for peaks.
-	    Arrays.sort(scanNumbers);
 	    final Feature[] resolvedOriginalPeaks = peaksSearch(chromatogram,
-		    scanNumbers, secondDerivative, noiseThreshold);
+		    scanNumbers, retentionTimes, secondDerivative,
+		    noiseThreshold);
 
 	    final Range<Double> peakDuration = parameters.getParameter(
 		    PEAK_DURATION).getValue();
@@ -120,6 +119,8 @@ public class SavitzkyGolayPeakDetector implements PeakResolver {
      *            the chromatogram to search.
      * @param scanNumbers
      *            scan number to focus search on
+     * @param retentionTimes
+     *            retention times of the scans.
      * @param derivativeOfIntensities
      *            derivatives of intensity values.
      * @param noiseThreshold
@@ -127,8 +128,8 @@ public class SavitzkyGolayPeakDetector implements PeakResolver {
      * @return array of peaks found.
      */
     private static Feature[] peaksSearch(final Feature chromatogram,
-	    final int[] scanNumbers, final double[] derivativeOfIntensities,
-	    final double noiseThreshold) {
+	    final int[] scanNumbers, final double[] retentionTimes,
+	    final double[] derivativeOfIntensities, final double noiseThreshold) {
 
 	// Flag to identify the current and next overlapped peak.
 	boolean activeFirstPeak = false;
@@ -260,8 +261,8 @@ public class SavitzkyGolayPeakDetector implements PeakResolver {
 	    // the chromatogram.
 	    if (currentPeakEnd - currentPeakStart > 0 && !activeFirstPeak) {
 
-		resolvedPeaks.add(new ResolvedPeak(chromatogram,
-			currentPeakStart, currentPeakEnd));
+		resolvedPeaks.add(new ResolvedPeak(chromatogram, scanNumbers,
+			retentionTimes, currentPeakStart, currentPeakEnd));
 
 		// If exists next overlapped peak, swap the indexes between next
 		// and current, and clean ending index
@@ -311,6 +312,14 @@ public class SavitzkyGolayPeakDetector implements PeakResolver {
 	return MathUtils.calcQuantile(intensities, comparativeThresholdLevel);
     }
 
+    /**
+     * The derivative threshold is calculated from all scans.
+     */
+    @Override
+    public boolean supportsWindowedInput() {
+	return false;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
 	return SavitzkyGolayPeakDetectorParameters.class;
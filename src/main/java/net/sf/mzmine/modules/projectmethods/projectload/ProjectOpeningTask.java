@@ -25,8 +25,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -49,12 +57,17 @@ import net.sf.mzmine.modules.projectmethods.projectload.version_2_5.UserParamete
 import net.sf.mzmine.modules.projectmethods.projectsave.ProjectSavingTask;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.project.ProjectManager;
+import net.sf.mzmine.project.impl.DataPointsCodec;
+import net.sf.mzmine.project.impl.DataPointsCodecs;
 import net.sf.mzmine.project.impl.MZmineProjectImpl;
 import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.ExceptionUtils;
 import net.sf.mzmine.util.GUIUtils;
 import net.sf.mzmine.util.StreamCopy;
+import net.sf.mzmine.util.ZipUtils;
 
 import org.xml.sax.SAXException;
 
@@ -65,8 +78,12 @@ public class ProjectOpeningTask extends AbstractTask {
     private File openFile;
     private MZmineProjectImpl newProject;
 
-    private RawDataFileOpenHandler rawDataFileOpenHandler;
-    private PeakListOpenHandler peakListOpenHandler;
+    // Raw data files and peak lists are loaded in parallel, each by its own
+    // handler
+    private int projectMajorVersion, projectMinorVersion;
+    private Map<String, Long> storedEntryOffsets;
+    private final List<RawDataFileOpenHandler> rawDataFileOpenHandlers;
+    private final List<PeakListOpenHandler> peakListOpenHandlers;
     private UserParameterOpenHandler userParameterOpenHandler;
 
     private int currentStage;
@@ -79,6 +96,8 @@ public class ProjectOpeningTask extends AbstractTask {
 	this.openFile = parameters.getParameter(
 		ProjectLoaderParameters.projectFile).getValue();
 	dataFilesIDMap = new Hashtable<String, RawDataFile>();
+	rawDataFileOpenHandlers = new CopyOnWriteArrayList<RawDataFileOpenHandler>();
+	peakListOpenHandlers = new CopyOnWriteArrayList<PeakListOpenHandler>();
     }
 
     /**
@@ -97,13 +116,19 @@ public class ProjectOpeningTask extends AbstractTask {
     public double getFinishedPercentage() {
 	switch (currentStage) {
 	case 2:
-	    if (rawDataFileOpenHandler == null)
+	    if (rawDataFileOpenHandlers.isEmpty())
 		return 0;
-	    return rawDataFileOpenHandler.getProgress();
+	    double rawDataFilesProgress = 0;
+	    for (RawDataFileOpenHandler handler : rawDataFileOpenHandlers)
+		rawDataFilesProgress += handler.getProgress();
+	    return rawDataFilesProgress / rawDataFileOpenHandlers.size();
 	case 3:
-	    if (peakListOpenHandler == null)
+	    if (peakListOpenHandlers.isEmpty())
 		return 0;
-	    return peakListOpenHandler.getProgress();
+	    double peakListsProgress = 0;
+	    for (PeakListOpenHandler handler : peakListOpenHandlers)
+		peakListsProgress += handler.getProgress();
+	    return peakListsProgress / peakListOpenHandlers.size();
 	case 4:
 	    if (userParameterOpenHandler == null)
 		return 0;
@@ -207,11 +232,11 @@ public class ProjectOpeningTask extends AbstractTask {
 
 	setStatus(TaskStatus.CANCELED);
 
-	if (rawDataFileOpenHandler != null)
-	    rawDataFileOpenHandler.cancel();
+	for (RawDataFileOpenHandler handler : rawDataFileOpenHandlers)
+	    handler.cancel();
 
-	if (peakListOpenHandler != null)
-	    peakListOpenHandler.cancel();
+	for (PeakListOpenHandler handler : peakListOpenHandlers)
+	    handler.cancel();
 
     }
 
@@ -254,8 +279,8 @@ public class ProjectOpeningTask extends AbstractTask {
 	    throw new IOException("Invalid project version "
 		    + projectVersionString);
 	}
-	int projectMajorVersion = Integer.valueOf(m.group(1));
-	int projectMinorVersion = Integer.valueOf(m.group(2));
+	projectMajorVersion = Integer.valueOf(m.group(1));
+	projectMinorVersion = Integer.valueOf(m.group(2));
 
 	// Check if project was saved with an old version
 	if (projectMajorVersion == 1) {
@@ -268,15 +293,11 @@ public class ProjectOpeningTask extends AbstractTask {
 
 	// Check if the project version is 2.0 to 2.2
 	if ((projectMajorVersion == 2) && (projectMinorVersion <= 2)) {
-	    rawDataFileOpenHandler = new RawDataFileOpenHandler_2_0();
-	    peakListOpenHandler = new PeakListOpenHandler_2_0(dataFilesIDMap);
 	    return;
 	}
 
 	// Check if the project version is 2.3 to 2.4
 	if ((projectMajorVersion == 2) && (projectMinorVersion <= 4)) {
-	    rawDataFileOpenHandler = new RawDataFileOpenHandler_2_3();
-	    peakListOpenHandler = new PeakListOpenHandler_2_3(dataFilesIDMap);
 	    userParameterOpenHandler = new UserParameterOpenHandler_2_3(
 		    newProject, dataFilesIDMap);
 	    return;
@@ -295,13 +316,35 @@ public class ProjectOpeningTask extends AbstractTask {
 	}
 
 	// Default opening handler for MZmine 2.5 and higher
-	rawDataFileOpenHandler = new RawDataFileOpenHandler_2_5();
-	peakListOpenHandler = new PeakListOpenHandler_2_5(dataFilesIDMap);
 	userParameterOpenHandler = new UserParameterOpenHandler_2_5(newProject,
 		dataFilesIDMap);
 
     }
 
+    /**
+     * Creates a new handler for loading one raw data file, according to the
+     * project version
+     */
+    private RawDataFileOpenHandler createRawDataFileOpenHandler() {
+	if ((projectMajorVersion == 2) && (projectMinorVersion <= 2))
+	    return new RawDataFileOpenHandler_2_0();
+	if ((projectMajorVersion == 2) && (projectMinorVersion <= 4))
+	    return new RawDataFileOpenHandler_2_3();
+	return new RawDataFileOpenHandler_2_5(storedEntryOffsets);
+    }
+
+    /**
+     * Creates a new handler for loading one peak list, according to the
+     * project version
+     */
+    private PeakListOpenHandler createPeakListOpenHandler() {
+	if ((projectMajorVersion == 2) && (projectMinorVersion <= 2))
+	    return new PeakListOpenHandler_2_0(dataFilesIDMap);
+	if ((projectMajorVersion == 2) && (projectMinorVersion <= 4))
+	    return new PeakListOpenHandler_2_3(dataFilesIDMap);
+	return new PeakListOpenHandler_2_5(dataFilesIDMap);
+    }
+
     /**
      * Load the configuration file from the project zip file
      */
@@ -334,80 +377,171 @@ public class ProjectOpeningTask extends AbstractTask {
 	tempConfigFile.delete();
     }
 
-    private void loadRawDataFiles(ZipFile zipFile) throws IOException,
-	    ParserConfigurationException, SAXException, InstantiationException,
-	    IllegalAccessException {
+    /**
+     * Load the raw data files. The files are loaded in parallel, but they are
+     * added to the project in the order in which they were saved.
+     */
+    private void loadRawDataFiles(final ZipFile zipFile) throws Exception {
 
 	logger.info("Loading raw data files");
 
+	// Uncompressed scan files are mapped from the project file
+	storedEntryOffsets = ZipUtils.getStoredEntryOffsets(openFile);
+
 	Pattern filePattern = Pattern
 		.compile("Raw data file #([\\d]+) (.*)\\.xml$");
 
-	Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
-	while (zipEntries.hasMoreElements()) {
+	List<String> fileIDs = new ArrayList<String>();
+	List<String> fileNames = new ArrayList<String>();
+	List<Future<RawDataFile>> loadedFiles = new ArrayList<Future<RawDataFile>>();
 
-	    // Canceled
-	    if (isCanceled())
-		return;
+	final ExecutorService loaders = SharedTaskExecutor.newExecutor();
+
+	try {
+
+	    Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+	    while (zipEntries.hasMoreElements()) {
+
+		ZipEntry entry = zipEntries.nextElement();
+		final String entryName = entry.getName();
+		Matcher fileMatcher = filePattern.matcher(entryName);
+
+		if (fileMatcher.matches()) {
+		    fileIDs.add(fileMatcher.group(1));
+		    fileNames.add(fileMatcher.group(2));
+
+		    final ZipEntry xmlEntry = entry;
+		    final ZipEntry scansEntry = findScansEntry(zipFile,
+			    entryName.replaceFirst("\\.xml$", ""));
+		    final RawDataFileOpenHandler handler = createRawDataFileOpenHandler();
+		    rawDataFileOpenHandlers.add(handler);
+		    loadedFiles.add(loaders.submit(TaskMetrics
+			    .bindCurrentMetrics(new Callable<RawDataFile>() {
+				public RawDataFile call() throws Exception {
+				    return handler.readRawDataFile(zipFile,
+					    scansEntry, xmlEntry);
+				}
+			    })));
+		}
 
-	    ZipEntry entry = zipEntries.nextElement();
-	    String entryName = entry.getName();
-	    Matcher fileMatcher = filePattern.matcher(entryName);
+	    }
 
-	    if (fileMatcher.matches()) {
-		String fileID = fileMatcher.group(1);
-		currentLoadedObjectName = fileMatcher.group(2);
+	    for (int i = 0; i < loadedFiles.size(); i++) {
 
-		String scansFileName = entryName.replaceFirst("\\.xml$",
-			".scans");
-		ZipEntry scansEntry = zipFile.getEntry(scansFileName);
-		RawDataFile newFile = rawDataFileOpenHandler.readRawDataFile(
-			zipFile, scansEntry, entry);
+		// Canceled
+		if (isCanceled())
+		    return;
+
+		currentLoadedObjectName = fileNames.get(i);
+		RawDataFile newFile = getLoadedObject(loadedFiles.get(i));
 		newProject.addFile(newFile);
-		dataFilesIDMap.put(fileID, newFile);
+		dataFilesIDMap.put(fileIDs.get(i), newFile);
 	    }
 
+	} finally {
+	    loaders.shutdownNow();
 	}
 
     }
 
-    private void loadPeakLists(ZipFile zipFile) throws IOException,
-	    ParserConfigurationException, SAXException, InstantiationException,
-	    IllegalAccessException {
+    /**
+     * Finds the zip entry with the data points of the raw data file saved
+     * under given name. The name of the entry depends on the codec of the
+     * data points, see ProjectSavingTask.getScansEntryName().
+     */
+    private ZipEntry findScansEntry(ZipFile zipFile, String rawDataSavedName)
+	    throws IOException {
+	for (DataPointsCodec codec : DataPointsCodecs.getCodecs()) {
+	    ZipEntry scansEntry = zipFile.getEntry(ProjectSavingTask
+		    .getScansEntryName(rawDataSavedName, codec));
+	    if (scansEntry != null)
+		return scansEntry;
+	}
+	throw new IOException("Could not find the data points of "
+		+ rawDataSavedName
+		+ ". The project may have been saved with a newer version of MZmine,"
+		+ " which stores the data points in a format unknown to MZmine "
+		+ MZmineCore.getMZmineVersion() + ".");
+    }
+
+    /**
+     * Load the peak lists. The peak lists refer to the raw data files, so they
+     * can only be loaded after all raw data files. The peak lists are loaded
+     * in parallel, but they are added to the project in the order in which
+     * they were saved.
+     */
+    private void loadPeakLists(final ZipFile zipFile) throws Exception {
 
 	logger.info("Loading peak lists");
 
 	Pattern filePattern = Pattern
 		.compile("Peak list #([\\d]+) (.*)\\.xml$");
 
-	Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
-	while (zipEntries.hasMoreElements()) {
+	List<String> peakListNames = new ArrayList<String>();
+	List<Future<PeakList>> loadedPeakLists = new ArrayList<Future<PeakList>>();
 
-	    // Canceled
-	    if (isCanceled())
-		return;
+	final ExecutorService loaders = SharedTaskExecutor.newExecutor();
 
-	    ZipEntry entry = zipEntries.nextElement();
-	    String entryName = entry.getName();
+	try {
 
-	    Matcher fileMatcher = filePattern.matcher(entryName);
+	    Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+	    while (zipEntries.hasMoreElements()) {
 
-	    if (fileMatcher.matches()) {
+		final ZipEntry entry = zipEntries.nextElement();
+		String entryName = entry.getName();
 
-		currentLoadedObjectName = fileMatcher.group(2);
+		Matcher fileMatcher = filePattern.matcher(entryName);
 
-		InputStream peakListStream = zipFile.getInputStream(entry);
+		if (fileMatcher.matches()) {
+		    peakListNames.add(fileMatcher.group(2));
 
-		PeakList newPeakList = peakListOpenHandler
-			.readPeakList(peakListStream);
+		    final PeakListOpenHandler handler = createPeakListOpenHandler();
+		    peakListOpenHandlers.add(handler);
+		    loadedPeakLists.add(loaders.submit(new Callable<PeakList>() {
+			public PeakList call() throws Exception {
+			    InputStream peakListStream = zipFile
+				    .getInputStream(entry);
+			    return handler.readPeakList(peakListStream);
+			}
+		    }));
+		}
 
+	    }
+
+	    for (int i = 0; i < loadedPeakLists.size(); i++) {
+
+		// Canceled
+		if (isCanceled())
+		    return;
+
+		currentLoadedObjectName = peakListNames.get(i);
+		PeakList newPeakList = getLoadedObject(loadedPeakLists.get(i));
 		newProject.addPeakList(newPeakList);
 	    }
 
+	} finally {
+	    loaders.shutdownNow();
 	}
 
     }
 
+    /**
+     * Waits for the object loaded by one of the loader threads, and reports
+     * the exception thrown by the loader, if any
+     */
+    private <T> T getLoadedObject(Future<T> loadedObject) throws Exception {
+	try {
+	    return loadedObject.get();
+	} catch (ExecutionException e) {
+	    final Throwable cause = e.getCause();
+	    if (cause instanceof Exception)
+		throw (Exception) cause;
+	    if (cause instanceof Error)
+		throw (Error) cause;
+	    throw e;
+	}
+    }
+
     private void loadUserParameters(ZipFile zipFile) throws IOException,
 	    ParserConfigurationException, SAXException, InstantiationException,
 	    IllegalAccessException {
@@ -29,7 +29,8 @@ enum RawDataElementName_2_5 {
 	    "num_dp"), MASS_LIST("mass_list"), STORED_DATAPOINTS(
 	    "stored_datapoints"), STORED_DATA("stored_data"), STORAGE_ID(
 	    "storage_id"), POLARITY("polarity"), SCAN_DESCRIPTION(
-	    "scan_description"), SCAN_MZ_RANGE("scan_mz_range");
+	    "scan_description"), SCAN_MZ_RANGE("scan_mz_range"), STORAGE_CODEC(
+	    "storage_codec"), STORED_BYTES("num_bytes"), STORED_CRC("crc");
 
     private String elementName;
 
@@ -24,6 +24,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -37,6 +38,8 @@ import net.sf.mzmine.datamodel.PolarityType;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.modules.projectmethods.projectload.RawDataFileOpenHandler;
+import net.sf.mzmine.project.impl.DataPointsCodec;
+import net.sf.mzmine.project.impl.DataPointsCodecs;
 import net.sf.mzmine.project.impl.RawDataFileImpl;
 import net.sf.mzmine.project.impl.StorableMassList;
 import net.sf.mzmine.project.impl.StorableScan;
@@ -70,8 +73,12 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler implements
     private int currentStorageID;
     private int storedDataID;
     private int storedDataNumDP;
+    private int storedDataNumBytes;
+    private long storedDataCRC;
     private TreeMap<Integer, Long> dataPointsOffsets;
     private TreeMap<Integer, Integer> dataPointsLengths;
+    private TreeMap<Integer, Integer> dataPointsSizes;
+    private TreeMap<Integer, Long> dataPointsCRCs;
     private StreamCopy copyMachine;
     private ArrayList<StorableMassList> massLists;
     private PolarityType polarity = PolarityType.UNKNOWN;
@@ -80,10 +87,23 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler implements
 
     private boolean canceled = false;
 
+    // Positions of the uncompressed entries in the project file
+    private final Map<String, Long> storedEntryOffsets;
+
+    /**
+     * @param storedEntryOffsets
+     *            positions of the data of uncompressed entries in the project
+     *            file, see ZipUtils.getStoredEntryOffsets()
+     */
+    public RawDataFileOpenHandler_2_5(Map<String, Long> storedEntryOffsets) {
+	this.storedEntryOffsets = storedEntryOffsets;
+    }
+
     /**
-     * Extract the scan file and copies it into the temporary folder. Create a
-     * new raw data file using the information from the XML raw data description
-     * file
+     * Extract the scan file and copies it into the temporary folder. If the
+     * scan file is stored uncompressed, it is mapped directly from the project
+     * file instead. Create a new raw data file using the information from the
+     * XML raw data description file
      * 
      * @param Name
      *            raw data file name
@@ -101,25 +121,39 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler implements
 	charBuffer = new StringBuffer();
 	massLists = new ArrayList<StorableMassList>();
 
-	// Writes the scan file into a temporary file
-	logger.info("Moving scan file : " + scansEntry.getName()
-		+ " to the temporary folder");
-
 	newRawDataFile = (RawDataFileImpl) MZmineCore.createNewFile(null);
 	dataPointsOffsets = newRawDataFile.getDataPointsOffsets();
 	dataPointsLengths = newRawDataFile.getDataPointsLengths();
+	dataPointsSizes = newRawDataFile.getDataPointsSizes();
+	dataPointsCRCs = newRawDataFile.getDataPointsCRCs();
 
-	File tempFile = RawDataFileImpl.createNewDataPointsFile();
-
-	InputStream scanInputStream = zipFile.getInputStream(scansEntry);
-	FileOutputStream fileStream = new FileOutputStream(tempFile);
+	final Long scansOffset = storedEntryOffsets.get(scansEntry.getName());
+	final boolean mapScans = (scansEntry.getMethod() == ZipEntry.STORED)
+		&& (scansOffset != null);
+	File tempFile = null;
 
-	// Extracts the scan file from the zip project file to the temporary
-	// folder
-	copyMachine = new StreamCopy();
 	stepNumber++;
-	copyMachine.copy(scanInputStream, fileStream, scansEntry.getSize());
-	fileStream.close();
+
+	if (mapScans) {
+	    logger.info("Mapping scan file : " + scansEntry.getName()
+		    + " from the project file");
+	} else {
+
+	    // Writes the scan file into a temporary file
+	    logger.info("Moving scan file : " + scansEntry.getName()
+		    + " to the temporary folder");
+
+	    tempFile = RawDataFileImpl.createNewDataPointsFile();
+
+	    InputStream scanInputStream = zipFile.getInputStream(scansEntry);
+	    FileOutputStream fileStream = new FileOutputStream(tempFile);
+
+	    // Extracts the scan file from the zip project file to the
+	    // temporary folder
+	    copyMachine = new StreamCopy();
+	    copyMachine.copy(scanInputStream, fileStream, scansEntry.getSize());
+	    fileStream.close();
+	}
 
 	stepNumber++;
 
@@ -130,7 +164,11 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler implements
 	saxParser.parse(xmlInputStream, this);
 
 	// Adds the raw data file to MZmine
-	newRawDataFile.openDataPointsFile(tempFile);
+	if (mapScans)
+	    newRawDataFile.openDataPointsFile(new File(zipFile.getName()),
+		    scansOffset, scansEntry.getSize());
+	else
+	    newRawDataFile.openDataPointsFile(tempFile);
 	RawDataFile rawDataFile = newRawDataFile.finishWriting();
 	return rawDataFile;
 
@@ -145,6 +183,8 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler implements
 	switch (stepNumber) {
 	case 1:
 	    // We can estimate that copying the scan file takes ~75% of the time
+	    if (copyMachine == null)
+		return 0;
 	    return copyMachine.getProgress() * 0.75;
 	case 2:
 	    if (numberOfScans == 0)
@@ -191,6 +231,22 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler implements
 			    .getElementName()));
 	}
 
+	// Projects saved by older versions do not specify the codec, their data
+	// points are stored as 32-bit floats
+	if (qName.equals(RawDataElementName_2_5.STORED_DATAPOINTS
+		.getElementName())) {
+	    String codecName = attrs
+		    .getValue(RawDataElementName_2_5.STORAGE_CODEC
+			    .getElementName());
+	    if ((codecName != null) && (codecName.length() > 0)) {
+		DataPointsCodec codec = DataPointsCodecs.getCodec(codecName);
+		if (codec == null)
+		    throw new SAXException("Unknown scan data storage format "
+			    + codecName);
+		newRawDataFile.setDataPointsCodec(codec);
+	    }
+	}
+
 	if (qName.equals(RawDataElementName_2_5.STORED_DATA.getElementName())) {
 	    storedDataID = Integer.parseInt(attrs
 		    .getValue(RawDataElementName_2_5.STORAGE_ID
@@ -198,6 +254,13 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler implements
 	    storedDataNumDP = Integer.parseInt(attrs
 		    .getValue(RawDataElementName_2_5.QUANTITY_DATAPOINTS
 			    .getElementName()));
+	    String numBytes = attrs.getValue(RawDataElementName_2_5.STORED_BYTES
+		    .getElementName());
+	    storedDataNumBytes = (numBytes == null) ? -1 : Integer
+		    .parseInt(numBytes);
+	    String crc = attrs.getValue(RawDataElementName_2_5.STORED_CRC
+		    .getElementName());
+	    storedDataCRC = (crc == null) ? -1 : Long.parseLong(crc);
 	}
 
 	if (qName.equals(RawDataElementName_2_5.MASS_LIST.getElementName())) {
@@ -244,6 +307,10 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler implements
 	    long offset = Long.parseLong(getTextOfElement());
 	    dataPointsOffsets.put(storedDataID, offset);
 	    dataPointsLengths.put(storedDataID, storedDataNumDP);
+	    if (storedDataNumBytes >= 0)
+		dataPointsSizes.put(storedDataID, storedDataNumBytes);
+	    if (storedDataCRC >= 0)
+		dataPointsCRCs.put(storedDataID, storedDataCRC);
 	}
 
 	if (qName.equals(RawDataElementName_2_5.MS_LEVEL.getElementName())) {
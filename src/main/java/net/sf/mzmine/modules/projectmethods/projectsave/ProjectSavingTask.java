@@ -23,6 +23,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Hashtable;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -37,6 +40,8 @@ import net.sf.mzmine.desktop.impl.MainWindow;
 import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.modules.projectmethods.projectload.ProjectLoaderParameters;
 import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.project.impl.DataPointsCodec;
+import net.sf.mzmine.project.impl.DataPointsCodecs;
 import net.sf.mzmine.project.impl.MZmineProjectImpl;
 import net.sf.mzmine.project.impl.RawDataFileImpl;
 import net.sf.mzmine.taskcontrol.AbstractTask;
@@ -76,6 +81,19 @@ public class ProjectSavingTask extends AbstractTask {
 	dataFilesIDMap = new Hashtable<RawDataFile, String>();
     }
 
+    /**
+     * Returns the name of the zip entry with the data points of a raw data
+     * file. Data points encoded by other codecs than 32-bit floats are saved
+     * under a name that includes the codec, because older versions of MZmine
+     * read any .scans entry as 32-bit floats.
+     */
+    public static String getScansEntryName(String rawDataSavedName,
+	    DataPointsCodec codec) {
+	if ((codec == null) || (codec == DataPointsCodecs.FLOAT32))
+	    return rawDataSavedName + ".scans";
+	return rawDataSavedName + "." + codec.getName() + ".scans";
+    }
+
     /**
      * @see net.sf.mzmine.taskcontrol.Task#getTaskDescription()
      */
@@ -200,15 +218,24 @@ public class ProjectSavingTask extends AbstractTask {
 		return;
 	    }
 
-	    // Move the temporary ZIP file to the final location
-	    if (saveFile.exists() && !saveFile.delete()) {
-		throw new IOException("Could not delete old file " + saveFile);
-	    }
-
-	    boolean renameOK = tempFile.renameTo(saveFile);
-	    if (!renameOK) {
-		throw new IOException("Could not move the temporary file "
-			+ tempFile + " to the final location " + saveFile);
+	    // Replace the old file by the temporary ZIP file. Raw data files
+	    // of any open project may have their data points mapped from the
+	    // old file, which prevents replacing it on some platforms. In such
+	    // case we copy the mapped data points into scratch storage and try
+	    // again.
+	    try {
+		Files.move(tempFile.toPath(), saveFile.toPath(),
+			StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	    } catch (FileSystemException e) {
+		if (!saveFile.exists())
+		    throw e;
+		logger.info("Could not replace " + saveFile + " (" + e
+			+ "), copying the data points mapped from it");
+		RawDataFileImpl.unmapFileFromAll(saveFile);
+		Files.move(tempFile.toPath(), saveFile.toPath(),
+			StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
 	    }
 
 	    // Update the location of the project
@@ -226,6 +253,11 @@ public class ProjectSavingTask extends AbstractTask {
 
 	} catch (Throwable e) {
 
+	    // If saving was canceled, closing the unfinished ZIP stream may
+	    // fail, which can be safely ignored
+	    if (isCanceled())
+		return;
+
 	    setStatus(TaskStatus.ERROR);
 
 	    if (currentSavedObjectName == null) {
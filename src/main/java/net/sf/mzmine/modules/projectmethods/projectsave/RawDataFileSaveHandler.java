@@ -21,10 +21,10 @@ package net.sf.mzmine.modules.projectmethods.projectsave;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -40,6 +40,7 @@ import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.project.impl.RawDataFileImpl;
 import net.sf.mzmine.project.impl.StorableMassList;
 import net.sf.mzmine.project.impl.StorableScan;
+import net.sf.mzmine.util.ZipUtils;
 
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
@@ -55,6 +56,8 @@ class RawDataFileSaveHandler {
     private Map<Integer, Long> dataPointsOffsets;
     private Map<Integer, Long> consolidatedDataPointsOffsets;
     private Map<Integer, Integer> dataPointsLengths;
+    private Map<Integer, Integer> dataPointsSizes;
+    private Map<Integer, Long> dataPointsCRCs;
     private double progress = 0;
 
     RawDataFileSaveHandler(ZipOutputStream zipOutputStream) {
@@ -79,42 +82,119 @@ class RawDataFileSaveHandler {
 
 	numOfScans = rawDataFile.getNumOfScans();
 
-	// Get the structure of the data points file
-	dataPointsOffsets = rawDataFile.getDataPointsOffsets();
-	dataPointsLengths = rawDataFile.getDataPointsLengths();
+	// Take a snapshot of the structure of the data points file, which is
+	// used for all the data written below. The blocks stay at the
+	// snapshot offsets until they are unpinned, even if they are removed
+	// or the data points file is compacted in the meantime.
+	dataPointsOffsets = new TreeMap<Integer, Long>();
+	dataPointsLengths = new TreeMap<Integer, Integer>();
+	dataPointsSizes = new TreeMap<Integer, Integer>();
+	dataPointsCRCs = new TreeMap<Integer, Long>();
+	synchronized (rawDataFile) {
+	    rawDataFile.pinStoredBlocks();
+	    dataPointsOffsets.putAll(rawDataFile.getDataPointsOffsets());
+	    dataPointsLengths.putAll(rawDataFile.getDataPointsLengths());
+	    dataPointsCRCs.putAll(rawDataFile.getDataPointsCRCs());
+	    for (Integer storageID : dataPointsOffsets.keySet()) {
+		dataPointsSizes.put(storageID,
+			rawDataFile.getStoredSize(storageID));
+	    }
+	}
 	consolidatedDataPointsOffsets = new TreeMap<Integer, Long>();
 
-	// step 1 - save data file
-	logger.info("Saving data points of: " + rawDataFile.getName());
+	try {
+	    saveRawData(rawDataFile, "Raw data file #" + number + " "
+		    + rawDataFile.getName());
+	} finally {
+	    rawDataFile.unpinStoredBlocks();
+	}
+    }
 
-	String rawDataSavedName = "Raw data file #" + number + " "
-		+ rawDataFile.getName();
+    /**
+     * Writes the data points and the description of the raw data file, using
+     * the snapshot of its data points file
+     */
+    private void saveRawData(RawDataFileImpl rawDataFile,
+	    String rawDataSavedName) throws IOException,
+	    TransformerConfigurationException, SAXException {
 
-	zipOutputStream.putNextEntry(new ZipEntry(rawDataSavedName + ".scans"));
+	// step 1 - save data file
+	logger.info("Saving data points of: " + rawDataFile.getName());
 
 	// We save only those data points that still have a reference in the
 	// dataPointsOffset table. Some deleted mass lists may still be present
 	// in the data points file, we don't want to copy those.
-	long newOffset = 0;
+	// The encoded blocks are copied as they are, and the zip entry is
+	// stored uncompressed, so the data points can be mapped directly from
+	// the project file when it is opened. Uncompressed entries need the
+	// size and CRC before the data. The CRC of the entry is combined from
+	// the CRCs of the blocks, which are recorded when the blocks are
+	// stored, so the blocks are only read once. Only blocks of projects
+	// saved by older versions have to be read to compute their CRC.
+	long newOffset = 0, totalBytes = 0, processedBytes = 0;
+	for (Integer storageID : dataPointsOffsets.keySet()) {
+	    final int bytes = dataPointsSizes.get(storageID);
+	    totalBytes += dataPointsCRCs.containsKey(storageID) ? bytes
+		    : 2 * bytes;
+	}
+
 	byte buffer[] = new byte[1 << 20];
-	RandomAccessFile dataPointsFile = rawDataFile.getDataPointsFile();
+	long crc = 0;
 	for (Integer storageID : dataPointsOffsets.keySet()) {
 
 	    if (canceled)
 		return;
 
-	    final long offset = dataPointsOffsets.get(storageID);
-	    dataPointsFile.seek(offset);
-
-	    final int bytes = dataPointsLengths.get(storageID) * 4 * 2;
+	    final int bytes = dataPointsSizes.get(storageID);
 	    consolidatedDataPointsOffsets.put(storageID, newOffset);
+	    Long blockCRC = dataPointsCRCs.get(storageID);
+	    if (blockCRC == null) {
+		if (buffer.length < bytes) {
+		    buffer = new byte[bytes * 2];
+		}
+		final long offset = dataPointsOffsets.get(storageID);
+		rawDataFile.readPinnedBlock(offset, buffer, bytes);
+		CRC32 blockChecksum = new CRC32();
+		blockChecksum.update(buffer, 0, bytes);
+		blockCRC = blockChecksum.getValue();
+		dataPointsCRCs.put(storageID, blockCRC);
+		processedBytes += bytes;
+		progress = 0.9 * ((double) processedBytes / totalBytes);
+
+		// Remember the CRC for the next save, unless the block was
+		// removed in the meantime
+		synchronized (rawDataFile) {
+		    if (Long.valueOf(offset).equals(
+			    rawDataFile.getDataPointsOffsets().get(storageID)))
+			rawDataFile.getDataPointsCRCs().put(storageID, blockCRC);
+		}
+	    }
+	    crc = ZipUtils.combineCRC32(crc, blockCRC, bytes);
+	    newOffset += bytes;
+	}
+
+	ZipEntry scansEntry = new ZipEntry(ProjectSavingTask.getScansEntryName(
+		rawDataSavedName, rawDataFile.getDataPointsCodec()));
+	scansEntry.setMethod(ZipEntry.STORED);
+	scansEntry.setSize(newOffset);
+	scansEntry.setCompressedSize(newOffset);
+	scansEntry.setCrc(crc);
+	zipOutputStream.putNextEntry(scansEntry);
+
+	for (Integer storageID : dataPointsOffsets.keySet()) {
+
+	    if (canceled)
+		return;
+
+	    final int bytes = dataPointsSizes.get(storageID);
 	    if (buffer.length < bytes) {
 		buffer = new byte[bytes * 2];
 	    }
-	    dataPointsFile.read(buffer, 0, bytes);
+	    rawDataFile.readPinnedBlock(dataPointsOffsets.get(storageID),
+		    buffer, bytes);
 	    zipOutputStream.write(buffer, 0, bytes);
-	    newOffset += bytes;
-	    progress = 0.9 * ((double) offset / dataPointsFile.length());
+	    processedBytes += bytes;
+	    progress = 0.9 * ((double) processedBytes / totalBytes);
 	}
 
 	if (canceled)
@@ -166,6 +246,10 @@ class RawDataFileSaveHandler {
 	// <STORED_DATAPOINTS>
 	atts.addAttribute("", "", RawDataElementName.QUANTITY.getElementName(),
 		"CDATA", String.valueOf(dataPointsOffsets.size()));
+	atts.addAttribute("", "",
+		RawDataElementName.STORAGE_CODEC.getElementName(), "CDATA",
+		rawDataFile.getDataPointsCodec() == null ? ""
+			: rawDataFile.getDataPointsCodec().getName());
 	hd.startElement("", "",
 		RawDataElementName.STORED_DATAPOINTS.getElementName(), atts);
 	atts.clear();
@@ -180,6 +264,12 @@ class RawDataFileSaveHandler {
 	    atts.addAttribute("", "",
 		    RawDataElementName.QUANTITY_DATAPOINTS.getElementName(),
 		    "CDATA", String.valueOf(length));
+	    atts.addAttribute("", "",
+		    RawDataElementName.STORED_BYTES.getElementName(), "CDATA",
+		    String.valueOf(dataPointsSizes.get(storageID)));
+	    atts.addAttribute("", "",
+		    RawDataElementName.STORED_CRC.getElementName(), "CDATA",
+		    String.valueOf(dataPointsCRCs.get(storageID)));
 	    hd.startElement("", "",
 		    RawDataElementName.STORED_DATA.getElementName(), atts);
 	    atts.clear();
@@ -33,6 +33,7 @@ import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.SlidingScanWindow;
 
 public class AlignScansTask extends AbstractTask {
 
@@ -116,7 +117,11 @@ public class AlignScansTask extends AbstractTask {
 	    newRDFW = MZmineCore.createNewFile(dataFile.getName() + ' '
 		    + suffix);
 
-	    DataPoint mzValues[][] = null; // [relative scan][j value]
+	    // Neighbour scans, each scan is read only once
+	    SlidingScanWindow window = new SlidingScanWindow(dataFile,
+		    scanNumbers);
+	    double mzValues[][] = null; // [relative scan][j value]
+	    double intensityValues[][] = null;
 	    int i, j, si, sj, ii, k, shift, ks;
 	    int shiftedScans[] = new int[mzSpan * 2 + 1];
 	    for (i = 0; i < totalScans; i++) {
@@ -132,60 +137,57 @@ public class AlignScansTask extends AbstractTask {
 		    sj = (int) (si + 2 * scanSpan);
 		}
 		if (scan != null) {
+		    final int windowSize = sj - si + 1;
 		    // Allocate
-		    if (mzValues == null || mzValues.length < sj - si + 1)
-			mzValues = new DataPoint[sj - si + 1][];
+		    if (mzValues == null || mzValues.length < windowSize) {
+			mzValues = new double[windowSize][];
+			intensityValues = new double[windowSize][];
+		    }
 		    // Load Data Points
+		    window.moveTo(si, sj);
 		    for (j = si; j <= sj; j++) {
-			Scan xscan = dataFile.getScan(scanNumbers[j]);
-			mzValues[j - si] = xscan.getDataPoints();
+			mzValues[j - si] = window.getMZValues(j);
+			intensityValues[j - si] = window
+				.getIntensityValues(j);
 		    }
 		    // Estimate Correlations
 		    ii = i - si;
+		    final double scanMZValues[] = mzValues[ii];
+		    final double scanIntensityValues[] = intensityValues[ii];
 		    final SimpleScan newScan = new SimpleScan(scan);
-		    DataPoint[] newDP = new DataPoint[mzValues[ii].length];
+		    DataPoint[] newDP = new DataPoint[scanMZValues.length];
 		    int maxShift = 0;
 		    double maxCorrelation = 0;
-		    int ndp = mzValues[ii].length;
+		    int ndp = scanMZValues.length;
 		    // System.out.print("Scan="+i);
 		    for (shift = -mzSpan; shift <= mzSpan; shift++) {
 			PearsonCorrelation thisShift = new PearsonCorrelation();
 			for (k = 0; k < ndp; k++) {
 			    ks = k + shift;
-			    if (ks >= 0
-				    && ks < ndp
-				    && mzValues[ii][ks].getIntensity() >= minimumHeight) {
-				DataPoint dp = mzValues[ii][k];
-				double mz = dp.getMZ();
+			    if (ks >= 0 && ks < ndp
+				    && scanIntensityValues[ks] >= minimumHeight) {
+				double mz = scanMZValues[k];
 				int f = 0;
-				for (j = 0; j < mzValues.length; j++) {
-				    // System.out.println(j);
+				for (j = 0; j < windowSize; j++) {
 				    if (j != ii) {
-					if (mzValues[j].length > k
-						&& Math.abs(mzValues[j][k]
-							.getMZ() - mz) < 1e-10) {
+					final double mzJ[] = mzValues[j];
+					if (mzJ.length > k
+						&& Math.abs(mzJ[k] - mz) < 1e-10) {
 					    f = k;
 					} else {
-					    f = findFirstMass(mz, mzValues[j]);
-					    if (Math.abs(mzValues[j][f].getMZ()
-						    - mz) > 1e-10) {
+					    f = findFirstMass(mz, mzJ);
+					    if (Math.abs(mzJ[f] - mz) > 1e-10) {
 						f = -f;
 					    }
 					}
 					if (f >= 0) {
 					    if (logScale) {
-						thisShift
-							.enter(Math
-								.log(mzValues[j][f]
-									.getIntensity()),
-								Math.log(mzValues[ii][ks]
-									.getIntensity()));
+						thisShift.enter(
+							Math.log(intensityValues[j][f]),
+							Math.log(scanIntensityValues[ks]));
 					    } else {
-						thisShift
-							.enter(mzValues[j][f]
-								.getIntensity(),
-								mzValues[ii][ks]
-									.getIntensity());
+						thisShift.enter(intensityValues[j][f],
+							scanIntensityValues[ks]);
 					    }
 					}
 				    }
@@ -207,11 +209,9 @@ public class AlignScansTask extends AbstractTask {
 			ks = k + shift;
 			if (ks >= 0 && ks < ndp) {
 			    newDP[k] = new SimpleDataPoint(
-				    mzValues[ii][k].getMZ(),
-				    mzValues[ii][ks].getIntensity());
+				    scanMZValues[k], scanIntensityValues[ks]);
 			} else {
-			    newDP[k] = new SimpleDataPoint(
-				    mzValues[ii][k].getMZ(), 0);
+			    newDP[k] = new SimpleDataPoint(scanMZValues[k], 0);
 			}
 		    }
 		    newScan.setDataPoints(newDP);
@@ -252,15 +252,15 @@ public class AlignScansTask extends AbstractTask {
 
     }
 
-    int findFirstMass(double mass, DataPoint mzValues[]) {
+    int findFirstMass(double mass, double mzValues[]) {
 	int l = 0;
 	int r = mzValues.length - 1;
 	int mid = 0;
 	while (l < r) {
 	    mid = (r + l) / 2;
-	    if (mzValues[mid].getMZ() > mass) {
+	    if (mzValues[mid] > mass) {
 		r = mid - 1;
-	    } else if (mzValues[mid].getMZ() < mass) {
+	    } else if (mzValues[mid] < mass) {
 		l = mid + 1;
 	    } else {
 		r = mid;
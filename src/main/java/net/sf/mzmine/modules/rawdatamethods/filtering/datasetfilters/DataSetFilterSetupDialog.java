@@ -20,7 +20,6 @@
 package net.sf.mzmine.modules.rawdatamethods.filtering.datasetfilters;
 
 import java.awt.Window;
-import java.io.IOException;
 
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.RawDataFileWriter;
@@ -91,7 +90,7 @@ public class DataSetFilterSetupDialog extends
 		ticPlot.addTICDataset(newDataset);
 	    }
 
-	} catch (IOException e) {
+	} catch (Exception e) {
 	    e.printStackTrace();
 	    return;
 	}
@@ -19,8 +19,6 @@
 
 package net.sf.mzmine.modules.rawdatamethods.filtering.datasetfilters;
 
-import java.io.IOException;
-
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.RawDataFileWriter;
 import net.sf.mzmine.modules.MZmineModule;
@@ -33,7 +31,7 @@ public interface RawDataSetFilter extends MZmineModule {
      */
     public RawDataFile filterDatafile(RawDataFile dataFile,
 	    RawDataFileWriter newFile, ParameterSet parameters)
-	    throws IOException;
+	    throws Exception;
 
     public double getProgress();
 
@@ -19,50 +19,61 @@
 
 package net.sf.mzmine.modules.rawdatamethods.filtering.datasetfilters.cropper;
 
-import java.io.IOException;
+import java.util.Arrays;
 
 import javax.annotation.Nonnull;
 
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.RawDataFileWriter;
 import net.sf.mzmine.datamodel.Scan;
-import net.sf.mzmine.datamodel.impl.SimpleScan;
 import net.sf.mzmine.modules.rawdatamethods.filtering.datasetfilters.RawDataSetFilter;
 import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.util.ScanProcessingPipeline;
+import net.sf.mzmine.util.ScanProcessingPipeline.ScanProcessor;
 
 import com.google.common.collect.Range;
 
 public class CropFilter implements RawDataSetFilter {
 
-    private int processedScans, totalScans;
+    private int totalScans;
+    private ScanProcessingPipeline pipeline;
 
     public RawDataFile filterDatafile(RawDataFile dataFile,
 	    RawDataFileWriter rawDataFileWriter, ParameterSet parameters)
-	    throws IOException {
+	    throws Exception {
 
 	Range<Double> RTRange = parameters.getParameter(
 		CropFilterParameters.retentionTimeRange).getValue();
 
-	int[] scanNumbers = dataFile.getScanNumbers();
-	totalScans = scanNumbers.length;
-
-	for (processedScans = 0; processedScans < totalScans; processedScans++) {
-	    Scan scan = dataFile.getScan(scanNumbers[processedScans]);
-
-	    if (RTRange.contains(scan.getRetentionTime())) {
-		Scan scanCopy = new SimpleScan(scan);
-		rawDataFileWriter.addScan(scanCopy);
-	    }
+	// The retention times are known without reading the data points, so
+	// we only pass the scans inside the range to the pipeline
+	int[] allScanNumbers = dataFile.getScanNumbers();
+	int[] scanNumbers = new int[allScanNumbers.length];
+	totalScans = 0;
+	for (int scanNumber : allScanNumbers) {
+	    Scan scan = dataFile.getScan(scanNumber);
+	    if (RTRange.contains(scan.getRetentionTime()))
+		scanNumbers[totalScans++] = scanNumber;
 	}
+	scanNumbers = Arrays.copyOf(scanNumbers, totalScans);
+
+	// The pipeline reads a copy of each scan, which we write unchanged
+	pipeline = new ScanProcessingPipeline(dataFile, scanNumbers,
+		new ScanProcessor() {
+		    public Scan processScan(Scan scan) {
+			return scan;
+		    }
+		});
+	pipeline.process(rawDataFileWriter, null);
 
 	return rawDataFileWriter.finishWriting();
 
     }
 
     public double getProgress() {
-	if (totalScans == 0)
+	if ((totalScans == 0) || (pipeline == null))
 	    return 0;
-	return (double) processedScans / totalScans;
+	return (double) pipeline.getProcessedScans() / totalScans;
     }
 
     public @Nonnull String getName() {
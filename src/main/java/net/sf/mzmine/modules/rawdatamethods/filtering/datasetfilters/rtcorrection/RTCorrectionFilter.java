@@ -24,9 +24,10 @@ import javax.annotation.Nonnull;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.RawDataFileWriter;
 import net.sf.mzmine.datamodel.Scan;
-import net.sf.mzmine.datamodel.impl.SimpleScan;
 import net.sf.mzmine.modules.rawdatamethods.filtering.datasetfilters.RawDataSetFilter;
 import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.util.ScanProcessingPipeline;
+import net.sf.mzmine.util.ScanProcessingPipeline.ScanProcessor;
 
 public class RTCorrectionFilter implements RawDataSetFilter {
 
@@ -36,14 +37,15 @@ public class RTCorrectionFilter implements RawDataSetFilter {
 
 	try {
 	    int[] scanNumbers = dataFile.getScanNumbers(1);
-	    int totalScans = scanNumbers.length;
 
-	    for (int i = 0; i < totalScans; i++) {
-		Scan scan = dataFile.getScan(scanNumbers[i]);
-		if (scan != null) {
-		    rawDataFileWriter.addScan(new SimpleScan(scan));
-		}
-	    }
+	    // The pipeline reads a copy of each scan, which we write unchanged
+	    ScanProcessingPipeline pipeline = new ScanProcessingPipeline(
+		    dataFile, scanNumbers, new ScanProcessor() {
+			public Scan processScan(Scan scan) {
+			    return scan;
+			}
+		    });
+	    pipeline.process(rawDataFileWriter, null);
 
 	    return rawDataFileWriter.finishWriting();
 
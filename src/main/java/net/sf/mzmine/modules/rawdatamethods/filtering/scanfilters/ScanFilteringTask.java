@@ -19,7 +19,6 @@
 
 package net.sf.mzmine.modules.rawdatamethods.filtering.scanfilters;
 
-import java.io.IOException;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.MZmineProject;
@@ -31,6 +30,8 @@ import net.sf.mzmine.modules.MZmineProcessingStep;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ScanProcessingPipeline;
+import net.sf.mzmine.util.ScanProcessingPipeline.ScanProcessor;
 
 class ScanFilteringTask extends AbstractTask {
 
@@ -40,8 +41,9 @@ class ScanFilteringTask extends AbstractTask {
     private RawDataFile dataFile, filteredRawDataFile;
 
     // scan counter
-    private int processedScans = 0, totalScans;
+    private int totalScans;
     private int[] scanNumbers;
+    private ScanProcessingPipeline pipeline;
 
     // User parameters
     private String suffix;
@@ -78,10 +80,10 @@ class ScanFilteringTask extends AbstractTask {
      * @see net.sf.mzmine.taskcontrol.Task#getFinishedPercentage()
      */
     public double getFinishedPercentage() {
-	if (totalScans == 0) {
+	if ((totalScans == 0) || (pipeline == null)) {
 	    return 0;
 	} else {
-	    return (double) processedScans / totalScans;
+	    return (double) pipeline.getProcessedScans() / totalScans;
 	}
     }
 
@@ -109,20 +111,21 @@ class ScanFilteringTask extends AbstractTask {
 	    RawDataFileWriter rawDataFileWriter = MZmineCore
 		    .createNewFile(newName);
 
-	    for (int i = 0; i < totalScans; i++) {
-
-		if (isCanceled()) {
-		    return;
-		}
-
-		Scan scan = dataFile.getScan(scanNumbers[i]);
-		Scan newScan = rawDataFilter.getModule().filterScan(scan,
-			rawDataFilter.getParameterSet());
-		if (newScan != null) {
-		    rawDataFileWriter.addScan(newScan);
-		}
-
-		processedScans++;
+	    // The filters work on each scan separately, so we can filter
+	    // several scans in parallel
+	    final ScanFilter filter = rawDataFilter.getModule();
+	    final ParameterSet filterParameters = rawDataFilter
+		    .getParameterSet();
+	    pipeline = new ScanProcessingPipeline(dataFile, scanNumbers,
+		    new ScanProcessor() {
+			public Scan processScan(Scan scan) {
+			    return filter.filterScan(scan, filterParameters);
+			}
+		    });
+	    pipeline.process(rawDataFileWriter, this);
+
+	    if (isCanceled()) {
+		return;
 	    }
 
 	    // Finalize writing
@@ -141,7 +144,7 @@ class ScanFilteringTask extends AbstractTask {
 	    setStatus(TaskStatus.FINISHED);
 	    logger.info("Finished scan filter on " + dataFile);
 
-	} catch (IOException e) {
+	} catch (Exception e) {
 	    setStatus(TaskStatus.ERROR);
 	    setErrorMessage(e.toString());
 	    return;
@@ -33,6 +33,7 @@ import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.SlidingScanWindow;
 
 public class ScanSmoothingTask extends AbstractTask {
 
@@ -121,7 +122,11 @@ public class ScanSmoothingTask extends AbstractTask {
 	    newRDFW = MZmineCore.createNewFile(dataFile.getName() + ' '
 		    + suffix);
 
-	    DataPoint mzValues[][] = null; // [relative scan][j value]
+	    // Neighbour scans, each scan is read only once
+	    SlidingScanWindow window = new SlidingScanWindow(dataFile,
+		    scanNumbers);
+	    double mzValues[][] = null; // [relative scan][j value]
+	    double intensityValues[][] = null;
 	    int i, j, si, sj, ii, k, ssi, ssj;
 	    for (i = 0; i < totalScans; i++) {
 
@@ -172,44 +177,46 @@ public class ScanSmoothingTask extends AbstractTask {
 			}
 			if (sj > si) {
 			    timepassed++;
+			    final int windowSize = sj - si + 1;
 			    // Allocate
-			    if (mzValues == null
-				    || mzValues.length < sj - si + 1)
-				mzValues = new DataPoint[sj - si + 1][];
+			    if (mzValues == null || mzValues.length < windowSize) {
+				mzValues = new double[windowSize][];
+				intensityValues = new double[windowSize][];
+			    }
 			    // Load Data Points
+			    window.moveTo(si, sj);
 			    for (j = si; j <= sj; j++) {
-				Scan xscan = dataFile.getScan(scanNumbers[j]);
-				mzValues[j - si] = xscan.getDataPoints();
+				mzValues[j - si] = window.getMZValues(j);
+				intensityValues[j - si] = window
+					.getIntensityValues(j);
 			    }
 			    // Estimate Averages
 			    ii = i - si;
-			    newDP = new DataPoint[mzValues[ii].length];
-			    for (k = 0; k < mzValues[ii].length; k++) {
-				DataPoint dp = mzValues[ii][k];
-				double mz = dp.getMZ();
+			    final double scanMZValues[] = mzValues[ii];
+			    final double scanIntensityValues[] = intensityValues[ii];
+			    newDP = new DataPoint[scanMZValues.length];
+			    for (k = 0; k < scanMZValues.length; k++) {
+				double mz = scanMZValues[k];
 				double intensidad = 0;
-				if (dp.getIntensity() > 0) { // only process
-							     // those > 0
+				if (scanIntensityValues[k] > 0) { // only process
+								  // those > 0
 				    double a = 0;
 				    short c = 0;
 				    int f = 0;
-				    for (j = 0; j < mzValues.length; j++) {
-					// System.out.println(j);
-					if (mzValues[j].length > k
-						&& Math.abs(mzValues[j][k]
-							.getMZ() - mz) < timeMZtol) {
+				    for (j = 0; j < windowSize; j++) {
+					final double mzJ[] = mzValues[j];
+					if (mzJ.length > k
+						&& Math.abs(mzJ[k] - mz) < timeMZtol) {
 					    f = k;
 					} else {
-					    f = findFirstMass(mz, mzValues[j]);
-					    if (Math.abs(mzValues[j][f].getMZ()
-						    - mz) > timeMZtol) {
+					    f = findFirstMass(mz, mzJ);
+					    if (Math.abs(mzJ[f] - mz) > timeMZtol) {
 						f = -f;
 					    }
 					}
 					if (f >= 0
-						&& mzValues[j][f]
-							.getIntensity() >= minimumHeight) {
-					    a += mzValues[j][f].getIntensity();
+						&& intensityValues[j][f] >= minimumHeight) {
+					    a += intensityValues[j][f];
 					    c++;
 					} else {
 					    c = (short) (c + 0);
@@ -291,15 +298,15 @@ public class ScanSmoothingTask extends AbstractTask {
 
     }
 
-    static int findFirstMass(double mass, DataPoint mzValues[]) {
+    static int findFirstMass(double mass, double mzValues[]) {
 	int l = 0;
 	int r = mzValues.length - 1;
 	int mid = 0;
 	while (l < r) {
 	    mid = (r + l) / 2;
-	    if (mzValues[mid].getMZ() > mass) {
+	    if (mzValues[mid] > mass) {
 		r = mid - 1;
-	    } else if (mzValues[mid].getMZ() < mass) {
+	    } else if (mzValues[mid] < mass) {
 		l = mid + 1;
 	    } else {
 		r = mid;
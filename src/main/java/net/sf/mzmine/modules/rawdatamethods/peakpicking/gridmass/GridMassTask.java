@@ -22,10 +22,14 @@ package net.sf.mzmine.modules.rawdatamethods.peakpicking.gridmass;
 import java.text.Format;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
@@ -36,12 +40,16 @@ import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.modules.masslistmethods.chromatogrambuilder.Chromatogram;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.ArrayUtils;
+import net.sf.mzmine.util.SlidingScanWindow;
 
 public class GridMassTask extends AbstractTask {
 
-    private HashMap<Integer, DataPoint[]> dpCache = null;
+    // Rows of the probe grid climbed by one parallel task
+    private static final int GRID_ROWS_PER_CHUNK = 16;
+
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
     private final MZmineProject project;
@@ -52,7 +60,7 @@ public class GridMassTask extends AbstractTask {
     private float procedure = 0;
     private int newPeakID = 0;
     private int[] scanNumbers;
-    Datum[] roi[];
+    ScanDatums roi[];
     double retentiontime[];
 
     // User parameters
@@ -180,42 +188,44 @@ public class GridMassTask extends AbstractTask {
 
 	logger.info("Getting data points on " + dataFile);
 
-	roi = new Datum[totalScans][];
-	ArrayList<Datum> roiAL = new ArrayList<Datum>();
-	long passed = 0, nopassed = 0;
+	roi = new ScanDatums[totalScans];
+	long passed = 0;
 	minMasa = Double.MAX_VALUE;
 	maxMasa = 0;
-	int maxJ = 0;
 	boolean[] scanOk = new boolean[totalScans];
 	Arrays.fill(scanOk, true);
 
 	logger.info("Smoothing data points on " + dataFile + " (Time min="
 		+ smoothTimeSpan + "; Time m/z=" + smoothTimeMZ + ")");
-	IndexedDataPoint[][] data = smoothDataPoints(dataFile, smoothTimeSpan,
+	ScanDatums[] data = smoothDataPoints(dataFile, smoothTimeSpan,
 		smoothTimeMZ, 0, smoothMZ, 0, minimumHeight);
+	if (data == null)
+	    return;
 
 	logger.info("Determining intensities (mass sum) per scan on "
 		+ dataFile);
+	StringBuilder massSums = new StringBuilder();
 	for (i = 0; i < totalScans; i++) {
 	    if (i % 100 == 0 && isCanceled())
 		return;
-	    scan = dataFile.getScan(scanNumbers[i]);
-	    IndexedDataPoint mzv[] = data[i]; // scan.getDataPoints();
-	    double prev = (mzv.length > 0 ? mzv[0].datapoint.getMZ() : 0);
+	    ScanDatums mzv = data[i];
+	    double prev = (mzv.size() > 0 ? mzv.mz[0] : 0);
 	    double massSum = 0;
-	    for (j = 0; j < mzv.length; j++) {
-		if (mzv[j].datapoint.getIntensity() >= minimumHeight)
-		    massSum += mzv[j].datapoint.getMZ() - prev;
-		prev = mzv[j].datapoint.getMZ();
-		if (mzv[j].datapoint.getMZ() < minMasa)
-		    minMasa = mzv[j].datapoint.getMZ();
-		if (mzv[j].datapoint.getMZ() > maxMasa)
-		    maxMasa = mzv[j].datapoint.getMZ();
+	    for (j = 0; j < mzv.size(); j++) {
+		if (mzv.intensity[j] >= minimumHeight)
+		    massSum += mzv.mz[j] - prev;
+		prev = mzv.mz[j];
+		if (mzv.mz[j] < minMasa)
+		    minMasa = mzv.mz[j];
+		if (mzv.mz[j] > maxMasa)
+		    maxMasa = mzv.mz[j];
 	    }
 	    double dm = 100.0 / (maxMasa - minMasa);
 	    if (i % 30 == 0 && debug > 0) {
-		System.out.println("");
-		System.out.print("t=" + Math.round(retentiontime[i] * 100)
+		if (massSums.length() > 0)
+		    logger.info(massSums.toString());
+		massSums.setLength(0);
+		massSums.append("t=" + Math.round(retentiontime[i] * 100)
 			/ 100.0 + ": (in %) ");
 	    }
 	    if (scanOk[i]) {
@@ -231,18 +241,18 @@ public class GridMassTask extends AbstractTask {
 		    }
 		}
 		if (debug > 0)
-		    System.out.print(((int) (massSum * dm))
+		    massSums.append(((int) (massSum * dm))
 			    + (scanOk[i] ? " " : "*** "));
 	    } else {
 		if (debug > 0)
-		    System.out.print(((int) (massSum * dm))
+		    massSums.append(((int) (massSum * dm))
 			    + (scanOk[i] ? " " : "* "));
 	    }
 	    setProcedure(i, totalScans, 1);
 	}
 
-	if (debug > 0)
-	    System.out.println("");
+	if (massSums.length() > 0)
+	    logger.info(massSums.toString());
 
 	String[] it = ignoreTimes.trim().split(", ?");
 	for (j = 0; j < it.length; j++) {
@@ -259,36 +269,17 @@ public class GridMassTask extends AbstractTask {
 	    }
 	}
 
-	passed = 0;
-	nopassed = 0;
+	// The smoothed data only contain intensities >= minimumHeight
 	for (i = 0; i < totalScans; i++) {
-	    if (i % 100 == 0 && isCanceled())
-		return;
 	    if (scanOk[i]) {
-		scan = dataFile.getScan(scanNumbers[i]);
-		IndexedDataPoint mzv[] = data[i];
-		DataPoint mzvOriginal[] = scan.getDataPoints();
-		ArrayList<Datum> dal = new ArrayList<Datum>();
-		for (j = 0; j < mzv.length; j++) {
-		    if (mzv[j].datapoint.getIntensity() >= minimumHeight) {
-			dal.add(new Datum(mzv[j].datapoint, i,
-				mzvOriginal[mzv[j].index]));
-			passed++;
-		    } else {
-			nopassed++;
-		    }
-		}
-		if (j > maxJ)
-		    maxJ = j;
-		roi[i] = dal.toArray(new Datum[0]);
-		roiAL.addAll(dal);
+		roi[i] = data[i];
+		passed += data[i].size();
 	    }
 	    setProcedure(i, totalScans, 2);
 	}
-	logger.info(passed + " intensities >= " + minimumHeight + " of "
-		+ (passed + nopassed) + " ("
-		+ Math.round(passed * 10000.0 / (double) (passed + nopassed))
-		/ 100.0 + "%) on " + dataFile);
+	data = null;
+	logger.info(passed + " intensities >= " + minimumHeight + " on "
+		+ dataFile);
 
 	// New "probing" algorithm
 	// (1) Generate probes all over chromatograms
@@ -301,48 +292,24 @@ public class GridMassTask extends AbstractTask {
 	int byScan = Math.max(1, tolScans / 4);
 	logger.info("Creating Grid of probes on " + dataFile + " every "
 		+ mzFormat.format(byMZ) + " m/z and " + byScan + " scans");
-	double m;
-	int ndata = (int) Math
-		.round((((double) totalScans / (double) byScan) + 1)
-			* ((maxMasa - minMasa + byMZ) / byMZ));
-	Probe probes[] = new Probe[ndata];
-	int idata = 0;
-	for (i = 0; i < totalScans; i += byScan) {
-	    if (i % 100 == 0 && isCanceled())
-		return;
-	    for (m = minMasa - (i % 2) * byMZ / 2; m <= maxMasa; m += byMZ) {
-		probes[idata++] = new Probe(m, i);
-	    }
-	    setProcedure(i, totalScans, 3);
-	}
 
 	// (2) Move each probe to their closest center
 	double mzR = byMZ / 2;
 	int scanR = Math.max(byScan - 1, 2);
 	logger.info("Finding local maxima for each probe on " + dataFile
 		+ " radius: scans=" + scanR + ", m/z=" + mzR);
-	int okProbes = 0;
-	for (i = 0; i < idata; i++) {
-	    if (i % 100 == 0 && isCanceled())
-		return;
-	    moveProbeToCenter(probes[i], scanR, mzR);
-	    if (probes[i].intensityCenter < minimumHeight) {
-		probes[i] = null;
-	    } else {
-		okProbes++;
-	    }
-	    setProcedure(i, idata, 4);
-	}
-	if (okProbes > 0) {
-	    Probe[] pArr = new Probe[okProbes];
-	    for (okProbes = i = 0; i < idata; i++) {
-		if (probes[i] != null) {
-		    pArr[okProbes++] = probes[i];
-		}
-	    }
-	    probes = pArr;
-	    pArr = null;
+	Probe probes[];
+	try {
+	    probes = climbProbes(byMZ, byScan, scanR, mzR);
+	} catch (Exception e) {
+	    logger.log(Level.SEVERE, "Could not find local maxima on "
+		    + dataFile, e);
+	    setStatus(TaskStatus.ERROR);
+	    setErrorMessage(e.toString());
+	    return;
 	}
+	if (isCanceled())
+	    return;
 	// (3) Assign spot id to each "center"
 	logger.info("Sorting probes " + dataFile);
 	Arrays.sort(probes);
@@ -418,8 +385,7 @@ public class GridMassTask extends AbstractTask {
 				&& (intensityRatio(s1.center.intensityCenter,
 					s2.center.intensityCenter) > intensitySimilarity)) {
 			    if (debug > 2)
-				System.out
-					.println("Joining s1 id "
+				logger.info("Joining s1 id "
 						+ s1.spotId
 						+ "="
 						+ mzFormat
@@ -502,8 +468,7 @@ public class GridMassTask extends AbstractTask {
 		}
 		if (totalScans * rtPerScan > maximumTimeSpan) {
 		    if (debug > 2)
-			System.out
-				.println("Removing "
+			logger.info("Removing "
 					+ toRemove.size()
 					+ " masses around "
 					+ mzFormat.format(s1.center.mzCenter)
@@ -551,8 +516,7 @@ public class GridMassTask extends AbstractTask {
 			    newRow.setComment(sx.toString(retentiontime));
 			    newPeakList.addRow(newRow);
 			    if (debug > 0)
-				System.out
-					.println("Peak added id="
+				logger.info("Peak added id="
 						+ sx.spotId
 						+ " "
 						+ mzFormat
@@ -573,13 +537,12 @@ public class GridMassTask extends AbstractTask {
 						+ " area = " + peak.getArea());
 			    if (debug > 1) {
 				// Peak info:
-				System.out.println(sx.toString());
-				sx.printDebugInfo();
+				logger.info(sx.toString());
+				logger.info(sx.getDebugInfo());
 			    }
 			} else {
 			    if (debug > 0)
-				System.out
-					.println("Ignored by area ~ 0 id="
+				logger.info("Ignored by area ~ 0 id="
 						+ sx.spotId
 						+ " "
 						+ mzFormat
@@ -602,8 +565,7 @@ public class GridMassTask extends AbstractTask {
 		    }
 		} else {
 		    if (debug > 0)
-			System.out
-				.println("Ignored by continous criteria: id="
+			logger.info("Ignored by continous criteria: id="
 					+ sx.spotId
 					+ " "
 					+ mzFormat.format(sx.center.mzCenter)
@@ -623,8 +585,7 @@ public class GridMassTask extends AbstractTask {
 	    } else {
 		if (sx.size() > 0) {
 		    if (debug > 0)
-			System.out
-				.println("Ignored by time range criteria: id="
+			logger.info("Ignored by time range criteria: id="
 					+ sx.spotId
 					+ " "
 					+ mzFormat.format(sx.center.mzCenter)
@@ -665,18 +626,21 @@ public class GridMassTask extends AbstractTask {
 	procedure = (process + (float) i / (float) max) / procedureLen;
     }
 
-    public IndexedDataPoint[][] smoothDataPoints(RawDataFile dataFile,
+    public ScanDatums[] smoothDataPoints(RawDataFile dataFile,
 	    double timeSpan, double timeMZSpan, int scanSpan, double mzTol,
 	    int mzPoints, double minimumHeight) {
 	int[] scanNumbers = dataFile.getScanNumbers(1);
 	int totalScans = scanNumbers.length;
-	DataPoint mzValues[][] = null; // [relative scan][j value]
-	DataPoint mzValuesJ[] = null;
-	int mzValuesScan[] = null;
+	// Neighbour scans, each scan is read only once
+	SlidingScanWindow window = new SlidingScanWindow(dataFile, scanNumbers);
+	double mzValues[][] = null; // [relative scan][j value]
+	double intensityValues[][] = null;
+	double mzValuesJ[] = null;
 	int mzValuesMZidx[] = null;
-	IndexedDataPoint newMZValues[][] = null;
-	IndexedDataPoint tmpDP[] = new IndexedDataPoint[0];
-	newMZValues = new IndexedDataPoint[totalScans][];
+	ScanDatums newMZValues[] = new ScanDatums[totalScans];
+	// Indexes and smoothed intensities of the data points kept
+	int tmpIndex[] = new int[0];
+	double tmpIntensity[] = new double[0];
 	int i, j, si, sj, ii, k, ssi, ssj, m;
 	double timeSmoothingMZtol = Math.max(timeMZSpan, 1e-6);
 
@@ -690,8 +654,8 @@ public class GridMassTask extends AbstractTask {
 	    // Smoothing in TIME space
 	    Scan scan = dataFile.getScan(scanNumbers[i]);
 	    double rt = retentiontime[i];
-	    DataPoint[] xDP = null;
-	    IndexedDataPoint[] iDP = null;
+	    double scanMZValues[] = null;
+	    double scanIntensityValues[] = null;
 	    sj = si = i;
 	    ssi = ssj = i;
 	    int t = 0;
@@ -725,51 +689,45 @@ public class GridMassTask extends AbstractTask {
 		if (scan != null && sj > si) {
 		    // Allocate
 		    if (mzValues == null || mzValues.length < sj - si + 1) {
-			mzValues = new DataPoint[sj - si + 1][];
-			mzValuesScan = new int[sj - si + 1];
+			mzValues = new double[sj - si + 1][];
+			intensityValues = new double[sj - si + 1][];
 			mzValuesMZidx = new int[sj - si + 1];
 		    }
 		    // Load Data Points
+		    window.moveTo(si, sj);
 		    for (j = si; j <= sj; j++) {
 			int jsi = j - si;
-			if (mzValues[jsi] == null
-				|| jsi >= mzValuesScan.length - 1
-				|| mzValuesScan[jsi + 1] != scanNumbers[j]) {
-			    Scan xscan = dataFile.getScan(scanNumbers[j]);
-			    mzValues[jsi] = xscan.getDataPoints();
-			    mzValuesScan[jsi] = scanNumbers[j];
-			} else {
-			    mzValues[jsi] = mzValues[jsi + 1];
-			    mzValuesScan[jsi] = mzValuesScan[jsi + 1];
-			}
+			mzValues[jsi] = window.getMZValues(j);
+			intensityValues[jsi] = window.getIntensityValues(j);
 			mzValuesMZidx[jsi] = 0;
 		    }
 		    // Estimate Averages
 		    ii = i - si;
-		    if (tmpDP.length < mzValues[ii].length)
-			tmpDP = new IndexedDataPoint[mzValues[ii].length * 3 / 2];
-		    for (k = 0; k < mzValues[ii].length; k++) {
-			DataPoint dp = mzValues[ii][k];
-			double mz = dp.getMZ();
+		    scanMZValues = mzValues[ii];
+		    scanIntensityValues = intensityValues[ii];
+		    if (tmpIndex.length < scanMZValues.length) {
+			tmpIndex = new int[scanMZValues.length * 3 / 2];
+			tmpIntensity = new double[scanMZValues.length * 3 / 2];
+		    }
+		    for (k = 0; k < scanMZValues.length; k++) {
+			double mz = scanMZValues[k];
 			double intensidad = 0;
-			if (dp.getIntensity() > 0) { // only process those > 0
+			if (scanIntensityValues[k] > 0) { // only process those > 0
 			    double a = 0;
 			    short c = 0;
 			    int f = 0;
 			    for (j = 0; j <= sj - si; j++) {
 				for (mzValuesJ = mzValues[j]; mzValuesMZidx[j] < mzValuesJ.length - 1
-					&& mzValuesJ[mzValuesMZidx[j] + 1]
-						.getMZ() < mz
+					&& mzValuesJ[mzValuesMZidx[j] + 1] < mz
 						- timeSmoothingMZtol; mzValuesMZidx[j]++)
 				    ;
 
 				f = mzValuesMZidx[j];
 
 				for (m = mzValuesMZidx[j] + 1; m < mzValuesJ.length
-					&& mzValuesJ[m].getMZ() < mz
-						+ timeSmoothingMZtol; m++) {
-				    if (Math.abs(mzValuesJ[m].getMZ() - mz) < Math
-					    .abs(mzValuesJ[f].getMZ() - mz)) {
+					&& mzValuesJ[m] < mz + timeSmoothingMZtol; m++) {
+				    if (Math.abs(mzValuesJ[m] - mz) < Math
+					    .abs(mzValuesJ[f] - mz)) {
 					f = m;
 				    } else {
 					// siempre debe ser mas cercano porque
@@ -780,39 +738,50 @@ public class GridMassTask extends AbstractTask {
 				}
 				if (f > 0
 					&& f < mzValuesJ.length
-					&& Math.abs(mzValuesJ[f].getMZ() - mz) <= timeSmoothingMZtol
-					&& mzValuesJ[f].getIntensity() > 0) { // >=
+					&& Math.abs(mzValuesJ[f] - mz) <= timeSmoothingMZtol
+					&& intensityValues[j][f] > 0) { // >=
 				    // minimumHeight
 				    // ?
-				    // System.out.println("mz="+mz+"; Closer="+mzValuesJ[f].getMZ()+", f="+f+", Intensity="+mzValuesJ[f].getIntensity());
-				    a += mzValuesJ[f].getIntensity();
+				    a += intensityValues[j][f];
 				    c++;
 				}
 			    }
 			    intensidad = c > 0 ? a / c : 0;
 			    if (intensidad >= minimumHeight) {
-				tmpDP[t++] = new IndexedDataPoint(k,
-					new SimpleDataPoint(mz, intensidad));
+				tmpIndex[t] = k;
+				tmpIntensity[t] = intensidad;
+				t++;
 			    }
 			}
 		    }
 
 		}
 	    } else if (scan != null) {
-		xDP = scan.getDataPoints();
-		if (tmpDP.length < xDP.length)
-		    tmpDP = new IndexedDataPoint[xDP.length];
-		for (k = 0; k < xDP.length; k++) {
-		    if (xDP[k].getIntensity() >= minimumHeight) {
-			tmpDP[t++] = new IndexedDataPoint(k, xDP[k]);
+		window.moveTo(i, i);
+		scanMZValues = window.getMZValues(i);
+		scanIntensityValues = window.getIntensityValues(i);
+		if (tmpIndex.length < scanMZValues.length) {
+		    tmpIndex = new int[scanMZValues.length];
+		    tmpIntensity = new double[scanMZValues.length];
+		}
+		for (k = 0; k < scanMZValues.length; k++) {
+		    if (scanIntensityValues[k] >= minimumHeight) {
+			tmpIndex[t] = k;
+			tmpIntensity[t] = scanIntensityValues[k];
+			t++;
 		    }
 		}
 	    }
-	    iDP = new IndexedDataPoint[t];
+	    double newMZ[] = new double[t];
+	    double newIntensity[] = new double[t];
+	    float newIntensityOriginal[] = new float[t];
 	    for (k = 0; k < t; k++) {
-		iDP[k] = tmpDP[k];
+		newMZ[k] = scanMZValues[tmpIndex[k]];
+		newIntensity[k] = tmpIntensity[k];
+		newIntensityOriginal[k] = (float) scanIntensityValues[tmpIndex[k]];
 	    }
-	    newMZValues[i] = iDP;
+	    newMZValues[i] = new ScanDatums(newMZ, newIntensity,
+		    newIntensityOriginal);
 
 	    setProcedure(i, totalScans, 0);
 
@@ -826,24 +795,72 @@ public class GridMassTask extends AbstractTask {
 	return newMZValues;
     }
 
-    public double HWHM(double x0, double x1, double y0, double y1) {
-	// x0 is the "scan" or m/z estimated at the highest peak
-	// y0 is the "highest" peak intensity
-	// x1 is the "scan" or m/z estimated at the point closest to (highest
-	// intensity / 2)
-	// y1 is the intensity closest to (highest intensity / 2)
-	// x1_2 = x0 - F * (x0-x1)
-	// F = (y0 - y0/2) / (y0 - y1) = y0/2 / (y0 - y1)
-	// x1_2 = x0(1-F) + x1*F /// this X1/2 is given a triangle, so using the
-	// same slope than between x0 and x1, this x1_2 is farther than the
-	// actual 1/2 point
-	// x3_4 = (x1_2 - x1) / 2 + x1 // aproximation to real X 1/2 by the half
-	// of the difference between the x1 and the estimated x1_2
-	double f = (y0 / 2) / (y0 - y1);
-	if (Double.isInfinite(f))
-	    f = 1;
-	double x3_4 = (x1 * (1 + f) / 2) - (x0 * (1 + f) / 2);
-	return Math.abs(x3_4);
+    /**
+     * Moves the probes of the whole grid to their closest maximum and returns
+     * the probes which reached a maximum >= minimumHeight, in grid order. The
+     * probes do not depend on each other, so rows of the grid are processed in
+     * parallel. Returns null if the task was canceled.
+     */
+    private Probe[] climbProbes(final double byMZ, final int byScan,
+	    final int scanR, final double mzR) throws Exception {
+
+	final int gridRows = (totalScans + byScan - 1) / byScan;
+	final ExecutorService executor = SharedTaskExecutor.newExecutor();
+
+	try {
+
+	    List<Future<List<Probe>>> results = new ArrayList<Future<List<Probe>>>();
+	    for (int row = 0; row < gridRows; row += GRID_ROWS_PER_CHUNK) {
+		final int firstRow = row;
+		final int lastRow = Math.min(row + GRID_ROWS_PER_CHUNK,
+			gridRows) - 1;
+		results.add(executor.submit(new Callable<List<Probe>>() {
+		    public List<Probe> call() {
+			return climbProbes(firstRow, lastRow, byMZ, byScan,
+				scanR, mzR);
+		    }
+		}));
+	    }
+
+	    ArrayList<Probe> probes = new ArrayList<Probe>();
+	    for (int i = 0; i < results.size(); i++) {
+		if (isCanceled())
+		    return null;
+		try {
+		    probes.addAll(results.get(i).get());
+		} catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    if (cause instanceof Exception)
+			throw (Exception) cause;
+		    if (cause instanceof Error)
+			throw (Error) cause;
+		    throw e;
+		}
+		setProcedure(i, results.size(), 4);
+	    }
+	    return probes.toArray(new Probe[0]);
+
+	} finally {
+	    executor.shutdownNow();
+	}
+
+    }
+
+    private List<Probe> climbProbes(int firstRow, int lastRow, double byMZ,
+	    int byScan, int scanR, double mzR) {
+	ArrayList<Probe> probes = new ArrayList<Probe>();
+	for (int row = firstRow; row <= lastRow; row++) {
+	    if (isCanceled())
+		break;
+	    final int i = row * byScan;
+	    for (double m = minMasa - (i % 2) * byMZ / 2; m <= maxMasa; m += byMZ) {
+		Probe probe = new Probe(m, i);
+		moveProbeToCenter(probe, scanR, mzR);
+		if (probe.intensityCenter >= minimumHeight)
+		    probes.add(probe);
+	    }
+	}
+	return probes;
     }
 
     int addMaxDatumFromScans(SpotByProbes s, Chromatogram peak) {
@@ -851,24 +868,25 @@ public class GridMassTask extends AbstractTask {
 	int i, j;
 	int adds = 0;
 	for (i = s.minScan; i <= s.maxScan; i++) {
-	    Datum[] di = roi[i];
-	    if (di != null && di.length > 0) {
-		Datum max = new Datum(new SimpleDataPoint(0, -1), 0,
-			new SimpleDataPoint(0, -1));
-		int idx = findFirstMass(s.minMZ, di);
-		for (j = idx; j < di.length && di[j].mz <= s.maxMZ; j++) {
-		    Datum d = di[j];
-		    if (d.spotId == s.spotId) {
-			if (d.intensity > max.intensity && d.mz >= s.minMZ
-				&& d.intensity > minimumHeight) {
-			    max = d;
+	    ScanDatums di = roi[i];
+	    if (di != null && di.size() > 0) {
+		int max = -1;
+		double maxIntensity = -1;
+		int idx = di.findFirstMass(s.minMZ);
+		for (j = idx; j < di.size() && di.mz[j] <= s.maxMZ; j++) {
+		    if (di.spotId[j] == s.spotId) {
+			if (di.intensity[j] > maxIntensity
+				&& di.mz[j] >= s.minMZ
+				&& di.intensity[j] > minimumHeight) {
+			    max = j;
+			    maxIntensity = di.intensity[j];
 			}
 		    }
 		}
-		if (max.intensity > 0) {
+		if (maxIntensity > 0) {
 		    adds++;
 		    peak.addMzPeak(scanNumbers[i], new SimpleDataPoint(
-			    max.mzOriginal, max.intensityOriginal));
+			    di.mz[max], di.intensityOriginal[max]));
 		}
 	    }
 	}
@@ -880,27 +898,25 @@ public class GridMassTask extends AbstractTask {
 
 	int i, j;
 	for (i = s.minScan; i <= s.maxScan; i++) {
-	    Datum[] di = roi[i];
-	    if (di != null && di.length > 0) {
-		int idx = findFirstMass(s.minMZ - mzRadius, di);
-		for (j = idx; j < di.length && di[j].mz <= s.maxMZ + mzRadius; j++) {
-		    Datum d = di[j];
-		    if (d.mz >= s.minMZ - mzRadius) {
-			if (d.spotId != 0) {
+	    ScanDatums di = roi[i];
+	    if (di != null && di.size() > 0) {
+		int idx = di.findFirstMass(s.minMZ - mzRadius);
+		for (j = idx; j < di.size() && di.mz[j] <= s.maxMZ + mzRadius; j++) {
+		    if (di.mz[j] >= s.minMZ - mzRadius) {
+			if (di.spotId[j] != 0) {
 			    // Some spot already assigned this to it. Check
 			    // exactly who is the winner
-			    Probe p = new Probe(d.mz, d.scan);
+			    Probe p = new Probe(di.mz[j], i);
 			    moveProbeToCenter(p, sRadius, mzRadius);
 			    if (p.mzCenter == s.center.mzCenter
 				    && p.scanCenter == s.center.scanCenter) {
 				// This datum is actually MINE (s) !!!, this
 				// will happen to datums close to spot borders
 				// and that compete with other spot
-				// System.out.println("Reassigning spot to Id="+s.spotId+" from Spot:"+d.toString());
-				s.setSpotIdToDatum(d);
+				s.setSpotIdToDatum(di, i, j);
 			    }
 			} else {
-			    s.setSpotIdToDatum(d);
+			    s.setSpotIdToDatum(di, i, j);
 			}
 		    }
 		}
@@ -917,47 +933,55 @@ public class GridMassTask extends AbstractTask {
 	double minMZ = Math.min(s.minMZ, s2.minMZ);
 	double maxMZ = Math.max(s.maxMZ, s2.maxMZ);
 	for (i = Math.min(s.minScan, s2.minScan); i <= mxScan; i++) {
-	    Datum[] di = roi[i];
-	    if (di != null && di.length > 0) {
-		int idx = findFirstMass(minMZ - mzRadius, di);
-		for (j = idx; j < di.length && di[j].mz <= maxMZ + mzRadius; j++) {
-		    Datum d = di[j];
-		    if (d.spotId == oldSpotId) {
-			s.setSpotIdToDatum(d);
+	    ScanDatums di = roi[i];
+	    if (di != null && di.size() > 0) {
+		int idx = di.findFirstMass(minMZ - mzRadius);
+		for (j = idx; j < di.size() && di.mz[j] <= maxMZ + mzRadius; j++) {
+		    if (di.spotId[j] == oldSpotId) {
+			s.setSpotIdToDatum(di, i, j);
 		    }
 		}
 	    }
 	}
     }
 
+    /**
+     * Moves the probe to the most intense datum around it, until it reaches a
+     * local maximum. Only reads the datums, so it may be called from several
+     * threads at once.
+     */
     void moveProbeToCenter(Probe p, int sRadius, double mzRadius) {
 
 	int i, j, k;
 	double maxMZ, minMZ;
 	boolean move = true;
-	Datum max = new Datum(new SimpleDataPoint(0, -1), 0,
-		new SimpleDataPoint(0, -1));
+	// Most intense datum found so far
+	double bestMZ = 0, bestIntensity = -1;
+	int bestScan = 0;
 	while (move) {
 	    k = Math.min(totalScans - 1, p.scanCenter + sRadius);
 	    for (i = Math.max(p.scanCenter - sRadius, 0); i <= k; i++) {
-		Datum[] di = roi[i];
-		if (di != null && di.length > 0) {
+		ScanDatums di = roi[i];
+		if (di != null && di.size() > 0) {
 		    minMZ = p.mzCenter - mzRadius;
-		    int idx = findFirstMass(minMZ, di);
+		    int idx = di.findFirstMass(minMZ);
 		    maxMZ = p.mzCenter + mzRadius;
-		    for (j = idx; j < di.length && di[j].mz <= maxMZ; j++) {
-			Datum d = di[j];
-			if (d.intensity > max.intensity && d.mz >= minMZ) {
-			    max = d;
+		    final double mz[] = di.mz;
+		    final double intensity[] = di.intensity;
+		    for (j = idx; j < mz.length && mz[j] <= maxMZ; j++) {
+			if (intensity[j] > bestIntensity && mz[j] >= minMZ) {
+			    bestMZ = mz[j];
+			    bestScan = i;
+			    bestIntensity = intensity[j];
 			}
 		    }
 		}
 	    }
-	    if (max.intensity >= 0
-		    && (max.mz != p.mzCenter || max.scan != p.scanCenter)) {
-		p.mzCenter = max.mz;
-		p.scanCenter = max.scan;
-		p.intensityCenter = max.intensity;
+	    if (bestIntensity >= 0
+		    && (bestMZ != p.mzCenter || bestScan != p.scanCenter)) {
+		p.mzCenter = bestMZ;
+		p.scanCenter = bestScan;
+		p.intensityCenter = bestIntensity;
 		// p.moves++;
 	    } else {
 		move = false;
@@ -965,156 +989,4 @@ public class GridMassTask extends AbstractTask {
 	}
     }
 
-    double intensityForMZorScan(ArrayList<DatumExpand> deA, double mz, int scan) {
-	double h = -1;
-	int j;
-	for (j = 0; j < deA.size(); j++) {
-	    DatumExpand de = deA.get(j);
-	    if ((de.dato.scan == scan || de.dato.mz == mz)
-		    && de.dato.intensity > h) {
-		h = de.dato.intensity;
-	    }
-	}
-	return h;
-    }
-
-    double[] massCenter(int l, int r, double min, double max) {
-	double x = 0;
-	double y = 0;
-	double sum = 0;
-	double maxValue = 0;
-	for (int i = l; i <= r; i++) {
-	    DataPoint mzs[] = getCachedDataPoints(scanNumbers[i]);
-	    if (mzs != null) {
-		for (int j = findFirstMass(min, mzs); j < mzs.length; j++) {
-		    double mass = mzs[j].getMZ();
-		    if (mass >= min) {
-			if (mass <= max) {
-			    double intensity = mzs[j].getIntensity();
-			    if (intensity >= minimumHeight) {
-				x += i * intensity;
-				y += mass * intensity;
-				sum += intensity;
-				if (intensity > maxValue) {
-				    maxValue = intensity;
-				}
-			    }
-			} else {
-			    break;
-			}
-		    }
-		}
-	    }
-	}
-	if (sum > 0.0) {
-	    x /= sum;
-	    y /= sum;
-	}
-	return new double[] { x, y, maxValue };
-    }
-
-    static int findFirstMass(double mass, DataPoint mzValues[]) {
-	int l = 0;
-	int r = mzValues.length - 1;
-	int mid = 0;
-	while (l < r) {
-	    mid = (r + l) / 2;
-	    if (mzValues[mid].getMZ() > mass) {
-		r = mid - 1;
-	    } else if (mzValues[mid].getMZ() < mass) {
-		l = mid + 1;
-	    } else {
-		return mid;
-	    }
-	}
-	while (l > 0 && mzValues[l].getMZ() > mass)
-	    l--;
-	return l;
-    }
-
-    static int findFirstMass(double mass, Datum mzValues[]) {
-	return findFirstMass(mass, mzValues, 0, mzValues.length - 1);
-    }
-
-    static int findFirstMass(double mass, Datum mzValues[], int l, int r) {
-	int mid = 0;
-	while (l < r) {
-	    mid = (r + l) / 2;
-	    if (mzValues[mid].mz > mass) {
-		r = mid - 1;
-	    } else if (mzValues[mid].mz < mass) {
-		l = mid + 1;
-	    } else {
-		return mid;
-	    }
-	}
-	while (l > 0 && mzValues[l].mz > mass)
-	    l--;
-	return l;
-    }
-
-    Spot intensities(int l, int r, double min, double max, Chromatogram chr,
-	    PearsonCorrelation stats, int spotId) {
-	boolean passSpot = false;
-	Spot s = new Spot();
-	if (r >= scanNumbers.length)
-	    r = scanNumbers.length - 1;
-	if (l < 0)
-	    l = 0;
-	for (int i = l; i <= r; i++) {
-	    Datum mzs[] = roi[i];
-	    if (mzs != null) {
-		Datum mzMax = null;
-		for (int j = findFirstMass(min, mzs); j < mzs.length; j++) {
-		    double mass = mzs[j].mz;
-		    double mjint = mzs[j].intensity;
-		    if (mass >= min) {
-			if (mass <= max) {
-			    if (mzs[j].spotId == spotId || passSpot) {
-				s.addPoint(i, mass,
-					(mjint >= minimumHeight ? mjint
-						: -mjint));
-				if (mjint >= minimumHeight) {
-				    if (mzMax == null
-					    || mjint > mzMax.intensity) {
-					mzMax = mzs[j];
-				    }
-				}
-			    } else {
-				if (mjint >= minimumHeight)
-				    s.pointsNoSpot++;
-			    }
-			} else {
-			    break;
-			}
-		    }
-		}
-		if (chr != null && mzMax != null) {
-		    // Add ONLY THE MAX INTENSITY PER SCAN
-		    chr.addMzPeak(scanNumbers[i], new SimpleDataPoint(mzMax.mz,
-			    mzMax.intensity)); // mzMax
-		}
-		if (stats != null && mzMax != null) {
-		    stats.enter(i, mzMax.mz);
-		}
-	    }
-	}
-	return s;
-    }
-
-    DataPoint[] getCachedDataPoints(int scan) {
-	if (dpCache == null)
-	    dpCache = new HashMap<Integer, DataPoint[]>();
-	DataPoint[] dp = dpCache.get(scan);
-	if (dp != null) {
-	    return dp;
-	}
-	Scan s = dataFile.getScan(scan);
-	if (s == null)
-	    return null;
-	dp = s.getDataPoints();
-	dpCache.put(scan, dp);
-	return dp;
-    }
-
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.modules.rawdatamethods.peakpicking.gridmass;
+
+/**
+ * Data points (datums) of one scan, stored as columns of primitive values
+ * sorted by m/z. Large profile files have hundreds of millions of datums, so
+ * we avoid keeping one object per datum.
+ */
+class ScanDatums {
+
+    // Full precision, because the m/z values end up in the detected peaks
+    final double mz[];
+
+    // Smoothed intensity, used to find the spots
+    final double intensity[];
+
+    // Raw intensity, used to build the peaks
+    final float intensityOriginal[];
+
+    // Spot assigned to each datum, 0 if none
+    final int spotId[];
+
+    ScanDatums(double mz[], double intensity[], float intensityOriginal[]) {
+	this.mz = mz;
+	this.intensity = intensity;
+	this.intensityOriginal = intensityOriginal;
+	this.spotId = new int[mz.length];
+    }
+
+    int size() {
+	return mz.length;
+    }
+
+    /**
+     * Returns the index of the datum with given m/z or, if there is none, of
+     * the nearest datum with lower m/z
+     */
+    int findFirstMass(double mass) {
+	int l = 0;
+	int r = mz.length - 1;
+	int mid = 0;
+	while (l < r) {
+	    mid = (r + l) / 2;
+	    if (mz[mid] > mass) {
+		r = mid - 1;
+	    } else if (mz[mid] < mass) {
+		l = mid + 1;
+	    } else {
+		return mid;
+	    }
+	}
+	while (l > 0 && mz[l] > mass)
+	    l--;
+	return l;
+    }
+
+}
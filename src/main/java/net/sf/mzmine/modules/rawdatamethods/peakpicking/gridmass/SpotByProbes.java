@@ -33,7 +33,10 @@ class SpotByProbes implements Comparable<SpotByProbes> {
     int spotId = -1;
     Probe center = null;
     int consecutiveScans = 0;
-    ArrayList<Datum> maxDatums = null;
+
+    // Scans with a maximum datum of this spot
+    int maxDatums = 0;
+    int firstMaxDatumScan, lastMaxDatumScan;
 
     SpotByProbes() {
     }
@@ -81,20 +84,22 @@ class SpotByProbes implements Comparable<SpotByProbes> {
 	    minIntensity = p.intensityCenter;
     }
 
-    void setSpotIdToDatum(Datum d) {
-	d.spotId = spotId;
-	if (d.mz > maxMZ)
-	    maxMZ = d.mz;
-	if (d.mz < minMZ)
-	    minMZ = d.mz;
-	if (d.scan > maxScan)
-	    maxScan = d.scan;
-	if (d.scan < minScan)
-	    minScan = d.scan;
-	if (d.intensity > maxIntensity)
-	    maxIntensity = d.intensity;
-	if (d.intensity < minIntensity)
-	    minIntensity = d.intensity;
+    void setSpotIdToDatum(ScanDatums datums, int scan, int index) {
+	datums.spotId[index] = spotId;
+	final double mz = datums.mz[index];
+	final double intensity = datums.intensity[index];
+	if (mz > maxMZ)
+	    maxMZ = mz;
+	if (mz < minMZ)
+	    minMZ = mz;
+	if (scan > maxScan)
+	    maxScan = scan;
+	if (scan < minScan)
+	    minScan = scan;
+	if (intensity > maxIntensity)
+	    maxIntensity = intensity;
+	if (intensity < minIntensity)
+	    minIntensity = intensity;
     }
 
     void addProbesFromSpot(SpotByProbes sbp, boolean clear) {
@@ -147,44 +152,42 @@ class SpotByProbes implements Comparable<SpotByProbes> {
 		+ Math.round(maxMZ * 10000) / 10000.0 + "]";
     }
 
-    public void printDebugInfo() {
-	System.out.println("*** SpotId : " + spotId + " ***");
+    public String getDebugInfo() {
+	StringBuilder info = new StringBuilder();
+	info.append("*** SpotId : " + spotId + " ***");
 	for (Probe p : probes) {
-	    System.out.println("SpotId=" + spotId + ", Probe Scan=" + p.scan
+	    info.append("\nSpotId=" + spotId + ", Probe Scan=" + p.scan
 		    + ", Probe m/z=" + p.mz + " Feature Scan=" + p.scanCenter
 		    + ", Feature m/z=" + p.mzCenter);
 	}
+	return info.toString();
     }
 
-    void buildMaxDatumFromScans(Datum[][] roi, double minimumHeight) {
+    void buildMaxDatumFromScans(ScanDatums[] roi, double minimumHeight) {
 
 	int i, j;
-	ArrayList<Datum> mxD = new ArrayList<Datum>();
 	int cont = 0;
 	consecutiveScans = 0;
+	maxDatums = 0;
 	double theMinMZ = minMZ;// - mzTol;
 	double theMaxMZ = maxMZ;// + mzTol;
 	for (i = minScan; i <= maxScan; i++) {
-	    Datum[] di = roi[i];
-	    if (di != null && di.length > 0) {
-		Datum max = null;
-		int idx = GridMassTask.findFirstMass(theMinMZ, di);
-		for (j = idx; j < di.length && di[j].mz <= theMaxMZ; j++) {
-		    Datum d = di[j];
-		    if (d.spotId == spotId) {
-			if ((max == null || d.intensity > max.intensity)
-				&& d.intensity > minimumHeight) { // d.mz >=
-			    // theMinMZ &&
-			    // (it is
-			    // already
-			    // assigned to
-			    // spotid)
-			    max = d;
-			}
+	    ScanDatums di = roi[i];
+	    if (di != null && di.size() > 0) {
+		double max = -1;
+		int idx = di.findFirstMass(theMinMZ);
+		for (j = idx; j < di.size() && di.mz[j] <= theMaxMZ; j++) {
+		    // d.mz >= theMinMZ (it is already assigned to spotid)
+		    if (di.spotId[j] == spotId && di.intensity[j] > max
+			    && di.intensity[j] > minimumHeight) {
+			max = di.intensity[j];
 		    }
 		}
-		if (max != null && max.intensity > 0) {
-		    mxD.add(max);
+		if (max > 0) {
+		    if (maxDatums == 0)
+			firstMaxDatumScan = i;
+		    lastMaxDatumScan = i;
+		    maxDatums++;
 		    cont++;
 		} else {
 		    cont = 0;
@@ -195,22 +198,19 @@ class SpotByProbes implements Comparable<SpotByProbes> {
 	    if (cont > consecutiveScans)
 		consecutiveScans = cont;
 	}
-	maxDatums = mxD;
 
     }
 
     int getMaxDatumScans() {
-	return (maxDatums == null || maxDatums.size() == 0 ? 0 : maxDatums
-		.get(maxDatums.size() - 1).scan - maxDatums.get(0).scan + 1); // maxDatums.size()
+	return (maxDatums == 0 ? 0 : lastMaxDatumScan - firstMaxDatumScan + 1);
     }
 
     int getContigousMaxDatumScans() {
-	return (maxDatums == null || maxDatums.size() == 0 ? 0
-		: consecutiveScans);
+	return (maxDatums == 0 ? 0 : consecutiveScans);
     }
 
     float getContigousToMaxDatumScansRatio() {
-	if (maxDatums == null || maxDatums.size() == 0)
+	if (maxDatums == 0)
 	    return 0;
 	return ((float) getContigousMaxDatumScans() / (float) getMaxDatumScans());
     }
@@ -29,6 +29,7 @@ import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
 import net.sf.mzmine.datamodel.impl.SimpleFeature;
+import net.sf.mzmine.util.DoubleRange;
 import net.sf.mzmine.util.ScanUtils;
 
 import com.google.common.collect.Range;
@@ -37,7 +38,10 @@ class Gap {
 
     private PeakListRow peakListRow;
     private RawDataFile rawDataFile;
-    private Range<Double> mzRange, rtRange;
+    private Range<Double> mzRange;
+
+    // The RT range is checked for every offered data point
+    private DoubleRange rtRange;
     // These store information about peak that is currently under construction
     private List<GapDataPoint> currentPeakDataPoints;
     private List<GapDataPoint> bestPeakDataPoints;
@@ -59,7 +63,7 @@ class Gap {
 	this.peakListRow = peakListRow;
 	this.rawDataFile = rawDataFile;
 	this.mzRange = mzRange;
-	this.rtRange = rtRange;
+	this.rtRange = DoubleRange.fromRange(rtRange);
 	this.intTolerance = intTolerance;
 	this.noiseLevel = noiseLevel;
     }
@@ -133,7 +137,9 @@ class Gap {
 	    int scanNumbers[] = new int[bestPeakDataPoints.size()];
 	    DataPoint finalDataPoint[] = new DataPoint[bestPeakDataPoints
 		    .size()];
-	    Range<Double> finalRTRange = null, finalMZRange = null, finalIntensityRange = null;
+	    double lowRT = Double.POSITIVE_INFINITY, highRT = Double.NEGATIVE_INFINITY;
+	    double lowMZ = Double.POSITIVE_INFINITY, highMZ = Double.NEGATIVE_INFINITY;
+	    double lowIntensity = Double.POSITIVE_INFINITY, highIntensity = Double.NEGATIVE_INFINITY;
 	    int representativeScan = 0;
 
 	    // Process all datapoints
@@ -141,20 +147,12 @@ class Gap {
 
 		GapDataPoint dp = bestPeakDataPoints.get(i);
 
-		if (i == 0) {
-		    finalRTRange = Range.singleton(dp.getRT());
-		    finalMZRange = Range.singleton(dp.getMZ());
-		    finalIntensityRange = Range.singleton(dp.getIntensity());
-		} else {
-		    assert finalRTRange != null && finalMZRange != null
-			    && finalIntensityRange != null;
-		    finalRTRange = finalRTRange
-			    .span(Range.singleton(dp.getRT()));
-		    finalMZRange = finalMZRange
-			    .span(Range.singleton(dp.getMZ()));
-		    finalIntensityRange = finalIntensityRange.span(Range
-			    .singleton(dp.getIntensity()));
-		}
+		lowRT = Math.min(lowRT, dp.getRT());
+		highRT = Math.max(highRT, dp.getRT());
+		lowMZ = Math.min(lowMZ, dp.getMZ());
+		highMZ = Math.max(highMZ, dp.getMZ());
+		lowIntensity = Math.min(lowIntensity, dp.getIntensity());
+		highIntensity = Math.max(highIntensity, dp.getIntensity());
 
 		scanNumbers[i] = bestPeakDataPoints.get(i).getScanNumber();
 		finalDataPoint[i] = new SimpleDataPoint(dp.getMZ(),
@@ -195,6 +193,11 @@ class Gap {
 	    // Calculate average m/z value
 	    mz /= bestPeakDataPoints.size();
 
+	    Range<Double> finalRTRange = Range.closed(lowRT, highRT);
+	    Range<Double> finalMZRange = Range.closed(lowMZ, highMZ);
+	    Range<Double> finalIntensityRange = Range.closed(lowIntensity,
+		    highIntensity);
+
 	    // Find the best fragmentation scan, if available
 	    int fragmentScan = ScanUtils.findBestFragmentScan(rawDataFile,
 		    finalRTRange, finalMZRange);
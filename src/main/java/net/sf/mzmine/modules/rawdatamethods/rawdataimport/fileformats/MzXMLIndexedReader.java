@@ -0,0 +1,574 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.modules.rawdatamethods.rawdataimport.fileformats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+
+import javax.xml.datatype.DatatypeFactory;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.datamodel.PolarityType;
+import net.sf.mzmine.datamodel.RawDataFileWriter;
+import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.datamodel.impl.SimpleScan;
+import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
+import net.sf.mzmine.util.CompressionUtils;
+import net.sf.mzmine.util.ScanUtils;
+
+import com.google.common.base.Strings;
+
+/**
+ * Parser of mzXML files which contain the index of scan offsets. The file is
+ * split at the offsets into byte ranges, each containing the start tag of one
+ * scan, its precursorMz and peaks elements, and the end tags of the scans
+ * closed before the next scan starts. The ranges are parsed by several worker
+ * threads and the scans are written in their original order. The peaks are
+ * decoded directly from the bytes of the file into primitive arrays.
+ * 
+ * Files without a valid index are parsed by the SAX handler of MzXMLReadTask.
+ */
+class MzXMLIndexedReader {
+
+    private static final Logger logger = Logger
+	    .getLogger(MzXMLIndexedReader.class.getName());
+
+    private static final Charset ASCII = Charset.forName("ISO-8859-1");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // The indexOffset element is at the end of the file, after the index
+    private static final int TAIL_SIZE = 4096;
+
+    // Larger indexes are certainly corrupted, ~40 bytes per scan
+    private static final long MAX_INDEX_SIZE = 1L << 28;
+
+    // Number of scans parsed ahead of the writing, per thread
+    private static final int SCANS_AHEAD_PER_THREAD = 4;
+
+    private static final Pattern indexOffsetPattern = Pattern
+	    .compile("<indexOffset>\\s*(\\d+)\\s*</indexOffset>");
+    private static final Pattern offsetPattern = Pattern
+	    .compile("<offset\\s[^>]*>\\s*(\\d+)\\s*</offset>");
+    private static final Pattern attributePattern = Pattern
+	    .compile("([\\w:]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+    private static final byte SCAN_START[] = "<scan".getBytes(ASCII);
+    private static final byte SCAN_END[] = "</scan>".getBytes(ASCII);
+    private static final byte PRECURSOR_START[] = "<precursorMz"
+	    .getBytes(ASCII);
+    private static final byte PRECURSOR_END[] = "</precursorMz>"
+	    .getBytes(ASCII);
+    private static final byte PEAKS_START[] = "<peaks".getBytes(ASCII);
+    private static final byte PEAKS_END[] = "</peaks>".getBytes(ASCII);
+
+    // Values of the Base64 characters, -1 for other characters
+    private static final byte base64Values[] = new byte[256];
+    static {
+	final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+	for (int i = 0; i < 256; i++)
+	    base64Values[i] = -1;
+	for (int i = 0; i < alphabet.length(); i++)
+	    base64Values[alphabet.charAt(i)] = (byte) i;
+    }
+
+    private final File file;
+    private final long scanOffsets[];
+    private final DatatypeFactory dataTypeFactory;
+
+    // Read by the progress display
+    private volatile int parsedScans = 0;
+
+    /**
+     * @param scanOffsets
+     *            offsets of the scans, followed by the offset of the index,
+     *            see readScanOffsets()
+     */
+    MzXMLIndexedReader(File file, long scanOffsets[],
+	    DatatypeFactory dataTypeFactory) {
+	this.file = file;
+	this.scanOffsets = scanOffsets;
+	this.dataTypeFactory = dataTypeFactory;
+    }
+
+    int getTotalScans() {
+	return scanOffsets.length - 1;
+    }
+
+    int getParsedScans() {
+	return parsedScans;
+    }
+
+    /**
+     * Reads the scan index of given mzXML file. Returns the offsets of the
+     * scans in ascending order, followed by the offset of the index, or null
+     * if the file has no index or the index does not match the file.
+     */
+    static long[] readScanOffsets(File file) throws IOException {
+
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+
+	    final long fileLength = raf.length();
+	    final FileChannel channel = raf.getChannel();
+
+	    // Find the last indexOffset element
+	    final int tailSize = (int) Math.min(TAIL_SIZE, fileLength);
+	    String tail = new String(read(channel, fileLength - tailSize,
+		    tailSize), ASCII);
+	    Matcher matcher = indexOffsetPattern.matcher(tail);
+	    long indexOffset = -1;
+	    while (matcher.find())
+		indexOffset = Long.parseLong(matcher.group(1));
+	    if ((indexOffset <= 0) || (indexOffset >= fileLength)
+		    || (fileLength - indexOffset > MAX_INDEX_SIZE))
+		return null;
+
+	    // Only the first index contains the scans
+	    String index = new String(read(channel, indexOffset,
+		    (int) (fileLength - indexOffset)), ASCII);
+	    if (!index.trim().startsWith("<index"))
+		return null;
+	    final int indexEnd = index.indexOf("</index>");
+	    if (indexEnd < 0)
+		return null;
+	    index = index.substring(0, indexEnd);
+
+	    List<Long> offsets = new ArrayList<Long>();
+	    matcher = offsetPattern.matcher(index);
+	    while (matcher.find())
+		offsets.add(Long.parseLong(matcher.group(1)));
+	    if (offsets.isEmpty())
+		return null;
+
+	    long scanOffsets[] = new long[offsets.size() + 1];
+	    for (int i = 0; i < offsets.size(); i++) {
+		scanOffsets[i] = offsets.get(i);
+		if ((i > 0) && (scanOffsets[i] <= scanOffsets[i - 1]))
+		    return null;
+	    }
+	    scanOffsets[offsets.size()] = indexOffset;
+	    if (scanOffsets[offsets.size() - 1] >= indexOffset)
+		return null;
+
+	    // Some converters write wrong offsets, so we check that each of
+	    // them points to a scan
+	    for (int i = 0; i < offsets.size(); i++) {
+		byte start[] = read(channel, scanOffsets[i], SCAN_START.length);
+		if (indexOf(start, SCAN_START, 0, start.length) != 0) {
+		    logger.warning("Index of " + file
+			    + " does not match the scans");
+		    return null;
+		}
+	    }
+
+	    return scanOffsets;
+
+	} catch (NumberFormatException e) {
+	    // Offsets too large for a long
+	    logger.warning("Invalid index of " + file + ": " + e);
+	    return null;
+	} finally {
+	    raf.close();
+	}
+
+    }
+
+    /**
+     * Parses the scans in parallel and adds them to given raw data file
+     */
+    void read(RawDataFileWriter newMZmineFile, final AbstractTask task)
+	    throws Exception {
+
+	final int totalScans = getTotalScans();
+	final int numThreads = SharedTaskExecutor.getNumOfThreads();
+	final int scansAhead = numThreads * SCANS_AHEAD_PER_THREAD;
+
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	ExecutorService executor = SharedTaskExecutor.newExecutor();
+	try {
+
+	    final FileChannel channel = raf.getChannel();
+
+	    // Only scansAhead scans are submitted ahead of the writing, so the
+	    // parsed scans do not accumulate in memory
+	    List<Future<ParsedScan>> futures = new ArrayList<Future<ParsedScan>>();
+	    for (int i = 0; i < Math.min(scansAhead, totalScans); i++) {
+		futures.add(submitScan(executor, channel, i, task));
+	    }
+
+	    // Scans of mzXML 2 files contain their fragment scans. We keep the
+	    // scans until the top-level scan is closed, so the fragments can be
+	    // added to their parents, and then write them in their order.
+	    int parentTreeValue[] = new int[10];
+	    List<SimpleScan> openScans = new ArrayList<SimpleScan>();
+	    int depth = 0;
+
+	    for (int i = 0; i < totalScans; i++) {
+
+		if (task.isCanceled())
+		    return;
+
+		ParsedScan parsedScan;
+		try {
+		    parsedScan = futures.get(i).get();
+		} catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    if (cause instanceof Exception)
+			throw (Exception) cause;
+		    if (cause instanceof Error)
+			throw (Error) cause;
+		    throw e;
+		}
+		futures.set(i, null);
+		if (i + scansAhead < totalScans)
+		    futures.add(submitScan(executor, channel, i + scansAhead,
+			    task));
+
+		if (parsedScan == null)
+		    return;
+
+		final SimpleScan scan = parsedScan.scan;
+		final int scanNumber = scan.getScanNumber();
+		final int msLevel = scan.getMSLevel();
+
+		Date currentDate = new Date();
+		scan.setRetentionTime(dataTypeFactory.newDuration(
+			parsedScan.retentionTime).getTimeInMillis(currentDate)
+			/ 1000d / 60d);
+
+		if (msLevel > 1) {
+		    int parentScan = parentTreeValue[msLevel - 1];
+		    for (SimpleScan p : openScans) {
+			if (p.getScanNumber() == parentScan) {
+			    p.addFragmentScan(scanNumber);
+			}
+		    }
+		}
+		parentTreeValue[msLevel] = scanNumber;
+
+		openScans.add(scan);
+		depth += 1 - parsedScan.closedScans;
+
+		if ((depth <= 0) || (i == totalScans - 1)) {
+		    for (SimpleScan s : openScans) {
+			newMZmineFile.addScan(s);
+			parsedScans++;
+		    }
+		    openScans.clear();
+		    depth = 0;
+		}
+
+	    }
+
+	} finally {
+	    executor.shutdownNow();
+	    raf.close();
+	}
+
+    }
+
+    private Future<ParsedScan> submitScan(ExecutorService executor,
+	    final FileChannel channel, int index, final AbstractTask task) {
+	final long from = scanOffsets[index];
+	final long to = scanOffsets[index + 1];
+	return executor.submit(new Callable<ParsedScan>() {
+	    @Override
+	    public ParsedScan call() throws Exception {
+		if (task.isCanceled())
+		    return null;
+		return parseScan(channel, from, to);
+	    }
+	});
+    }
+
+    /**
+     * Parses the scan at given range of the file. Called from the worker
+     * threads.
+     */
+    private ParsedScan parseScan(FileChannel channel, long from, long to)
+	    throws IOException {
+
+	if (to - from > Integer.MAX_VALUE)
+	    throw new IOException("Scan at offset " + from + " is too large");
+
+	final byte bytes[] = read(channel, from, (int) (to - from));
+
+	// <scan>
+	final int scanTagEnd = indexOf(bytes, '>', 0);
+	if ((indexOf(bytes, SCAN_START, 0, bytes.length) != 0)
+		|| (scanTagEnd < 0))
+	    throw new IOException("Corrupt mzXML file, no scan at offset "
+		    + from);
+	Map<String, String> attrs = parseAttributes(bytes, SCAN_START.length,
+		scanTagEnd);
+
+	/*
+	 * Only num, msLevel & peaksCount values are required according with
+	 * mzxml standard, the others are optional
+	 */
+	final int scanNumber = Integer.parseInt(attrs.get("num"));
+	final int msLevel = Integer.parseInt(attrs.get("msLevel"));
+	final int peaksCount = Integer.parseInt(attrs.get("peaksCount"));
+	String scanId = attrs.get("filterLine");
+	if (Strings.isNullOrEmpty(scanId))
+	    scanId = attrs.get("scanType");
+
+	PolarityType polarity;
+	String polarityAttr = attrs.get("polarity");
+	if ((polarityAttr != null) && (polarityAttr.length() == 1))
+	    polarity = PolarityType.fromString(polarityAttr);
+	else
+	    polarity = PolarityType.UNKNOWN;
+
+	String retentionTime = attrs.get("retentionTime");
+	if (retentionTime == null)
+	    throw new IOException(
+		    "This file does not contain retentionTime for scans");
+
+	if (msLevel > 9)
+	    throw new IOException("The value of msLevel is bigger than 10");
+
+	SimpleScan scan = new SimpleScan(null, scanNumber, msLevel, 0, 0, 0,
+		null, new DataPoint[0], null, polarity, scanId, null);
+
+	int closedScans = 0;
+	int position = scanTagEnd + 1;
+	if (bytes[scanTagEnd - 1] == '/') {
+	    closedScans = 1;
+	} else {
+
+	    final int peaksStart = indexOf(bytes, PEAKS_START, position,
+		    bytes.length);
+	    if (peaksStart < 0)
+		throw new IOException("Corrupt mzXML file, scan " + scanNumber
+			+ " has no peaks");
+
+	    // <precursorMz>
+	    final int precursorStart = indexOf(bytes, PRECURSOR_START,
+		    position, peaksStart);
+	    if (precursorStart >= 0) {
+		final int tagEnd = indexOf(bytes, '>', precursorStart);
+		final int end = indexOf(bytes, PRECURSOR_END, tagEnd,
+			peaksStart);
+		Map<String, String> precursorAttrs = parseAttributes(bytes,
+			precursorStart + PRECURSOR_START.length, tagEnd);
+		String precursorCharge = precursorAttrs.get("precursorCharge");
+		if (precursorCharge != null)
+		    scan.setPrecursorCharge(Integer.parseInt(precursorCharge));
+		if (end > tagEnd) {
+		    String text = new String(bytes, tagEnd + 1, end - tagEnd
+			    - 1, ASCII).trim();
+		    if (!text.isEmpty())
+			scan.setPrecursorMZ(Double.parseDouble(text));
+		}
+	    }
+
+	    // <peaks>
+	    final int peaksTagEnd = indexOf(bytes, '>', peaksStart);
+	    if (peaksTagEnd < 0)
+		throw new IOException("Corrupt mzXML file, scan " + scanNumber);
+	    Map<String, String> peaksAttrs = parseAttributes(bytes, peaksStart
+		    + PEAKS_START.length, peaksTagEnd);
+	    position = peaksTagEnd + 1;
+	    int peaksEnd = peaksTagEnd;
+	    if (bytes[peaksTagEnd - 1] != '/') {
+		peaksEnd = indexOf(bytes, PEAKS_END, position, bytes.length);
+		if (peaksEnd < 0)
+		    throw new IOException("Corrupt mzXML file, scan "
+			    + scanNumber);
+		position = peaksEnd + PEAKS_END.length;
+	    }
+
+	    final boolean doublePrecision = "64".equals(peaksAttrs
+		    .get("precision"));
+	    final String compressionType = peaksAttrs.get("compressionType");
+	    final boolean compressed = (compressionType != null)
+		    && (!compressionType.equals("none"));
+
+	    scan.setDataPoints(decodePeaks(bytes, peaksTagEnd + 1, peaksEnd,
+		    peaksCount, doublePrecision, compressed));
+	    scan.setSpectrumType(ScanUtils.detectSpectrumType(scan
+		    .getDataPoints()));
+
+	}
+
+	// </scan> of this scan and its parents
+	while ((position = indexOf(bytes, SCAN_END, position, bytes.length)) >= 0) {
+	    closedScans++;
+	    position += SCAN_END.length;
+	}
+
+	return new ParsedScan(scan, retentionTime, closedScans);
+
+    }
+
+    /**
+     * Decodes the Base64-encoded peaks from given range of bytes
+     */
+    private static DataPoint[] decodePeaks(byte bytes[], int from, int to,
+	    int peaksCount, boolean doublePrecision, boolean compressed)
+	    throws IOException {
+
+	final int valueSize = doublePrecision ? 8 : 4;
+	final int peaksLength = peaksCount * 2 * valueSize;
+
+	// Base64 decoding, ignoring whitespace and padding
+	byte decoded[] = new byte[(to - from) * 3 / 4 + 3];
+	int decodedLength = 0;
+	int buffer = 0, bufferedBits = 0;
+	for (int i = from; i < to; i++) {
+	    final int value = base64Values[bytes[i] & 0xFF];
+	    if (value < 0)
+		continue;
+	    buffer = (buffer << 6) | value;
+	    bufferedBits += 6;
+	    if (bufferedBits >= 8) {
+		bufferedBits -= 8;
+		decoded[decodedLength++] = (byte) (buffer >> bufferedBits);
+	    }
+	}
+
+	byte peakBytes[];
+	if (compressed) {
+	    peakBytes = new byte[peaksLength];
+	    try {
+		CompressionUtils.decompress(decoded, 0, decodedLength,
+			peakBytes);
+	    } catch (DataFormatException e) {
+		throw new IOException("Corrupt compressed peak: " + e.toString());
+	    }
+	} else {
+	    if (decodedLength < peaksLength)
+		throw new IOException("Corrupt mzXML file");
+	    peakBytes = decoded;
+	}
+
+	// Always respect this order pairOrder="m/z-int"
+	ByteBuffer peakBuffer = ByteBuffer.wrap(peakBytes);
+	double mzValues[] = new double[peaksCount];
+	double intensityValues[] = new double[peaksCount];
+	if (doublePrecision) {
+	    for (int i = 0; i < peaksCount; i++) {
+		mzValues[i] = peakBuffer.getDouble();
+		intensityValues[i] = peakBuffer.getDouble();
+	    }
+	} else {
+	    for (int i = 0; i < peaksCount; i++) {
+		mzValues[i] = peakBuffer.getFloat();
+		intensityValues[i] = peakBuffer.getFloat();
+	    }
+	}
+
+	DataPoint dataPoints[] = new DataPoint[peaksCount];
+	for (int i = 0; i < peaksCount; i++)
+	    dataPoints[i] = new SimpleDataPoint(mzValues[i], intensityValues[i]);
+	return dataPoints;
+
+    }
+
+    private static Map<String, String> parseAttributes(byte bytes[],
+	    int from, int to) {
+	Map<String, String> attrs = new HashMap<String, String>();
+	Matcher matcher = attributePattern.matcher(new String(bytes, from, to
+		- from, UTF8));
+	while (matcher.find()) {
+	    String value = matcher.group(2);
+	    if (value == null)
+		value = matcher.group(3);
+	    attrs.put(matcher.group(1), unescape(value));
+	}
+	return attrs;
+    }
+
+    private static String unescape(String value) {
+	if (value.indexOf('&') < 0)
+	    return value;
+	return value.replace("&lt;", "<").replace("&gt;", ">")
+		.replace("&quot;", "\"").replace("&apos;", "'")
+		.replace("&amp;", "&");
+    }
+
+    private static int indexOf(byte bytes[], char c, int from) {
+	for (int i = from; i < bytes.length; i++) {
+	    if (bytes[i] == c)
+		return i;
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the position of the first occurrence of pattern which starts
+     * within the range from (inclusive) - to (exclusive), or -1
+     */
+    private static int indexOf(byte bytes[], byte pattern[], int from, int to) {
+	final int last = Math.min(to, bytes.length - pattern.length + 1);
+	search: for (int i = from; i < last; i++) {
+	    for (int j = 0; j < pattern.length; j++) {
+		if (bytes[i + j] != pattern[j])
+		    continue search;
+	    }
+	    return i;
+	}
+	return -1;
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length)
+	    throws IOException {
+	ByteBuffer buffer = ByteBuffer.allocate(length);
+	while (buffer.hasRemaining()) {
+	    if (channel.read(buffer, position + buffer.position()) < 0)
+		throw new IOException("Unexpected end of file");
+	}
+	return buffer.array();
+    }
+
+    private static class ParsedScan {
+
+	private final SimpleScan scan;
+	private final String retentionTime;
+	private final int closedScans;
+
+	ParsedScan(SimpleScan scan, String retentionTime, int closedScans) {
+	    this.scan = scan;
+	    this.retentionTime = retentionTime;
+	    this.closedScans = closedScans;
+	}
+    }
+
+}
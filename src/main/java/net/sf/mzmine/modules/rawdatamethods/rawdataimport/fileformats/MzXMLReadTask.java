@@ -72,6 +72,9 @@ public class MzXMLReadTask extends AbstractTask {
     private DefaultHandler handler = new MzXMLHandler();
     private String precision;
 
+    // Parser of files with a scan index
+    private volatile MzXMLIndexedReader indexedReader;
+
     // Retention time parser
     private DatatypeFactory dataTypeFactory;
 
@@ -110,6 +113,9 @@ public class MzXMLReadTask extends AbstractTask {
      * @see net.sf.mzmine.taskcontrol.Task#getFinishedPercentage()
      */
     public double getFinishedPercentage() {
+	if (indexedReader != null)
+	    return (double) indexedReader.getParsedScans()
+		    / indexedReader.getTotalScans();
 	return totalScans == 0 ? 0 : (double) parsedScans / totalScans;
     }
 
@@ -128,8 +134,23 @@ public class MzXMLReadTask extends AbstractTask {
 
 	    dataTypeFactory = DatatypeFactory.newInstance();
 
-	    SAXParser saxParser = factory.newSAXParser();
-	    saxParser.parse(file, handler);
+	    // Files with a scan index can be split into scans and parsed in
+	    // parallel, other files are parsed sequentially
+	    long scanOffsets[] = MzXMLIndexedReader.readScanOffsets(file);
+	    if (scanOffsets != null) {
+		logger.finest("Parsing " + file + " using its scan index");
+		MzXMLIndexedReader reader = new MzXMLIndexedReader(file,
+			scanOffsets, dataTypeFactory);
+		indexedReader = reader;
+		reader.read(newMZmineFile, this);
+		totalScans = reader.getTotalScans();
+		parsedScans = reader.getParsedScans();
+		if (isCanceled())
+		    return;
+	    } else {
+		SAXParser saxParser = factory.newSAXParser();
+		saxParser.parse(file, handler);
+	    }
 
 	    // Close file
 	    finalRawDataFile = newMZmineFile.finishWriting();
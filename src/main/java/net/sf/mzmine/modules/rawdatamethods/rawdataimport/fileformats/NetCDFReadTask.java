@@ -21,7 +21,13 @@ package net.sf.mzmine.modules.rawdatamethods.rawdataimport.fileformats;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,26 +45,33 @@ import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.ExceptionUtils;
 import net.sf.mzmine.util.ScanUtils;
 import ucar.ma2.Array;
-import ucar.ma2.Index;
-import ucar.ma2.IndexIterator;
 import ucar.nc2.Attribute;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
 
 /**
- * 
+ * Reader of NetCDF (ANDI-MS) files. The mass and intensity values of all scans
+ * are stored in two long variables, so we read them in large chunks covering
+ * many scans and slice the scans out of the chunks. The next chunk is read
+ * while the scans of the previous one are written to the raw data file.
  */
 public class NetCDFReadTask extends AbstractTask {
 
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
+    // Maximum number of data points read at once, unless a single scan is
+    // larger
+    private static final int CHUNK_SIZE = 1 << 19;
+
     private NetcdfFile inputFile;
 
     private int parsedScans;
-    private int totalScans = 0, numberOfGoodScans, scanNum = 0;
+    private int totalScans = 0, numberOfGoodScans;
 
-    private Hashtable<Integer, Integer[]> scansIndex;
-    private Hashtable<Integer, Double> scansRetentionTimes;
+    // Start positions and lengths of the scans in the mass and intensity
+    // variables, and their retention times
+    private int scanStartPositions[], scanLengths[];
+    private double retentionTimes[];
 
     private File file;
     private MZmineProject project;
@@ -94,26 +107,61 @@ public class NetCDFReadTask extends AbstractTask {
 	setStatus(TaskStatus.PROCESSING);
 	logger.info("Started parsing file " + file);
 
+	// The chunks are read by a single thread, because the NetcdfFile is
+	// not thread-safe
+	ExecutorService chunkReader = Executors.newSingleThreadExecutor();
+
 	try {
 
 	    // Open file
 	    this.startReading();
 
-	    // Parse scans
-	    Scan buildingScan;
-	    while ((buildingScan = this.readNextScan()) != null) {
+	    // Parse scans, reading the next chunk while the current one is
+	    // written
+	    int firstScan = 0;
+	    Future<List<Scan>> nextChunk = null;
+	    if (firstScan < totalScans) {
+		final int lastScan = findChunkEnd(firstScan);
+		nextChunk = submitChunk(chunkReader, firstScan, lastScan);
+		firstScan = lastScan;
+	    }
+
+	    while (nextChunk != null) {
+
+		List<Scan> scans;
+		try {
+		    scans = nextChunk.get();
+		} catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    if (cause instanceof Exception)
+			throw (Exception) cause;
+		    if (cause instanceof Error)
+			throw (Error) cause;
+		    throw e;
+		}
+
+		nextChunk = null;
+		if (firstScan < totalScans) {
+		    final int lastScan = findChunkEnd(firstScan);
+		    nextChunk = submitChunk(chunkReader, firstScan, lastScan);
+		    firstScan = lastScan;
+		}
+
+		for (Scan buildingScan : scans) {
+
+		    // Check if cancel is requested
+		    if (isCanceled()) {
+			return;
+		    }
+		    newMZmineFile.addScan(buildingScan);
+		    parsedScans++;
 
-		// Check if cancel is requested
-		if (isCanceled()) {
-		    return;
 		}
-		// buildingFile.addScan(scan);
-		newMZmineFile.addScan(buildingScan);
-		parsedScans++;
 
 	    }
 
 	    // Close file
+	    chunkReader.shutdown();
 	    this.finishReading();
 	    finalRawDataFile = newMZmineFile.finishWriting();
 	    project.addFile(finalRawDataFile);
@@ -123,6 +171,8 @@ public class NetCDFReadTask extends AbstractTask {
 	    setErrorMessage(ExceptionUtils.exceptionToString(e));
 	    setStatus(TaskStatus.ERROR);
 	    return;
+	} finally {
+	    chunkReader.shutdownNow();
 	}
 
 	logger.info("Finished parsing " + file + ", parsed " + parsedScans
@@ -194,7 +244,7 @@ public class NetCDFReadTask extends AbstractTask {
 	// Read scan start positions
 	// Extra element is required, because element totalScans+1 is used to
 	// find the stop position for last scan
-	int[] scanStartPositions = new int[totalScans + 1];
+	scanStartPositions = new int[totalScans + 1];
 
 	Array scanIndexArray = null;
 	try {
@@ -205,14 +255,9 @@ public class NetCDFReadTask extends AbstractTask {
 		    "Could not read from variable scan_index from file " + file));
 	}
 
-	IndexIterator scanIndexIterator = scanIndexArray.getIndexIterator();
-	int ind = 0;
-	while (scanIndexIterator.hasNext()) {
-	    scanStartPositions[ind] = ((Integer) scanIndexIterator.next())
-		    .intValue();
-	    ind++;
-	}
-	scanIndexIterator = null;
+	int scanIndexValues[] = (int[]) scanIndexArray
+		.get1DJavaArray(int.class);
+	System.arraycopy(scanIndexValues, 0, scanStartPositions, 0, totalScans);
 	scanIndexArray = null;
 	scanIndexVariable = null;
 
@@ -221,7 +266,6 @@ public class NetCDFReadTask extends AbstractTask {
 	scanStartPositions[totalScans] = (int) massValueVariable.getSize();
 
 	// Start scan RT
-	double[] retentionTimes = new double[totalScans];
 	Variable scanTimeVariable = inputFile
 		.findVariable("scan_acquisition_time");
 	if (scanTimeVariable == null) {
@@ -240,21 +284,15 @@ public class NetCDFReadTask extends AbstractTask {
 		    "Could not read from variable scan_acquisition_time from file "
 			    + file));
 	}
-	IndexIterator scanTimeIterator = scanTimeArray.getIndexIterator();
-	ind = 0;
-	while (scanTimeIterator.hasNext()) {
-	    if (scanTimeVariable.getDataType().getPrimitiveClassType() == float.class) {
-		retentionTimes[ind] = ((Double) scanTimeIterator.next()) / 60d;
-	    }
-	    if (scanTimeVariable.getDataType().getPrimitiveClassType() == double.class) {
-		retentionTimes[ind] = ((Double) scanTimeIterator.next()) / 60d;
-	    }
-	    ind++;
+	double scanTimes[] = (double[]) scanTimeArray
+		.get1DJavaArray(double.class);
+	retentionTimes = new double[totalScans];
+	for (int i = 0; i < totalScans; i++) {
+	    retentionTimes[i] = scanTimes[i] / 60d;
 	}
 	// End scan RT
 
 	// Cleanup
-	scanTimeIterator = null;
 	scanTimeArray = null;
 	scanTimeVariable = null;
 
@@ -280,97 +318,72 @@ public class NetCDFReadTask extends AbstractTask {
 	    // - calculate average delta time between present scans
 	    double sumDelta = 0;
 	    int n = 0;
+	    int previousGood = -1;
 	    for (int i = 0; i < totalScans; i++) {
 		// Is this a present scan?
 		if (scanStartPositions[i] >= 0) {
-		    // Yes, find next present scan
-		    for (int j = i + 1; j < totalScans; j++) {
-			if (scanStartPositions[j] >= 0) {
-			    sumDelta += (retentionTimes[j] - retentionTimes[i])
-				    / ((double) (j - i));
-			    n++;
-			    break;
-			}
+		    if (previousGood >= 0) {
+			sumDelta += (retentionTimes[i] - retentionTimes[previousGood])
+				/ ((double) (i - previousGood));
+			n++;
 		    }
+		    previousGood = i;
 		}
 	    }
 	    double avgDelta = sumDelta / (double) n;
-	    // - fill missing scan times using nearest good scan and avgDelta
+
+	    // - find the nearest present scan before and after each scan
+	    int nextGood[] = new int[totalScans];
+	    int next = -1;
+	    for (int i = totalScans - 1; i >= 0; i--) {
+		if (scanStartPositions[i] >= 0)
+		    next = i;
+		nextGood[i] = next;
+	    }
+
+	    // - fill missing scan times using nearest good scan and avgDelta,
+	    // the following scan wins when both are equally distant
+	    previousGood = -1;
 	    for (int i = 0; i < totalScans; i++) {
-		// Is this a missing scan?
-		if (scanStartPositions[i] < 0) {
-		    // Yes, find nearest present scan
-		    int nearestI = Integer.MAX_VALUE;
-		    for (int j = 1; 1 < 2; j++) {
-			if ((i + j) < totalScans) {
-			    if (scanStartPositions[i + j] >= 0) {
-				nearestI = i + j;
-				break;
-			    }
-			}
-			if ((i - j) >= 0) {
-			    if (scanStartPositions[i - j] >= 0) {
-				nearestI = i + j;
-				break;
-			    }
-			}
-
-			// Out of bounds?
-			if (((i + j) >= totalScans) && ((i - j) < 0)) {
-			    break;
-			}
-		    }
+		if (scanStartPositions[i] >= 0) {
+		    previousGood = i;
+		    continue;
+		}
+
+		int nearestI = nextGood[i];
+		if ((previousGood >= 0)
+			&& ((nearestI < 0) || (i - previousGood < nearestI - i)))
+		    nearestI = previousGood;
 
-		    if (nearestI != Integer.MAX_VALUE) {
+		if (nearestI >= 0) {
 
-			retentionTimes[i] = retentionTimes[nearestI]
-				+ (i - nearestI) * avgDelta;
+		    retentionTimes[i] = retentionTimes[nearestI]
+			    + (i - nearestI) * avgDelta;
 
+		} else {
+		    if (i > 0) {
+			retentionTimes[i] = retentionTimes[i - 1];
 		    } else {
-			if (i > 0) {
-			    retentionTimes[i] = retentionTimes[i - 1];
-			} else {
-			    retentionTimes[i] = 0;
-			}
-			logger.severe("ERROR: Could not fix incorrect QStar scan times.");
+			retentionTimes[i] = 0;
 		    }
+		    logger.severe("ERROR: Could not fix incorrect QStar scan times.");
 		}
 	    }
 
 	    // Fix scanStartPositions by filling gaps with next good value
-	    for (int i = 0; i < totalScans; i++) {
+	    for (int i = totalScans - 1; i >= 0; i--) {
 		if (scanStartPositions[i] < 0) {
-		    for (int j = i + 1; j < (totalScans + 1); j++) {
-			if (scanStartPositions[j] >= 0) {
-			    scanStartPositions[i] = scanStartPositions[j];
-			    break;
-			}
-		    }
+		    scanStartPositions[i] = scanStartPositions[i + 1];
 		}
 	    }
 	}
 
-	// Collect information about retention times, start positions and
-	// lengths for scans
-	scansRetentionTimes = new Hashtable<Integer, Double>();
-	scansIndex = new Hashtable<Integer, Integer[]>();
+	// Collect the lengths of the scans
+	scanLengths = new int[totalScans];
 	for (int i = 0; i < totalScans; i++) {
-
-	    Integer scanNum = new Integer(i);
-
-	    Integer[] startAndLength = new Integer[2];
-	    startAndLength[0] = scanStartPositions[i];
-	    startAndLength[1] = scanStartPositions[i + 1]
-		    - scanStartPositions[i];
-
-	    scansRetentionTimes.put(scanNum, new Double(retentionTimes[i]));
-	    scansIndex.put(scanNum, startAndLength);
-
+	    scanLengths[i] = scanStartPositions[i + 1] - scanStartPositions[i];
 	}
 
-	scanStartPositions = null;
-	retentionTimes = null;
-
     }
 
     /**
@@ -381,92 +394,115 @@ public class NetCDFReadTask extends AbstractTask {
     }
 
     /**
-     * Reads one scan from the file. Requires that general information has
-     * already been read.
+     * Returns the index of the first scan after the chunk starting with given
+     * scan. The chunk covers a contiguous part of the mass and intensity
+     * variables, at most CHUNK_SIZE values long unless the first scan is
+     * larger.
      */
-    private Scan readNextScan() throws IOException {
+    private int findChunkEnd(int firstScan) {
+	final long chunkStart = scanStartPositions[firstScan];
+	int lastScan = firstScan + 1;
+	while (lastScan < totalScans) {
+	    final long start = scanStartPositions[lastScan];
+	    final long end = start + scanLengths[lastScan];
+	    if ((start < chunkStart) || (end > chunkStart + CHUNK_SIZE))
+		break;
+	    lastScan++;
+	}
+	return lastScan;
+    }
 
-	// Get scan starting position and length
-	int[] scanStartPosition = new int[1];
-	int[] scanLength = new int[1];
-	Integer[] startAndLength = scansIndex.get(scanNum);
+    private Future<List<Scan>> submitChunk(ExecutorService chunkReader,
+	    final int firstScan, final int lastScan) {
+	return chunkReader.submit(new Callable<List<Scan>>() {
+	    public List<Scan> call() throws Exception {
+		return readChunk(firstScan, lastScan);
+	    }
+	});
+    }
 
-	// End of file
-	if (startAndLength == null) {
-	    return null;
-	}
-	scanStartPosition[0] = startAndLength[0];
-	scanLength[0] = startAndLength[1];
-
-	// Get retention time of the scan
-	Double retentionTime = scansRetentionTimes.get(scanNum);
-	if (retentionTime == null) {
-	    logger.severe("Could not find retention time for scan " + scanNum);
-	    throw (new IOException("Could not find retention time for scan "
-		    + scanNum));
+    /**
+     * Reads the scans from firstScan (inclusive) to lastScan (exclusive) with
+     * a single read of each variable. Requires that general information has
+     * already been read.
+     */
+    private List<Scan> readChunk(int firstScan, int lastScan)
+	    throws IOException {
+
+	// Find the part of the variables covering all scans of the chunk
+	int chunkStart = scanStartPositions[firstScan];
+	int chunkEnd = chunkStart;
+	for (int i = firstScan; i < lastScan; i++) {
+	    chunkEnd = Math.max(chunkEnd, scanStartPositions[i]
+		    + scanLengths[i]);
 	}
 
-	// An empty scan needs special attention..
-	if (scanLength[0] == 0) {
-	    scanNum++;
-	    return new SimpleScan(null, scanNum, 1,
-		    retentionTime.doubleValue(), 0, 0, null, new DataPoint[0],
-		    MassSpectrumType.CENTROIDED, PolarityType.UNKNOWN, "", null);
+	// Read mass and intensity values
+	double massValues[] = new double[0];
+	double intensityValues[] = new double[0];
+	if (chunkEnd > chunkStart) {
+	    int origin[] = { chunkStart };
+	    int shape[] = { chunkEnd - chunkStart };
+	    try {
+		Array massValueArray = massValueVariable.read(origin, shape);
+		Array intensityValueArray = intensityValueVariable.read(origin,
+			shape);
+		massValues = (double[]) massValueArray
+			.get1DJavaArray(double.class);
+		intensityValues = (double[]) intensityValueArray
+			.get1DJavaArray(double.class);
+	    } catch (Exception e) {
+		logger.log(
+			Level.SEVERE,
+			"Could not read from variables mass_values and/or intensity_values.",
+			e);
+		throw (new IOException(
+			"Could not read from variables mass_values and/or intensity_values."));
+	    }
 	}
 
-	// Is there any way how to extract polarity from netcdf?
-	PolarityType polarity = PolarityType.UNKNOWN;
-
-	// Is there any way how to extract scan definition from netcdf?
-	String scanDefinition = "";
+	List<Scan> scans = new ArrayList<Scan>(lastScan - firstScan);
 
-	// Read mass and intensity values
-	Array massValueArray;
-	Array intensityValueArray;
-	try {
-	    massValueArray = massValueVariable.read(scanStartPosition,
-		    scanLength);
-	    intensityValueArray = intensityValueVariable.read(
-		    scanStartPosition, scanLength);
-	} catch (Exception e) {
-	    logger.log(
-		    Level.SEVERE,
-		    "Could not read from variables mass_values and/or intensity_values.",
-		    e);
-	    throw (new IOException(
-		    "Could not read from variables mass_values and/or intensity_values."));
-	}
+	for (int i = firstScan; i < lastScan; i++) {
 
-	Index massValuesIndex = massValueArray.getIndex();
-	Index intensityValuesIndex = intensityValueArray.getIndex();
+	    final int scanNum = i + 1;
+	    final double retentionTime = retentionTimes[i];
 
-	int arrayLength = massValueArray.getShape()[0];
+	    // An empty scan needs special attention..
+	    if (scanLengths[i] == 0) {
+		scans.add(new SimpleScan(null, scanNum, 1, retentionTime, 0, 0,
+			null, new DataPoint[0], MassSpectrumType.CENTROIDED,
+			PolarityType.UNKNOWN, "", null));
+		continue;
+	    }
 
-	DataPoint dataPoints[] = new DataPoint[arrayLength];
+	    // Is there any way how to extract polarity from netcdf?
+	    PolarityType polarity = PolarityType.UNKNOWN;
 
-	for (int j = 0; j < arrayLength; j++) {
-	    Index massIndex0 = massValuesIndex.set0(j);
-	    Index intensityIndex0 = intensityValuesIndex.set0(j);
+	    // Is there any way how to extract scan definition from netcdf?
+	    String scanDefinition = "";
 
-	    double mz = massValueArray.getDouble(massIndex0)
-		    * massValueScaleFactor;
-	    double intensity = intensityValueArray.getDouble(intensityIndex0)
-		    * intensityValueScaleFactor;
-	    dataPoints[j] = new SimpleDataPoint(mz, intensity);
+	    final int offset = scanStartPositions[i] - chunkStart;
+	    DataPoint dataPoints[] = new DataPoint[scanLengths[i]];
 
-	}
+	    for (int j = 0; j < dataPoints.length; j++) {
+		double mz = massValues[offset + j] * massValueScaleFactor;
+		double intensity = intensityValues[offset + j]
+			* intensityValueScaleFactor;
+		dataPoints[j] = new SimpleDataPoint(mz, intensity);
+	    }
 
-	scanNum++;
+	    // Auto-detect whether this scan is centroided
+	    MassSpectrumType spectrumType = ScanUtils
+		    .detectSpectrumType(dataPoints);
 
-	// Auto-detect whether this scan is centroided
-	MassSpectrumType spectrumType = ScanUtils
-		.detectSpectrumType(dataPoints);
+	    scans.add(new SimpleScan(null, scanNum, 1, retentionTime, 0, 0,
+		    null, dataPoints, spectrumType, polarity, scanDefinition,
+		    null));
 
-	SimpleScan buildingScan = new SimpleScan(null, scanNum, 1,
-		retentionTime.doubleValue(), 0, 0, null, dataPoints,
-		spectrumType, polarity, scanDefinition, null);
+	}
 
-	return buildingScan;
+	return scans;
 
     }
 
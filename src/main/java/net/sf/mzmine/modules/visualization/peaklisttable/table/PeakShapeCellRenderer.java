@@ -21,10 +21,25 @@ package net.sf.mzmine.modules.visualization.peaklisttable.table;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import javax.swing.JPanel;
+import javax.swing.JComponent;
 import javax.swing.JTable;
-import javax.swing.OverlayLayout;
+import javax.swing.SwingUtilities;
 import javax.swing.table.TableCellRenderer;
 
 import net.sf.mzmine.datamodel.Feature;
@@ -35,12 +50,70 @@ import net.sf.mzmine.modules.visualization.peaklisttable.PeakListTableParameters
 import net.sf.mzmine.modules.visualization.peaklisttable.PeakShapeNormalization;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.util.components.CombinedXICComponent;
+import net.sf.mzmine.util.components.ComponentToolTipManager;
 import net.sf.mzmine.util.components.PeakXICComponent;
 
+/**
+ * Renderer of the peak shape columns. Painting the peak shapes directly in
+ * each paint of each cell is too slow for large peak lists, so the shapes are
+ * rendered into images by background threads and kept in a LRU cache. Until
+ * the image of a cell is ready, the cell is painted empty.
+ */
 class PeakShapeCellRenderer implements TableCellRenderer {
 
-    private PeakList peakList;
-    private ParameterSet parameters;
+    private static final Logger logger = Logger
+	    .getLogger(PeakShapeCellRenderer.class.getName());
+
+    // Maximum number of cached images. A typical cell image has less than 10
+    // kB, so the cache takes up to a few tens of MB.
+    private static final int MAX_CACHED_IMAGES = 5000;
+
+    // Background threads shared by all peak list tables. The tasks are taken
+    // in LIFO order, so when scrolling quickly, the cells which are currently
+    // visible are rendered first.
+    private static final ThreadPoolExecutor renderingThreads;
+
+    static {
+	int numOfThreads = Math.max(1,
+		Runtime.getRuntime().availableProcessors() / 2);
+	LinkedBlockingDeque<Runnable> lifoQueue = new LinkedBlockingDeque<Runnable>() {
+	    private static final long serialVersionUID = 1L;
+
+	    public boolean offer(Runnable task) {
+		return offerFirst(task);
+	    }
+	};
+	ThreadFactory daemonThreads = new ThreadFactory() {
+	    public Thread newThread(Runnable task) {
+		Thread thread = new Thread(task, "Peak shape rendering thread");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	    }
+	};
+	renderingThreads = new ThreadPoolExecutor(numOfThreads, numOfThreads,
+		10, TimeUnit.SECONDS, lifoQueue, daemonThreads);
+	renderingThreads.allowCoreThreadTimeOut(true);
+    }
+
+    private final PeakList peakList;
+    private final ParameterSet parameters;
+
+    private final Map<ImageKey, BufferedImage> imageCache = new LinkedHashMap<ImageKey, BufferedImage>(
+	    16, 0.75f, true) {
+	private static final long serialVersionUID = 1L;
+
+	protected boolean removeEldestEntry(
+		Map.Entry<ImageKey, BufferedImage> eldest) {
+	    return size() > MAX_CACHED_IMAGES;
+	}
+    };
+
+    // Images which are being rendered or waiting to be rendered
+    private final Set<ImageKey> pendingImages = new HashSet<ImageKey>();
+
+    // Renderer component, reused for all cells
+    private final PeakShapeComponent component = new PeakShapeComponent();
 
     PeakShapeCellRenderer(PeakList peakList, ParameterSet parameters) {
 	this.peakList = peakList;
@@ -54,9 +127,6 @@ class PeakShapeCellRenderer implements TableCellRenderer {
     public Component getTableCellRendererComponent(JTable table, Object value,
 	    boolean isSelected, boolean hasFocus, int row, int column) {
 
-	JPanel newPanel = new JPanel();
-	newPanel.setLayout(new OverlayLayout(newPanel));
-
 	Color bgColor;
 
 	if (isSelected)
@@ -64,7 +134,13 @@ class PeakShapeCellRenderer implements TableCellRenderer {
 	else
 	    bgColor = table.getBackground();
 
-	newPanel.setBackground(bgColor);
+	component.setBackground(bgColor);
+	component.setImage(null);
+	component.setBorder(null);
+	component.setToolTipText(null);
+
+	Rectangle cellRect = table.getCellRect(row, column, false);
+	ImageKey key = null;
 
 	if (value instanceof Feature) {
 
@@ -80,7 +156,10 @@ class PeakShapeCellRenderer implements TableCellRenderer {
 		maxHeight = peakList.getDataPointMaxIntensity();
 		break;
 	    case ROWMAX:
-		int rowNumber = peakList.getPeakRowNum(peak);
+		// The table model shows the peak list rows in their original
+		// order, so we can take the row directly instead of searching
+		// for the row containing the peak
+		int rowNumber = table.convertRowIndexToModel(row);
 		maxHeight = peakList.getRow(rowNumber)
 			.getDataPointMaxIntensity();
 		break;
@@ -90,11 +169,10 @@ class PeakShapeCellRenderer implements TableCellRenderer {
 		break;
 	    }
 
-	    PeakXICComponent xic = new PeakXICComponent(peak, maxHeight);
+	    key = new ImageKey(new Feature[] { peak }, false, maxHeight,
+		    cellRect.width, cellRect.height);
 
-	    newPanel.add(xic);
-
-	    newPanel.setToolTipText(xic.getToolTipText());
+	    component.setToolTipText(peak.toString());
 
 	}
 
@@ -108,16 +186,158 @@ class PeakShapeCellRenderer implements TableCellRenderer {
 		peaks[i] = plRow.getPeak(dataFiles[i]);
 	    }
 
-	    CombinedXICComponent xic = new CombinedXICComponent(peaks,
-		    plRow.getID());
+	    key = new ImageKey(peaks, true, 0, cellRect.width,
+		    cellRect.height);
 
-	    newPanel.add(xic);
+	    // We use the tool tip text as a id for customTooltipProvider
+	    component.setToolTipText(ComponentToolTipManager.CUSTOM
+		    + plRow.getID());
 
-	    newPanel.setToolTipText(xic.getToolTipText());
+	}
 
+	if ((key != null) && (cellRect.width > 0) && (cellRect.height > 0)) {
+	    component.setBorder(PeakXICComponent.componentBorder);
+	    component.setImage(getImage(key, table, cellRect));
 	}
 
-	return newPanel;
+	return component;
+
+    }
+
+    /**
+     * Returns the cached image for given key. If the image is not cached yet,
+     * starts rendering it and returns null. When the image is ready, the cell
+     * is repainted.
+     */
+    private BufferedImage getImage(final ImageKey key, final JTable table,
+	    final Rectangle cellRect) {
+
+	synchronized (imageCache) {
+	    BufferedImage image = imageCache.get(key);
+	    if ((image != null) || !pendingImages.add(key))
+		return image;
+	}
+
+	renderingThreads.execute(new Runnable() {
+	    public void run() {
+		BufferedImage image = null;
+		try {
+		    image = renderImage(key);
+		} catch (Exception e) {
+		    logger.log(Level.WARNING, "Error rendering peak shape", e);
+		}
+
+		synchronized (imageCache) {
+		    pendingImages.remove(key);
+		    if (image != null)
+			imageCache.put(key, image);
+		}
+
+		if (image != null) {
+		    SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+			    table.repaint(cellRect);
+			}
+		    });
+		}
+	    }
+	});
+
+	return null;
+    }
+
+    private static BufferedImage renderImage(ImageKey key) {
+
+	BufferedImage image = new BufferedImage(key.width, key.height,
+		BufferedImage.TYPE_INT_ARGB);
+	Graphics2D g2 = image.createGraphics();
+
+	if (key.combined) {
+	    CombinedXICComponent.paintPeakShapes(g2, key.peaks, key.width,
+		    key.height);
+	} else {
+	    Feature peak = key.peaks[0];
+	    PeakXICComponent.paintPeakShape(g2, peak, peak.getDataFile()
+		    .getDataRTRange(1), key.maxIntensity, key.width,
+		    key.height);
+	}
+
+	g2.dispose();
+	return image;
+    }
+
+    /**
+     * Identifies a cached image. The peaks are compared by identity, so when
+     * a row gets a new peak, the image is rendered again.
+     */
+    private static class ImageKey {
+
+	private final Feature peaks[];
+	private final boolean combined;
+	private final double maxIntensity;
+	private final int width, height;
+
+	ImageKey(Feature peaks[], boolean combined, double maxIntensity,
+		int width, int height) {
+	    this.peaks = peaks;
+	    this.combined = combined;
+	    this.maxIntensity = maxIntensity;
+	    this.width = width;
+	    this.height = height;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (!(obj instanceof ImageKey))
+		return false;
+	    ImageKey other = (ImageKey) obj;
+	    if ((combined != other.combined) || (width != other.width)
+		    || (height != other.height)
+		    || (Double.compare(maxIntensity, other.maxIntensity) != 0)
+		    || (peaks.length != other.peaks.length))
+		return false;
+	    for (int i = 0; i < peaks.length; i++) {
+		if (peaks[i] != other.peaks[i])
+		    return false;
+	    }
+	    return true;
+	}
+
+	@Override
+	public int hashCode() {
+	    int hash = Arrays.hashCode(new int[] { width, height,
+		    combined ? 1 : 0 });
+	    for (Feature peak : peaks)
+		hash = hash * 31 + System.identityHashCode(peak);
+	    return hash;
+	}
+
+    }
+
+    /**
+     * Component painting the background and the cached image of a cell
+     */
+    private static class PeakShapeComponent extends JComponent {
+
+	private static final long serialVersionUID = 1L;
+
+	private BufferedImage image;
+
+	PeakShapeComponent() {
+	    setOpaque(true);
+	}
+
+	void setImage(BufferedImage image) {
+	    this.image = image;
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+	    g.setColor(getBackground());
+	    g.fillRect(0, 0, getWidth(), getHeight());
+	    if (image != null)
+		g.drawImage(image, 0, 0, null);
+	}
 
     }
 
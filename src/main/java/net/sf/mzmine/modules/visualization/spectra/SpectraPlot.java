@@ -22,6 +22,7 @@ package net.sf.mzmine.modules.visualization.spectra;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Font;
+import java.awt.Graphics;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.text.NumberFormat;
@@ -298,6 +299,24 @@ public class SpectraPlot extends ChartPanel {
 	    chartSubTitle.setText(subTitle);
     }
 
+    /**
+     * Before the chart is drawn, the scan data sets select the data points
+     * for the visible m/z range, so we never draw many more data points than
+     * there are pixels.
+     */
+    @Override
+    public void paintComponent(Graphics g) {
+	org.jfree.data.Range mzRange = plot.getDomainAxis().getRange();
+	for (int i = 0; i < plot.getDatasetCount(); i++) {
+	    XYDataset dataSet = plot.getDataset(i);
+	    if (dataSet instanceof ScanDataSet) {
+		((ScanDataSet) dataSet).setVisibleRange(mzRange.getLowerBound(),
+			mzRange.getUpperBound(), getWidth());
+	    }
+	}
+	super.paintComponent(g);
+    }
+
     /**
      * @see java.awt.event.MouseListener#mouseClicked(java.awt.event.MouseEvent)
      */
@@ -23,16 +23,23 @@ import java.util.Map;
 
 import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.util.PlotDataDecimator;
 
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.RangeInfo;
 import org.jfree.data.xy.AbstractXYDataset;
 import org.jfree.data.xy.IntervalXYDataset;
 
 import com.google.common.collect.Range;
 
 /**
- * Spectra visualizer data set for scan data points
+ * Spectra visualizer data set for scan data points. Only the data points
+ * selected by setVisibleRange() are provided as items, so large profile scans
+ * can be drawn quickly.
  */
-public class ScanDataSet extends AbstractXYDataset implements IntervalXYDataset {
+public class ScanDataSet extends AbstractXYDataset implements
+	IntervalXYDataset, DomainInfo, RangeInfo {
 
     private static final long serialVersionUID = 1L;
 
@@ -45,6 +52,10 @@ public class ScanDataSet extends AbstractXYDataset implements IntervalXYDataset
      * every time may cause reloading the data from HDD
      */
     private DataPoint dataPoints[];
+    private double mzValues[], intensityValues[];
+
+    private final PlotDataDecimator decimator;
+    private final org.jfree.data.Range domainBounds, rangeBounds;
 
     public ScanDataSet(Scan scan) {
 	this("Scan #" + scan.getScanNumber(), scan);
@@ -54,6 +65,38 @@ public class ScanDataSet extends AbstractXYDataset implements IntervalXYDataset
 	this.dataPoints = scan.getDataPoints();
 	this.scan = scan;
 	this.label = label;
+
+	mzValues = new double[dataPoints.length];
+	intensityValues = new double[dataPoints.length];
+	double minMZ = Double.MAX_VALUE, maxMZ = -Double.MAX_VALUE;
+	double minIntensity = Double.MAX_VALUE, maxIntensity = -Double.MAX_VALUE;
+	for (int i = 0; i < dataPoints.length; i++) {
+	    mzValues[i] = dataPoints[i].getMZ();
+	    intensityValues[i] = dataPoints[i].getIntensity();
+	    minMZ = Math.min(minMZ, mzValues[i]);
+	    maxMZ = Math.max(maxMZ, mzValues[i]);
+	    minIntensity = Math.min(minIntensity, intensityValues[i]);
+	    maxIntensity = Math.max(maxIntensity, intensityValues[i]);
+	}
+
+	decimator = new PlotDataDecimator(mzValues, intensityValues,
+		dataPoints.length);
+
+	if (dataPoints.length > 0) {
+	    domainBounds = new org.jfree.data.Range(minMZ, maxMZ);
+	    rangeBounds = new org.jfree.data.Range(minIntensity, maxIntensity);
+	} else {
+	    domainBounds = null;
+	    rangeBounds = null;
+	}
+    }
+
+    /**
+     * Selects the data points to draw for given visible m/z range and plot
+     * width. Called by the plot before it is drawn.
+     */
+    public void setVisibleRange(double mzMin, double mzMax, int pixelWidth) {
+	decimator.setVisibleRange(mzMin, mzMax, pixelWidth);
     }
 
     @Override
@@ -67,15 +110,57 @@ public class ScanDataSet extends AbstractXYDataset implements IntervalXYDataset
     }
 
     public int getItemCount(int series) {
-	return dataPoints.length;
+	return decimator.getItemCount();
     }
 
     public Number getX(int series, int item) {
-	return dataPoints[item].getMZ();
+	return getXValue(series, item);
     }
 
     public Number getY(int series, int item) {
-	return dataPoints[item].getIntensity();
+	return getYValue(series, item);
+    }
+
+    public double getXValue(int series, int item) {
+	return mzValues[decimator.getIndex(item)];
+    }
+
+    public double getYValue(int series, int item) {
+	return intensityValues[decimator.getIndex(item)];
+    }
+
+    public DomainOrder getDomainOrder() {
+	return decimator.isSorted() ? DomainOrder.ASCENDING : DomainOrder.NONE;
+    }
+
+    /*
+     * The bounds are calculated from all data points, so the automatic axis
+     * range does not depend on the currently selected data points
+     */
+    public double getDomainLowerBound(boolean includeInterval) {
+	return domainBounds == null ? Double.NaN : domainBounds
+		.getLowerBound();
+    }
+
+    public double getDomainUpperBound(boolean includeInterval) {
+	return domainBounds == null ? Double.NaN : domainBounds
+		.getUpperBound();
+    }
+
+    public org.jfree.data.Range getDomainBounds(boolean includeInterval) {
+	return domainBounds;
+    }
+
+    public double getRangeLowerBound(boolean includeInterval) {
+	return rangeBounds == null ? Double.NaN : rangeBounds.getLowerBound();
+    }
+
+    public double getRangeUpperBound(boolean includeInterval) {
+	return rangeBounds == null ? Double.NaN : rangeBounds.getUpperBound();
+    }
+
+    public org.jfree.data.Range getRangeBounds(boolean includeInterval) {
+	return rangeBounds;
     }
 
     public Number getEndX(int series, int item) {
@@ -137,7 +222,7 @@ public class ScanDataSet extends AbstractXYDataset implements IntervalXYDataset
     public String getAnnotation(int item) {
 	if (annotation == null)
 	    return null;
-	DataPoint itemDataPoint = dataPoints[item];
+	DataPoint itemDataPoint = dataPoints[decimator.getIndex(item)];
 	for (DataPoint key : annotation.keySet()) {
 	    if (Math.abs(key.getMZ() - itemDataPoint.getMZ()) < 0.001)
 		return annotation.get(key);
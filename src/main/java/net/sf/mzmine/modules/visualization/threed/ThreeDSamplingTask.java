@@ -19,6 +19,13 @@
 
 package net.sf.mzmine.modules.visualization.threed;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.DataPoint;
@@ -26,6 +33,8 @@ import net.sf.mzmine.datamodel.MassSpectrumType;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.ExceptionUtils;
 import net.sf.mzmine.util.ScanUtils;
@@ -36,10 +45,17 @@ import visad.Set;
 import com.google.common.collect.Range;
 
 /**
- * Sampling task which loads the raw data and feeds them to ThreeDDisplay
+ * Sampling task which loads the raw data and feeds them to ThreeDDisplay. The
+ * scans are binned by a pool of threads, each of them taking chunks of scans
+ * and binning them into its own grid. The grids are merged at the end, which
+ * gives the same result as binning the scans one by one, because each grid
+ * point keeps the maximum intensity.
  */
 class ThreeDSamplingTask extends AbstractTask {
 
+    // Number of scans each thread takes at once
+    private static final int SCANS_PER_CHUNK = 16;
+
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
     private RawDataFile dataFile;
@@ -49,7 +65,7 @@ class ThreeDSamplingTask extends AbstractTask {
     // Data resolution on m/z and retention time axis
     private int rtResolution, mzResolution;
 
-    private int retrievedScans = 0;
+    private final AtomicInteger retrievedScans = new AtomicInteger();
 
     // The 3D display
     private ThreeDDisplay display;
@@ -94,7 +110,7 @@ class ThreeDSamplingTask extends AbstractTask {
      * @see net.sf.mzmine.taskcontrol.Task#getFinishedPercentage()
      */
     public double getFinishedPercentage() {
-	return (double) retrievedScans / scanNumbers.length;
+	return (double) retrievedScans.get() / scanNumbers.length;
     }
 
     /**
@@ -113,59 +129,85 @@ class ThreeDSamplingTask extends AbstractTask {
 		    rtResolution, mzRange.lowerEndpoint(),
 		    mzRange.upperEndpoint(), mzResolution);
 
-	    final double rtStep = (rtRange.upperEndpoint() - rtRange
-		    .lowerEndpoint()) / rtResolution;
-
 	    // create an array for all data points
-	    float[][] intensityValues = new float[1][mzResolution
-		    * rtResolution];
+	    float[][] intensityValues = new float[1][];
 	    boolean rtDataSet[] = new boolean[rtResolution];
 
-	    // load scans
-	    for (int scanIndex = 0; scanIndex < scanNumbers.length; scanIndex++) {
-
-		if (isCanceled())
-		    return;
-
-		Scan scan = dataFile.getScan(scanNumbers[scanIndex]);
-
-		DataPoint dataPoints[] = scan.getDataPoints();
-		double[] scanMZValues = new double[dataPoints.length];
-		double[] scanIntensityValues = new double[dataPoints.length];
-		for (int dp = 0; dp < dataPoints.length; dp++) {
-		    scanMZValues[dp] = dataPoints[dp].getMZ();
-		    scanIntensityValues[dp] = dataPoints[dp].getIntensity();
+	    // load and bin the scans
+	    final int numOfThreads = SharedTaskExecutor.getNumOfThreads();
+	    final ExecutorService samplers = SharedTaskExecutor.newExecutor();
+	    final AtomicInteger nextChunk = new AtomicInteger();
+	    final List<Future<SamplingGrid>> grids = new ArrayList<Future<SamplingGrid>>();
+
+	    try {
+
+		for (int i = 0; i < numOfThreads; i++) {
+		    grids.add(samplers.submit(TaskMetrics
+			    .bindCurrentMetrics(new Callable<SamplingGrid>() {
+				public SamplingGrid call() {
+				    return sampleScans(nextChunk);
+				}
+			    })));
 		}
 
-		double[] binnedIntensities = ScanUtils.binValues(scanMZValues,
-			scanIntensityValues, mzRange, mzResolution,
-			scan.getSpectrumType() != MassSpectrumType.CENTROIDED,
-			BinningType.MAX);
-
-		int scanBinIndex;
-
-		double rt = scan.getRetentionTime();
-		scanBinIndex = (int) ((rt - rtRange.lowerEndpoint()) / rtStep);
-
-		// last scan falls into last bin
-		if (scanBinIndex == rtResolution)
-		    scanBinIndex--;
-
-		for (int mzIndex = 0; mzIndex < mzResolution; mzIndex++) {
-
-		    int intensityValuesIndex = (rtResolution * mzIndex)
-			    + scanBinIndex;
-		    if (binnedIntensities[mzIndex] > intensityValues[0][intensityValuesIndex])
-			intensityValues[0][intensityValuesIndex] = (float) binnedIntensities[mzIndex];
-
-		    if (intensityValues[0][intensityValuesIndex] > maxBinnedIntensity)
-			maxBinnedIntensity = (double) binnedIntensities[mzIndex];
+		// Merge the grids of all threads
+		for (Future<SamplingGrid> future : grids) {
+
+		    final SamplingGrid grid;
+		    try {
+			grid = future.get();
+		    } catch (ExecutionException e) {
+
+			// Report the exception thrown by the sampler.
+			final Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+			    throw (Exception) cause;
+			if (cause instanceof Error)
+			    throw (Error) cause;
+			throw e;
+		    }
+
+		    if (intensityValues[0] == null) {
+			intensityValues[0] = grid.intensities;
+		    } else {
+			for (int i = 0; i < grid.intensities.length; i++) {
+			    if (grid.intensities[i] > intensityValues[0][i])
+				intensityValues[0][i] = grid.intensities[i];
+			}
+		    }
+		    for (int rtIndex = 0; rtIndex < rtResolution; rtIndex++) {
+			if (grid.rtDataSet[rtIndex])
+			    rtDataSet[rtIndex] = true;
+		    }
 		}
 
-		rtDataSet[scanBinIndex] = true;
+	    } finally {
+		samplers.shutdownNow();
+	    }
+
+	    if (isCanceled())
+		return;
 
-		retrievedScans++;
+	    for (float intensity : intensityValues[0]) {
+		if (intensity > maxBinnedIntensity)
+		    maxBinnedIntensity = intensity;
+	    }
 
+	    // Find the closest RT lines with data on each side, so we do not
+	    // need to search for them for each missing line
+	    int prevDataSet[] = new int[rtResolution];
+	    int nextDataSet[] = new int[rtResolution];
+	    int lastIndex = -1;
+	    for (int rtIndex = 0; rtIndex < rtResolution; rtIndex++) {
+		prevDataSet[rtIndex] = lastIndex;
+		if (rtDataSet[rtIndex])
+		    lastIndex = rtIndex;
+	    }
+	    lastIndex = rtResolution;
+	    for (int rtIndex = rtResolution - 1; rtIndex >= 0; rtIndex--) {
+		nextDataSet[rtIndex] = lastIndex;
+		if (rtDataSet[rtIndex])
+		    lastIndex = rtIndex;
 	    }
 
 	    // Interpolate missing values on the RT-axis
@@ -174,15 +216,8 @@ class ThreeDSamplingTask extends AbstractTask {
 		// If the data was set, go to next RT line
 		if (rtDataSet[rtIndex])
 		    continue;
-		int prevIndex, nextIndex;
-		for (prevIndex = rtIndex - 1; prevIndex >= 0; prevIndex--) {
-		    if (rtDataSet[prevIndex])
-			break;
-		}
-		for (nextIndex = rtIndex + 1; nextIndex < rtResolution; nextIndex++) {
-		    if (rtDataSet[nextIndex])
-			break;
-		}
+		int prevIndex = prevDataSet[rtIndex];
+		int nextIndex = nextDataSet[rtIndex];
 
 		// If no neighboring data was found, give up
 		if ((prevIndex < 0) || (nextIndex >= rtResolution))
@@ -227,4 +262,96 @@ class ThreeDSamplingTask extends AbstractTask {
 
     }
 
+    /**
+     * Bins chunks of scans into a new grid, until all chunks are taken. This
+     * method is called from multiple threads at once.
+     */
+    private SamplingGrid sampleScans(AtomicInteger nextChunk) {
+
+	final double rtStep = (rtRange.upperEndpoint() - rtRange
+		.lowerEndpoint()) / rtResolution;
+	final double mzStep = (mzRange.upperEndpoint() - mzRange
+		.lowerEndpoint()) / mzResolution;
+
+	// We read only the data points in the m/z range, plus one bin on each
+	// side, so the bins at the edges can be interpolated in continuous
+	// mode
+	final Range<Double> readMZRange = Range.closed(mzRange.lowerEndpoint()
+		- mzStep, mzRange.upperEndpoint() + mzStep);
+
+	SamplingGrid grid = new SamplingGrid(mzResolution * rtResolution,
+		rtResolution);
+
+	while (!isCanceled()) {
+
+	    final int chunkStart = nextChunk.getAndIncrement()
+		    * SCANS_PER_CHUNK;
+	    if (chunkStart >= scanNumbers.length)
+		break;
+	    final int chunkEnd = Math.min(scanNumbers.length, chunkStart
+		    + SCANS_PER_CHUNK);
+
+	    for (int scanIndex = chunkStart; scanIndex < chunkEnd; scanIndex++) {
+
+		if (isCanceled())
+		    return grid;
+
+		Scan scan = dataFile.getScan(scanNumbers[scanIndex]);
+
+		DataPoint dataPoints[] = scan.getDataPointsByMass(readMZRange);
+		double[] scanMZValues = new double[dataPoints.length];
+		double[] scanIntensityValues = new double[dataPoints.length];
+		for (int dp = 0; dp < dataPoints.length; dp++) {
+		    scanMZValues[dp] = dataPoints[dp].getMZ();
+		    scanIntensityValues[dp] = dataPoints[dp].getIntensity();
+		}
+
+		double[] binnedIntensities = ScanUtils.binValues(scanMZValues,
+			scanIntensityValues, mzRange, mzResolution,
+			scan.getSpectrumType() != MassSpectrumType.CENTROIDED,
+			BinningType.MAX);
+
+		int scanBinIndex;
+
+		double rt = scan.getRetentionTime();
+		scanBinIndex = (int) ((rt - rtRange.lowerEndpoint()) / rtStep);
+
+		// last scan falls into last bin
+		if (scanBinIndex == rtResolution)
+		    scanBinIndex--;
+
+		for (int mzIndex = 0; mzIndex < mzResolution; mzIndex++) {
+
+		    int intensityValuesIndex = (rtResolution * mzIndex)
+			    + scanBinIndex;
+		    if (binnedIntensities[mzIndex] > grid.intensities[intensityValuesIndex])
+			grid.intensities[intensityValuesIndex] = (float) binnedIntensities[mzIndex];
+		}
+
+		grid.rtDataSet[scanBinIndex] = true;
+
+		retrievedScans.incrementAndGet();
+
+	    }
+	}
+
+	return grid;
+
+    }
+
+    /**
+     * Binned intensities of the scans sampled by one thread
+     */
+    private static class SamplingGrid {
+
+	private final float intensities[];
+	private final boolean rtDataSet[];
+
+	SamplingGrid(int size, int rtResolution) {
+	    intensities = new float[size];
+	    rtDataSet = new boolean[rtResolution];
+	}
+
+    }
+
 }
@@ -119,13 +119,15 @@ public class ExportChromatogramTask extends AbstractTask {
 	    writer.write("RT,I");
 	    writer.newLine();
 
-	    // Write the data points.
-	    final int itemCount = dataSet.getItemCount(0);
+	    // Write the data points. The data set items contain only the
+	    // drawn data points, so we export the values of all scans.
+	    final int itemCount = dataSet.getScanCount();
 	    progressMax = itemCount;
 	    for (int i = 0; i < itemCount; i++) {
 
 		// Write (x, y) data point row.
-		writer.write(dataSet.getX(0, i) + "," + dataSet.getY(0, i));
+		writer.write(dataSet.getRetentionTime(i) + ","
+			+ dataSet.getIntensity(i));
 		writer.newLine();
 
 		progress = i + 1;
@@ -34,8 +34,12 @@ import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.taskcontrol.Task;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.PlotDataDecimator;
 import net.sf.mzmine.util.ScanUtils;
 
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.RangeInfo;
 import org.jfree.data.xy.AbstractXYZDataset;
 
 import com.google.common.collect.Range;
@@ -48,8 +52,14 @@ import com.google.common.primitives.Ints;
  * 
  * Added the possibility to switch to TIC plot type from a
  * "non-TICVisualizerWindow" context.
+ * 
+ * Once all values are calculated, only the data points selected by
+ * setVisibleRange() are provided as items, so chromatograms with many scans
+ * can be drawn quickly. Item indexes passed to the methods of this class
+ * (e.g. getScanNumber()) refer to these selected data points.
  */
-public class TICDataSet extends AbstractXYZDataset implements Task {
+public class TICDataSet extends AbstractXYZDataset implements Task,
+	DomainInfo, RangeInfo {
 
     private static final long serialVersionUID = 1L;
 
@@ -79,6 +89,13 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
     private double intensityMin;
     private double intensityMax;
 
+    // Selection of drawn data points, created when all values are calculated
+    // and accessed from the Swing thread only
+    private PlotDataDecimator decimator;
+    private double visibleMin = Double.NEGATIVE_INFINITY,
+	    visibleMax = Double.POSITIVE_INFINITY;
+    private int visibleWidth = Integer.MAX_VALUE;
+
     private TaskStatus status;
     private String errorMessage;
 
@@ -173,8 +190,21 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
 
 	    if (status != TaskStatus.CANCELED) {
 
-		// Always redraw when we add last value.
-		refresh();
+		// Always redraw when we add last value. From now on, we draw
+		// only the data points selected for the visible range.
+		final PlotDataDecimator newDecimator = new PlotDataDecimator(
+			rtValues, intensityValues, processedScans);
+		SwingUtilities.invokeLater(new Runnable() {
+
+		    @Override
+		    public void run() {
+
+			decimator = newDecimator;
+			decimator.setVisibleRange(visibleMin, visibleMax,
+				visibleWidth);
+			fireDatasetChanged();
+		    }
+		});
 
 		LOG.info("TIC data calculated for " + dataFile);
 		status = TaskStatus.FINISHED;
@@ -203,43 +233,169 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
     @Override
     public Number getZ(final int series, final int item) {
 
-	return basePeakValues[item];
+	return basePeakValues[getIndex(item)];
     }
 
     @Override
     public int getItemCount(final int series) {
 
-	return processedScans;
+	return decimator == null ? processedScans : decimator.getItemCount();
     }
 
     @Override
     public Number getX(final int series, final int item) {
 
-	return rtValues[item];
+	return rtValues[getIndex(item)];
     }
 
     @Override
     public Number getY(final int series, final int item) {
 
-	return intensityValues[item];
+	return intensityValues[getIndex(item)];
+    }
+
+    @Override
+    public double getXValue(final int series, final int item) {
+
+	return rtValues[getIndex(item)];
+    }
+
+    @Override
+    public double getYValue(final int series, final int item) {
+
+	return intensityValues[getIndex(item)];
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+
+	return decimator != null && decimator.isSorted() ? DomainOrder.ASCENDING
+		: DomainOrder.NONE;
+    }
+
+    /**
+     * Selects the data points to draw for given visible retention time range
+     * and plot width. Called by the plot before it is drawn.
+     */
+    public void setVisibleRange(final double rtMin, final double rtMax,
+	    final int pixelWidth) {
+
+	visibleMin = rtMin;
+	visibleMax = rtMax;
+	visibleWidth = pixelWidth;
+	if (decimator != null) {
+
+	    decimator.setVisibleRange(rtMin, rtMax, pixelWidth);
+	}
+    }
+
+    /**
+     * Number of scans which have their values calculated. Unlike
+     * getItemCount(), this includes data points which are not drawn.
+     */
+    public int getScanCount() {
+
+	return processedScans;
+    }
+
+    public double getRetentionTime(final int index) {
+
+	return rtValues[index];
+    }
+
+    public double getIntensity(final int index) {
+
+	return intensityValues[index];
+    }
+
+    public double getBasePeakMZ(final int index) {
+
+	return basePeakValues[index];
     }
 
     /**
-     * Returns index of data point which exactly matches given X and Y values
+     * Scan number of the data point with given index. Unlike
+     * getScanNumber(), the index counts all scans, including data points
+     * which are not drawn.
+     */
+    public int getScanNumberAtIndex(final int index) {
+
+	return scanNumbers[index];
+    }
+
+    /*
+     * The bounds are calculated from all data points, so the automatic axis
+     * range does not depend on the currently selected data points. The
+     * retention times are in the order of the scans.
+     */
+    @Override
+    public double getDomainLowerBound(final boolean includeInterval) {
+
+	return processedScans == 0 ? Double.NaN : rtValues[0];
+    }
+
+    @Override
+    public double getDomainUpperBound(final boolean includeInterval) {
+
+	return processedScans == 0 ? Double.NaN
+		: rtValues[processedScans - 1];
+    }
+
+    @Override
+    public org.jfree.data.Range getDomainBounds(final boolean includeInterval) {
+
+	return processedScans == 0 ? null : new org.jfree.data.Range(
+		rtValues[0], rtValues[processedScans - 1]);
+    }
+
+    @Override
+    public double getRangeLowerBound(final boolean includeInterval) {
+
+	return processedScans == 0 ? Double.NaN : intensityMin;
+    }
+
+    @Override
+    public double getRangeUpperBound(final boolean includeInterval) {
+
+	return processedScans == 0 ? Double.NaN : intensityMax;
+    }
+
+    @Override
+    public org.jfree.data.Range getRangeBounds(final boolean includeInterval) {
+
+	return processedScans == 0 ? null : new org.jfree.data.Range(
+		intensityMin, intensityMax);
+    }
+
+    /**
+     * Index of the data point shown as given item.
+     */
+    private int getIndex(final int item) {
+
+	return decimator == null ? item : decimator.getIndex(item);
+    }
+
+    /**
+     * Returns index of data point which exactly matches given X and Y values.
+     * All scans are searched, including data points which are not drawn, so
+     * the index can be used with getRetentionTime(), getIntensity(),
+     * getBasePeakMZ() and getScanNumberAtIndex(), but not as an item of the
+     * series.
      *
      * @param retentionTime
      *            retention time.
      * @param intensity
      *            intensity.
-     * @return the nearest data point index.
+     * @return the data point index, or -1 if there is no such data point.
      */
     public int getIndex(final double retentionTime, final double intensity) {
 
 	int index = -1;
-	for (int i = 0; index < 0 && i < processedScans; i++) {
+	final int scanCount = getScanCount();
+	for (int i = 0; index < 0 && i < scanCount; i++) {
 
-	    if (Math.abs(retentionTime - rtValues[i]) < EPSILON
-		    && Math.abs(intensity - intensityValues[i]) < EPSILON) {
+	    if (Math.abs(retentionTime - getRetentionTime(i)) < EPSILON
+		    && Math.abs(intensity - getIntensity(i)) < EPSILON) {
 
 		index = i;
 	    }
@@ -250,7 +406,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
 
     public int getScanNumber(final int item) {
 
-	return scanNumbers[item];
+	return scanNumbers[getIndex(item)];
     }
 
     public RawDataFile getDataFile() {
@@ -267,16 +423,21 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
      */
     public boolean isLocalMaximum(final int item) {
 
+	return isLocalMaximumIndex(getIndex(item));
+    }
+
+    private boolean isLocalMaximumIndex(final int index) {
+
 	final boolean isLocalMaximum;
-	if (item <= 0 || item >= processedScans - 1) {
+	if (index <= 0 || index >= processedScans - 1) {
 
 	    isLocalMaximum = false;
 
 	} else {
 
-	    final double intensity = intensityValues[item];
-	    isLocalMaximum = intensityValues[item - 1] <= intensity
-		    && intensity >= intensityValues[item + 1];
+	    final double intensity = intensityValues[index];
+	    isLocalMaximum = intensityValues[index - 1] <= intensity
+		    && intensity >= intensityValues[index + 1];
 	}
 
 	return isLocalMaximum;
@@ -293,7 +454,8 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
      *            minimum of range on y-axis.
      * @param yMax
      *            maximum of range on y-axis.
-     * @return the local maxima in the given range.
+     * @return the local maxima in the given range (indexes of all data
+     *         points, not only the drawn items).
      */
     public int[] findLocalMaxima(final double xMin, final double xMax,
 	    final double yMin, final double yMax) {
@@ -325,7 +487,8 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
 
 	    // Check Y range..
 	    final double intensity = intensityValues[index];
-	    if (yMin <= intensity && intensity <= yMax && isLocalMaximum(index)) {
+	    if (yMin <= intensity && intensity <= yMax
+		    && isLocalMaximumIndex(index)) {
 
 		indices.add(index);
 	    }
@@ -23,6 +23,7 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Font;
+import java.awt.Graphics;
 import java.awt.Paint;
 import java.awt.Shape;
 import java.awt.Stroke;
@@ -454,6 +455,29 @@ public class TICPlot extends ChartPanel implements MouseWheelListener {
 	restoreAutoRangeBounds();
     }
 
+    /**
+     * Before the chart is drawn, the TIC data sets select the data points for
+     * the visible retention time range, so we never draw many more data points
+     * than there are pixels.
+     */
+    @Override
+    public void paintComponent(final Graphics g) {
+
+	final org.jfree.data.Range rtRange = plot.getDomainAxis().getRange();
+	final int dataSetCount = plot.getDatasetCount();
+	for (int i = 0; i < dataSetCount; i++) {
+
+	    final XYDataset dataSet = plot.getDataset(i);
+	    if (dataSet instanceof TICDataSet) {
+
+		((TICDataSet) dataSet).setVisibleRange(rtRange.getLowerBound(),
+			rtRange.getUpperBound(), getWidth());
+	    }
+	}
+
+	super.paintComponent(g);
+    }
+
     @Override
     public void mouseClicked(final MouseEvent event) {
 
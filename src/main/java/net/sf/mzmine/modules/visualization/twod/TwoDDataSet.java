@@ -21,25 +21,42 @@ package net.sf.mzmine.modules.visualization.twod;
 
 import java.lang.ref.SoftReference;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
 
 import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
-import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
 import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
 import net.sf.mzmine.taskcontrol.Task;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
-import net.sf.mzmine.util.DataPointSorter;
-import net.sf.mzmine.util.SortingDirection;
-import net.sf.mzmine.util.SortingProperty;
 
 import org.jfree.data.xy.AbstractXYDataset;
 
 import com.google.common.collect.Range;
 
 /**
+ * 2D visualizer data set. The intensities are provided as a pyramid of tiles,
+ * each tile holding the maximum intensities of TILE_SIZE x TILE_SIZE bins of
+ * retention time and m/z. At retention time level n, the total retention time
+ * range is divided into 2^n tiles, and the same for m/z. The plot picks the
+ * levels with bins just smaller than its pixels.
  * 
+ * The tiles are calculated by background threads when the plot requests them,
+ * and kept in a LRU cache limited to a fraction of the heap. When the tiles
+ * are ready, the data set notifies its listeners, so the plot is drawn again.
  */
 class TwoDDataSet extends AbstractXYDataset implements Task {
 
@@ -48,10 +65,23 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
      */
     private static final long serialVersionUID = 1L;
 
+    private static final Logger logger = Logger.getLogger(TwoDDataSet.class
+	    .getName());
+
+    // Number of bins of a tile in each dimension
+    static final int TILE_SIZE = 64;
+
+    // Finest level, so the global bin indexes fit into int
+    static final int MAX_LEVEL = 24;
+
+    // Tiles take at most 1/20 of the heap
+    private static final int MAX_CACHED_TILES = (int) Math.max(16, Math.min(
+	    Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 20
+		    / (TILE_SIZE * TILE_SIZE * 4)));
+
     private RawDataFile rawDataFile;
 
     private double retentionTimes[];
-    private double basePeaks[];
     private SoftReference<DataPoint[]> dataPointMatrix[];
 
     private Range<Double> totalRTRange, totalMZRange;
@@ -59,6 +89,22 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
     private TaskStatus status = TaskStatus.WAITING;
 
+    private final Map<TileKey, float[]> tileCache = new LinkedHashMap<TileKey, float[]>(
+	    16, 0.75f, true) {
+	private static final long serialVersionUID = 1L;
+
+	protected boolean removeEldestEntry(Map.Entry<TileKey, float[]> eldest) {
+	    return size() > MAX_CACHED_TILES;
+	}
+    };
+
+    // Tiles which are being calculated or waiting to be calculated
+    private final Set<TileKey> pendingTiles = new HashSet<TileKey>();
+
+    // Threads calculating the tiles. The tasks are taken in LIFO order, so
+    // after zooming, the tiles of the current view are calculated first.
+    private final ThreadPoolExecutor tileThreads;
+
     @SuppressWarnings("unchecked")
     TwoDDataSet(RawDataFile rawDataFile, int msLevel, Range<Double> rtRange,
 	    Range<Double> mzRange, TwoDVisualizerWindow visualizer) {
@@ -74,7 +120,25 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
 	dataPointMatrix = new SoftReference[scanNumbers.length];
 	retentionTimes = new double[scanNumbers.length];
-	basePeaks = new double[scanNumbers.length];
+
+	int numOfThreads = SharedTaskExecutor.getNumOfThreads();
+	LinkedBlockingDeque<Runnable> lifoQueue = new LinkedBlockingDeque<Runnable>() {
+	    private static final long serialVersionUID = 1L;
+
+	    public boolean offer(Runnable task) {
+		return offerFirst(task);
+	    }
+	};
+	ThreadFactory daemonThreads = new ThreadFactory() {
+	    public Thread newThread(Runnable task) {
+		Thread thread = new Thread(task, "2D visualizer tile thread");
+		thread.setDaemon(true);
+		return thread;
+	    }
+	};
+	tileThreads = new ThreadPoolExecutor(numOfThreads, numOfThreads, 10,
+		TimeUnit.SECONDS, lifoQueue, daemonThreads);
+	tileThreads.allowCoreThreadTimeOut(true);
 
 	MZmineCore.getTaskController().addTask(this, TaskPriority.HIGH);
 
@@ -85,6 +149,8 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
 	status = TaskStatus.PROCESSING;
 
+	// We only need the retention times here, the data points are read
+	// when the tiles are calculated
 	for (int index = 0; index < scanNumbers.length; index++) {
 
 	    // Cancel?
@@ -92,20 +158,18 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 		return;
 
 	    Scan scan = rawDataFile.getScan(scanNumbers[index]);
-	    DataPoint scanBasePeak = scan.getHighestDataPoint();
 	    retentionTimes[index] = scan.getRetentionTime();
-	    basePeaks[index] = (scanBasePeak == null ? 0 : scanBasePeak
-		    .getIntensity());
-	    DataPoint scanDataPoints[] = scan.getDataPoints();
-	    dataPointMatrix[index] = new SoftReference<DataPoint[]>(
-		    scanDataPoints);
 	    processedScans++;
 	}
 
-	fireDatasetChanged();
-
 	status = TaskStatus.FINISHED;
 
+	SwingUtilities.invokeLater(new Runnable() {
+	    public void run() {
+		fireDatasetChanged();
+	    }
+	});
+
     }
 
     /**
@@ -149,131 +213,290 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 	    return totalMZRange.upperEndpoint();
     }
 
-    double upperEndpointIntensity(Range<Double> rtRange, Range<Double> mzRange,
-	    PlotMode plotMode) {
+    Range<Double> getTotalRTRange() {
+	return totalRTRange;
+    }
 
-	double maxIntensity = 0;
+    Range<Double> getTotalMZRange() {
+	return totalMZRange;
+    }
+
+    /**
+     * Returns the coarsest level which has bins no larger than given pixel
+     * size, so that every pixel covers at least one bin
+     */
+    static int getLevel(Range<Double> totalRange, double pixelSize) {
+	double length = totalRange.upperEndpoint() - totalRange.lowerEndpoint();
+	if ((length <= 0) || (pixelSize <= 0))
+	    return 0;
+	double tiles = length / (TILE_SIZE * pixelSize);
+	int level = (int) Math.ceil(Math.log(tiles) / Math.log(2));
+	return Math.max(0, Math.min(level, MAX_LEVEL));
+    }
 
-	double searchRetentionTimes[] = retentionTimes;
-	if (processedScans < totalScans) {
-	    searchRetentionTimes = new double[processedScans];
-	    System.arraycopy(retentionTimes, 0, searchRetentionTimes, 0,
-		    searchRetentionTimes.length);
+    /**
+     * Returns the size of a bin at given level
+     */
+    static double getBinSize(Range<Double> totalRange, int level) {
+	return (totalRange.upperEndpoint() - totalRange.lowerEndpoint())
+		/ ((double) TILE_SIZE * (1 << level));
+    }
+
+    /**
+     * Returns the calculated tile, or null if the tile is not ready. The tile
+     * contains the intensities of TILE_SIZE retention time bins times
+     * TILE_SIZE m/z bins, in retention time major order.
+     */
+    float[] getTile(int rtLevel, int mzLevel, int rtTile, int mzTile,
+	    PlotMode plotMode) {
+	synchronized (tileCache) {
+	    return tileCache.get(new TileKey(rtLevel, mzLevel, rtTile, mzTile,
+		    plotMode));
 	}
+    }
 
-	int startScanIndex = Arrays.binarySearch(searchRetentionTimes,
-		rtRange.lowerEndpoint());
+    /**
+     * Starts calculating the tiles in given range which are not cached yet.
+     * The tiles of each retention time tile are calculated together, so each
+     * scan is read only once.
+     */
+    void requestTiles(final int rtLevel, final int mzLevel, int rtTileFrom,
+	    int rtTileTo, int mzTileFrom, int mzTileTo, final PlotMode plotMode) {
+
+	if ((status != TaskStatus.FINISHED) || tileThreads.isShutdown())
+	    return;
+
+	for (int rtTile = rtTileFrom; rtTile <= rtTileTo; rtTile++) {
+
+	    int firstMissing = -1, lastMissing = -1;
+	    synchronized (tileCache) {
+		for (int mzTile = mzTileFrom; mzTile <= mzTileTo; mzTile++) {
+		    TileKey key = new TileKey(rtLevel, mzLevel, rtTile, mzTile,
+			    plotMode);
+		    if (tileCache.containsKey(key) || !pendingTiles.add(key))
+			continue;
+		    if (firstMissing < 0)
+			firstMissing = mzTile;
+		    lastMissing = mzTile;
+		}
+	    }
 
-	if (startScanIndex < 0)
-	    startScanIndex = (startScanIndex * -1) - 1;
+	    if (firstMissing < 0)
+		continue;
 
-	if (startScanIndex >= searchRetentionTimes.length) {
-	    return 0;
+	    final int tile = rtTile, from = firstMissing, to = lastMissing;
+	    tileThreads.execute(new Runnable() {
+		public void run() {
+		    try {
+			calculateTiles(rtLevel, mzLevel, tile, from, to,
+				plotMode);
+		    } catch (Exception e) {
+			logger.log(Level.WARNING,
+				"Error calculating 2D visualizer tiles", e);
+		    } finally {
+			synchronized (tileCache) {
+			    for (int mzTile = from; mzTile <= to; mzTile++) {
+				pendingTiles.remove(new TileKey(rtLevel,
+					mzLevel, tile, mzTile, plotMode));
+			    }
+			}
+		    }
+		    SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+			    fireDatasetChanged();
+			}
+		    });
+		}
+	    });
 	}
 
-	if (searchRetentionTimes[startScanIndex] > rtRange.upperEndpoint()) {
-	    if (startScanIndex == 0)
-		return 0;
+    }
 
-	    if (startScanIndex == searchRetentionTimes.length - 1)
-		return upperEndpointIntensity(startScanIndex - 1, mzRange,
-			plotMode);
+    /**
+     * Calculates the tiles of one retention time tile. Each retention time bin
+     * takes the maximum of the scans inside the bin, or the closest scan if
+     * there is none. In continuous mode, m/z bins without data points take the
+     * intensity of the closest data point, so zoomed profile data do not fall
+     * apart into separate lines.
+     */
+    private void calculateTiles(int rtLevel, int mzLevel, int rtTile,
+	    int mzTileFrom, int mzTileTo, PlotMode plotMode) {
 
-	    // find which scan point is closer
-	    double diffNext = searchRetentionTimes[startScanIndex]
-		    - rtRange.upperEndpoint();
-	    double diffPrev = rtRange.lowerEndpoint()
-		    - searchRetentionTimes[startScanIndex - 1];
+	final double rtBinSize = getBinSize(totalRTRange, rtLevel);
+	final double mzBinSize = getBinSize(totalMZRange, mzLevel);
+	final double tileRTMin = totalRTRange.lowerEndpoint() + rtTile
+		* TILE_SIZE * rtBinSize;
+	final double mzMin = totalMZRange.lowerEndpoint() + mzTileFrom
+		* TILE_SIZE * mzBinSize;
+	final int numOfMZBins = (mzTileTo - mzTileFrom + 1) * TILE_SIZE;
 
-	    if (diffPrev < diffNext)
-		return upperEndpointIntensity(startScanIndex - 1, mzRange,
-			plotMode);
-	    else
-		return upperEndpointIntensity(startScanIndex, mzRange, plotMode);
-	}
+	float intensities[][] = new float[TILE_SIZE][];
+	int lastScanIndex = -1;
+	float lastScanBins[] = null;
 
-	for (int scanIndex = startScanIndex; ((scanIndex < searchRetentionTimes.length) && (searchRetentionTimes[scanIndex] <= rtRange
-		.upperEndpoint())); scanIndex++) {
+	for (int rtBin = 0; rtBin < TILE_SIZE; rtBin++) {
 
-	    // ignore scans where all peaks are smaller than current max
-	    if (basePeaks[scanIndex] < maxIntensity)
-		continue;
+	    if (tileThreads.isShutdown())
+		return;
 
-	    double scanMax = upperEndpointIntensity(scanIndex, mzRange,
-		    plotMode);
+	    final double binRTMin = tileRTMin + rtBin * rtBinSize;
+	    final double binRTMax = binRTMin + rtBinSize;
 
-	    if (scanMax > maxIntensity)
-		maxIntensity = scanMax;
+	    int fromScan = lowerBound(retentionTimes, binRTMin);
+	    int toScan = lowerBound(retentionTimes, binRTMax);
 
-	}
+	    // The last bin includes the end of the total range
+	    if (binRTMax >= totalRTRange.upperEndpoint())
+		toScan = lowerBound(retentionTimes, Math.nextUp(binRTMax));
 
-	return maxIntensity;
+	    // No scan in this bin, take the closest one
+	    if (fromScan == toScan) {
+		if ((fromScan == 0) || (fromScan == retentionTimes.length))
+		    continue;
+		double diffNext = retentionTimes[fromScan] - binRTMax;
+		double diffPrev = binRTMin - retentionTimes[fromScan - 1];
+		if (diffPrev < diffNext)
+		    fromScan--;
+		toScan = fromScan + 1;
+	    }
 
-    }
+	    float binIntensities[] = new float[numOfMZBins];
+	    for (int scanIndex = fromScan; scanIndex < toScan; scanIndex++) {
+		// Neighbouring bins often share the closest scan
+		if (scanIndex != lastScanIndex) {
+		    lastScanBins = binScan(scanIndex, mzMin, mzBinSize,
+			    numOfMZBins, plotMode);
+		    lastScanIndex = scanIndex;
+		}
+		for (int i = 0; i < numOfMZBins; i++) {
+		    if (lastScanBins[i] > binIntensities[i])
+			binIntensities[i] = lastScanBins[i];
+		}
+	    }
+	    intensities[rtBin] = binIntensities;
 
-    private double upperEndpointIntensity(int dataPointMatrixIndex,
-	    Range<Double> mzRange, PlotMode plotMode) {
-	DataPoint dataPoints[] = dataPointMatrix[dataPointMatrixIndex].get();
-	if (dataPoints == null) {
-	    Scan scan = rawDataFile.getScan(scanNumbers[dataPointMatrixIndex]);
-	    dataPoints = scan.getDataPoints();
-	    dataPointMatrix[dataPointMatrixIndex] = new SoftReference<DataPoint[]>(
-		    dataPoints);
 	}
-	return upperEndpointIntensity(dataPoints, mzRange, plotMode);
-    }
 
-    private double upperEndpointIntensity(DataPoint dataPoints[],
-	    Range<Double> mzRange, PlotMode plotMode) {
+	// Split the bins into tiles
+	for (int mzTile = mzTileFrom; mzTile <= mzTileTo; mzTile++) {
+	    float tile[] = new float[TILE_SIZE * TILE_SIZE];
+	    int offset = (mzTile - mzTileFrom) * TILE_SIZE;
+	    for (int rtBin = 0; rtBin < TILE_SIZE; rtBin++) {
+		if (intensities[rtBin] == null)
+		    continue;
+		System.arraycopy(intensities[rtBin], offset, tile, rtBin
+			* TILE_SIZE, TILE_SIZE);
+	    }
+	    synchronized (tileCache) {
+		tileCache.put(new TileKey(rtLevel, mzLevel, rtTile, mzTile,
+			plotMode), tile);
+	    }
+	}
 
-	double maxIntensity = 0;
+    }
 
-	DataPoint searchMZ = new SimpleDataPoint(mzRange.lowerEndpoint(), 0);
-	int startMZIndex = Arrays.binarySearch(dataPoints, searchMZ,
-		new DataPointSorter(SortingProperty.MZ,
-			SortingDirection.Ascending));
-	if (startMZIndex < 0)
-	    startMZIndex = (startMZIndex * -1) - 1;
+    /**
+     * Returns the maximum intensities of given scan in numOfBins m/z bins
+     * starting at mzMin
+     */
+    private float[] binScan(int scanIndex, double mzMin, double mzBinSize,
+	    int numOfBins, PlotMode plotMode) {
 
-	if (startMZIndex >= dataPoints.length)
-	    return 0;
+	final DataPoint dataPoints[] = getDataPoints(scanIndex);
+	double mzMax = mzMin + numOfBins * mzBinSize;
 
-	if (dataPoints[startMZIndex].getMZ() > mzRange.upperEndpoint()) {
-	    if (plotMode != PlotMode.CENTROID) {
-		if (startMZIndex == 0)
-		    return 0;
-		if (startMZIndex == dataPoints.length - 1)
-		    return dataPoints[startMZIndex - 1].getIntensity();
+	// The last bin includes the end of the total range
+	if (mzMax >= totalMZRange.upperEndpoint())
+	    mzMax = Math.nextUp(mzMax);
 
-		// find which data point is closer
-		double diffNext = dataPoints[startMZIndex].getMZ()
-			- mzRange.upperEndpoint();
-		double diffPrev = mzRange.lowerEndpoint()
-			- dataPoints[startMZIndex - 1].getMZ();
+	float bins[] = new float[numOfBins];
+	boolean filled[] = new boolean[numOfBins];
 
-		if (diffPrev < diffNext)
-		    return dataPoints[startMZIndex - 1].getIntensity();
-		else
-		    return dataPoints[startMZIndex].getIntensity();
-	    } else {
-		return 0;
-	    }
+	int startIndex = 0, endIndex = dataPoints.length;
+	while (startIndex < endIndex) {
+	    int mid = (startIndex + endIndex) >>> 1;
+	    if (dataPoints[mid].getMZ() < mzMin)
+		startIndex = mid + 1;
+	    else
+		endIndex = mid;
+	}
 
+	for (int i = startIndex; (i < dataPoints.length)
+		&& (dataPoints[i].getMZ() < mzMax); i++) {
+	    int bin = (int) ((dataPoints[i].getMZ() - mzMin) / mzBinSize);
+	    if (bin >= numOfBins)
+		bin = numOfBins - 1;
+	    float intensity = (float) dataPoints[i].getIntensity();
+	    if (!filled[bin] || (intensity > bins[bin]))
+		bins[bin] = intensity;
+	    filled[bin] = true;
+	}
+
+	if (plotMode == PlotMode.CENTROID)
+	    return bins;
+
+	// Fill the empty bins with the closest data point
+	int next = startIndex;
+	for (int bin = 0; bin < numOfBins; bin++) {
+	    final double binMZMin = mzMin + bin * mzBinSize;
+	    final double binMZMax = binMZMin + mzBinSize;
+	    while ((next < dataPoints.length)
+		    && (dataPoints[next].getMZ() <= binMZMax))
+		next++;
+	    if (filled[bin] || (next == 0) || (next == dataPoints.length))
+		continue;
+	    double diffNext = dataPoints[next].getMZ() - binMZMax;
+	    double diffPrev = binMZMin - dataPoints[next - 1].getMZ();
+	    if (diffPrev < diffNext)
+		bins[bin] = (float) dataPoints[next - 1].getIntensity();
+	    else
+		bins[bin] = (float) dataPoints[next].getIntensity();
 	}
 
-	for (int mzIndex = startMZIndex; ((mzIndex < dataPoints.length) && (dataPoints[mzIndex]
-		.getMZ() <= mzRange.upperEndpoint())); mzIndex++) {
-	    if (dataPoints[mzIndex].getIntensity() > maxIntensity)
-		maxIntensity = dataPoints[mzIndex].getIntensity();
+	return bins;
+
+    }
+
+    private DataPoint[] getDataPoints(int scanIndex) {
+	SoftReference<DataPoint[]> reference = dataPointMatrix[scanIndex];
+	DataPoint dataPoints[] = (reference == null) ? null : reference.get();
+	if (dataPoints == null) {
+	    Scan scan = rawDataFile.getScan(scanNumbers[scanIndex]);
+	    dataPoints = scan.getDataPoints();
+	    dataPointMatrix[scanIndex] = new SoftReference<DataPoint[]>(
+		    dataPoints);
 	}
+	return dataPoints;
+    }
 
-	return maxIntensity;
+    /**
+     * Returns the index of the first value >= x
+     */
+    private static int lowerBound(double values[], double x) {
+	int index = Arrays.binarySearch(values, x);
+	if (index < 0)
+	    return -index - 1;
+	// Binary search may find any of equal values
+	while ((index > 0) && (values[index - 1] == x))
+	    index--;
+	return index;
+    }
 
+    /**
+     * Stops calculating the tiles and releases the cached tiles
+     */
+    void dispose() {
+	tileThreads.shutdownNow();
+	synchronized (tileCache) {
+	    tileCache.clear();
+	    pendingTiles.clear();
+	}
     }
 
     @Override
     public void cancel() {
 	status = TaskStatus.CANCELED;
+	dispose();
     }
 
     @Override
@@ -298,4 +521,36 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 	return "Updating 2D visualizer of " + rawDataFile;
     }
 
+    private static class TileKey {
+
+	private final int rtLevel, mzLevel, rtTile, mzTile;
+	private final PlotMode plotMode;
+
+	TileKey(int rtLevel, int mzLevel, int rtTile, int mzTile,
+		PlotMode plotMode) {
+	    this.rtLevel = rtLevel;
+	    this.mzLevel = mzLevel;
+	    this.rtTile = rtTile;
+	    this.mzTile = mzTile;
+	    this.plotMode = plotMode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (!(obj instanceof TileKey))
+		return false;
+	    TileKey other = (TileKey) obj;
+	    return (rtLevel == other.rtLevel) && (mzLevel == other.mzLevel)
+		    && (rtTile == other.rtTile) && (mzTile == other.mzTile)
+		    && (plotMode == other.plotMode);
+	}
+
+	@Override
+	public int hashCode() {
+	    return Arrays.hashCode(new int[] { rtLevel, mzLevel, rtTile,
+		    mzTile, plotMode.ordinal() });
+	}
+
+    }
+
 }
@@ -105,6 +105,7 @@ public class TwoDVisualizerWindow extends JFrame implements ActionListener {
 
     public void dispose() {
 	super.dispose();
+	dataset.dispose();
 	MZmineCore.getDesktop().removePeakListTreeListener(bottomPanel);
     }
 
@@ -43,9 +43,6 @@ class TwoDXYPlot extends XYPlot {
 
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
-    private Range<Double> totalRTRange, totalMZRange;
-    private BufferedImage zoomOutBitmap;
-
     private TwoDDataSet dataset;
 
     private TwoDPaletteType paletteType = TwoDPaletteType.PALETTE_GRAY20;
@@ -62,9 +59,6 @@ class TwoDXYPlot extends XYPlot {
 
 	this.dataset = dataset;
 
-	totalRTRange = rtRange;
-	totalMZRange = mzRange;
-
     }
 
     public boolean render(final Graphics2D g2, final Rectangle2D dataArea,
@@ -91,35 +85,75 @@ class TwoDXYPlot extends XYPlot {
 		.getUpperBound();
 	final double imageMZStep = (imageMZMax - imageMZMin) / height;
 
-	if ((zoomOutBitmap != null)
-		&& (imageRTMin == totalRTRange.lowerEndpoint())
-		&& (imageRTMax == totalRTRange.upperEndpoint())
-		&& (imageMZMin == totalMZRange.lowerEndpoint())
-		&& (imageMZMax == totalMZRange.upperEndpoint())
-		&& (zoomOutBitmap.getWidth() == width)
-		&& (zoomOutBitmap.getHeight() == height)) {
-	    g2.drawImage(zoomOutBitmap, x, y, null);
-	    return true;
-	}
+	final Range<Double> totalRTRange = dataset.getTotalRTRange();
+	final Range<Double> totalMZRange = dataset.getTotalMZRange();
 
 	// Save current time
 	Date renderStartTime = new Date();
 
-	// prepare a double array of summed intensities
+	// Pick the levels with bins just smaller than the pixels and request
+	// the missing tiles of the visible area
+	final int rtLevel = TwoDDataSet.getLevel(totalRTRange, imageRTStep);
+	final int mzLevel = TwoDDataSet.getLevel(totalMZRange, imageMZStep);
+	final TileGrid grid = new TileGrid(rtLevel, mzLevel, imageRTMin,
+		imageRTMax, imageMZMin, imageMZMax);
+	dataset.requestTiles(rtLevel, mzLevel, grid.rtTileFrom, grid.rtTileTo,
+		grid.mzTileFrom, grid.mzTileTo, plotMode);
+
+	// Until the tiles are calculated, we use coarser tiles which are
+	// already cached. These grids are created when needed.
+	final int maxCoarserLevels = Math.max(rtLevel, mzLevel);
+	final TileGrid coarserGrids[] = new TileGrid[maxCoarserLevels + 1];
+
+	// Global bin indexes of each column and row of the image
+	final int rtBinFrom[] = new int[width], rtBinTo[] = new int[width];
+	for (int i = 0; i < width; i++) {
+	    double pointRTMin = imageRTMin + (i * imageRTStep);
+	    rtBinFrom[i] = grid.rtBin(pointRTMin);
+	    rtBinTo[i] = Math.max(rtBinFrom[i],
+		    grid.rtBin(pointRTMin + imageRTStep) - 1);
+	    // Outside of the data, leave the column empty
+	    if ((pointRTMin + imageRTStep < totalRTRange.lowerEndpoint())
+		    || (pointRTMin > totalRTRange.upperEndpoint()))
+		rtBinTo[i] = rtBinFrom[i] - 1;
+	}
+	final int mzBinFrom[] = new int[height], mzBinTo[] = new int[height];
+	for (int j = 0; j < height; j++) {
+	    double pointMZMin = imageMZMin + (j * imageMZStep);
+	    mzBinFrom[j] = grid.mzBin(pointMZMin);
+	    mzBinTo[j] = Math.max(mzBinFrom[j],
+		    grid.mzBin(pointMZMin + imageMZStep) - 1);
+	    if ((pointMZMin + imageMZStep < totalMZRange.lowerEndpoint())
+		    || (pointMZMin > totalMZRange.upperEndpoint()))
+		mzBinTo[j] = mzBinFrom[j] - 1;
+	}
+
+	// prepare a double array of maximum intensities
 	double values[][] = new double[width][height];
 	maxValue = 0; // now this is an instance variable
 
 	for (int i = 0; i < width; i++)
 	    for (int j = 0; j < height; j++) {
 
-		double pointRTMin = imageRTMin + (i * imageRTStep);
-		double pointRTMax = pointRTMin + imageRTStep;
-		double pointMZMin = imageMZMin + (j * imageMZStep);
-		double pointMZMax = pointMZMin + imageMZStep;
+		double lv = grid.maxIntensity(rtBinFrom[i], rtBinTo[i],
+			mzBinFrom[j], mzBinTo[j]);
+
+		// Tile is not ready yet, look for a coarser one
+		for (int k = 1; (lv < 0) && (k <= maxCoarserLevels); k++) {
+		    if (coarserGrids[k] == null)
+			coarserGrids[k] = new TileGrid(Math.max(0, rtLevel - k),
+				Math.max(0, mzLevel - k), imageRTMin,
+				imageRTMax, imageMZMin, imageMZMax);
+		    TileGrid coarserGrid = coarserGrids[k];
+		    double pointRT = imageRTMin + ((i + 0.5) * imageRTStep);
+		    double pointMZ = imageMZMin + ((j + 0.5) * imageMZStep);
+		    int rtBin = coarserGrid.rtBin(pointRT);
+		    int mzBin = coarserGrid.mzBin(pointMZ);
+		    lv = coarserGrid.maxIntensity(rtBin, rtBin, mzBin, mzBin);
+		}
 
-		double lv = dataset.upperEndpointIntensity(
-			Range.closed(pointRTMin, pointRTMax),
-			Range.closed(pointMZMin, pointMZMax), plotMode);
+		if (lv < 0)
+		    lv = 0;
 
 		if (logScale) {
 		    lv = Math.log10(lv);
@@ -136,7 +170,7 @@ class TwoDXYPlot extends XYPlot {
 
 	    }
 
-	// This should never happen, but just for correctness
+	// No tiles are ready yet, or there are no data in the visible area
 	if (maxValue == 0)
 	    return false;
 
@@ -157,14 +191,6 @@ class TwoDXYPlot extends XYPlot {
 		image.setRGB(i, height - j - 1, pointColor.getRGB());
 	    }
 
-	// if we are zoomed out, save the values
-	if ((imageRTMin == totalRTRange.lowerEndpoint())
-		&& (imageRTMax == totalRTRange.upperEndpoint())
-		&& (imageMZMin == totalMZRange.lowerEndpoint())
-		&& (imageMZMax == totalMZRange.upperEndpoint())) {
-	    zoomOutBitmap = image;
-	}
-
 	// Paint image
 	g2.drawImage(image, x, y, null);
 
@@ -178,6 +204,83 @@ class TwoDXYPlot extends XYPlot {
 
     }
 
+    /**
+     * Cached tiles of one level covering the visible area
+     */
+    private class TileGrid {
+
+	private final int rtLevel, mzLevel;
+	private final double rtBinSize, mzBinSize;
+	private final double totalRTMin, totalMZMin;
+	private final int rtTileFrom, rtTileTo, mzTileFrom, mzTileTo;
+	private final float tiles[][][];
+
+	TileGrid(int rtLevel, int mzLevel, double rtMin, double rtMax,
+		double mzMin, double mzMax) {
+	    this.rtLevel = rtLevel;
+	    this.mzLevel = mzLevel;
+	    Range<Double> totalRTRange = dataset.getTotalRTRange();
+	    Range<Double> totalMZRange = dataset.getTotalMZRange();
+	    rtBinSize = TwoDDataSet.getBinSize(totalRTRange, rtLevel);
+	    mzBinSize = TwoDDataSet.getBinSize(totalMZRange, mzLevel);
+	    totalRTMin = totalRTRange.lowerEndpoint();
+	    totalMZMin = totalMZRange.lowerEndpoint();
+	    rtTileFrom = rtBin(rtMin) / TwoDDataSet.TILE_SIZE;
+	    rtTileTo = rtBin(rtMax) / TwoDDataSet.TILE_SIZE;
+	    mzTileFrom = mzBin(mzMin) / TwoDDataSet.TILE_SIZE;
+	    mzTileTo = mzBin(mzMax) / TwoDDataSet.TILE_SIZE;
+	    tiles = new float[rtTileTo - rtTileFrom + 1][mzTileTo
+		    - mzTileFrom + 1][];
+	    for (int rtTile = rtTileFrom; rtTile <= rtTileTo; rtTile++)
+		for (int mzTile = mzTileFrom; mzTile <= mzTileTo; mzTile++)
+		    tiles[rtTile - rtTileFrom][mzTile - mzTileFrom] = dataset
+			    .getTile(rtLevel, mzLevel, rtTile, mzTile, plotMode);
+	}
+
+	int rtBin(double rt) {
+	    return bin(rt, totalRTMin, rtBinSize, rtLevel);
+	}
+
+	int mzBin(double mz) {
+	    return bin(mz, totalMZMin, mzBinSize, mzLevel);
+	}
+
+	private int bin(double value, double min, double binSize, int level) {
+	    int maxBin = (TwoDDataSet.TILE_SIZE << level) - 1;
+	    if (!(binSize > 0))
+		return 0;
+	    double bin = Math.floor((value - min) / binSize);
+	    return (int) Math.max(0, Math.min(bin, maxBin));
+	}
+
+	/**
+	 * Returns the maximum intensity of given bins (inclusive), or -1 if
+	 * some of the tiles is not ready
+	 */
+	double maxIntensity(int rtBinFrom, int rtBinTo, int mzBinFrom,
+		int mzBinTo) {
+	    final int tileSize = TwoDDataSet.TILE_SIZE;
+	    double max = 0;
+	    for (int rtBin = rtBinFrom; rtBin <= rtBinTo; rtBin++)
+		for (int mzBin = mzBinFrom; mzBin <= mzBinTo; mzBin++) {
+		    int rtTile = rtBin / tileSize, mzTile = mzBin / tileSize;
+		    if ((rtTile < rtTileFrom) || (rtTile > rtTileTo)
+			    || (mzTile < mzTileFrom) || (mzTile > mzTileTo))
+			continue;
+		    float tile[] = tiles[rtTile - rtTileFrom][mzTile
+			    - mzTileFrom];
+		    if (tile == null)
+			return -1;
+		    float intensity = tile[(rtBin % tileSize) * tileSize
+			    + (mzBin % tileSize)];
+		    if (intensity > max)
+			max = intensity;
+		}
+	    return max;
+	}
+
+    }
+
     Range<Double> getDomainRange() {
 	return Range.closed(getDomainAxis().getRange().getLowerBound(),
 		getDomainAxis().getRange().getUpperBound());
@@ -194,7 +297,6 @@ class TwoDXYPlot extends XYPlot {
 	if (newIndex >= types.length)
 	    newIndex = 0;
 	paletteType = types[newIndex];
-	zoomOutBitmap = null;
 	datasetChanged(new DatasetChangeEvent(dataset, dataset));
     }
 
@@ -205,18 +307,12 @@ class TwoDXYPlot extends XYPlot {
     void setPlotMode(PlotMode plotMode) {
 	this.plotMode = plotMode;
 
-	// clear the zoom out image cache
-	zoomOutBitmap = null;
-
 	datasetChanged(new DatasetChangeEvent(dataset, dataset));
     }
 
     void setLogScale(boolean logscale) {
 	logScale = logscale;
 
-	// clear the zoom out image cache
-	zoomOutBitmap = null;
-
 	datasetChanged(new DatasetChangeEvent(dataset, dataset));
     }
 
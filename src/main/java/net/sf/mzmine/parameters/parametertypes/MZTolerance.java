@@ -56,6 +56,31 @@ public class MZTolerance {
 	return Math.max(ppmTolerance, mzTolerance / (mzValue / MILLION));
     }
 
+    /**
+     * Returns the lower end of the tolerance range of given m/z value.
+     */
+    public double lower(final double mzValue) {
+	return mzValue - getMzToleranceForMass(mzValue);
+    }
+
+    /**
+     * Returns the upper end of the tolerance range of given m/z value.
+     */
+    public double upper(final double mzValue) {
+	return mzValue + getMzToleranceForMass(mzValue);
+    }
+
+    /**
+     * Checks if testedMz is within the tolerance range of mzValue. This is
+     * equal to getToleranceRange(mzValue).contains(testedMz), but does not
+     * allocate any objects.
+     */
+    public boolean contains(final double mzValue, final double testedMz) {
+	final double absoluteTolerance = getMzToleranceForMass(mzValue);
+	return (testedMz >= mzValue - absoluteTolerance)
+		&& (testedMz <= mzValue + absoluteTolerance);
+    }
+
     public Range<Double> getToleranceRange(final double mzValue) {
 	final double absoluteTolerance = getMzToleranceForMass(mzValue);
 	return Range.closed(mzValue - absoluteTolerance, mzValue
@@ -71,7 +96,7 @@ public class MZTolerance {
     }
 
     public boolean checkWithinTolerance(final double mz1, final double mz2) {
-	return getToleranceRange(mz1).contains(mz2);
+	return contains(mz1, mz2);
     }
 
     @Override
@@ -43,6 +43,12 @@ public class PeakListsParameter implements
     private String values[];
     private int inputsize = 400;
 
+    /**
+     * Specific peak lists selected by setSpecificPeakLists(), or null if the
+     * selection is given by name patterns
+     */
+    private PeakList specificPeakLists[];
+
     public PeakListsParameter() {
 	this(1, Integer.MAX_VALUE);
     }
@@ -69,6 +75,9 @@ public class PeakListsParameter implements
 
     public PeakList[] getMatchingPeakLists() {
 
+	if (specificPeakLists != null)
+	    return specificPeakLists.clone();
+
 	if ((values == null) || (values.length == 0))
 	    return new PeakList[0];
 
@@ -117,19 +126,34 @@ public class PeakListsParameter implements
     @Override
     public void setValue(String newValue[]) {
 	this.values = newValue;
+	this.specificPeakLists = null;
     }
 
     public void setValue(PeakList newValue[]) {
-	this.values = new String[newValue.length];
+	String names[] = new String[newValue.length];
 	for (int i = 0; i < newValue.length; i++) {
-	    this.values[i] = newValue[i].getName();
+	    names[i] = newValue[i].getName();
 	}
+	setValue(names);
+    }
+
+    /**
+     * Selects exactly the given peak lists, regardless of other peak lists
+     * with the same name. The selection is kept by clones of this parameter,
+     * and it references the peak lists, so it should only be used on
+     * short-lived copies of the parameters, such as those of a batch step,
+     * never on the parameters kept in the configuration.
+     */
+    public void setSpecificPeakLists(PeakList newValue[]) {
+	setValue(newValue);
+	this.specificPeakLists = newValue.clone();
     }
 
     @Override
     public PeakListsParameter cloneParameter() {
 	PeakListsParameter copy = new PeakListsParameter(minCount, maxCount);
 	copy.values = values;
+	copy.specificPeakLists = specificPeakLists;
 	return copy;
     }
 
@@ -168,6 +192,7 @@ public class PeakListsParameter implements
 	    newValues.add(itemString);
 	}
 	this.values = newValues.toArray(new String[0]);
+	this.specificPeakLists = null;
     }
 
     @Override
@@ -191,6 +216,7 @@ public class PeakListsParameter implements
     @Override
     public void setValueFromComponent(PeakListsComponent component) {
 	values = component.getValue();
+	specificPeakLists = null;
     }
 
     @Override
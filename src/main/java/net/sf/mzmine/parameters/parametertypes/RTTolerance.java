@@ -43,17 +43,48 @@ public class RTTolerance {
 	return tolerance;
     }
 
+    private double getAbsoluteTolerance(final double rtValue) {
+
+	return isAbsolute ? tolerance : rtValue * tolerance;
+    }
+
+    /**
+     * Returns the lower end of the tolerance range of given retention time.
+     */
+    public double lower(final double rtValue) {
+
+	return rtValue - getAbsoluteTolerance(rtValue);
+    }
+
+    /**
+     * Returns the upper end of the tolerance range of given retention time.
+     */
+    public double upper(final double rtValue) {
+
+	return rtValue + getAbsoluteTolerance(rtValue);
+    }
+
+    /**
+     * Checks if testedRt is within the tolerance range of rtValue, without
+     * allocating a Range.
+     */
+    public boolean contains(final double rtValue, final double testedRt) {
+
+	final double absoluteTolerance = getAbsoluteTolerance(rtValue);
+	return (testedRt >= rtValue - absoluteTolerance)
+		&& (testedRt <= rtValue + absoluteTolerance);
+    }
+
     public Range<Double> getToleranceRange(final double rtValue) {
 
-	final double absoluteTolerance = isAbsolute ? tolerance : rtValue
-		* tolerance;
+	final double absoluteTolerance = getAbsoluteTolerance(rtValue);
 	return Range.closed(rtValue - absoluteTolerance, rtValue
 		+ absoluteTolerance);
     }
 
     public boolean checkWithinTolerance(final double rt1, final double rt2) {
 
-	return getToleranceRange(rt1).contains(rt2);
+	return contains(rt1, rt2);
     }
 
     @Override
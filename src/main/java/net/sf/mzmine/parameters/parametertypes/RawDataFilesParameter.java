@@ -42,6 +42,12 @@ public class RawDataFilesParameter implements
     private int minCount, maxCount;
     private String values[];
 
+    /**
+     * Specific raw data files selected by setSpecificRawDataFiles(), or null
+     * if the selection is given by name patterns
+     */
+    private RawDataFile specificFiles[];
+
     public RawDataFilesParameter() {
 	this(1, Integer.MAX_VALUE);
     }
@@ -62,6 +68,9 @@ public class RawDataFilesParameter implements
 
     public RawDataFile[] getMatchingRawDataFiles() {
 
+	if (specificFiles != null)
+	    return specificFiles.clone();
+
 	if ((values == null) || (values.length == 0))
 	    return new RawDataFile[0];
 
@@ -110,13 +119,27 @@ public class RawDataFilesParameter implements
     @Override
     public void setValue(String newValue[]) {
 	this.values = newValue;
+	this.specificFiles = null;
     }
 
     public void setValue(RawDataFile newValue[]) {
-	this.values = new String[newValue.length];
+	String names[] = new String[newValue.length];
 	for (int i = 0; i < newValue.length; i++) {
-	    this.values[i] = newValue[i].getName();
+	    names[i] = newValue[i].getName();
 	}
+	setValue(names);
+    }
+
+    /**
+     * Selects exactly the given raw data files, regardless of other files
+     * with the same name. The selection is kept by clones of this parameter,
+     * and it references the files, so it should only be used on short-lived
+     * copies of the parameters, such as those of a batch step, never on the
+     * parameters kept in the configuration.
+     */
+    public void setSpecificRawDataFiles(RawDataFile newValue[]) {
+	setValue(newValue);
+	this.specificFiles = newValue.clone();
     }
 
     @Override
@@ -124,6 +147,7 @@ public class RawDataFilesParameter implements
 	RawDataFilesParameter copy = new RawDataFilesParameter(minCount,
 		maxCount);
 	copy.values = values;
+	copy.specificFiles = specificFiles;
 	return copy;
     }
 
@@ -162,6 +186,7 @@ public class RawDataFilesParameter implements
 	    newValues.add(itemString);
 	}
 	this.values = newValues.toArray(new String[0]);
+	this.specificFiles = null;
     }
 
     @Override
@@ -185,6 +210,7 @@ public class RawDataFilesParameter implements
     @Override
     public void setValueFromComponent(RawDataFilesComponent component) {
 	values = component.getValue();
+	specificFiles = null;
     }
 
     @Override
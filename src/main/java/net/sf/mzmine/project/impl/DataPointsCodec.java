@@ -0,0 +1,57 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Encoding of the data points stored in the data points file of a
+ * RawDataFileImpl. Each array of data points (a scan or a mass list) is
+ * encoded into one block of bytes, which is stored and saved to projects as it
+ * is. The codec of each raw data file is saved in the project, so the blocks
+ * can be decoded when the project is opened. Implementations must be
+ * thread-safe, because one codec instance is shared by all raw data files.
+ */
+public interface DataPointsCodec {
+
+    /**
+     * Returns the identifier of this codec, which is saved in projects
+     */
+    @Nonnull
+    public String getName();
+
+    /**
+     * Encodes the first numOfDataPoints m/z and intensity values into a new
+     * block
+     */
+    @Nonnull
+    public byte[] encode(double mzValues[], double intensityValues[],
+	    int numOfDataPoints);
+
+    /**
+     * Decodes numOfDataPoints m/z and intensity values from the first length
+     * bytes of given block into given arrays
+     */
+    public void decode(byte block[], int length, double mzValues[],
+	    double intensityValues[], int numOfDataPoints) throws IOException;
+
+}
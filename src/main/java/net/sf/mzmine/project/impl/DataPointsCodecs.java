@@ -0,0 +1,69 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import javax.annotation.Nonnull;
+
+import net.sf.mzmine.desktop.preferences.MZminePreferences;
+import net.sf.mzmine.main.MZmineConfiguration;
+import net.sf.mzmine.main.MZmineCore;
+
+/**
+ * Available codecs for the data points storage
+ */
+public class DataPointsCodecs {
+
+    public static final DataPointsCodec FLOAT32 = new FloatDataPointsCodec();
+
+    public static final DataPointsCodec DELTA_DEFLATE = new DeltaDeflateDataPointsCodec();
+
+    private static final DataPointsCodec codecs[] = { FLOAT32, DELTA_DEFLATE };
+
+    public static DataPointsCodec[] getCodecs() {
+	return codecs.clone();
+    }
+
+    /**
+     * Returns the codec with given name, or null if there is no such codec
+     */
+    public static DataPointsCodec getCodec(String name) {
+	for (DataPointsCodec codec : codecs) {
+	    if (codec.getName().equals(name))
+		return codec;
+	}
+	return null;
+    }
+
+    /**
+     * Returns the codec for new raw data files, selected in the preferences
+     */
+    public static @Nonnull DataPointsCodec getDefaultCodec() {
+	// The configuration is not available during the startup
+	MZmineConfiguration configuration = MZmineCore.getConfiguration();
+	if (configuration == null)
+	    return FLOAT32;
+	DataPointsCodec codec = configuration.getPreferences()
+		.getParameter(MZminePreferences.dataPointsCodec).getValue();
+	if (codec == null)
+	    return FLOAT32;
+	return codec;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Removes the dead space of removed data points from the data points file of a
+ * raw data file. The live data points are copied into a new temporary file
+ * without holding the lock of the raw data file, so the data points can be
+ * read and stored in the meantime. Only the final swap of the files and
+ * offsets (see RawDataFileImpl.swapDataPointsFile()) locks the raw data file.
+ */
+public class DataPointsCompactionTask extends AbstractTask {
+
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final RawDataFileImpl rawDataFile;
+
+    private long totalBytes = 0, copiedBytes = 0;
+
+    DataPointsCompactionTask(RawDataFileImpl rawDataFile) {
+	this.rawDataFile = rawDataFile;
+    }
+
+    public String getTaskDescription() {
+	return "Compacting stored data points of " + rawDataFile;
+    }
+
+    public double getFinishedPercentage() {
+	if (totalBytes == 0)
+	    return 0;
+	return (double) copiedBytes / totalBytes;
+    }
+
+    public void run() {
+
+	setStatus(TaskStatus.PROCESSING);
+
+	File newFileName = null;
+	RandomAccessFile newFile = null;
+	boolean swapped = false;
+
+	try {
+
+	    // Take a snapshot of the live data points
+	    RandomAccessFile sourceFile;
+	    TreeMap<Integer, Long> copiedOffsets = new TreeMap<Integer, Long>();
+	    TreeMap<Integer, Integer> sizes = new TreeMap<Integer, Integer>();
+	    synchronized (rawDataFile) {
+		sourceFile = rawDataFile.getDataPointsFile();
+		if (sourceFile == null) {
+		    setStatus(TaskStatus.FINISHED);
+		    return;
+		}
+		copiedOffsets.putAll(rawDataFile.getDataPointsOffsets());
+		for (Integer storageID : copiedOffsets.keySet()) {
+		    final int size = rawDataFile.getStoredSize(storageID);
+		    sizes.put(storageID, size);
+		    totalBytes += size;
+		}
+	    }
+
+	    newFileName = RawDataFileImpl.createNewDataPointsFile();
+	    newFile = RawDataFileImpl.openScratchFile(newFileName);
+
+	    final FileChannel source = sourceFile.getChannel();
+	    final FileChannel target = newFile.getChannel();
+	    TreeMap<Integer, Long> newOffsets = new TreeMap<Integer, Long>();
+	    long newOffset = 0;
+	    for (Integer storageID : copiedOffsets.keySet()) {
+
+		if (isCanceled())
+		    return;
+
+		final int size = sizes.get(storageID);
+		RawDataFileImpl.copyBlock(source, copiedOffsets.get(storageID),
+			size, target, newOffset);
+		newOffsets.put(storageID, newOffset);
+		newOffset += size;
+		copiedBytes += size;
+	    }
+
+	    swapped = rawDataFile.swapDataPointsFile(this, sourceFile,
+		    copiedOffsets, newFileName, newFile, newOffsets);
+
+	    if (!isCanceled())
+		setStatus(TaskStatus.FINISHED);
+
+	} catch (IOException e) {
+	    // The raw data file may have been closed during the copying
+	    if (isCanceled())
+		return;
+	    logger.severe("Could not compact data points of " + rawDataFile
+		    + ": " + e.toString());
+	    setStatus(TaskStatus.ERROR);
+	    setErrorMessage(e.toString());
+	} finally {
+	    if ((!swapped) && (newFile != null)) {
+		try {
+		    newFile.close();
+		} catch (IOException e) {
+		    logger.log(Level.WARNING, "Could not close " + newFileName,
+			    e);
+		}
+		newFileName.delete();
+	    }
+	    rawDataFile.compactionFinished(this);
+	}
+
+    }
+
+}
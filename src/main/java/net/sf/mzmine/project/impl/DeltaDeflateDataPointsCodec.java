@@ -0,0 +1,162 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+
+import net.sf.mzmine.util.CompressionUtils;
+
+/**
+ * Compressed storage format which keeps the full 64-bit precision of m/z
+ * values. The m/z values are stored as the differences of their IEEE 754 bit
+ * patterns from the previous value, as zigzag variable-length integers. The
+ * data points of a scan are sorted by m/z, so the differences are small
+ * positive numbers, and for profile scans with regular m/z spacing they repeat.
+ * The intensities are stored as 32-bit floats, with the bytes of the same
+ * significance grouped together (byte shuffling), so the repeating exponent
+ * bytes and the zero intensities of profile scans compress well. The whole
+ * block is then compressed by deflate at its fastest level.
+ * 
+ * Block layout: uncompressed length (4 bytes), deflated data.
+ */
+public class DeltaDeflateDataPointsCodec implements DataPointsCodec {
+
+    public static final String NAME = "delta-deflate";
+
+    public @Nonnull String getName() {
+	return NAME;
+    }
+
+    public @Nonnull byte[] encode(double mzValues[], double intensityValues[],
+	    int numOfDataPoints) {
+
+	// At most 10 bytes per m/z difference and 4 bytes per intensity
+	byte raw[] = new byte[numOfDataPoints * 14];
+	int rawLength = 0;
+
+	long previousBits = 0;
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    final long bits = Double.doubleToLongBits(mzValues[i]);
+	    final long delta = bits - previousBits;
+	    previousBits = bits;
+	    long zigzag = (delta << 1) ^ (delta >> 63);
+	    while ((zigzag & ~0x7FL) != 0) {
+		raw[rawLength++] = (byte) ((zigzag & 0x7F) | 0x80);
+		zigzag >>>= 7;
+	    }
+	    raw[rawLength++] = (byte) zigzag;
+	}
+
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    final int bits = Float.floatToIntBits((float) intensityValues[i]);
+	    raw[rawLength + i] = (byte) (bits >>> 24);
+	    raw[rawLength + numOfDataPoints + i] = (byte) (bits >>> 16);
+	    raw[rawLength + 2 * numOfDataPoints + i] = (byte) (bits >>> 8);
+	    raw[rawLength + 3 * numOfDataPoints + i] = (byte) bits;
+	}
+	rawLength += 4 * numOfDataPoints;
+
+	// Deflate can slightly enlarge incompressible data
+	byte block[] = new byte[4 + rawLength + rawLength / 1000 + 64];
+	block[0] = (byte) (rawLength >>> 24);
+	block[1] = (byte) (rawLength >>> 16);
+	block[2] = (byte) (rawLength >>> 8);
+	block[3] = (byte) rawLength;
+	int blockLength = 4;
+
+	Deflater deflater = CompressionUtils.getDeflater(Deflater.BEST_SPEED);
+	try {
+	    deflater.setInput(raw, 0, rawLength);
+	    deflater.finish();
+	    while (!deflater.finished()) {
+		if (blockLength == block.length)
+		    block = Arrays.copyOf(block, block.length * 2);
+		blockLength += deflater.deflate(block, blockLength,
+			block.length - blockLength);
+	    }
+	} finally {
+	    CompressionUtils.releaseDeflater(deflater);
+	}
+
+	return Arrays.copyOf(block, blockLength);
+
+    }
+
+    public void decode(byte block[], int length, double mzValues[],
+	    double intensityValues[], int numOfDataPoints) throws IOException {
+
+	final int rawLength = ((block[0] & 0xFF) << 24)
+		| ((block[1] & 0xFF) << 16) | ((block[2] & 0xFF) << 8)
+		| (block[3] & 0xFF);
+	byte raw[] = new byte[rawLength];
+
+	Inflater inflater = CompressionUtils.getInflater();
+	try {
+	    inflater.setInput(block, 4, length - 4);
+	    int inflated = 0;
+	    while (inflated < rawLength) {
+		final int n = inflater.inflate(raw, inflated, rawLength
+			- inflated);
+		if ((n == 0) && (inflater.needsInput() || inflater.finished()))
+		    throw new IOException("Truncated data points block");
+		inflated += n;
+	    }
+	} catch (DataFormatException e) {
+	    throw new IOException("Corrupted data points block: " + e);
+	} finally {
+	    CompressionUtils.releaseInflater(inflater);
+	}
+
+	int position = 0;
+	long bits = 0;
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    long zigzag = 0;
+	    int shift = 0;
+	    byte b;
+	    do {
+		b = raw[position++];
+		zigzag |= (long) (b & 0x7F) << shift;
+		shift += 7;
+	    } while (b < 0);
+	    bits += (zigzag >>> 1) ^ -(zigzag & 1);
+	    mzValues[i] = Double.longBitsToDouble(bits);
+	}
+
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    final int intensityBits = ((raw[position + i] & 0xFF) << 24)
+		    | ((raw[position + numOfDataPoints + i] & 0xFF) << 16)
+		    | ((raw[position + 2 * numOfDataPoints + i] & 0xFF) << 8)
+		    | (raw[position + 3 * numOfDataPoints + i] & 0xFF);
+	    intensityValues[i] = Float.intBitsToFloat(intensityBits);
+	}
+
+    }
+
+    public String toString() {
+	return "64-bit m/z, compressed";
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The original storage format of MZmine 2: each data point is stored as a pair
+ * of 32-bit floats (m/z, intensity), 8 bytes per data point. All data points
+ * have the same size, so a part of a block can be read without reading the
+ * whole block, which RawDataFileImpl uses to read m/z ranges of large scans.
+ * The m/z values are rounded to float precision.
+ */
+public class FloatDataPointsCodec implements DataPointsCodec {
+
+    public static final String NAME = "float32";
+
+    public static final int DATA_POINT_SIZE = 2 * 4;
+
+    public @Nonnull String getName() {
+	return NAME;
+    }
+
+    public @Nonnull byte[] encode(double mzValues[], double intensityValues[],
+	    int numOfDataPoints) {
+	byte block[] = new byte[numOfDataPoints * DATA_POINT_SIZE];
+	FloatBuffer floatBuffer = ByteBuffer.wrap(block).asFloatBuffer();
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    floatBuffer.put((float) mzValues[i]);
+	    floatBuffer.put((float) intensityValues[i]);
+	}
+	return block;
+    }
+
+    public void decode(byte block[], int length, double mzValues[],
+	    double intensityValues[], int numOfDataPoints) {
+	FloatBuffer floatBuffer = ByteBuffer.wrap(block, 0, length)
+		.asFloatBuffer();
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    mzValues[i] = floatBuffer.get();
+	    intensityValues[i] = floatBuffer.get();
+	}
+    }
+
+    public String toString() {
+	return "32-bit floats, uncompressed";
+    }
+
+}
@@ -24,6 +24,7 @@ import java.io.File;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.main.jobserver.BatchJob;
 import net.sf.mzmine.modules.projectmethods.projectload.ProjectLoadModule;
 import net.sf.mzmine.modules.projectmethods.projectload.ProjectLoaderParameters;
 import net.sf.mzmine.parameters.ParameterSet;
@@ -46,23 +47,38 @@ public class ProjectManagerImpl implements ProjectManager {
 	myInstance = this;
     }
 
+    /**
+     * Returns the current project. Threads working on a job of the job server
+     * get the project of the job.
+     */
     public MZmineProject getCurrentProject() {
+	BatchJob job = BatchJob.getCurrentJob();
+	if (job != null)
+	    return job.getProject();
 	return currentProject;
     }
 
     public void setCurrentProject(MZmineProject project) {
 
-	if (project == currentProject)
+	MZmineProject previousProject = getCurrentProject();
+	if (project == previousProject)
 	    return;
 
 	// Close previous data files
-	if (currentProject != null) {
-	    RawDataFile prevDataFiles[] = currentProject.getDataFiles();
+	if (previousProject != null) {
+	    RawDataFile prevDataFiles[] = previousProject.getDataFiles();
 	    for (RawDataFile prevDataFile : prevDataFiles) {
 		prevDataFile.close();
 	    }
 	}
 
+	// Projects opened by a job only replace the project of that job
+	BatchJob job = BatchJob.getCurrentJob();
+	if (job != null) {
+	    job.setProject(project);
+	    return;
+	}
+
 	this.currentProject = project;
 
 	// This is a hack to keep correct value of last opened directory (this
@@ -23,16 +23,21 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
 import javax.annotation.Nonnull;
 
@@ -41,6 +46,10 @@ import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.RawDataFileWriter;
 import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.project.impl.ScratchStorage.ScratchDirectory;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
+import net.sf.mzmine.taskcontrol.TaskPriority;
 
 import com.google.common.collect.Range;
 import com.google.common.primitives.Ints;
@@ -49,18 +58,43 @@ import com.google.common.primitives.Ints;
  * RawDataFile implementation. It provides storage of data points for scans and
  * mass lists using the storeDataPoints() and readDataPoints() methods. The data
  * points are stored in a temporary file (dataPointsFile) and the structure of
- * the file is stored in two TreeMaps. The dataPointsOffsets maps storage ID to
- * the offset in the dataPointsFile. The dataPointsLength maps the storage ID to
- * the number of data points stored under this ID. When stored data points are
- * deleted using removeStoredDataPoints(), the dataPointsFile is not modified,
- * the storage ID is just deleted from the two TreeMaps. When the project is
- * saved, the contents of the dataPointsFile are consolidated - only data points
- * referenced by the TreeMaps are saved (see the RawDataFileSaveHandler class).
+ * the file is stored in three TreeMaps. The dataPointsOffsets maps storage ID
+ * to the offset in the dataPointsFile. The dataPointsLength maps the storage
+ * ID to the number of data points stored under this ID, and dataPointsSizes
+ * maps it to the size of the stored block in bytes. The data points are
+ * encoded into the blocks by the DataPointsCodec of this file. When stored
+ * data points are deleted using removeStoredDataPoints(), the dataPointsFile
+ * is not modified, the storage ID is just deleted from the TreeMaps. When the
+ * project is saved, the contents of the dataPointsFile are consolidated - only
+ * data points referenced by the TreeMaps are saved (see the
+ * RawDataFileSaveHandler class).
+ * 
+ * When a project is opened, the data points may also be read directly from an
+ * uncompressed entry of the project file, which is memory-mapped read-only
+ * (see openDataPointsFile(File, long, long)). The mapped data points are
+ * copied into a temporary file only when new data points are stored.
+ * 
+ * Removed data points are counted as dead space of the dataPointsFile. When
+ * the dead space grows too large, e.g. after mass lists were replaced several
+ * times, a DataPointsCompactionTask copies the live data points into a new
+ * file in the background and then swaps the files.
  */
 public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     private final Logger logger = Logger.getLogger(this.getClass().getName());
 
+    // Scans with fewer data points are not worth reading partially
+    private static final int RANGE_READ_MIN_DATA_POINTS = 1024;
+
+    // A single MappedByteBuffer cannot exceed 2 GB, so large data points
+    // files are mapped in several chunks
+    private static final long MAPPED_CHUNK_SIZE = 1L << 30;
+
+    // The data points file is compacted when at least this many bytes and
+    // this part of the file belong to removed data points
+    private static final long COMPACTION_MIN_DEAD_BYTES = 64L << 20;
+    private static final double COMPACTION_MIN_DEAD_RATIO = 0.5;
+
     // Name of this raw data file - may be changed by the user
     private String dataFileName;
 
@@ -72,11 +106,42 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
     private ByteBuffer buffer = ByteBuffer.allocate(20000);
     private final TreeMap<Integer, Long> dataPointsOffsets;
     private final TreeMap<Integer, Integer> dataPointsLengths;
+    private final TreeMap<Integer, Integer> dataPointsSizes;
+
+    // CRC-32 of the stored blocks, which never change once they are stored,
+    // so a project can be saved without reading the blocks twice
+    private final TreeMap<Integer, Long> dataPointsCRCs;
+
+    // Encoding of the stored data points, selected when the data points file
+    // is opened
+    private DataPointsCodec codec;
 
     // Temporary file for scan data storage
     private File dataPointsFileName;
     private RandomAccessFile dataPointsFile;
 
+    // I/O statistics of the directory of dataPointsFile
+    private ScratchDirectory scratchDirectory;
+
+    // Bytes of removed data points, which are still in the data points file
+    private long deadBytes = 0;
+    private DataPointsCompactionTask compactionTask;
+
+    // Read-only mapping of the data points, used instead of dataPointsFile
+    // until new data points are stored
+    private File mappedFileName;
+    private MappedByteBuffer mappedDataPoints[];
+
+    // All raw data files which have their data points mapped from a file,
+    // so the mappings of a file can be released before it is replaced
+    private static final Set<RawDataFileImpl> mappedDataFiles = Collections
+	    .synchronizedSet(Collections
+		    .newSetFromMap(new WeakHashMap<RawDataFileImpl, Boolean>()));
+
+    // Number of callers reading the stored blocks at the offsets of a
+    // snapshot, see pinStoredBlocks()
+    private int blockPins = 0;
+
     /**
      * Scans
      */
@@ -95,14 +160,17 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 	scans = new Hashtable<Integer, StorableScan>();
 	dataPointsOffsets = new TreeMap<Integer, Long>();
 	dataPointsLengths = new TreeMap<Integer, Integer>();
+	dataPointsSizes = new TreeMap<Integer, Integer>();
+	dataPointsCRCs = new TreeMap<Integer, Long>();
 
     }
 
     /**
-     * Create a new temporary data points file
+     * Create a new temporary data points file in one of the scratch
+     * directories
      */
     public static File createNewDataPointsFile() throws IOException {
-	return File.createTempFile("mzmine", ".scans");
+	return ScratchStorage.createDataPointsFile();
     }
 
     /**
@@ -121,24 +189,198 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
     public synchronized void openDataPointsFile(File dataPointsFileName)
 	    throws IOException {
 
-	if (this.dataPointsFile != null) {
+	if ((this.dataPointsFile != null) || (this.mappedDataPoints != null)) {
 	    throw new IOException(
 		    "Cannot open another data points file, because one is already open");
 	}
 
+	// Data points files of older projects contain 32-bit floats
+	if (codec == null)
+	    codec = DataPointsCodecs.FLOAT32;
+
 	this.dataPointsFileName = dataPointsFileName;
-	this.dataPointsFile = new RandomAccessFile(dataPointsFileName, "rw");
+	this.dataPointsFile = openScratchFile(dataPointsFileName);
+
+	// Data extracted from a project are written before the file is opened
+	scratchDirectory = ScratchStorage.getDirectory(dataPointsFileName
+		.getAbsoluteFile().getParentFile());
+	scratchDirectory.recordWrite(dataPointsFile.length());
+
+    }
+
+    /**
+     * Opens a temporary data points file for reading and writing
+     */
+    static RandomAccessFile openScratchFile(File fileName) throws IOException {
+
+	RandomAccessFile file = new RandomAccessFile(fileName, "rw");
 
 	// Locks the temporary file so it is not removed when another instance
 	// of MZmine is starting. Lock will be automatically released when this
 	// instance of MZmine exits.
-	FileChannel fileChannel = dataPointsFile.getChannel();
+	FileChannel fileChannel = file.getChannel();
 	fileChannel.lock();
 
 	// Unfortunately, deleteOnExit() doesn't work on Windows, see JDK
 	// bug #4171239. We will try to remove the temporary files in a
 	// shutdown hook registered in the main.ShutDownHook class
-	dataPointsFileName.deleteOnExit();
+	fileName.deleteOnExit();
+
+	return file;
+
+    }
+
+    /**
+     * Maps the data points from given part of a file, typically an
+     * uncompressed entry of a project file, instead of opening a temporary
+     * data points file. The mapped file is never modified. When new data
+     * points are stored, the mapped data points are first copied into a
+     * temporary data points file.
+     */
+    public synchronized void openDataPointsFile(File fileName, long offset,
+	    long length) throws IOException {
+
+	if ((this.dataPointsFile != null) || (this.mappedDataPoints != null)) {
+	    throw new IOException(
+		    "Cannot open another data points file, because one is already open");
+	}
+
+	final int numOfChunks = (int) ((length + MAPPED_CHUNK_SIZE - 1)
+		/ MAPPED_CHUNK_SIZE);
+	MappedByteBuffer chunks[] = new MappedByteBuffer[numOfChunks];
+
+	// The mapping stays valid after the file is closed
+	RandomAccessFile file = new RandomAccessFile(fileName, "r");
+	try {
+	    FileChannel fileChannel = file.getChannel();
+	    for (int i = 0; i < numOfChunks; i++) {
+		final long chunkOffset = i * MAPPED_CHUNK_SIZE;
+		final long chunkLength = Math.min(MAPPED_CHUNK_SIZE, length
+			- chunkOffset);
+		chunks[i] = fileChannel.map(MapMode.READ_ONLY, offset
+			+ chunkOffset, chunkLength);
+	    }
+	} finally {
+	    file.close();
+	}
+
+	if (codec == null)
+	    codec = DataPointsCodecs.FLOAT32;
+
+	this.mappedFileName = fileName;
+	this.mappedDataPoints = chunks;
+	mappedDataFiles.add(this);
+
+    }
+
+    /**
+     * If the data points are mapped from given file, copies them into a
+     * temporary data points file, so the given file can be replaced or
+     * deleted.
+     */
+    public synchronized void unmapFile(File fileName) throws IOException {
+	if ((mappedDataPoints != null) && (mappedFileName.equals(fileName)))
+	    copyMappedDataPoints();
+    }
+
+    /**
+     * Copies the data points of all raw data files which are mapped from given
+     * file into temporary data points files, regardless of the project the
+     * raw data files belong to
+     */
+    public static void unmapFileFromAll(File fileName) throws IOException {
+	RawDataFileImpl dataFiles[];
+	synchronized (mappedDataFiles) {
+	    dataFiles = mappedDataFiles.toArray(new RawDataFileImpl[0]);
+	}
+	for (RawDataFileImpl dataFile : dataFiles)
+	    dataFile.unmapFile(fileName);
+    }
+
+    /**
+     * Copies the mapped data points into a new temporary data points file.
+     * The storage IDs keep their offsets, because the copy is identical.
+     */
+    private void copyMappedDataPoints() throws IOException {
+
+	final MappedByteBuffer chunks[] = mappedDataPoints;
+	final File newFile = RawDataFileImpl.createNewDataPointsFile();
+
+	logger.info("Copying data points of " + dataFileName + " from "
+		+ mappedFileName + " to " + newFile);
+
+	mappedDataPoints = null;
+	mappedFileName = null;
+	mappedDataFiles.remove(this);
+	openDataPointsFile(newFile);
+
+	FileChannel fileChannel = dataPointsFile.getChannel();
+	long position = 0;
+	for (MappedByteBuffer chunk : chunks) {
+	    ByteBuffer source = chunk.duplicate();
+	    source.clear();
+	    while (source.hasRemaining())
+		position += fileChannel.write(source, position);
+	}
+	scratchDirectory.recordWrite(position);
+
+    }
+
+    /**
+     * Keeps the stored blocks at their current offsets until
+     * unpinStoredBlocks() is called. Stored data points are never moved
+     * except by a compaction of the data points file, which waits until all
+     * pins are released. The caller typically takes a snapshot of the offsets
+     * while holding the lock of this raw data file, and reads the blocks using
+     * readPinnedBlock().
+     */
+    public synchronized void pinStoredBlocks() {
+	blockPins++;
+    }
+
+    public synchronized void unpinStoredBlocks() {
+	if (blockPins <= 0)
+	    throw new IllegalStateException("Stored blocks are not pinned");
+	blockPins--;
+	if (blockPins == 0)
+	    notifyAll();
+    }
+
+    /**
+     * Reads size bytes of encoded data points at given offset, as they are
+     * stored, into given array. The offset must be taken from
+     * getDataPointsOffsets() after the blocks were pinned by
+     * pinStoredBlocks(), the block may have been removed since.
+     */
+    public synchronized void readPinnedBlock(long offset, byte block[],
+	    int size) throws IOException {
+	if (blockPins == 0)
+	    throw new IllegalStateException("Stored blocks are not pinned");
+	readBytes(offset, block, size);
+    }
+
+    private void readBytes(long offset, byte bytes[], int length)
+	    throws IOException {
+
+	if (mappedDataPoints == null) {
+	    dataPointsFile.seek(offset);
+	    dataPointsFile.readFully(bytes, 0, length);
+	    scratchDirectory.recordRead(length);
+	    return;
+	}
+
+	int readBytes = 0;
+	while (readBytes < length) {
+	    final long position = offset + readBytes;
+	    final int chunkIndex = (int) (position / MAPPED_CHUNK_SIZE);
+	    final MappedByteBuffer chunk = mappedDataPoints[chunkIndex];
+	    final int chunkPosition = (int) (position % MAPPED_CHUNK_SIZE);
+	    final int chunkBytes = Math.min(length - readBytes,
+		    chunk.capacity() - chunkPosition);
+	    chunk.position(chunkPosition);
+	    chunk.get(bytes, readBytes, chunkBytes);
+	    readBytes += chunkBytes;
+	}
 
     }
 
@@ -306,10 +548,56 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     }
 
+    /**
+     * Returns the codec of the stored data points, or null if no data points
+     * were stored yet and no codec was selected
+     */
+    public synchronized DataPointsCodec getDataPointsCodec() {
+	return codec;
+    }
+
+    /**
+     * Selects the codec of the stored data points. The codec must be selected
+     * before the data points file is opened, otherwise the codec of new data
+     * files is taken from the preferences, and data points files of older
+     * projects use 32-bit floats.
+     */
+    public synchronized void setDataPointsCodec(@Nonnull DataPointsCodec codec) {
+	if ((dataPointsFile != null) || (mappedDataPoints != null)) {
+	    throw new IllegalStateException(
+		    "Cannot change the codec, because the data points file is already open");
+	}
+	this.codec = codec;
+    }
+
     public synchronized int storeDataPoints(DataPoint dataPoints[])
 	    throws IOException {
 
+	final int numOfDataPoints = dataPoints.length;
+	double mzValues[] = new double[numOfDataPoints];
+	double intensityValues[] = new double[numOfDataPoints];
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    mzValues[i] = dataPoints[i].getMZ();
+	    intensityValues[i] = dataPoints[i].getIntensity();
+	}
+
+	return storeDataPoints(mzValues, intensityValues, numOfDataPoints);
+
+    }
+
+    /**
+     * Stores the first numOfDataPoints m/z and intensity values and returns
+     * their storage ID
+     */
+    public synchronized int storeDataPoints(double mzValues[],
+	    double intensityValues[], int numOfDataPoints) throws IOException {
+
+	if (mappedDataPoints != null)
+	    copyMappedDataPoints();
+
 	if (dataPointsFile == null) {
+	    if (codec == null)
+		codec = DataPointsCodecs.getDefaultCodec();
 	    File newFile = RawDataFileImpl.createNewDataPointsFile();
 	    openDataPointsFile(newFile);
 	}
@@ -322,12 +610,65 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 	else
 	    currentID = 1;
 
-	final int numOfDataPoints = dataPoints.length;
+	final byte block[] = codec.encode(mzValues, intensityValues,
+		numOfDataPoints);
+	final int numOfBytes = block.length;
 
-	// Convert the dataPoints into a byte array. Each float takes 4 bytes,
-	// so we get the current float offset by dividing the size of the file
-	// by 4
-	final int numOfBytes = numOfDataPoints * 2 * 4;
+	dataPointsFile.seek(currentOffset);
+	dataPointsFile.write(block, 0, numOfBytes);
+
+	dataPointsOffsets.put(currentID, currentOffset);
+	dataPointsLengths.put(currentID, numOfDataPoints);
+	dataPointsSizes.put(currentID, numOfBytes);
+	CRC32 crc = new CRC32();
+	crc.update(block, 0, numOfBytes);
+	dataPointsCRCs.put(currentID, crc.getValue());
+
+	TaskMetrics.recordStorageWrite(this, numOfDataPoints, numOfBytes);
+	scratchDirectory.recordWrite(numOfBytes);
+
+	return currentID;
+
+    }
+
+    public synchronized DataPoint[] readDataPoints(int ID) throws IOException {
+
+	final Integer numOfDataPoints = dataPointsLengths.get(ID);
+
+	if (numOfDataPoints == null) {
+	    throw new IllegalArgumentException("Unknown storage ID " + ID);
+	}
+
+	double mzValues[] = new double[numOfDataPoints];
+	double intensityValues[] = new double[numOfDataPoints];
+	readDataPoints(ID, mzValues, intensityValues);
+
+	DataPoint dataPoints[] = new DataPoint[numOfDataPoints];
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    dataPoints[i] = new SimpleDataPoint(mzValues[i],
+		    intensityValues[i]);
+	}
+
+	return dataPoints;
+
+    }
+
+    /**
+     * Decodes the stored data points directly into given m/z and intensity
+     * arrays, which must be large enough to hold all of them. Returns the
+     * number of data points.
+     */
+    public synchronized int readDataPoints(int ID, double mzValues[],
+	    double intensityValues[]) throws IOException {
+
+	final Long currentOffset = dataPointsOffsets.get(ID);
+	final Integer numOfDataPoints = dataPointsLengths.get(ID);
+
+	if ((currentOffset == null) || (numOfDataPoints == null)) {
+	    throw new IllegalArgumentException("Unknown storage ID " + ID);
+	}
+
+	final int numOfBytes = getStoredSize(ID);
 
 	if (buffer.capacity() < numOfBytes) {
 	    buffer = ByteBuffer.allocate(numOfBytes * 2);
@@ -335,23 +676,27 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 	    buffer.clear();
 	}
 
-	FloatBuffer floatBuffer = buffer.asFloatBuffer();
-	for (DataPoint dp : dataPoints) {
-	    floatBuffer.put((float) dp.getMZ());
-	    floatBuffer.put((float) dp.getIntensity());
-	}
+	readBytes(currentOffset, buffer.array(), numOfBytes);
 
-	dataPointsFile.seek(currentOffset);
-	dataPointsFile.write(buffer.array(), 0, numOfBytes);
+	codec.decode(buffer.array(), numOfBytes, mzValues, intensityValues,
+		numOfDataPoints);
 
-	dataPointsOffsets.put(currentID, currentOffset);
-	dataPointsLengths.put(currentID, numOfDataPoints);
+	TaskMetrics.recordStorageRead(this, numOfDataPoints, numOfBytes);
 
-	return currentID;
+	return numOfDataPoints;
 
     }
 
-    public synchronized DataPoint[] readDataPoints(int ID) throws IOException {
+    /**
+     * Reads only the stored data points with m/z within given range. The data
+     * points of scans are stored sorted by m/z, so for uncompressed data
+     * points we find the range by binary search in the file and read only the
+     * part we need. Small scans and compressed blocks are read completely,
+     * because the few seeks would take longer, or the block cannot be read
+     * partially.
+     */
+    public synchronized DataPoint[] readDataPoints(int ID,
+	    Range<Double> mzRange) throws IOException {
 
 	final Long currentOffset = dataPointsOffsets.get(ID);
 	final Integer numOfDataPoints = dataPointsLengths.get(ID);
@@ -360,7 +705,55 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 	    throw new IllegalArgumentException("Unknown storage ID " + ID);
 	}
 
-	final int numOfBytes = numOfDataPoints * 2 * 4;
+	final double lowMz = mzRange.lowerEndpoint();
+	final double highMz = mzRange.upperEndpoint();
+
+	int startIndex, endIndex;
+	DataPoint dataPoints[];
+
+	if ((numOfDataPoints <= RANGE_READ_MIN_DATA_POINTS)
+		|| (!(codec instanceof FloatDataPointsCodec))) {
+
+	    dataPoints = readDataPoints(ID);
+
+	    for (startIndex = 0; startIndex < dataPoints.length; startIndex++) {
+		if (dataPoints[startIndex].getMZ() >= lowMz)
+		    break;
+	    }
+	    for (endIndex = startIndex; endIndex < dataPoints.length; endIndex++) {
+		if (dataPoints[endIndex].getMZ() > highMz)
+		    break;
+	    }
+
+	    return Arrays.copyOfRange(dataPoints, startIndex, endIndex);
+
+	}
+
+	// First data point with m/z >= lowMz
+	int low = 0, high = numOfDataPoints;
+	while (low < high) {
+	    int mid = (low + high) >>> 1;
+	    if (readStoredMZ(currentOffset, mid) < lowMz)
+		low = mid + 1;
+	    else
+		high = mid;
+	}
+	startIndex = low;
+
+	// First data point with m/z > highMz
+	high = numOfDataPoints;
+	while (low < high) {
+	    int mid = (low + high) >>> 1;
+	    if (readStoredMZ(currentOffset, mid) <= highMz)
+		low = mid + 1;
+	    else
+		high = mid;
+	}
+	endIndex = low;
+
+	final int numOfReadDataPoints = Math.max(endIndex - startIndex, 0);
+	final int numOfBytes = numOfReadDataPoints
+		* FloatDataPointsCodec.DATA_POINT_SIZE;
 
 	if (buffer.capacity() < numOfBytes) {
 	    buffer = ByteBuffer.allocate(numOfBytes * 2);
@@ -368,26 +761,177 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 	    buffer.clear();
 	}
 
-	dataPointsFile.seek(currentOffset);
-	dataPointsFile.read(buffer.array(), 0, numOfBytes);
+	readBytes(currentOffset + (long) startIndex
+		* FloatDataPointsCodec.DATA_POINT_SIZE, buffer.array(),
+		numOfBytes);
 
-	FloatBuffer floatBuffer = buffer.asFloatBuffer();
+	double mzValues[] = new double[numOfReadDataPoints];
+	double intensityValues[] = new double[numOfReadDataPoints];
+	codec.decode(buffer.array(), numOfBytes, mzValues, intensityValues,
+		numOfReadDataPoints);
 
-	DataPoint dataPoints[] = new DataPoint[numOfDataPoints];
+	dataPoints = new DataPoint[numOfReadDataPoints];
 
-	for (int i = 0; i < numOfDataPoints; i++) {
-	    float mz = floatBuffer.get();
-	    float intensity = floatBuffer.get();
-	    dataPoints[i] = new SimpleDataPoint(mz, intensity);
+	for (int i = 0; i < numOfReadDataPoints; i++) {
+	    dataPoints[i] = new SimpleDataPoint(mzValues[i],
+		    intensityValues[i]);
 	}
 
+	TaskMetrics.recordStorageRead(this, numOfReadDataPoints, numOfBytes);
+
 	return dataPoints;
 
     }
 
+    private double readStoredMZ(long offset, int index) throws IOException {
+	final long position = offset + (long) index
+		* FloatDataPointsCodec.DATA_POINT_SIZE;
+	if (mappedDataPoints != null) {
+	    final int chunkIndex = (int) (position / MAPPED_CHUNK_SIZE);
+	    final MappedByteBuffer chunk = mappedDataPoints[chunkIndex];
+	    final int chunkPosition = (int) (position % MAPPED_CHUNK_SIZE);
+	    if (chunkPosition + 4 <= chunk.capacity())
+		return chunk.getFloat(chunkPosition);
+	    byte bytes[] = new byte[4];
+	    readBytes(position, bytes, 4);
+	    return ByteBuffer.wrap(bytes).getFloat();
+	}
+	dataPointsFile.seek(position);
+	return dataPointsFile.readFloat();
+    }
+
+    /**
+     * Returns the size of the stored block in bytes. Data points files of
+     * older projects do not record the sizes, but they always contain 32-bit
+     * floats.
+     */
+    public synchronized int getStoredSize(int ID) {
+	final Integer size = dataPointsSizes.get(ID);
+	if (size != null)
+	    return size;
+	return dataPointsLengths.get(ID) * FloatDataPointsCodec.DATA_POINT_SIZE;
+    }
+
     public synchronized void removeStoredDataPoints(int ID) throws IOException {
+
+	if (!dataPointsOffsets.containsKey(ID))
+	    return;
+
+	deadBytes += getStoredSize(ID);
+
 	dataPointsOffsets.remove(ID);
 	dataPointsLengths.remove(ID);
+	dataPointsSizes.remove(ID);
+	dataPointsCRCs.remove(ID);
+
+	if ((compactionTask == null) && (dataPointsFile != null)
+		&& (deadBytes >= COMPACTION_MIN_DEAD_BYTES)
+		&& (deadBytes >= dataPointsFile.length()
+			* COMPACTION_MIN_DEAD_RATIO)) {
+	    logger.info("Starting compaction of data points of "
+		    + dataFileName + ", " + deadBytes + " of "
+		    + dataPointsFile.length() + " bytes are removed");
+	    compactionTask = new DataPointsCompactionTask(this);
+	    MZmineCore.getTaskController().addTask(compactionTask,
+		    TaskPriority.HIGH);
+	}
+
+    }
+
+    /**
+     * Replaces the data points file by a compacted copy, written by given
+     * compaction task. The copy contains the data points which were stored in
+     * sourceFile at the given offsets when the compaction started, at the
+     * given new offsets. Data points stored since then are copied now. Waits
+     * until the stored blocks are not pinned. Returns false if this raw data
+     * file was closed or the data points file was replaced in the meantime.
+     */
+    synchronized boolean swapDataPointsFile(DataPointsCompactionTask task,
+	    RandomAccessFile sourceFile, TreeMap<Integer, Long> copiedOffsets,
+	    File newFileName, RandomAccessFile newFile,
+	    TreeMap<Integer, Long> newOffsets) throws IOException {
+
+	// The offsets must not change while stored blocks are pinned
+	while (blockPins > 0) {
+	    try {
+		wait();
+	    } catch (InterruptedException e) {
+		return false;
+	    }
+	}
+
+	if ((compactionTask != task) || (dataPointsFile != sourceFile))
+	    return false;
+
+	// Copy the data points stored during the compaction. A removed storage
+	// ID may have been reused, so we also compare the offsets.
+	long newLength = newFile.length();
+	long liveBytes = 0;
+	for (Map.Entry<Integer, Long> entry : dataPointsOffsets.entrySet()) {
+	    final int ID = entry.getKey();
+	    final int size = getStoredSize(ID);
+	    liveBytes += size;
+	    if (entry.getValue().equals(copiedOffsets.get(ID)))
+		continue;
+	    copyBlock(dataPointsFile.getChannel(), entry.getValue(), size,
+		    newFile.getChannel(), newLength);
+	    newOffsets.put(ID, newLength);
+	    newLength += size;
+	}
+
+	// Only the offsets change, so the TreeMap is not structurally modified
+	// and its iterators remain valid
+	for (Map.Entry<Integer, Long> entry : dataPointsOffsets.entrySet()) {
+	    entry.setValue(newOffsets.get(entry.getKey()));
+	}
+
+	final File oldFileName = dataPointsFileName;
+	final long oldLength = dataPointsFile.length();
+	scratchDirectory.recordRead(newLength);
+	dataPointsFile.close();
+	oldFileName.delete();
+
+	dataPointsFileName = newFileName;
+	dataPointsFile = newFile;
+	scratchDirectory = ScratchStorage.getDirectory(newFileName
+		.getAbsoluteFile().getParentFile());
+	scratchDirectory.recordWrite(newLength);
+
+	// Data points removed during the compaction were copied, too
+	deadBytes = newLength - liveBytes;
+
+	logger.info("Compacted data points of " + dataFileName + " from "
+		+ oldLength + " to " + newLength + " bytes");
+
+	return true;
+
+    }
+
+    /**
+     * Called by the compaction task when it is finished, whether it replaced
+     * the data points file or not
+     */
+    synchronized void compactionFinished(DataPointsCompactionTask task) {
+	if (compactionTask == task)
+	    compactionTask = null;
+    }
+
+    /**
+     * Copies size bytes from given offset of the source channel to given
+     * offset of the target channel. The file positions of the source channel
+     * are not used, so the source can be read concurrently.
+     */
+    static void copyBlock(FileChannel source, long offset, int size,
+	    FileChannel target, long targetOffset) throws IOException {
+	target.position(targetOffset);
+	long copied = 0;
+	while (copied < size) {
+	    long bytes = source.transferTo(offset + copied, size - copied,
+		    target);
+	    if (bytes <= 0)
+		throw new IOException("Unexpected end of data points file");
+	    copied += bytes;
+	}
     }
 
     public synchronized void addScan(Scan newScan) throws IOException {
@@ -512,7 +1056,30 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 	return dataPointsLengths;
     }
 
+    /**
+     * Returns the sizes of the stored blocks in bytes. Blocks without an entry
+     * are 32-bit floats written by older versions.
+     */
+    public synchronized TreeMap<Integer, Integer> getDataPointsSizes() {
+	return dataPointsSizes;
+    }
+
+    /**
+     * Returns the CRC-32 of the stored blocks. Blocks of projects saved by
+     * older versions have no entry until their CRC is computed.
+     */
+    public synchronized TreeMap<Integer, Long> getDataPointsCRCs() {
+	return dataPointsCRCs;
+    }
+
     public synchronized void close() {
+	if (compactionTask != null) {
+	    compactionTask.cancel();
+	    compactionTask = null;
+	}
+	mappedDataPoints = null;
+	mappedFileName = null;
+	mappedDataFiles.remove(this);
 	try {
 	    if(dataPointsFileName != null) {
     	    	dataPointsFile.close();
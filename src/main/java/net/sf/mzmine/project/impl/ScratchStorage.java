@@ -0,0 +1,247 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import net.sf.mzmine.desktop.preferences.MZminePreferences;
+import net.sf.mzmine.desktop.preferences.ScratchPlacement;
+import net.sf.mzmine.main.MZmineConfiguration;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.main.jobserver.BatchJob;
+import net.sf.mzmine.parameters.parametertypes.OptionalParameter;
+import net.sf.mzmine.parameters.parametertypes.TextParameter;
+
+/**
+ * Placement of the temporary scan data files (mzmine*.scans) into the scratch
+ * directories configured in the preferences. Several directories on separate
+ * drives spread the I/O of concurrent imports and processing tasks. Each new
+ * file is placed either by round robin or into the directory with the most
+ * free space. If no directories are configured, the system temporary
+ * directory is used.
+ * 
+ * The amount of data written to and read from the files in each directory is
+ * recorded, see getDirectories().
+ */
+public class ScratchStorage {
+
+    private static final Logger logger = Logger.getLogger(ScratchStorage.class
+	    .getName());
+
+    private static final AtomicInteger nextDirectory = new AtomicInteger();
+
+    // Statistics of all directories used so far, in the order of first use
+    private static final Map<File, ScratchDirectory> usedDirectories = new LinkedHashMap<File, ScratchDirectory>();
+
+    /**
+     * I/O statistics of a single scratch directory
+     */
+    public static class ScratchDirectory {
+
+	private final File directory;
+	private final AtomicLong filesCreated = new AtomicLong(),
+		bytesRead = new AtomicLong(), bytesWritten = new AtomicLong();
+
+	private ScratchDirectory(File directory) {
+	    this.directory = directory;
+	}
+
+	public File getDirectory() {
+	    return directory;
+	}
+
+	public long getFilesCreated() {
+	    return filesCreated.get();
+	}
+
+	public long getBytesRead() {
+	    return bytesRead.get();
+	}
+
+	public long getBytesWritten() {
+	    return bytesWritten.get();
+	}
+
+	public long getUsableSpace() {
+	    return directory.getUsableSpace();
+	}
+
+	void recordRead(long numOfBytes) {
+	    bytesRead.addAndGet(numOfBytes);
+	}
+
+	void recordWrite(long numOfBytes) {
+	    bytesWritten.addAndGet(numOfBytes);
+	}
+
+	public String toString() {
+	    return directory + ": " + getFilesCreated() + " files, "
+		    + getBytesWritten() + " bytes written, " + getBytesRead()
+		    + " bytes read";
+	}
+
+    }
+
+    /**
+     * Returns the configured scratch directories, or the system temporary
+     * directory if none are configured
+     */
+    public static File[] getConfiguredDirectories() {
+
+	List<File> directories = new ArrayList<File>();
+
+	// The configuration is not available during the startup
+	MZmineConfiguration configuration = MZmineCore.getConfiguration();
+	if (configuration != null) {
+	    OptionalParameter<TextParameter> parameter = configuration
+		    .getPreferences().getParameter(
+			    MZminePreferences.scratchDirectories);
+	    Boolean enabled = parameter.getValue();
+	    String value = parameter.getEmbeddedParameter().getValue();
+	    if ((enabled != null) && (enabled) && (value != null)) {
+		for (String line : value.split("\n")) {
+		    line = line.trim();
+		    if (line.length() > 0)
+			directories.add(new File(line));
+		}
+	    }
+	}
+
+	if (directories.isEmpty())
+	    directories.add(new File(System.getProperty("java.io.tmpdir")));
+
+	return directories.toArray(new File[0]);
+
+    }
+
+    /**
+     * Creates a new temporary scan data file in one of the scratch
+     * directories. If the file cannot be created in the selected directory
+     * (e.g. the directory does not exist or the drive is full), the other
+     * directories are tried.
+     */
+    public static File createDataPointsFile() throws IOException {
+
+	// Jobs of the job server keep their files in their own directory
+	BatchJob job = BatchJob.getCurrentJob();
+	if (job != null) {
+	    File jobDirectory = job.getScratchDirectory();
+	    File newFile = File.createTempFile("mzmine", ".scans", jobDirectory);
+	    getDirectory(jobDirectory).filesCreated.incrementAndGet();
+	    return newFile;
+	}
+
+	File directories[] = getConfiguredDirectories();
+
+	ScratchPlacement placement = null;
+	MZmineConfiguration configuration = MZmineCore.getConfiguration();
+	if (configuration != null) {
+	    placement = configuration.getPreferences()
+		    .getParameter(MZminePreferences.scratchPlacement)
+		    .getValue();
+	}
+
+	if (placement == ScratchPlacement.MOST_FREE_SPACE) {
+	    Arrays.sort(directories, new Comparator<File>() {
+		public int compare(File d1, File d2) {
+		    return Long.compare(d2.getUsableSpace(),
+			    d1.getUsableSpace());
+		}
+	    });
+	} else {
+	    // Round robin, starting from the next directory in turn
+	    final int first = (nextDirectory.getAndIncrement() & Integer.MAX_VALUE)
+		    % directories.length;
+	    File rotated[] = new File[directories.length];
+	    for (int i = 0; i < directories.length; i++)
+		rotated[i] = directories[(first + i) % directories.length];
+	    directories = rotated;
+	}
+
+	IOException lastException = null;
+	for (File directory : directories) {
+	    try {
+		File newFile = File.createTempFile("mzmine", ".scans",
+			directory);
+		getDirectory(directory).filesCreated.incrementAndGet();
+		return newFile;
+	    } catch (IOException e) {
+		logger.warning("Could not create a temporary file in "
+			+ directory + ": " + e);
+		lastException = e;
+	    }
+	}
+
+	throw lastException;
+
+    }
+
+    /**
+     * Returns the statistics of given directory
+     */
+    public static ScratchDirectory getDirectory(File directory) {
+	File key = directory.getAbsoluteFile();
+
+	// The directory of a job is accounted to the scratch directory which
+	// contains it, so we do not keep statistics for each job
+	BatchJob job = BatchJob.getCurrentJob();
+	if ((job != null)
+		&& key.equals(job.getScratchDirectory().getAbsoluteFile()))
+	    key = key.getParentFile();
+	synchronized (usedDirectories) {
+	    ScratchDirectory scratchDirectory = usedDirectories.get(key);
+	    if (scratchDirectory == null) {
+		scratchDirectory = new ScratchDirectory(key);
+		usedDirectories.put(key, scratchDirectory);
+	    }
+	    return scratchDirectory;
+	}
+    }
+
+    /**
+     * Returns the statistics of all directories which contained temporary scan
+     * data files so far
+     */
+    public static ScratchDirectory[] getDirectories() {
+	synchronized (usedDirectories) {
+	    return usedDirectories.values().toArray(new ScratchDirectory[0]);
+	}
+    }
+
+    /**
+     * Writes the statistics of all used directories to the log
+     */
+    public static void logStatistics() {
+	for (ScratchDirectory directory : getDirectories()) {
+	    logger.info("Scratch directory " + directory);
+	}
+    }
+
+}
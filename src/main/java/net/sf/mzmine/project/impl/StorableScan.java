@@ -137,28 +137,16 @@ public class StorableScan implements Scan {
     public @Nonnull DataPoint[] getDataPointsByMass(
 	    @Nonnull Range<Double> mzRange) {
 
-	DataPoint dataPoints[] = getDataPoints();
-
-	int startIndex, endIndex;
-	for (startIndex = 0; startIndex < dataPoints.length; startIndex++) {
-	    if (dataPoints[startIndex].getMZ() >= mzRange.lowerEndpoint()) {
-		break;
-	    }
-	}
-
-	for (endIndex = startIndex; endIndex < dataPoints.length; endIndex++) {
-	    if (dataPoints[endIndex].getMZ() > mzRange.upperEndpoint()) {
-		break;
-	    }
+	try {
+	    DataPoint result[] = rawDataFile
+		    .readDataPoints(storageID, mzRange);
+	    return result;
+	} catch (IOException e) {
+	    logger.severe("Could not read data from temporary file "
+		    + e.toString());
+	    return new DataPoint[0];
 	}
 
-	DataPoint pointsWithinRange[] = new DataPoint[endIndex - startIndex];
-
-	// Copy the relevant points
-	System.arraycopy(dataPoints, startIndex, pointsWithinRange, 0, endIndex
-		- startIndex);
-
-	return pointsWithinRange;
     }
 
     /**
@@ -237,7 +225,7 @@ public class StorableScan implements Scan {
 	if (dataPoints.length > 0) {
 
 	    basePeak = dataPoints[0];
-	    mzRange = Range.singleton(dataPoints[0].getMZ());
+	    double lowMz = dataPoints[0].getMZ(), highMz = lowMz;
 	    double tic = 0;
 
 	    for (DataPoint dp : dataPoints) {
@@ -245,12 +233,18 @@ public class StorableScan implements Scan {
 		if (dp.getIntensity() > basePeak.getIntensity())
 		    basePeak = dp;
 
-		mzRange = mzRange.span(Range.singleton(dp.getMZ()));
+		// Track the m/z range in primitives, spanning a Range for each
+		// data point would allocate two objects per data point
+		if (dp.getMZ() < lowMz)
+		    lowMz = dp.getMZ();
+		if (dp.getMZ() > highMz)
+		    highMz = dp.getMZ();
 
 		tic += dp.getIntensity();
 
 	    }
 
+	    mzRange = Range.closed(lowMz, highMz);
 	    totalIonCurrent = new Double(tic);
 
 	} else {
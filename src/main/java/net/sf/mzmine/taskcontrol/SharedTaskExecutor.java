@@ -0,0 +1,196 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.taskcontrol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.mzmine.desktop.preferences.MZminePreferences;
+import net.sf.mzmine.desktop.preferences.NumOfThreadsParameter;
+import net.sf.mzmine.main.MZmineConfiguration;
+import net.sf.mzmine.main.MZmineCore;
+
+/**
+ * Thread pool shared by all tasks which split their work among several
+ * threads. The pool has as many threads as the number of concurrently running
+ * tasks set in the MZmine preferences, so parallel tasks (or parallel jobs of
+ * the job server) do not start a full set of threads each.
+ * 
+ * Each task gets its own executor from newExecutor(), which runs its work in
+ * the shared pool. Shutting the executor down cancels only the work of the
+ * task. The work must not wait for other work submitted to the shared pool,
+ * otherwise the pool could run out of threads.
+ */
+public class SharedTaskExecutor {
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private static final ThreadPoolExecutor sharedPool;
+    static {
+	ThreadFactory daemonThreads = new ThreadFactory() {
+	    public Thread newThread(Runnable task) {
+		Thread thread = new Thread(task, "Shared task thread "
+			+ threadCounter.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	    }
+	};
+	final int numOfThreads = getNumOfThreads();
+	sharedPool = new ThreadPoolExecutor(numOfThreads, numOfThreads, 60,
+		TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+		daemonThreads);
+	sharedPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the number of concurrently running tasks set in the MZmine
+     * preferences, or the number of processors if it is set to automatic
+     */
+    public static int getNumOfThreads() {
+	// The configuration is not available during the startup
+	MZmineConfiguration configuration = MZmineCore.getConfiguration();
+	if (configuration == null)
+	    return Runtime.getRuntime().availableProcessors();
+	NumOfThreadsParameter parameter = configuration.getPreferences()
+		.getParameter(MZminePreferences.numOfThreads);
+	if (parameter.isAutomatic() || (parameter.getValue() == null))
+	    return Runtime.getRuntime().availableProcessors();
+	return Math.max(1, parameter.getValue());
+    }
+
+    /**
+     * Returns a new executor, which runs the submitted work in the shared
+     * pool. The size of the pool follows the current preferences.
+     */
+    public static ExecutorService newExecutor() {
+	final int numOfThreads = getNumOfThreads();
+	synchronized (sharedPool) {
+	    if (numOfThreads > sharedPool.getMaximumPoolSize()) {
+		sharedPool.setMaximumPoolSize(numOfThreads);
+		sharedPool.setCorePoolSize(numOfThreads);
+	    } else if (numOfThreads < sharedPool.getMaximumPoolSize()) {
+		sharedPool.setCorePoolSize(numOfThreads);
+		sharedPool.setMaximumPoolSize(numOfThreads);
+	    }
+	}
+	return new TaskExecutor();
+    }
+
+    /**
+     * Executor of one task. Keeps track of the work it submitted to the
+     * shared pool, so that it can be canceled by shutdownNow().
+     */
+    private static class TaskExecutor extends AbstractExecutorService {
+
+	private final Set<Work> pendingWork = new HashSet<Work>();
+	private boolean shutdown = false;
+
+	/**
+	 * Work submitted to the shared pool, removed from pendingWork when it
+	 * is finished or canceled
+	 */
+	private class Work extends FutureTask<Void> {
+
+	    private final Runnable command;
+
+	    Work(Runnable command) {
+		super(command, null);
+		this.command = command;
+	    }
+
+	    protected void done() {
+		synchronized (TaskExecutor.this) {
+		    pendingWork.remove(this);
+		    TaskExecutor.this.notifyAll();
+		}
+	    }
+
+	}
+
+	public void execute(Runnable command) {
+	    Work work = new Work(command);
+	    synchronized (this) {
+		if (shutdown)
+		    throw new RejectedExecutionException(
+			    "Executor was shut down");
+		pendingWork.add(work);
+	    }
+	    sharedPool.execute(work);
+	}
+
+	public synchronized void shutdown() {
+	    shutdown = true;
+	}
+
+	public List<Runnable> shutdownNow() {
+	    List<Work> canceledWork;
+	    synchronized (this) {
+		shutdown = true;
+		canceledWork = new ArrayList<Work>(pendingWork);
+	    }
+	    for (Work work : canceledWork) {
+		// The futures returned by submit() are canceled, too, so nobody
+		// waits for them forever
+		if (work.command instanceof Future)
+		    ((Future<?>) work.command).cancel(true);
+		work.cancel(true);
+		sharedPool.remove(work);
+	    }
+	    return Collections.emptyList();
+	}
+
+	public synchronized boolean isShutdown() {
+	    return shutdown;
+	}
+
+	public synchronized boolean isTerminated() {
+	    return shutdown && pendingWork.isEmpty();
+	}
+
+	public synchronized boolean awaitTermination(long timeout,
+		TimeUnit unit) throws InterruptedException {
+	    long remaining = unit.toMillis(timeout);
+	    final long deadline = System.currentTimeMillis() + remaining;
+	    while (!isTerminated()) {
+		if (remaining <= 0)
+		    return false;
+		wait(remaining);
+		remaining = deadline - System.currentTimeMillis();
+	    }
+	    return true;
+	}
+
+    }
+
+}
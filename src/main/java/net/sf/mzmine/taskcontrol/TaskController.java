@@ -40,4 +40,17 @@ public interface TaskController {
 
     public TaskQueue getTaskQueue();
 
+    /**
+     * Returns the metrics of given task, or null if the task was not
+     * submitted to this task controller
+     */
+    public TaskMetrics getTaskMetrics(Task task);
+
+    /**
+     * Returns the metrics of all tasks submitted to this task controller, in
+     * the order of submission. Only a limited number of most recent tasks is
+     * kept.
+     */
+    public TaskMetrics[] getTaskMetrics();
+
 }
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.taskcontrol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.main.jobserver.BatchJob;
+
+/**
+ * Execution metrics of a single task: queue latency, run time, CPU time and
+ * memory allocated by the worker thread, and the amount of data read from and
+ * written to the scan storage of raw data files.
+ * 
+ * The metrics object of the running task is bound to the worker thread, so
+ * that storage code can record its I/O using the static record methods without
+ * knowing which task called it. The binding is not inherited by other
+ * threads: tasks which hand work reading or writing scan data to their own
+ * threads bind their metrics there explicitly, see bindCurrentMetrics().
+ * Binding the metrics also binds the job of the job server which submitted
+ * the task, so those threads work on the project and the scratch directory of
+ * the job. CPU time and allocation are measured for the worker thread only.
+ */
+public class TaskMetrics {
+
+    private static final ThreadLocal<TaskMetrics> currentMetrics = new ThreadLocal<TaskMetrics>();
+
+    private final String taskDescription, taskClass;
+    private volatile String batchStep;
+
+    // Job of the job server which submitted the task, if any
+    private final BatchJob job;
+
+    private final long queuedTime;
+    private final long queuedNanos;
+    private volatile long startNanos = -1, finishNanos = -1;
+    private volatile long cpuTime = -1, allocatedBytes = -1;
+    private volatile TaskStatus finalStatus;
+
+    // Values of the worker thread counters when the task started
+    private long startCpuTime, startAllocatedBytes;
+
+    private final AtomicLong storageReads = new AtomicLong(),
+	    dataPointsRead = new AtomicLong(), bytesRead = new AtomicLong(),
+	    storageWrites = new AtomicLong(),
+	    dataPointsWritten = new AtomicLong(),
+	    bytesWritten = new AtomicLong();
+
+    private final Set<String> dataFiles = new LinkedHashSet<String>();
+
+    public TaskMetrics(Task task) {
+	this.taskDescription = task.getTaskDescription();
+	// Anonymous classes have an empty simple name
+	String className = task.getClass().getSimpleName();
+	if (className.isEmpty())
+	    className = task.getClass().getName();
+	this.taskClass = className;
+	this.queuedTime = System.currentTimeMillis();
+	this.queuedNanos = System.nanoTime();
+	this.job = BatchJob.getCurrentJob();
+    }
+
+    /**
+     * Returns the metrics of the task running in the current thread, or null
+     * if the current thread is not executing a task
+     */
+    public static TaskMetrics getCurrentMetrics() {
+	return currentMetrics.get();
+    }
+
+    /**
+     * Binds given metrics and the job of their task to the current thread, or
+     * unbinds the current metrics and job if metrics is null
+     */
+    public static void setCurrentMetrics(TaskMetrics metrics) {
+	if (metrics == null) {
+	    currentMetrics.remove();
+	    BatchJob.setCurrentJob(null);
+	} else {
+	    currentMetrics.set(metrics);
+	    BatchJob.setCurrentJob(metrics.getJob());
+	}
+    }
+
+    /**
+     * Returns a callable which runs given callable with the metrics of the
+     * current thread bound to the thread executing it. Used when a task
+     * submits work to an executor, so the I/O of the work is recorded for the
+     * task.
+     */
+    public static <V> Callable<V> bindCurrentMetrics(final Callable<V> callable) {
+	final TaskMetrics metrics = currentMetrics.get();
+	if (metrics == null)
+	    return callable;
+	return new Callable<V>() {
+	    public V call() throws Exception {
+		final TaskMetrics previous = currentMetrics.get();
+		final BatchJob previousJob = BatchJob.getCurrentJob();
+		setCurrentMetrics(metrics);
+		try {
+		    return callable.call();
+		} finally {
+		    setCurrentMetrics(previous);
+		    BatchJob.setCurrentJob(previousJob);
+		}
+	    }
+	};
+    }
+
+    /**
+     * Records that numOfDataPoints data points (numOfBytes bytes) of given raw
+     * data file were read from the scan storage by the current task
+     */
+    public static void recordStorageRead(RawDataFile dataFile,
+	    int numOfDataPoints, int numOfBytes) {
+	TaskMetrics metrics = currentMetrics.get();
+	if (metrics == null)
+	    return;
+	metrics.storageReads.incrementAndGet();
+	metrics.dataPointsRead.addAndGet(numOfDataPoints);
+	metrics.bytesRead.addAndGet(numOfBytes);
+	metrics.addDataFile(dataFile);
+    }
+
+    /**
+     * Records that numOfDataPoints data points (numOfBytes bytes) were written
+     * to the scan storage of given raw data file by the current task
+     */
+    public static void recordStorageWrite(RawDataFile dataFile,
+	    int numOfDataPoints, int numOfBytes) {
+	TaskMetrics metrics = currentMetrics.get();
+	if (metrics == null)
+	    return;
+	metrics.storageWrites.incrementAndGet();
+	metrics.dataPointsWritten.addAndGet(numOfDataPoints);
+	metrics.bytesWritten.addAndGet(numOfBytes);
+	metrics.addDataFile(dataFile);
+    }
+
+    /**
+     * Called by the worker thread before the task is started. Binds these
+     * metrics to the current thread.
+     */
+    public void taskStarted() {
+	startNanos = System.nanoTime();
+	ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	if (threadBean.isCurrentThreadCpuTimeSupported())
+	    startCpuTime = threadBean.getCurrentThreadCpuTime();
+	startAllocatedBytes = getCurrentThreadAllocatedBytes();
+	currentMetrics.set(this);
+    }
+
+    /**
+     * Called by the worker thread after the task has finished (successfully
+     * or not). Unbinds these metrics from the current thread.
+     */
+    public void taskFinished(TaskStatus status) {
+	currentMetrics.remove();
+	ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	if (threadBean.isCurrentThreadCpuTimeSupported())
+	    cpuTime = threadBean.getCurrentThreadCpuTime() - startCpuTime;
+	long allocated = getCurrentThreadAllocatedBytes();
+	if ((allocated >= 0) && (startAllocatedBytes >= 0))
+	    allocatedBytes = allocated - startAllocatedBytes;
+	finalStatus = status;
+	finishNanos = System.nanoTime();
+    }
+
+    private static long getCurrentThreadAllocatedBytes() {
+	ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+	    return -1;
+	com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+	if (!sunThreadBean.isThreadAllocatedMemoryEnabled())
+	    return -1;
+	return sunThreadBean.getThreadAllocatedBytes(Thread.currentThread()
+		.getId());
+    }
+
+    private void addDataFile(RawDataFile dataFile) {
+	synchronized (dataFiles) {
+	    dataFiles.add(dataFile.getName());
+	}
+    }
+
+    public String getTaskDescription() {
+	return taskDescription;
+    }
+
+    /**
+     * Returns the simple class name of the task, which identifies the
+     * processing method
+     */
+    public String getTaskClass() {
+	return taskClass;
+    }
+
+    /**
+     * Returns the description of the batch step which submitted the task, or
+     * null if the task was not started by a batch
+     */
+    public String getBatchStep() {
+	return batchStep;
+    }
+
+    public void setBatchStep(String batchStep) {
+	this.batchStep = batchStep;
+    }
+
+    /**
+     * Returns the job of the job server which submitted the task, or null if
+     * the task was not submitted by a job
+     */
+    public BatchJob getJob() {
+	return job;
+    }
+
+    /**
+     * Returns the time (in ms since epoch) when the task was submitted to the
+     * task controller
+     */
+    public long getQueuedTime() {
+	return queuedTime;
+    }
+
+    public boolean isStarted() {
+	return startNanos >= 0;
+    }
+
+    public boolean isFinished() {
+	return finishNanos >= 0;
+    }
+
+    /**
+     * Returns the final status of the task, or null if it has not finished
+     */
+    public TaskStatus getFinalStatus() {
+	return finalStatus;
+    }
+
+    /**
+     * Returns the time (ms) the task waited in the queue before it was
+     * started. For tasks which have not started yet, returns the time they
+     * have been waiting so far.
+     */
+    public long getQueueTime() {
+	long start = startNanos;
+	if (start < 0)
+	    start = System.nanoTime();
+	return (start - queuedNanos) / 1000000;
+    }
+
+    /**
+     * Returns the wall-clock run time (ms) of the task. For running tasks,
+     * returns the time since start, for tasks which have not started yet
+     * returns 0.
+     */
+    public long getRunTime() {
+	long start = startNanos, finish = finishNanos;
+	if (start < 0)
+	    return 0;
+	if (finish < 0)
+	    finish = System.nanoTime();
+	return (finish - start) / 1000000;
+    }
+
+    /**
+     * Returns the CPU time (ms) consumed by the worker thread, or -1 if not
+     * available (task not finished or not supported by the JVM)
+     */
+    public long getCpuTime() {
+	if (cpuTime < 0)
+	    return -1;
+	return cpuTime / 1000000;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the worker thread, or -1 if not
+     * available (task not finished or not supported by the JVM)
+     */
+    public long getAllocatedBytes() {
+	return allocatedBytes;
+    }
+
+    /**
+     * Returns the number of data point arrays (scans or mass lists) read from
+     * the scan storage
+     */
+    public long getStorageReads() {
+	return storageReads.get();
+    }
+
+    public long getDataPointsRead() {
+	return dataPointsRead.get();
+    }
+
+    public long getBytesRead() {
+	return bytesRead.get();
+    }
+
+    /**
+     * Returns the number of data point arrays (scans or mass lists) written
+     * to the scan storage
+     */
+    public long getStorageWrites() {
+	return storageWrites.get();
+    }
+
+    public long getDataPointsWritten() {
+	return dataPointsWritten.get();
+    }
+
+    public long getBytesWritten() {
+	return bytesWritten.get();
+    }
+
+    /**
+     * Returns the names of raw data files whose scan storage was accessed by
+     * the task
+     */
+    public String[] getDataFiles() {
+	synchronized (dataFiles) {
+	    return dataFiles.toArray(new String[0]);
+	}
+    }
+
+    public String toString() {
+	return taskDescription;
+    }
+
+}
@@ -21,15 +21,17 @@ package net.sf.mzmine.taskcontrol.impl;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
 import java.util.Vector;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
 
-import net.sf.mzmine.desktop.preferences.MZminePreferences;
-import net.sf.mzmine.desktop.preferences.NumOfThreadsParameter;
-import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
 import net.sf.mzmine.taskcontrol.Task;
 import net.sf.mzmine.taskcontrol.TaskControlListener;
 import net.sf.mzmine.taskcontrol.TaskController;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 
@@ -58,6 +60,23 @@ public class TaskControllerImpl implements TaskController, Runnable {
      */
     private Vector<WorkerThread> runningThreads;
 
+    /**
+     * Maximum number of task metrics we keep. When more tasks are submitted,
+     * the metrics of the oldest tasks are dropped.
+     */
+    private static final int MAX_RECORDED_METRICS = 10000;
+
+    /**
+     * Metrics of submitted tasks, in the order of submission
+     */
+    private final LinkedList<TaskMetrics> taskMetrics = new LinkedList<TaskMetrics>();
+
+    /**
+     * Weak map, so that we do not prevent finished tasks from being garbage
+     * collected
+     */
+    private final Map<Task, TaskMetrics> taskMetricsMap = new WeakHashMap<Task, TaskMetrics>();
+
     /**
      * Initialize the task controller
      */
@@ -99,7 +118,14 @@ public class TaskControllerImpl implements TaskController, Runnable {
 	    return;
 
 	for (Task task : tasks) {
-	    WrappedTask newQueueEntry = new WrappedTask(task, priority);
+	    TaskMetrics metrics = new TaskMetrics(task);
+	    synchronized (taskMetrics) {
+		taskMetrics.add(metrics);
+		if (taskMetrics.size() > MAX_RECORDED_METRICS)
+		    taskMetrics.removeFirst();
+		taskMetricsMap.put(task, metrics);
+	    }
+	    WrappedTask newQueueEntry = new WrappedTask(task, priority, metrics);
 	    taskQueue.addWrappedTask(newQueueEntry);
 	}
 
@@ -158,14 +184,7 @@ public class TaskControllerImpl implements TaskController, Runnable {
 	    WrappedTask[] queueSnapshot = taskQueue.getQueueSnapshot();
 
 	    // Obtain the settings of max concurrent threads
-	    NumOfThreadsParameter parameter = MZmineCore.getConfiguration()
-		    .getPreferences()
-		    .getParameter(MZminePreferences.numOfThreads);
-	    int maxRunningThreads;
-	    if (parameter.isAutomatic() || (parameter.getValue() == null))
-		maxRunningThreads = Runtime.getRuntime().availableProcessors();
-	    else
-		maxRunningThreads = parameter.getValue();
+	    final int maxRunningThreads = SharedTaskExecutor.getNumOfThreads();
 
 	    // Check all tasks in the queue
 	    for (WrappedTask task : queueSnapshot) {
@@ -223,6 +242,20 @@ public class TaskControllerImpl implements TaskController, Runnable {
 	}
     }
 
+    @Override
+    public TaskMetrics getTaskMetrics(Task task) {
+	synchronized (taskMetrics) {
+	    return taskMetricsMap.get(task);
+	}
+    }
+
+    @Override
+    public TaskMetrics[] getTaskMetrics() {
+	synchronized (taskMetrics) {
+	    return taskMetrics.toArray(new TaskMetrics[0]);
+	}
+    }
+
     @Override
     public void addTaskControlListener(TaskControlListener listener) {
 	listeners.add(listener);
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.taskcontrol.impl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sf.mzmine.project.impl.ScratchStorage;
+import net.sf.mzmine.project.impl.ScratchStorage.ScratchDirectory;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Writes task metrics as a run report in CSV or JSON format. The CSV report
+ * contains one line per task. The JSON report contains the same per-task
+ * records, plus a summary of each batch step (or each processing method, for
+ * tasks which were not started by a batch) and the I/O of each scratch
+ * directory.
+ */
+public class TaskMetricsReport {
+
+    private static final String csvColumns[] = { "Batch step", "Method",
+	    "Task", "Status", "Data files", "Queue time (ms)",
+	    "Run time (ms)", "CPU time (ms)", "Allocated bytes",
+	    "Storage reads", "Data points read", "Bytes read",
+	    "Storage writes", "Data points written", "Bytes written" };
+
+    public static void writeCSV(TaskMetrics metrics[], File file)
+	    throws IOException {
+
+	Writer writer = new BufferedWriter(new FileWriter(file));
+	try {
+	    for (int i = 0; i < csvColumns.length; i++) {
+		if (i > 0)
+		    writer.write(',');
+		writer.write(csvColumns[i]);
+	    }
+	    writer.write('\n');
+
+	    for (TaskMetrics m : metrics) {
+		writer.write(csvValue(m.getBatchStep()));
+		writer.write(',');
+		writer.write(csvValue(m.getTaskClass()));
+		writer.write(',');
+		writer.write(csvValue(m.getTaskDescription()));
+		writer.write(',');
+		writer.write(csvValue(statusString(m)));
+		writer.write(',');
+		writer.write(csvValue(join(m.getDataFiles(), ";")));
+		for (long value : numericValues(m)) {
+		    writer.write(',');
+		    writer.write(String.valueOf(value));
+		}
+		writer.write('\n');
+	    }
+	} finally {
+	    writer.close();
+	}
+
+    }
+
+    public static void writeJSON(TaskMetrics metrics[], File file)
+	    throws IOException {
+
+	// Summary of each batch step / method, in the order of appearance
+	Map<String, long[]> summary = new LinkedHashMap<String, long[]>();
+	Map<String, TaskMetrics> summaryExample = new LinkedHashMap<String, TaskMetrics>();
+	for (TaskMetrics m : metrics) {
+	    String key = m.getBatchStep() + "\t" + m.getTaskClass();
+	    long values[] = numericValues(m);
+	    long sums[] = summary.get(key);
+	    if (sums == null) {
+		sums = new long[values.length + 1];
+		summary.put(key, sums);
+		summaryExample.put(key, m);
+	    }
+	    sums[0]++;
+	    for (int i = 0; i < values.length; i++) {
+		// -1 means not available, do not add it to the sum
+		if (values[i] > 0)
+		    sums[i + 1] += values[i];
+	    }
+	}
+
+	Writer writer = new BufferedWriter(new FileWriter(file));
+	try {
+	    writer.write("{\n  \"steps\": [");
+	    boolean first = true;
+	    for (String key : summary.keySet()) {
+		long sums[] = summary.get(key);
+		TaskMetrics example = summaryExample.get(key);
+		writer.write(first ? "\n" : ",\n");
+		first = false;
+		writer.write("    {\"batchStep\": "
+			+ jsonValue(example.getBatchStep()));
+		writer.write(", \"method\": "
+			+ jsonValue(example.getTaskClass()));
+		writer.write(", \"tasks\": " + sums[0]);
+		writeNumericFields(writer, sums, 1);
+		writer.write("}");
+	    }
+	    writer.write("\n  ],\n  \"tasks\": [");
+
+	    first = true;
+	    for (TaskMetrics m : metrics) {
+		writer.write(first ? "\n" : ",\n");
+		first = false;
+		writer.write("    {\"batchStep\": " + jsonValue(m.getBatchStep()));
+		writer.write(", \"method\": " + jsonValue(m.getTaskClass()));
+		writer.write(", \"task\": " + jsonValue(m.getTaskDescription()));
+		writer.write(", \"status\": " + jsonValue(statusString(m)));
+		writer.write(", \"dataFiles\": [");
+		String dataFiles[] = m.getDataFiles();
+		for (int i = 0; i < dataFiles.length; i++) {
+		    if (i > 0)
+			writer.write(", ");
+		    writer.write(jsonValue(dataFiles[i]));
+		}
+		writer.write("]");
+		writeNumericFields(writer, numericValues(m), 0);
+		writer.write("}");
+	    }
+	    writer.write("\n  ],\n  \"scratchDirectories\": [");
+
+	    first = true;
+	    for (ScratchDirectory d : ScratchStorage.getDirectories()) {
+		writer.write(first ? "\n" : ",\n");
+		first = false;
+		writer.write("    {\"directory\": "
+			+ jsonValue(d.getDirectory().getPath()));
+		writer.write(", \"filesCreated\": " + d.getFilesCreated());
+		writer.write(", \"bytesRead\": " + d.getBytesRead());
+		writer.write(", \"bytesWritten\": " + d.getBytesWritten());
+		writer.write(", \"usableSpace\": " + d.getUsableSpace());
+		writer.write("}");
+	    }
+	    writer.write("\n  ]\n}\n");
+	} finally {
+	    writer.close();
+	}
+
+    }
+
+    private static final String jsonFields[] = { "queueTimeMs", "runTimeMs",
+	    "cpuTimeMs", "allocatedBytes", "storageReads", "dataPointsRead",
+	    "bytesRead", "storageWrites", "dataPointsWritten", "bytesWritten" };
+
+    private static void writeNumericFields(Writer writer, long values[],
+	    int offset) throws IOException {
+	for (int i = 0; i < jsonFields.length; i++) {
+	    writer.write(", \"" + jsonFields[i] + "\": " + values[i + offset]);
+	}
+    }
+
+    private static long[] numericValues(TaskMetrics m) {
+	return new long[] { m.getQueueTime(), m.getRunTime(), m.getCpuTime(),
+		m.getAllocatedBytes(), m.getStorageReads(),
+		m.getDataPointsRead(), m.getBytesRead(), m.getStorageWrites(),
+		m.getDataPointsWritten(), m.getBytesWritten() };
+    }
+
+    private static String statusString(TaskMetrics m) {
+	TaskStatus status = m.getFinalStatus();
+	if (status != null)
+	    return status.toString();
+	if (m.isStarted())
+	    return TaskStatus.PROCESSING.toString();
+	return TaskStatus.WAITING.toString();
+    }
+
+    private static String join(String values[], String separator) {
+	StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < values.length; i++) {
+	    if (i > 0)
+		sb.append(separator);
+	    sb.append(values[i]);
+	}
+	return sb.toString();
+    }
+
+    private static String csvValue(String value) {
+	if (value == null)
+	    return "";
+	if ((value.indexOf(',') < 0) && (value.indexOf('"') < 0)
+		&& (value.indexOf('\n') < 0))
+	    return value;
+	return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String jsonValue(String value) {
+	if (value == null)
+	    return "null";
+	StringBuilder sb = new StringBuilder("\"");
+	for (int i = 0; i < value.length(); i++) {
+	    char c = value.charAt(i);
+	    switch (c) {
+	    case '"':
+		sb.append("\\\"");
+		break;
+	    case '\\':
+		sb.append("\\\\");
+		break;
+	    case '\n':
+		sb.append("\\n");
+		break;
+	    case '\r':
+		sb.append("\\r");
+		break;
+	    case '\t':
+		sb.append("\\t");
+		break;
+	    default:
+		if (c < 0x20)
+		    sb.append(String.format("\\u%04x", (int) c));
+		else
+		    sb.append(c);
+	    }
+	}
+	sb.append('"');
+	return sb.toString();
+    }
+
+}
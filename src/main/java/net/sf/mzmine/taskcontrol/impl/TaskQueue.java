@@ -26,6 +26,7 @@ import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 
 import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.components.LabeledProgressBar;
@@ -153,7 +154,7 @@ public class TaskQueue extends AbstractTableModel {
     /* TableModel implementation */
 
     private static final String columns[] = { "Item", "Priority", "Status",
-	    "% done" };
+	    "Run time", "% done" };
 
     /**
      * @see javax.swing.table.TableModel#getRowCount()
@@ -191,6 +192,13 @@ public class TaskQueue extends AbstractTableModel {
 	    case 2:
 		return actualTask.getStatus();
 	    case 3:
+		TaskMetrics metrics = wrappedTask.getMetrics();
+		if (!metrics.isStarted())
+		    return "";
+		long seconds = metrics.getRunTime() / 1000;
+		return String.format("%d:%02d:%02d", seconds / 3600,
+			(seconds / 60) % 60, seconds % 60);
+	    case 4:
 		double finishedPercentage = actualTask.getFinishedPercentage();
 		LabeledProgressBar progressBar = progressBars.get(row);
 		if (progressBar == null) {
@@ -219,6 +227,8 @@ public class TaskQueue extends AbstractTableModel {
 	case 2:
 	    return TaskStatus.class;
 	case 3:
+	    return String.class;
+	case 4:
 	    return LabeledProgressBar.class;
 	}
 	return null;
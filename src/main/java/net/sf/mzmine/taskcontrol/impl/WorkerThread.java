@@ -23,7 +23,9 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.main.jobserver.BatchJob;
 import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.ExceptionUtils;
 
@@ -50,6 +52,11 @@ class WorkerThread extends Thread {
     public void run() {
 
 	Task actualTask = wrappedTask.getActualTask();
+	TaskMetrics metrics = wrappedTask.getMetrics();
+
+	// Tasks submitted by a job of the job server work on the project of
+	// the job
+	BatchJob.setCurrentJob(metrics.getJob());
 
 	try {
 
@@ -58,7 +65,9 @@ class WorkerThread extends Thread {
 		    + actualTask.getTaskDescription());
 
 	    // Process the actual task
+	    metrics.taskStarted();
 	    actualTask.run();
+	    metrics.taskFinished(actualTask.getStatus());
 
 	    // Check if task finished with an error
 	    if (actualTask.getStatus() == TaskStatus.ERROR) {
@@ -91,6 +100,9 @@ class WorkerThread extends Thread {
 
 	} catch (Throwable e) {
 
+	    if (!metrics.isFinished())
+		metrics.taskFinished(TaskStatus.ERROR);
+
 	    /*
 	     * This should never happen, it means the task did not handle its
 	     * exception properly, or there was some severe error, like
@@ -20,6 +20,7 @@
 package net.sf.mzmine.taskcontrol.impl;
 
 import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 
 /**
@@ -30,10 +31,12 @@ public class WrappedTask {
     private Task task;
     private TaskPriority priority;
     private WorkerThread assignedTo;
+    private final TaskMetrics metrics;
 
-    WrappedTask(Task task, TaskPriority priority) {
+    WrappedTask(Task task, TaskPriority priority, TaskMetrics metrics) {
 	this.task = task;
 	this.priority = priority;
+	this.metrics = metrics;
     }
 
     /**
@@ -79,6 +82,13 @@ public class WrappedTask {
 	return task;
     }
 
+    /**
+     * @return Returns the metrics of the task.
+     */
+    public TaskMetrics getMetrics() {
+	return metrics;
+    }
+
     public synchronized String toString() {
 	return task.getTaskDescription();
     }
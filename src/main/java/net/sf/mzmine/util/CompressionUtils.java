@@ -19,7 +19,10 @@
 
 package net.sf.mzmine.util;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 /**
@@ -27,6 +30,51 @@ import java.util.zip.Inflater;
  */
 public class CompressionUtils {
 
+    // Inflaters and deflaters hold native memory and are expensive to
+    // create, so a limited number of released instances is kept for reuse.
+    // Instances which do not fit into the pools are ended right away, instead
+    // of leaving their memory to the finalizer.
+    private static final int MAX_POOLED_INSTANCES = 16;
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(
+	    MAX_POOLED_INSTANCES);
+    private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(
+	    MAX_POOLED_INSTANCES);
+
+    /**
+     * Returns an Inflater in its initial state, which must be given back by
+     * releaseInflater() when it is no longer used
+     */
+    public static Inflater getInflater() {
+	Inflater inflater = inflaters.poll();
+	if (inflater == null)
+	    inflater = new Inflater();
+	return inflater;
+    }
+
+    public static void releaseInflater(Inflater inflater) {
+	inflater.reset();
+	if (!inflaters.offer(inflater))
+	    inflater.end();
+    }
+
+    /**
+     * Returns a Deflater with given compression level in its initial state,
+     * which must be given back by releaseDeflater() when it is no longer used
+     */
+    public static Deflater getDeflater(int level) {
+	Deflater deflater = deflaters.poll();
+	if (deflater == null)
+	    return new Deflater(level);
+	deflater.setLevel(level);
+	return deflater;
+    }
+
+    public static void releaseDeflater(Deflater deflater) {
+	deflater.reset();
+	if (!deflaters.offer(deflater))
+	    deflater.end();
+    }
+
     /**
      * Decompress the zlib-compressed bytes and return an array of decompressed
      * bytes
@@ -59,4 +107,32 @@ public class CompressionUtils {
 	return resultTotal;
     }
 
+    /**
+     * Decompress length zlib-compressed bytes, starting at given offset, into
+     * the given array. The decompressed data must fill the whole array.
+     */
+    public static void decompress(byte compressedBytes[], int offset,
+	    int length, byte result[]) throws DataFormatException {
+
+	Inflater decompresser = getInflater();
+	try {
+	    decompresser.setInput(compressedBytes, offset, length);
+
+	    int resultLength = 0;
+	    while (resultLength < result.length) {
+		final int bytes = decompresser.inflate(result, resultLength,
+			result.length - resultLength);
+		// No progress means the input is finished, truncated or needs
+		// a dictionary
+		if (bytes == 0)
+		    throw new DataFormatException("Expected " + result.length
+			    + " bytes, decompressed " + resultLength + " bytes");
+		resultLength += bytes;
+	    }
+	} finally {
+	    releaseInflater(decompresser);
+	}
+
+    }
+
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.util;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+
+/**
+ * Closed range of primitive double values. Unlike Range<Double>, checking
+ * whether a value is contained in this range does not box the value, so this
+ * class is suitable for loops over data points or peak list rows. Use
+ * fromRange() and toRange() to convert from and to the Range<Double> used in
+ * the public API.
+ */
+public final class DoubleRange {
+
+    private final double lower, upper;
+
+    public DoubleRange(double lower, double upper) {
+	this.lower = lower;
+	this.upper = upper;
+    }
+
+    /**
+     * Converts given range to a closed range of doubles. Open endpoints are
+     * replaced by the adjacent double value, and missing endpoints by infinity,
+     * so contains() gives the same result as the original range.
+     */
+    public static DoubleRange fromRange(Range<Double> range) {
+
+	double lower = Double.NEGATIVE_INFINITY;
+	if (range.hasLowerBound()) {
+	    lower = range.lowerEndpoint();
+	    if (range.lowerBoundType() == BoundType.OPEN)
+		lower = Math.nextUp(lower);
+	}
+
+	double upper = Double.POSITIVE_INFINITY;
+	if (range.hasUpperBound()) {
+	    upper = range.upperEndpoint();
+	    if (range.upperBoundType() == BoundType.OPEN)
+		upper = Math.nextAfter(upper, Double.NEGATIVE_INFINITY);
+	}
+
+	return new DoubleRange(lower, upper);
+    }
+
+    public double lowerEndpoint() {
+	return lower;
+    }
+
+    public double upperEndpoint() {
+	return upper;
+    }
+
+    public boolean contains(double value) {
+	return (value >= lower) && (value <= upper);
+    }
+
+    public double length() {
+	return upper - lower;
+    }
+
+    public double center() {
+	return (upper + lower) / 2.0;
+    }
+
+    public Range<Double> toRange() {
+	return Range.closed(lower, upper);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (!(obj instanceof DoubleRange))
+	    return false;
+	DoubleRange other = (DoubleRange) obj;
+	return (Double.compare(lower, other.lower) == 0)
+		&& (Double.compare(upper, other.upper) == 0);
+    }
+
+    @Override
+    public int hashCode() {
+	long bits = Double.doubleToLongBits(lower) * 31
+		+ Double.doubleToLongBits(upper);
+	return (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public String toString() {
+	return "[" + lower + ".." + upper + "]";
+    }
+
+}
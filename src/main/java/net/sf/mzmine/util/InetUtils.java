@@ -22,15 +22,21 @@ package net.sf.mzmine.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Internet related utilities
  */
 public class InetUtils {
 
+    // Timeouts in milliseconds. Without them, a stalled server would block
+    // the calling task forever.
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int READ_TIMEOUT = 120000;
+
     /**
      * Opens a connection to the given URL (typically HTTP) and retrieves the
      * data from server. Data is assumed to be in UTF-8 encoding.
@@ -39,18 +45,44 @@ public class InetUtils {
 
 	URLConnection connection = url.openConnection();
 	connection.setRequestProperty("User-agent", "MZmine 2");
-	InputStream is = connection.getInputStream();
+	connection.setConnectTimeout(CONNECT_TIMEOUT);
+	connection.setReadTimeout(READ_TIMEOUT);
+
+	InputStream is;
+	try {
+	    is = connection.getInputStream();
+	} catch (IOException e) {
+	    // Read and close the error response, so the underlying HTTP
+	    // connection can be kept alive and reused by the next request
+	    if (connection instanceof HttpURLConnection) {
+		InputStream es = ((HttpURLConnection) connection)
+			.getErrorStream();
+		if (es != null) {
+		    try {
+			byte buffer[] = new byte[1024];
+			while (es.read(buffer) > 0)
+			    ;
+		    } finally {
+			es.close();
+		    }
+		}
+	    }
+	    throw e;
+	}
 
 	if (is == null) {
 	    throw new IOException("Could not establish a connection to " + url);
 	}
 
-	StringBuffer buffer = new StringBuffer();
+	StringBuilder buffer = new StringBuilder();
 
+	// The stream must be read completely and closed, so the HTTP connection
+	// is returned to the keep-alive cache
 	try {
-	    InputStreamReader reader = new InputStreamReader(is, "UTF-8");
+	    InputStreamReader reader = new InputStreamReader(is,
+		    StandardCharsets.UTF_8);
 
-	    char[] cb = new char[1024];
+	    char[] cb = new char[8192];
 
 	    int amtRead = reader.read(cb);
 	    while (amtRead > 0) {
@@ -58,13 +90,10 @@ public class InetUtils {
 		amtRead = reader.read(cb);
 	    }
 
-	} catch (UnsupportedEncodingException e) {
-	    // This should never happen, because UTF-8 is supported
-	    e.printStackTrace();
+	} finally {
+	    is.close();
 	}
 
-	is.close();
-
 	return buffer.toString();
 
     }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import net.sf.mzmine.datamodel.PeakListRow;
+
+import com.google.common.collect.Range;
+
+/**
+ * Index of peak list rows sorted by their average m/z, for repeated searches
+ * of rows inside an m/z and retention time range. Each search only checks the
+ * rows inside the m/z range, instead of all rows of the peak list as
+ * PeakList.getRowsInsideScanAndMZRange() does. The index is a snapshot, rows
+ * added to the peak list later are not included.
+ */
+public class PeakListRowIndex {
+
+    private final PeakListRow rows[];
+
+    // Positions of the rows in the rows array, sorted by m/z
+    private final int sortedPositions[];
+    private final double sortedMZValues[];
+
+    public PeakListRowIndex(PeakListRow rows[]) {
+
+	this.rows = rows;
+
+	final double mzValues[] = new double[rows.length];
+	Integer order[] = new Integer[rows.length];
+	for (int i = 0; i < rows.length; i++) {
+	    mzValues[i] = rows[i].getAverageMZ();
+	    order[i] = i;
+	}
+
+	Arrays.sort(order, new Comparator<Integer>() {
+	    @Override
+	    public int compare(Integer i1, Integer i2) {
+		return Double.compare(mzValues[i1], mzValues[i2]);
+	    }
+	});
+
+	sortedPositions = new int[rows.length];
+	sortedMZValues = new double[rows.length];
+	for (int i = 0; i < rows.length; i++) {
+	    sortedPositions[i] = order[i];
+	    sortedMZValues[i] = mzValues[order[i]];
+	}
+    }
+
+    /**
+     * Returns all rows inside given retention time and m/z range, in the order
+     * of the rows array given to the constructor. This gives the same result
+     * as PeakList.getRowsInsideScanAndMZRange().
+     */
+    public PeakListRow[] getRowsInsideScanAndMZRange(Range<Double> rtRange,
+	    Range<Double> mzRange) {
+
+	final DoubleRange rtLimits = DoubleRange.fromRange(rtRange);
+	final DoubleRange mzLimits = DoubleRange.fromRange(mzRange);
+
+	// Find the first row with m/z >= lower m/z limit
+	int low = 0, high = sortedMZValues.length;
+	while (low < high) {
+	    int mid = (low + high) >>> 1;
+	    if (sortedMZValues[mid] < mzLimits.lowerEndpoint())
+		low = mid + 1;
+	    else
+		high = mid;
+	}
+
+	int positions[] = new int[16];
+	int count = 0;
+	for (int i = low; (i < sortedMZValues.length)
+		&& (sortedMZValues[i] <= mzLimits.upperEndpoint()); i++) {
+	    final int position = sortedPositions[i];
+	    if (!rtLimits.contains(rows[position].getAverageRT()))
+		continue;
+	    if (count == positions.length)
+		positions = Arrays.copyOf(positions, count * 2);
+	    positions[count++] = position;
+	}
+
+	Arrays.sort(positions, 0, count);
+
+	PeakListRow result[] = new PeakListRow[count];
+	for (int i = 0; i < count; i++)
+	    result[i] = rows[positions[i]];
+	return result;
+    }
+
+}
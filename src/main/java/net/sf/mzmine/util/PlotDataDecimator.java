@@ -0,0 +1,239 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.util.Arrays;
+
+/**
+ * Level-of-detail view of a series of plot data points sorted by X value.
+ * Drawing every data point of a large scan or chromatogram is slow, and most
+ * of the points fall onto the same screen pixels anyway. This class selects
+ * the data points which are worth drawing for the visible X range: if the
+ * range contains more data points than about 2x the plot width in pixels, the
+ * points are divided into buckets and only the lowest and highest point of
+ * each bucket is kept, so the drawn outline looks the same as the full data.
+ * 
+ * The buckets form a pyramid, each level merging LEVEL_FACTOR buckets of the
+ * level below. The levels are calculated only when the zoom requires them,
+ * from the closest finer level which is already available.
+ * 
+ * The data points are addressed by "items" (index among the selected points),
+ * which are what the plot data set shows to JFreeChart, and "indexes" (index
+ * into the original arrays). The arrays are not copied, so they must not be
+ * modified after the decimator is created.
+ */
+public class PlotDataDecimator {
+
+    private static final int LEVEL_FACTOR = 4;
+
+    private final double xValues[], yValues[];
+    private final int size;
+    private final boolean sorted;
+
+    // Indexes of lowest and highest data point of each bucket, per level.
+    // Level 0 are the data points themselves, so it is never used.
+    private final int minIndexes[][] = new int[16][];
+    private final int maxIndexes[][] = new int[16][];
+
+    // Selected data points. If items is null, the selection is a continuous
+    // range of indexes starting at firstIndex.
+    private int items[];
+    private int firstIndex, itemCount;
+
+    // Parameters of the current selection
+    private double lastXMin = Double.NaN, lastXMax = Double.NaN;
+    private int lastPixelWidth;
+
+    /**
+     * Creates a decimator for the first size values of given arrays. Initially
+     * all data points are selected.
+     */
+    public PlotDataDecimator(double xValues[], double yValues[], int size) {
+	this.xValues = xValues;
+	this.yValues = yValues;
+	this.size = size;
+
+	boolean isSorted = true;
+	for (int i = 1; i < size; i++) {
+	    if (xValues[i] < xValues[i - 1]) {
+		isSorted = false;
+		break;
+	    }
+	}
+	this.sorted = isSorted;
+
+	this.firstIndex = 0;
+	this.itemCount = size;
+    }
+
+    /**
+     * Returns true if the X values are sorted, so the data points can be
+     * decimated. Otherwise, all data points are always selected.
+     */
+    public boolean isSorted() {
+	return sorted;
+    }
+
+    public int getItemCount() {
+	return itemCount;
+    }
+
+    /**
+     * Returns the index of the data point shown as given item
+     */
+    public int getIndex(int item) {
+	if (items == null)
+	    return firstIndex + item;
+	return items[item];
+    }
+
+    /**
+     * Selects the data points to draw for given visible X range and plot width
+     * in pixels. One data point on each side outside of the range is always
+     * included, so the lines continue to the edges of the plot.
+     */
+    public void setVisibleRange(double xMin, double xMax, int pixelWidth) {
+
+	if ((xMin == lastXMin) && (xMax == lastXMax)
+		&& (pixelWidth == lastPixelWidth))
+	    return;
+	lastXMin = xMin;
+	lastXMax = xMax;
+	lastPixelWidth = pixelWidth;
+
+	final int maxBuckets = Math.max(pixelWidth, 2);
+
+	// Small data sets are always shown complete
+	if (!sorted || (size <= 2L * maxBuckets)) {
+	    items = null;
+	    firstIndex = 0;
+	    itemCount = size;
+	    return;
+	}
+
+	int from = lowerBound(xMin) - 1;
+	if (from < 0)
+	    from = 0;
+	int to = lowerBound(Math.nextUp(xMax)) + 1;
+	if (to > size)
+	    to = size;
+	final int count = Math.max(to - from, 0);
+
+	if (count <= 2L * maxBuckets) {
+	    items = null;
+	    firstIndex = from;
+	    itemCount = count;
+	    return;
+	}
+
+	// Find the finest level which fits into the plot width. The range may
+	// start and end in the middle of a bucket, so we count one more.
+	int level = 1;
+	int bucketSize = LEVEL_FACTOR;
+	while ((count - 1) / bucketSize + 2 > maxBuckets) {
+	    level++;
+	    bucketSize *= LEVEL_FACTOR;
+	}
+	calculateLevel(level);
+
+	final int levelMin[] = minIndexes[level], levelMax[] = maxIndexes[level];
+	final int firstBucket = from / bucketSize;
+	final int lastBucket = (to - 1) / bucketSize;
+
+	int newItems[] = new int[(lastBucket - firstBucket + 1) * 2];
+	int newCount = 0;
+	for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+	    int minIndex = levelMin[bucket], maxIndex = levelMax[bucket];
+	    newItems[newCount++] = Math.min(minIndex, maxIndex);
+	    if (minIndex != maxIndex)
+		newItems[newCount++] = Math.max(minIndex, maxIndex);
+	}
+
+	items = Arrays.copyOf(newItems, newCount);
+	firstIndex = 0;
+	itemCount = newCount;
+
+    }
+
+    /**
+     * Calculates the buckets of given level, unless they are already known
+     */
+    private void calculateLevel(int level) {
+
+	if (minIndexes[level] != null)
+	    return;
+
+	// Find the closest finer level we can merge
+	int sourceLevel = level - 1;
+	while ((sourceLevel > 0) && (minIndexes[sourceLevel] == null))
+	    sourceLevel--;
+
+	int sourceSize = 1;
+	for (int i = 0; i < sourceLevel; i++)
+	    sourceSize *= LEVEL_FACTOR;
+	int mergedBuckets = 1;
+	for (int i = sourceLevel; i < level; i++)
+	    mergedBuckets *= LEVEL_FACTOR;
+
+	final int sourceMin[] = minIndexes[sourceLevel];
+	final int sourceMax[] = maxIndexes[sourceLevel];
+	final int sourceCount = (size - 1) / sourceSize + 1;
+	final int bucketCount = (sourceCount - 1) / mergedBuckets + 1;
+
+	int levelMin[] = new int[bucketCount];
+	int levelMax[] = new int[bucketCount];
+
+	for (int bucket = 0; bucket < bucketCount; bucket++) {
+	    final int first = bucket * mergedBuckets;
+	    final int last = Math.min(first + mergedBuckets, sourceCount);
+	    int minIndex = -1, maxIndex = -1;
+	    for (int i = first; i < last; i++) {
+		int lowest = (sourceLevel == 0) ? i : sourceMin[i];
+		int highest = (sourceLevel == 0) ? i : sourceMax[i];
+		if ((minIndex < 0) || (yValues[lowest] < yValues[minIndex]))
+		    minIndex = lowest;
+		if ((maxIndex < 0) || (yValues[highest] > yValues[maxIndex]))
+		    maxIndex = highest;
+	    }
+	    levelMin[bucket] = minIndex;
+	    levelMax[bucket] = maxIndex;
+	}
+
+	minIndexes[level] = levelMin;
+	maxIndexes[level] = levelMax;
+
+    }
+
+    /**
+     * Returns the index of the first data point with X value >= x
+     */
+    private int lowerBound(double x) {
+	int low = 0, high = size;
+	while (low < high) {
+	    int mid = (low + high) >>> 1;
+	    if (xValues[mid] < x)
+		low = mid + 1;
+	    else
+		high = mid;
+	}
+	return low;
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.annotation.Nullable;
+
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.RawDataFileWriter;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.datamodel.impl.SimpleScan;
+import net.sf.mzmine.taskcontrol.SharedTaskExecutor;
+import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Copies the scans of a raw data file into a new raw data file, passing each
+ * scan through a ScanProcessor on the way. The work is split between a reader
+ * thread, which reads the data points of the scans from the original file, a
+ * pool of workers running the processor, and the calling thread, which writes
+ * the processed scans. The scans are written in their original order, so the
+ * new file looks exactly like a file written by a simple loop over the scans.
+ * 
+ * The number of scans waiting to be processed or written is limited, so only
+ * a small part of the data file is kept in memory.
+ */
+public class ScanProcessingPipeline {
+
+    /**
+     * Processing of a single scan. The processor is called from several
+     * threads at once.
+     */
+    public interface ScanProcessor {
+
+	/**
+	 * Returns the scan which should be written to the new data file in
+	 * place of given scan, or null if the scan should be left out. Given
+	 * scan holds its data points in memory and is not shared with any other
+	 * thread.
+	 */
+	public Scan processScan(Scan scan) throws Exception;
+
+    }
+
+    // Number of scans waiting in the queue, per worker thread
+    private static final int QUEUED_SCANS_PER_THREAD = 4;
+
+    // Marks the end of the queue
+    private static final Future<Scan> END_OF_SCANS = new FutureTask<Scan>(
+	    new Callable<Scan>() {
+		public Scan call() {
+		    return null;
+		}
+	    });
+
+    private final RawDataFile dataFile;
+    private final int scanNumbers[];
+    private final ScanProcessor processor;
+
+    private volatile int processedScans = 0;
+
+    // Set when the writer does not take any more scans from the queue
+    private volatile boolean stopped = false;
+    private volatile Throwable readerError;
+
+    public ScanProcessingPipeline(RawDataFile dataFile, int scanNumbers[],
+	    ScanProcessor processor) {
+	this.dataFile = dataFile;
+	this.scanNumbers = scanNumbers;
+	this.processor = processor;
+    }
+
+    /**
+     * Returns the number of scans processed and written so far
+     */
+    public int getProcessedScans() {
+	return processedScans;
+    }
+
+    /**
+     * Processes all scans and writes the results to given writer. The writer
+     * is only used by the calling thread. If task is not null, the processing
+     * stops as soon as the task is canceled.
+     */
+    public void process(RawDataFileWriter writer, @Nullable Task task)
+	    throws Exception {
+
+	final int numOfThreads = SharedTaskExecutor.getNumOfThreads();
+	final BlockingQueue<Future<Scan>> queue = new ArrayBlockingQueue<Future<Scan>>(
+		numOfThreads * QUEUED_SCANS_PER_THREAD);
+	final ExecutorService executor = SharedTaskExecutor.newExecutor();
+
+	Thread reader = new Thread(new Reader(queue, executor, task),
+		"Scan reader for " + dataFile);
+	reader.setDaemon(true);
+	reader.start();
+
+	try {
+	    while (!isCanceled(task)) {
+		Future<Scan> future = queue.take();
+		if (future == END_OF_SCANS)
+		    break;
+		Scan newScan;
+		try {
+		    newScan = future.get();
+		} catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    if (cause instanceof Exception)
+			throw (Exception) cause;
+		    if (cause instanceof Error)
+			throw (Error) cause;
+		    throw e;
+		}
+		if (newScan != null)
+		    writer.addScan(newScan);
+		processedScans++;
+	    }
+	} finally {
+	    // Release the reader if it is waiting for space in the queue. The
+	    // reader checks the stopped flag before putting another scan, so
+	    // after the queue is cleared it can put at most one more.
+	    stopped = true;
+	    queue.clear();
+	    reader.join();
+	    executor.shutdownNow();
+	}
+
+	if (readerError instanceof Exception)
+	    throw (Exception) readerError;
+	if (readerError instanceof Error)
+	    throw (Error) readerError;
+
+    }
+
+    private static boolean isCanceled(Task task) {
+	return (task != null) && (task.getStatus() == TaskStatus.CANCELED);
+    }
+
+    private class Reader implements Runnable {
+
+	private final BlockingQueue<Future<Scan>> queue;
+	private final ExecutorService executor;
+	private final Task task;
+
+	// The reader loads the scans, so it records its I/O for the task
+	// which created it
+	private final TaskMetrics metrics = TaskMetrics.getCurrentMetrics();
+
+	Reader(BlockingQueue<Future<Scan>> queue, ExecutorService executor,
+		Task task) {
+	    this.queue = queue;
+	    this.executor = executor;
+	    this.task = task;
+	}
+
+	public void run() {
+	    TaskMetrics.setCurrentMetrics(metrics);
+	    try {
+		for (int scanNumber : scanNumbers) {
+		    if (stopped || isCanceled(task))
+			break;
+		    Scan scan = dataFile.getScan(scanNumber);
+		    if (scan == null)
+			continue;
+		    // Read the data points here, so the workers do not compete
+		    // for the data file
+		    final Scan loadedScan = new SimpleScan(scan);
+		    queue.put(executor.submit(new Callable<Scan>() {
+			public Scan call() throws Exception {
+			    return processor.processScan(loadedScan);
+			}
+		    }));
+		}
+	    } catch (Throwable e) {
+		readerError = e;
+	    }
+	    if (stopped)
+		return;
+	    try {
+		queue.put(END_OF_SCANS);
+	    } catch (InterruptedException e) {
+		// Nobody is waiting for the end of the queue
+	    }
+	}
+    }
+
+}
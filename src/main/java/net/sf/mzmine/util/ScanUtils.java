@@ -142,8 +142,9 @@ public class ScanUtils {
     public static DataPoint[] selectDataPointsByMass(DataPoint dataPoints[],
 	    Range<Double> mzRange) {
 	ArrayList<DataPoint> goodPoints = new ArrayList<DataPoint>();
+	DoubleRange range = DoubleRange.fromRange(mzRange);
 	for (DataPoint dp : dataPoints) {
-	    if (mzRange.contains(dp.getMZ()))
+	    if (range.contains(dp.getMZ()))
 		goodPoints.add(dp);
 	}
 	return goodPoints.toArray(new DataPoint[0]);
@@ -498,13 +499,17 @@ public class ScanUtils {
 	int bestFragmentScan = -1;
 	double topBasePeak = 0;
 
-	int[] fragmentScanNumbers = dataFile.getScanNumbers(2, rtRange);
+	// Use the cached list of all MS/MS scans and check the retention time
+	// here, because getScanNumbers(2, rtRange) iterates through all scans of
+	// the data file. This method is called for every detected peak.
+	int[] fragmentScanNumbers = dataFile.getScanNumbers(2);
 
 	for (int number : fragmentScanNumbers) {
 
 	    Scan scan = dataFile.getScan(number);
 
-	    if (mzRange.contains(scan.getPrecursorMZ())) {
+	    if (rtRange.contains(scan.getRetentionTime())
+		    && mzRange.contains(scan.getPrecursorMZ())) {
 
 		DataPoint basePeak = scan.getHighestDataPoint();
 
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.project.impl.StorableScan;
+
+/**
+ * Window of consecutive scans of a raw data file, for methods which process
+ * each scan together with its neighbours. The data points of the scans inside
+ * the window are kept as primitive m/z and intensity arrays in a ring buffer.
+ * When the window is moved, only the scans which were not inside the previous
+ * window are read from the data file, so each scan is typically decoded once,
+ * instead of once for every window it belongs to.
+ * 
+ * The window is addressed by the indexes of the scans in the scanNumbers array
+ * given to the constructor. This class is not thread-safe.
+ */
+public class SlidingScanWindow {
+
+    private static final Logger logger = Logger
+	    .getLogger(SlidingScanWindow.class.getName());
+
+    private final RawDataFile dataFile;
+    private final int scanNumbers[];
+
+    // Ring buffer, scan with index i is stored at position i % capacity
+    private double mzValues[][], intensityValues[][];
+    private int loadedIndexes[];
+
+    private int first = 0, last = -1;
+
+    public SlidingScanWindow(RawDataFile dataFile, int scanNumbers[]) {
+	this.dataFile = dataFile;
+	this.scanNumbers = scanNumbers;
+	allocate(16);
+    }
+
+    private void allocate(int capacity) {
+	mzValues = new double[capacity][];
+	intensityValues = new double[capacity][];
+	loadedIndexes = new int[capacity];
+	for (int i = 0; i < capacity; i++)
+	    loadedIndexes[i] = -1;
+    }
+
+    /**
+     * Moves the window to the scans from firstIndex to lastIndex (both
+     * inclusive), and reads the data points of the scans which are not
+     * loaded yet.
+     */
+    public void moveTo(int firstIndex, int lastIndex) {
+
+	if ((firstIndex < 0) || (lastIndex >= scanNumbers.length)
+		|| (firstIndex > lastIndex + 1))
+	    throw new IndexOutOfBoundsException("Invalid scan window "
+		    + firstIndex + " - " + lastIndex);
+
+	final int size = lastIndex - firstIndex + 1;
+	if (size > loadedIndexes.length) {
+
+	    // Grow the ring buffer, keeping the scans which stay inside the
+	    // window
+	    final double oldMZValues[][] = mzValues;
+	    final double oldIntensityValues[][] = intensityValues;
+	    final int oldLoadedIndexes[] = loadedIndexes;
+	    allocate(Math.max(size, loadedIndexes.length * 2));
+	    for (int i = 0; i < oldLoadedIndexes.length; i++) {
+		final int index = oldLoadedIndexes[i];
+		if ((index < firstIndex) || (index > lastIndex))
+		    continue;
+		final int slot = index % loadedIndexes.length;
+		mzValues[slot] = oldMZValues[i];
+		intensityValues[slot] = oldIntensityValues[i];
+		loadedIndexes[slot] = index;
+	    }
+	}
+
+	for (int index = firstIndex; index <= lastIndex; index++) {
+	    final int slot = index % loadedIndexes.length;
+	    if (loadedIndexes[slot] == index)
+		continue;
+	    Scan scan = dataFile.getScan(scanNumbers[index]);
+	    if (scan instanceof StorableScan) {
+		readStoredScan((StorableScan) scan, slot);
+	    } else {
+		DataPoint dataPoints[] = scan.getDataPoints();
+		double mz[] = new double[dataPoints.length];
+		double intensity[] = new double[dataPoints.length];
+		for (int i = 0; i < dataPoints.length; i++) {
+		    mz[i] = dataPoints[i].getMZ();
+		    intensity[i] = dataPoints[i].getIntensity();
+		}
+		mzValues[slot] = mz;
+		intensityValues[slot] = intensity;
+	    }
+	    loadedIndexes[slot] = index;
+	}
+
+	first = firstIndex;
+	last = lastIndex;
+    }
+
+    /**
+     * Returns the index of the first scan of the window
+     */
+    public int getFirstIndex() {
+	return first;
+    }
+
+    /**
+     * Returns the index of the last scan of the window
+     */
+    public int getLastIndex() {
+	return last;
+    }
+
+    /**
+     * Returns the m/z values of the scan with given index, which must be
+     * inside the window. The returned array must not be modified.
+     */
+    public double[] getMZValues(int index) {
+	return mzValues[getSlot(index)];
+    }
+
+    /**
+     * Returns the intensity values of the scan with given index, which must be
+     * inside the window. The returned array must not be modified.
+     */
+    public double[] getIntensityValues(int index) {
+	return intensityValues[getSlot(index)];
+    }
+
+    /**
+     * Decodes the stored data points of the scan directly into the arrays of
+     * the window, without creating DataPoint instances
+     */
+    private void readStoredScan(StorableScan scan, int slot) {
+	final int numOfDataPoints = scan.getNumberOfDataPoints();
+	double mz[] = new double[numOfDataPoints];
+	double intensity[] = new double[numOfDataPoints];
+	try {
+	    RawDataFileImpl storage = (RawDataFileImpl) scan.getDataFile();
+	    storage.readDataPoints(scan.getStorageID(), mz, intensity);
+	} catch (IOException e) {
+	    logger.severe("Could not read data from temporary file "
+		    + e.toString());
+	    mz = new double[0];
+	    intensity = new double[0];
+	}
+	mzValues[slot] = mz;
+	intensityValues[slot] = intensity;
+    }
+
+    private int getSlot(int index) {
+	if ((index < first) || (index > last))
+	    throw new IndexOutOfBoundsException("Scan " + index
+		    + " is not inside the window " + first + " - " + last);
+	return index % loadedIndexes.length;
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/**
+ * ZIP file related utilities
+ */
+public class ZipUtils {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int END_LENGTH = 22;
+    private static final int ZIP64_END_LENGTH = 56;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    // CRC-32 polynomial, bit-reversed as in java.util.zip.CRC32
+    private static final int CRC32_POLYNOMIAL = 0xEDB88320;
+
+    // x^(2^n) modulo the CRC-32 polynomial, for n = 0..31
+    private static final int CRC32_X2N[] = new int[32];
+
+    static {
+	int p = 1 << 30; // x^1
+	CRC32_X2N[0] = p;
+	for (int n = 1; n < 32; n++)
+	    CRC32_X2N[n] = p = multiplyModCRC32(p, p);
+    }
+
+    /**
+     * Returns the CRC-32 of two concatenated byte sequences, given the CRC-32
+     * of each sequence and the length of the second one, like
+     * crc32_combine() of zlib. This allows computing the CRC of a ZIP entry
+     * from the CRCs of its parts without reading them again.
+     */
+    public static long combineCRC32(long crc1, long crc2, long length2) {
+
+	// Multiply crc1 by x^(8 * length2), i.e. append length2 zero bytes
+	int p = 1 << 31; // x^0
+	int k = 3;
+	for (long n = length2; n != 0; n >>>= 1, k++) {
+	    if ((n & 1) != 0)
+		p = multiplyModCRC32(CRC32_X2N[k & 31], p);
+	}
+	final int crc = multiplyModCRC32(p, (int) crc1) ^ (int) crc2;
+	return crc & 0xFFFFFFFFL;
+
+    }
+
+    /**
+     * Multiplies two polynomials modulo the CRC-32 polynomial, in the
+     * bit-reversed representation
+     */
+    private static int multiplyModCRC32(int a, int b) {
+	int product = 0;
+	for (int m = 1 << 31; m != 0; m >>>= 1) {
+	    if ((a & m) != 0)
+		product ^= b;
+	    b = ((b & 1) != 0) ? (b >>> 1) ^ CRC32_POLYNOMIAL : b >>> 1;
+	}
+	return product;
+    }
+
+    /**
+     * Returns the positions of the data of all uncompressed (STORED) entries
+     * in given ZIP file, mapped by the entry names. The data of such entries
+     * can be read directly from the ZIP file, e.g. by memory-mapping, without
+     * extracting them. java.util.zip.ZipFile does not provide these
+     * positions, so we read them from the central directory and the local
+     * file headers.
+     */
+    public static Map<String, Long> getStoredEntryOffsets(File zipFile)
+	    throws IOException {
+
+	Map<String, Long> offsets = new Hashtable<String, Long>();
+
+	RandomAccessFile file = new RandomAccessFile(zipFile, "r");
+	try {
+
+	    // Find the end of central directory record, which may be followed
+	    // by a comment of up to 64 kB
+	    final long fileLength = file.length();
+	    final int tailLength = (int) Math.min(fileLength, 0xFFFF
+		    + END_LENGTH);
+	    final long tailPosition = fileLength - tailLength;
+	    ByteBuffer tail = read(file, tailPosition, tailLength);
+	    int endPosition = -1;
+	    for (int i = tailLength - END_LENGTH; i >= 0; i--) {
+		if (tail.getInt(i) == END_SIGNATURE) {
+		    endPosition = i;
+		    break;
+		}
+	    }
+	    if (endPosition < 0)
+		throw new IOException(zipFile + " is not a valid ZIP file");
+
+	    long numOfEntries = getUnsignedShort(tail, endPosition + 10);
+	    long directoryLength = getUnsignedInt(tail, endPosition + 12);
+	    long directoryPosition = getUnsignedInt(tail, endPosition + 16);
+
+	    // Large files have the real values in the ZIP64 end of central
+	    // directory record
+	    if ((numOfEntries == 0xFFFF) || (directoryLength == 0xFFFFFFFFL)
+		    || (directoryPosition == 0xFFFFFFFFL)) {
+		final long locatorPosition = tailPosition + endPosition
+			- ZIP64_LOCATOR_LENGTH;
+		ByteBuffer locator = read(file, locatorPosition,
+			ZIP64_LOCATOR_LENGTH);
+		if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+		    ByteBuffer zip64End = read(file, locator.getLong(8),
+			    ZIP64_END_LENGTH);
+		    if (zip64End.getInt(0) != ZIP64_END_SIGNATURE)
+			throw new IOException(zipFile
+				+ " has an invalid ZIP64 directory");
+		    numOfEntries = zip64End.getLong(32);
+		    directoryLength = zip64End.getLong(40);
+		    directoryPosition = zip64End.getLong(48);
+		}
+	    }
+
+	    ByteBuffer directory = read(file, directoryPosition,
+		    (int) directoryLength);
+	    int position = 0;
+	    for (long entry = 0; entry < numOfEntries; entry++) {
+
+		if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE)
+		    throw new IOException(zipFile
+			    + " has an invalid central directory");
+
+		final int method = getUnsignedShort(directory, position + 10);
+		final long compressedSize = getUnsignedInt(directory,
+			position + 20);
+		final long size = getUnsignedInt(directory, position + 24);
+		final int nameLength = getUnsignedShort(directory,
+			position + 28);
+		final int extraLength = getUnsignedShort(directory,
+			position + 30);
+		final int commentLength = getUnsignedShort(directory,
+			position + 32);
+		long headerPosition = getUnsignedInt(directory, position + 42);
+
+		// ZipFile decodes the entry names as UTF-8, too
+		byte nameBytes[] = new byte[nameLength];
+		directory.position(position + CENTRAL_HEADER_LENGTH);
+		directory.get(nameBytes);
+		String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+		// The position of the local header may be stored in the ZIP64
+		// extra field, after the sizes which did not fit
+		if (headerPosition == 0xFFFFFFFFL) {
+		    int extra = position + CENTRAL_HEADER_LENGTH + nameLength;
+		    final int extraEnd = extra + extraLength;
+		    while (extra + 4 <= extraEnd) {
+			final int id = getUnsignedShort(directory, extra);
+			final int length = getUnsignedShort(directory,
+				extra + 2);
+			if (id == ZIP64_EXTRA_ID) {
+			    int value = extra + 4;
+			    if (size == 0xFFFFFFFFL)
+				value += 8;
+			    if (compressedSize == 0xFFFFFFFFL)
+				value += 8;
+			    headerPosition = directory.getLong(value);
+			    break;
+			}
+			extra += 4 + length;
+		    }
+		}
+
+		if (method == ZipEntry.STORED) {
+		    ByteBuffer header = read(file, headerPosition,
+			    LOCAL_HEADER_LENGTH);
+		    if (header.getInt(0) != LOCAL_HEADER_SIGNATURE)
+			throw new IOException(zipFile
+				+ " has an invalid header of entry " + name);
+		    final long dataPosition = headerPosition
+			    + LOCAL_HEADER_LENGTH
+			    + getUnsignedShort(header, 26)
+			    + getUnsignedShort(header, 28);
+		    offsets.put(name, dataPosition);
+		}
+
+		position += CENTRAL_HEADER_LENGTH + nameLength + extraLength
+			+ commentLength;
+	    }
+
+	} finally {
+	    file.close();
+	}
+
+	return offsets;
+
+    }
+
+    private static ByteBuffer read(RandomAccessFile file, long position,
+	    int length) throws IOException {
+	byte bytes[] = new byte[length];
+	file.seek(position);
+	file.readFully(bytes);
+	return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int getUnsignedShort(ByteBuffer buffer, int position) {
+	return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private static long getUnsignedInt(ByteBuffer buffer, int position) {
+	return buffer.getInt(position) & 0xFFFFFFFFL;
+    }
+
+}
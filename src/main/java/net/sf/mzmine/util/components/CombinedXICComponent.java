@@ -52,9 +52,6 @@ public class CombinedXICComponent extends JComponent {
 
     private Feature[] peaks;
 
-    private Range<Double> rtRange;
-    private double maxIntensity;
-
     /**
      * @param ChromatographicPeak
      *            [] Picked peaks to plot
@@ -65,10 +62,34 @@ public class CombinedXICComponent extends JComponent {
 	if (id >= 0)
 	    setToolTipText(ComponentToolTipManager.CUSTOM + id);
 
-	double maxIntensity = 0;
 	this.peaks = peaks;
 
+	this.setBorder(componentBorder);
+
+    }
+
+    public void paint(Graphics g) {
+
+	super.paint(g);
+
+	// get canvas size
+	Dimension size = getSize();
+
+	paintPeakShapes((Graphics2D) g, peaks, size.width, size.height);
+
+    }
+
+    /**
+     * Paints the shapes of given peaks into an area of given size, starting at
+     * [0:0]. The peaks may contain null values. This method does not use any
+     * component, so it can also be used to paint into an image.
+     */
+    public static void paintPeakShapes(Graphics2D g2, Feature[] peaks,
+	    int width, int height) {
+
 	// find data boundaries
+	Range<Double> rtRange = null;
+	double maxIntensity = 0;
 	for (Feature peak : peaks) {
 	    if (peak == null)
 		continue;
@@ -81,25 +102,11 @@ public class CombinedXICComponent extends JComponent {
 		rtRange = rtRange.span(peak.getDataFile().getDataRTRange(1));
 	}
 
-	this.maxIntensity = maxIntensity;
-
-	this.setBorder(componentBorder);
-
-    }
-
-    public void paint(Graphics g) {
-
-	super.paint(g);
-
-	// use Graphics2D for antialiasing
-	Graphics2D g2 = (Graphics2D) g;
-
 	// turn on antialiasing
 	g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 		RenderingHints.VALUE_ANTIALIAS_ON);
 
-	// get canvas size
-	Dimension size = getSize();
+	Dimension size = new Dimension(width, height);
 
 	int colorIndex = 0;
 
@@ -83,15 +83,28 @@ public class PeakXICComponent extends JComponent {
 
 	super.paint(g);
 
-	// use Graphics2D for antialiasing
-	Graphics2D g2 = (Graphics2D) g;
+	// get canvas size
+	Dimension size = getSize();
+
+	paintPeakShape((Graphics2D) g, peak, rtRange, maxIntensity,
+		size.width, size.height);
+
+    }
+
+    /**
+     * Paints the shape of given peak into an area of given size, starting at
+     * [0:0]. The X axis covers given retention time range, the Y axis the
+     * intensities from 0 to maxIntensity. This method does not use any
+     * component, so it can also be used to paint into an image.
+     */
+    public static void paintPeakShape(Graphics2D g2, Feature peak,
+	    Range<Double> rtRange, double maxIntensity, int width, int height) {
 
 	// turn on antialiasing
 	g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 		RenderingHints.VALUE_ANTIALIAS_ON);
 
-	// get canvas size
-	Dimension size = getSize();
+	Dimension size = new Dimension(width, height);
 
 	// get scan numbers, one data point per each scan
 	RawDataFile dataFile = peak.getDataFile();
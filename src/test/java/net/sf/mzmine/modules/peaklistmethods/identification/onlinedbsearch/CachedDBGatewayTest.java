@@ -0,0 +1,255 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.MZTolerance;
+import net.sf.mzmine.util.InetUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the response cache and the rate limiter of CachedDBGateway, using a
+ * local HTTP server in place of the database server
+ */
+public class CachedDBGatewayTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final MZTolerance mzTolerance = new MZTolerance(0.001, 5);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private DBGateway serverGateway;
+
+    @Before
+    public void startServer() throws IOException {
+
+	server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+	server.createContext("/", new HttpHandler() {
+	    public void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		final String query = exchange.getRequestURI().getQuery();
+		final String response;
+		if (query.startsWith("mass="))
+		    response = "C1\nC2\nC3";
+		else
+		    response = "Name of " + query.substring(3);
+		final byte body[] = response.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.close();
+	    }
+	});
+	server.start();
+
+	final String address = "http://127.0.0.1:"
+		+ server.getAddress().getPort() + "/";
+	serverGateway = new DBGateway() {
+	    public String[] findCompounds(double mass,
+		    MZTolerance mzTolerance, int numOfResults,
+		    ParameterSet parameters) throws IOException {
+		return InetUtils.retrieveData(
+			new URL(address + "?mass=" + mass)).split("\n");
+	    }
+
+	    public DBCompound getCompound(String ID, ParameterSet parameters)
+		    throws IOException {
+		String name = InetUtils.retrieveData(new URL(address + "?id="
+			+ ID));
+		return new DBCompound(OnlineDatabase.HMDB, ID, name, "C6H12O6",
+			new URL(address + ID), new URL(address + ID + ".sdf"),
+			null);
+	    }
+	};
+
+	CachedDBGateway.setQueryRate(OnlineDatabase.HMDB, Double.MAX_VALUE);
+
+    }
+
+    @After
+    public void stopServer() {
+	server.stop(0);
+    }
+
+    /**
+     * Repeated queries are answered from the cache
+     */
+    @Test
+    public void testCacheHitAndMiss() throws IOException {
+
+	CachedDBGateway gateway = new CachedDBGateway(OnlineDatabase.HMDB,
+		serverGateway, temporaryFolder.getRoot(), DAY);
+
+	String ids[] = gateway.findCompounds(100.1, mzTolerance, 10, null);
+	Assert.assertArrayEquals(new String[] { "C1", "C2", "C3" }, ids);
+	Assert.assertEquals(1, requests.get());
+
+	Assert.assertArrayEquals(ids,
+		gateway.findCompounds(100.1, mzTolerance, 10, null));
+	Assert.assertEquals(1, requests.get());
+
+	// Different mass, tolerance or number of results is a miss
+	gateway.findCompounds(200.2, mzTolerance, 10, null);
+	gateway.findCompounds(100.1, new MZTolerance(0.002, 5), 10, null);
+	gateway.findCompounds(100.1, mzTolerance, 20, null);
+	Assert.assertEquals(4, requests.get());
+
+	DBCompound compound = gateway.getCompound("C1", null);
+	Assert.assertEquals(5, requests.get());
+	DBCompound cachedCompound = gateway.getCompound("C1", null);
+	Assert.assertEquals(5, requests.get());
+
+	Assert.assertEquals("Name of C1", cachedCompound.getName());
+	Assert.assertEquals(
+		compound.getPropertyValue(DBCompound.PROPERTY_FORMULA),
+		cachedCompound.getPropertyValue(DBCompound.PROPERTY_FORMULA));
+	Assert.assertEquals(compound.getPropertyValue(DBCompound.PROPERTY_URL),
+		cachedCompound.getPropertyValue(DBCompound.PROPERTY_URL));
+	Assert.assertEquals(compound.get2DStructureURL(),
+		cachedCompound.get2DStructureURL());
+	Assert.assertNull(cachedCompound.get3DStructureURL());
+
+	// A new gateway with the same directory uses the same cache
+	CachedDBGateway otherGateway = new CachedDBGateway(
+		OnlineDatabase.HMDB, serverGateway, temporaryFolder.getRoot(),
+		DAY);
+	otherGateway.getCompound("C1", null);
+	Assert.assertEquals(5, requests.get());
+
+    }
+
+    /**
+     * Without a cache directory, every query is sent to the server
+     */
+    @Test
+    public void testNoCache() throws IOException {
+
+	CachedDBGateway gateway = new CachedDBGateway(OnlineDatabase.HMDB,
+		serverGateway, null, DAY);
+
+	gateway.findCompounds(100.1, mzTolerance, 10, null);
+	gateway.findCompounds(100.1, mzTolerance, 10, null);
+	gateway.getCompound("C1", null);
+	gateway.getCompound("C1", null);
+	Assert.assertEquals(4, requests.get());
+
+    }
+
+    /**
+     * Responses older than the time to live are queried again
+     */
+    @Test
+    public void testTimeToLive() throws IOException {
+
+	final long timeToLive = 60L * 60 * 1000;
+	CachedDBGateway gateway = new CachedDBGateway(OnlineDatabase.HMDB,
+		serverGateway, temporaryFolder.getRoot(), timeToLive);
+
+	gateway.findCompounds(100.1, mzTolerance, 10, null);
+	gateway.getCompound("C1", null);
+	Assert.assertEquals(2, requests.get());
+
+	// Age the cached responses by two hours
+	File cacheFiles[] = new File(temporaryFolder.getRoot(),
+		OnlineDatabase.HMDB.name()).listFiles();
+	Assert.assertEquals(2, cacheFiles.length);
+	for (File cacheFile : cacheFiles) {
+	    Assert.assertTrue(cacheFile.setLastModified(cacheFile
+		    .lastModified() - 2 * timeToLive));
+	}
+
+	gateway.findCompounds(100.1, mzTolerance, 10, null);
+	gateway.getCompound("C1", null);
+	Assert.assertEquals(4, requests.get());
+
+	// The new responses replaced the expired ones
+	gateway.findCompounds(100.1, mzTolerance, 10, null);
+	gateway.getCompound("C1", null);
+	Assert.assertEquals(4, requests.get());
+
+    }
+
+    /**
+     * Queries sent to the server are throttled to the query rate, cached
+     * responses are not
+     */
+    @Test
+    public void testRateLimiter() throws IOException {
+
+	// The rate limiter of a database is shared by all its gateways, this
+	// test uses a database which is not used by the other tests
+	final OnlineDatabase database = OnlineDatabase.KEGG;
+	final double queriesPerSecond = 20;
+	final int numQueries = 50;
+	CachedDBGateway.setQueryRate(database, queriesPerSecond);
+
+	try {
+	    CachedDBGateway gateway = new CachedDBGateway(database,
+		    serverGateway, temporaryFolder.getRoot(), DAY);
+
+	    long startTime = System.nanoTime();
+	    for (int i = 0; i < numQueries; i++)
+		gateway.getCompound("C" + i, null);
+	    long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+	    Assert.assertEquals(numQueries, requests.get());
+
+	    // The limiter may let through up to one second worth of queries
+	    // at once, the rest must wait for their turn
+	    final long minMillis = (long) ((numQueries - queriesPerSecond - 1)
+		    * 1000 / queriesPerSecond);
+	    Assert.assertTrue("Queries took only " + elapsedMillis + " ms",
+		    elapsedMillis >= minMillis);
+
+	    startTime = System.nanoTime();
+	    for (int i = 0; i < numQueries; i++)
+		gateway.getCompound("C" + i, null);
+	    elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+	    Assert.assertEquals(numQueries, requests.get());
+	    Assert.assertTrue("Cached queries took " + elapsedMillis + " ms",
+		    elapsedMillis < minMillis);
+	} finally {
+	    CachedDBGateway.setQueryRate(database, Double.MAX_VALUE);
+	}
+
+    }
+
+}
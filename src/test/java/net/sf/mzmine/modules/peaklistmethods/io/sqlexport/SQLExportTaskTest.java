@@ -0,0 +1,377 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.modules.peaklistmethods.io.sqlexport;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.Feature.FeatureStatus;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.datamodel.impl.SimpleFeature;
+import net.sf.mzmine.datamodel.impl.SimplePeakList;
+import net.sf.mzmine.datamodel.impl.SimplePeakListRow;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Range;
+
+/**
+ * Exports peak lists into an in-memory H2 database. The task connects through
+ * a counting driver, which forwards everything to H2 and counts the
+ * statements and commits sent by the task.
+ */
+public class SQLExportTaskTest {
+
+    private static final String DATABASE_URL = "jdbc:h2:mem:sqlexport;DB_CLOSE_DELAY=-1";
+    private static final String COUNTING_PREFIX = "jdbc:counting:";
+    private static final String TABLE_NAME = "peaks";
+
+    // The table has an ID, m/z and RT column and this many constant columns
+    private static final int NUM_CONSTANT_COLUMNS = 7;
+
+    private static CountingDriver countingDriver;
+    private static Connection database;
+
+    @BeforeClass
+    public static void createDatabase() throws SQLException {
+	database = DriverManager.getConnection(DATABASE_URL);
+	StringBuilder sql = new StringBuilder("CREATE TABLE " + TABLE_NAME
+		+ " (id INT, mz DOUBLE, rt DOUBLE");
+	for (int i = 0; i < NUM_CONSTANT_COLUMNS; i++)
+	    sql.append(", c" + i + " VARCHAR(20)");
+	sql.append(")");
+	Statement statement = database.createStatement();
+	statement.execute(sql.toString());
+	statement.close();
+	countingDriver = new CountingDriver();
+	DriverManager.registerDriver(countingDriver);
+    }
+
+    @AfterClass
+    public static void closeDatabase() throws SQLException {
+	DriverManager.deregisterDriver(countingDriver);
+	database.close();
+    }
+
+    @Before
+    public void resetCounts() {
+	countingDriver.reset();
+    }
+
+    @After
+    public void clearTable() throws SQLException {
+	Statement statement = database.createStatement();
+	statement.execute("DELETE FROM " + TABLE_NAME);
+	statement.close();
+    }
+
+    /**
+     * Records are sent in JDBC batches of batchSize records and committed
+     * whenever commitInterval records have been sent since the last commit
+     */
+    @Test
+    public void testBatchSizeAndCommitInterval() throws Exception {
+
+	runExport(createPeakList(25), 0, 7, 10, false);
+
+	Assert.assertEquals(25, countRows());
+	Assert.assertEquals(300, sumIDs());
+
+	// Batches of 7, 7, 7 and 4 records
+	Assert.assertEquals(4, countingDriver.batches);
+	Assert.assertEquals(0, countingDriver.updates);
+
+	// Committed after 14 and 25 records and at the end of the export
+	Assert.assertEquals(3, countingDriver.commits);
+
+    }
+
+    /**
+     * With commit interval 0, the whole export is one transaction
+     */
+    @Test
+    public void testSingleTransaction() throws Exception {
+
+	runExport(createPeakList(25), 0, 10, 0, false);
+
+	Assert.assertEquals(25, countRows());
+	Assert.assertEquals(3, countingDriver.batches);
+	Assert.assertEquals(1, countingDriver.commits);
+
+    }
+
+    /**
+     * In the multi-row mode, batchSize records are sent in one INSERT
+     * statement, the last statement containing the remaining records
+     */
+    @Test
+    public void testMultiRowInsert() throws Exception {
+
+	runExport(createPeakList(25), NUM_CONSTANT_COLUMNS, 10, 0, true);
+
+	Assert.assertEquals(25, countRows());
+	Assert.assertEquals(300, sumIDs());
+	Assert.assertEquals(0, countingDriver.batches);
+	Assert.assertEquals(3, countingDriver.updates);
+	Assert.assertEquals(10 * (3 + NUM_CONSTANT_COLUMNS),
+		countingDriver.maxStatementParameters);
+
+	ResultSet result = database.createStatement().executeQuery(
+		"SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE c"
+			+ (NUM_CONSTANT_COLUMNS - 1) + " = 'value'");
+	result.next();
+	Assert.assertEquals(25, result.getInt(1));
+	result.close();
+
+    }
+
+    /**
+     * A multi-row INSERT statement never has more than 32766 parameters,
+     * regardless of the batch size
+     */
+    @Test
+    public void testMultiRowInsertParameterLimit() throws Exception {
+
+	final int numColumns = 3 + NUM_CONSTANT_COLUMNS;
+	final int maxRecords = 32766 / numColumns;
+	final int numRows = maxRecords + 100;
+
+	runExport(createPeakList(numRows), NUM_CONSTANT_COLUMNS, 100000, 0,
+		true);
+
+	Assert.assertEquals(numRows, countRows());
+	Assert.assertEquals(2, countingDriver.updates);
+	Assert.assertEquals(maxRecords * numColumns,
+		countingDriver.maxStatementParameters);
+	Assert.assertTrue(countingDriver.maxStatementParameters <= 32766);
+
+    }
+
+    private void runExport(PeakList peakList, int numConstantColumns,
+	    int batchSize, int commitInterval, boolean multiRowInsert) {
+
+	SQLColumnSettings columns = new SQLColumnSettings();
+	addColumn(columns, "id", SQLExportDataType.ID, null);
+	addColumn(columns, "mz", SQLExportDataType.MZ, null);
+	addColumn(columns, "rt", SQLExportDataType.RT, null);
+	for (int i = 0; i < numConstantColumns; i++)
+	    addColumn(columns, "c" + i, SQLExportDataType.CONSTANT, "value");
+
+	ParameterSet parameters = new SQLExportParameters().cloneParameterSet();
+	parameters.getParameter(SQLExportParameters.peakList)
+		.setSpecificPeakLists(new PeakList[] { peakList });
+	parameters.getParameter(SQLExportParameters.connectionString).setValue(
+		COUNTING_PREFIX + DATABASE_URL);
+	parameters.getParameter(SQLExportParameters.tableName).setValue(
+		TABLE_NAME);
+	parameters.getParameter(SQLExportParameters.exportColumns).setValue(
+		columns);
+	parameters.getParameter(SQLExportParameters.emptyExport).setValue(
+		false);
+	parameters.getParameter(SQLExportParameters.batchSize).setValue(
+		batchSize);
+	parameters.getParameter(SQLExportParameters.commitInterval).setValue(
+		commitInterval);
+	parameters.getParameter(SQLExportParameters.multiRowInsert).setValue(
+		multiRowInsert);
+
+	SQLExportTask task = new SQLExportTask(parameters);
+	task.run();
+	Assert.assertEquals(task.getErrorMessage(), TaskStatus.FINISHED,
+		task.getStatus());
+
+    }
+
+    private static void addColumn(SQLColumnSettings columns, String name,
+	    SQLExportDataType dataType, String value) {
+	columns.addNewRow();
+	final int row = columns.getRowCount() - 1;
+	columns.setValueAt(name, row, 0);
+	columns.setValueAt(dataType, row, 1);
+	if (value != null)
+	    columns.setValueAt(value, row, 2);
+    }
+
+    /**
+     * Creates a peak list with rows numbered 0..numRows-1, each with a single
+     * peak
+     */
+    private static PeakList createPeakList(int numRows) throws Exception {
+	RawDataFileImpl dataFile = new RawDataFileImpl("test");
+	SimplePeakList peakList = new SimplePeakList("test peaks", dataFile);
+	for (int i = 0; i < numRows; i++) {
+	    final double mz = 100 + i, rt = i / 10.0, height = 1000;
+	    DataPoint dataPoints[] = { new SimpleDataPoint(mz, height) };
+	    Feature peak = new SimpleFeature(dataFile, mz, rt, height,
+		    height, new int[] { 1 }, dataPoints,
+		    FeatureStatus.DETECTED, 1, -1, Range.singleton(rt),
+		    Range.singleton(mz), Range.singleton(height));
+	    SimplePeakListRow row = new SimplePeakListRow(i);
+	    row.addPeak(dataFile, peak);
+	    peakList.addRow(row);
+	}
+	return peakList;
+    }
+
+    private static int countRows() throws SQLException {
+	ResultSet result = database.createStatement().executeQuery(
+		"SELECT COUNT(*) FROM " + TABLE_NAME);
+	result.next();
+	final int count = result.getInt(1);
+	result.close();
+	return count;
+    }
+
+    private static long sumIDs() throws SQLException {
+	ResultSet result = database.createStatement().executeQuery(
+		"SELECT SUM(id) FROM " + TABLE_NAME);
+	result.next();
+	final long sum = result.getLong(1);
+	result.close();
+	return sum;
+    }
+
+    /**
+     * JDBC driver accepting the URLs of other drivers prefixed with
+     * COUNTING_PREFIX. The connections forward all calls to the real
+     * connection and count commits, JDBC batches, executed updates and the
+     * number of parameters of the prepared statements.
+     */
+    private static class CountingDriver implements Driver {
+
+	int commits, batches, updates, maxStatementParameters;
+
+	void reset() {
+	    commits = 0;
+	    batches = 0;
+	    updates = 0;
+	    maxStatementParameters = 0;
+	}
+
+	public Connection connect(String url, Properties info)
+		throws SQLException {
+	    if (!acceptsURL(url))
+		return null;
+	    final Connection connection = DriverManager.getConnection(url
+		    .substring(COUNTING_PREFIX.length()));
+	    return (Connection) Proxy.newProxyInstance(
+		    Connection.class.getClassLoader(),
+		    new Class<?>[] { Connection.class },
+		    new InvocationHandler() {
+			public Object invoke(Object proxy, Method method,
+				Object args[]) throws Throwable {
+			    if (method.getName().equals("commit"))
+				commits++;
+			    Object result = forward(connection, method, args);
+			    if (method.getName().equals("prepareStatement"))
+				return countStatement(
+					(PreparedStatement) result,
+					(String) args[0]);
+			    return result;
+			}
+		    });
+	}
+
+	private PreparedStatement countStatement(
+		final PreparedStatement statement, String sql) {
+	    int parameters = 0;
+	    for (int i = 0; i < sql.length(); i++) {
+		if (sql.charAt(i) == '?')
+		    parameters++;
+	    }
+	    maxStatementParameters = Math.max(maxStatementParameters,
+		    parameters);
+	    return (PreparedStatement) Proxy.newProxyInstance(
+		    PreparedStatement.class.getClassLoader(),
+		    new Class<?>[] { PreparedStatement.class },
+		    new InvocationHandler() {
+			public Object invoke(Object proxy, Method method,
+				Object args[]) throws Throwable {
+			    if (method.getName().equals("executeBatch"))
+				batches++;
+			    if (method.getName().equals("executeUpdate"))
+				updates++;
+			    return forward(statement, method, args);
+			}
+		    });
+	}
+
+	private static Object forward(Object target, Method method,
+		Object args[]) throws Throwable {
+	    try {
+		return method.invoke(target, args);
+	    } catch (InvocationTargetException e) {
+		throw e.getCause();
+	    }
+	}
+
+	public boolean acceptsURL(String url) {
+	    return url.startsWith(COUNTING_PREFIX);
+	}
+
+	public DriverPropertyInfo[] getPropertyInfo(String url,
+		Properties info) {
+	    return new DriverPropertyInfo[0];
+	}
+
+	public int getMajorVersion() {
+	    return 1;
+	}
+
+	public int getMinorVersion() {
+	    return 0;
+	}
+
+	public boolean jdbcCompliant() {
+	    return false;
+	}
+
+	public java.util.logging.Logger getParentLogger()
+		throws SQLFeatureNotSupportedException {
+	    throw new SQLFeatureNotSupportedException();
+	}
+
+    }
+
+}
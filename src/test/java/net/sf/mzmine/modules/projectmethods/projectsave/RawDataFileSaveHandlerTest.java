@@ -0,0 +1,295 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.modules.projectmethods.projectsave;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.datamodel.PolarityType;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.datamodel.impl.SimpleScan;
+import net.sf.mzmine.modules.projectmethods.projectload.version_2_5.RawDataFileOpenHandler_2_5;
+import net.sf.mzmine.project.impl.DataPointsCodec;
+import net.sf.mzmine.project.impl.DataPointsCodecs;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.util.ZipUtils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+import com.google.common.collect.Range;
+
+/**
+ * Saves raw data files into a project file and opens them again, for each
+ * data points codec
+ */
+public class RawDataFileSaveHandlerTest {
+
+    private static final String SAVED_NAME = "Raw data file #1 test";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoadFloat32() throws Exception {
+	RawDataFileImpl savedFile = createRawDataFile(DataPointsCodecs.FLOAT32);
+	File projectFile = saveProject(savedFile);
+
+	ZipFile zipFile = new ZipFile(projectFile);
+	try {
+	    Assert.assertNotNull(zipFile.getEntry(SAVED_NAME + ".scans"));
+	    RawDataFileImpl loadedFile = loadRawDataFile(projectFile, zipFile,
+		    DataPointsCodecs.FLOAT32);
+	    try {
+		assertEqualScans(savedFile, loadedFile, true);
+	    } finally {
+		loadedFile.close();
+	    }
+	} finally {
+	    zipFile.close();
+	    savedFile.close();
+	}
+    }
+
+    @Test
+    public void testSaveAndLoadDeltaDeflate() throws Exception {
+	RawDataFileImpl savedFile = createRawDataFile(DataPointsCodecs.DELTA_DEFLATE);
+	File projectFile = saveProject(savedFile);
+
+	ZipFile zipFile = new ZipFile(projectFile);
+	try {
+	    // Older versions of MZmine read the .scans entry as 32-bit floats,
+	    // so they must not find one
+	    Assert.assertNull(zipFile.getEntry(SAVED_NAME + ".scans"));
+	    RawDataFileImpl loadedFile = loadRawDataFile(projectFile, zipFile,
+		    DataPointsCodecs.DELTA_DEFLATE);
+	    try {
+		Assert.assertSame(DataPointsCodecs.DELTA_DEFLATE,
+			loadedFile.getDataPointsCodec());
+		assertEqualScans(savedFile, loadedFile, false);
+	    } finally {
+		loadedFile.close();
+	    }
+	} finally {
+	    zipFile.close();
+	    savedFile.close();
+	}
+    }
+
+    /**
+     * The CRC of the scans entry is combined from the CRCs of the stored
+     * blocks. Blocks without a CRC, e.g. from projects saved by older
+     * versions, get it computed when the project is saved.
+     */
+    @Test
+    public void testScansEntryCRC() throws Exception {
+	RawDataFileImpl savedFile = createRawDataFile(DataPointsCodecs.DELTA_DEFLATE);
+	File projectFile = saveProject(savedFile);
+	assertValidEntries(projectFile);
+
+	ZipFile zipFile = new ZipFile(projectFile);
+	try {
+	    RawDataFileImpl loadedFile = loadRawDataFile(projectFile, zipFile,
+		    DataPointsCodecs.DELTA_DEFLATE);
+	    try {
+		Assert.assertEquals(savedFile.getDataPointsCRCs(),
+			loadedFile.getDataPointsCRCs());
+		loadedFile.getDataPointsCRCs().clear();
+		assertValidEntries(saveProject(loadedFile));
+		Assert.assertEquals(savedFile.getDataPointsCRCs(),
+			loadedFile.getDataPointsCRCs());
+	    } finally {
+		loadedFile.close();
+	    }
+	} finally {
+	    zipFile.close();
+	    savedFile.close();
+	}
+    }
+
+    @Test
+    public void testUnknownCodecRefused() throws Exception {
+	RawDataFileImpl savedFile = createRawDataFile(DataPointsCodecs.DELTA_DEFLATE);
+	File projectFile = saveProject(savedFile);
+	savedFile.close();
+
+	// Pretend the project was saved by a newer version with another codec
+	File modifiedFile = temporaryFolder.newFile("modified.mzmine");
+	ZipFile zipFile = new ZipFile(projectFile);
+	ZipOutputStream zipStream = new ZipOutputStream(new FileOutputStream(
+		modifiedFile));
+	try {
+	    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+	    while (entries.hasMoreElements()) {
+		ZipEntry entry = entries.nextElement();
+		zipStream.putNextEntry(new ZipEntry(entry.getName()));
+		byte data[] = readEntry(zipFile, entry);
+		if (entry.getName().endsWith(".xml")) {
+		    data = new String(data, "UTF-8").replace(
+			    DataPointsCodecs.DELTA_DEFLATE.getName(),
+			    "future-codec").getBytes("UTF-8");
+		}
+		zipStream.write(data);
+	    }
+	} finally {
+	    zipStream.close();
+	    zipFile.close();
+	}
+
+	zipFile = new ZipFile(modifiedFile);
+	try {
+	    loadRawDataFile(modifiedFile, zipFile, DataPointsCodecs.DELTA_DEFLATE);
+	    Assert.fail("Project with an unknown codec was opened");
+	} catch (SAXException e) {
+	    Assert.assertTrue(e.getMessage().contains("future-codec"));
+	} finally {
+	    zipFile.close();
+	}
+    }
+
+    private RawDataFileImpl createRawDataFile(DataPointsCodec codec)
+	    throws IOException {
+	RawDataFileImpl rawDataFile = new RawDataFileImpl("test");
+	rawDataFile.setDataPointsCodec(codec);
+	Random random = new Random(1);
+	for (int scanNumber = 1; scanNumber <= 20; scanNumber++) {
+
+	    // Include an empty scan and a scan with a single data point
+	    final int numOfDataPoints = (scanNumber == 1) ? 0
+		    : (scanNumber == 2) ? 1 : 1000 + random.nextInt(5000);
+	    DataPoint dataPoints[] = new DataPoint[numOfDataPoints];
+	    for (int i = 0; i < numOfDataPoints; i++) {
+		dataPoints[i] = new SimpleDataPoint(100 + i * 0.01
+			+ random.nextDouble() * 1e-7, random.nextDouble() * 1e6);
+	    }
+	    Scan scan = new SimpleScan(rawDataFile, scanNumber, 1,
+		    scanNumber * 0.1, 0, 0, null, dataPoints,
+		    MassSpectrumType.PROFILE, PolarityType.POSITIVE, "",
+		    Range.closed(100.0, 200.0));
+	    rawDataFile.addScan(scan);
+	}
+	rawDataFile.finishWriting();
+	return rawDataFile;
+    }
+
+    private File saveProject(RawDataFileImpl rawDataFile) throws Exception {
+	File projectFile = temporaryFolder.newFile();
+	ZipOutputStream zipStream = new ZipOutputStream(new FileOutputStream(
+		projectFile));
+	try {
+	    new RawDataFileSaveHandler(zipStream).writeRawDataFile(
+		    rawDataFile, 1);
+	} finally {
+	    zipStream.close();
+	}
+	return projectFile;
+    }
+
+    private RawDataFileImpl loadRawDataFile(File projectFile,
+	    ZipFile zipFile, DataPointsCodec codec) throws Exception {
+	ZipEntry scansEntry = zipFile.getEntry(ProjectSavingTask
+		.getScansEntryName(SAVED_NAME, codec));
+	ZipEntry xmlEntry = zipFile.getEntry(SAVED_NAME + ".xml");
+	Assert.assertNotNull(scansEntry);
+	Assert.assertNotNull(xmlEntry);
+	RawDataFileOpenHandler_2_5 handler = new RawDataFileOpenHandler_2_5(
+		ZipUtils.getStoredEntryOffsets(projectFile));
+	return (RawDataFileImpl) handler.readRawDataFile(zipFile, scansEntry,
+		xmlEntry);
+    }
+
+    private void assertEqualScans(RawDataFileImpl savedFile,
+	    RawDataFileImpl loadedFile, boolean float32) {
+	Assert.assertArrayEquals(savedFile.getScanNumbers(),
+		loadedFile.getScanNumbers());
+	for (int scanNumber : savedFile.getScanNumbers()) {
+	    DataPoint saved[] = savedFile.getScan(scanNumber).getDataPoints();
+	    DataPoint loaded[] = loadedFile.getScan(scanNumber).getDataPoints();
+	    Assert.assertEquals(saved.length, loaded.length);
+	    for (int i = 0; i < saved.length; i++) {
+		double savedMZ = saved[i].getMZ();
+		if (float32)
+		    savedMZ = (float) savedMZ;
+		Assert.assertEquals(Double.doubleToLongBits(savedMZ),
+			Double.doubleToLongBits(loaded[i].getMZ()));
+		Assert.assertEquals(
+			Float.floatToIntBits((float) saved[i].getIntensity()),
+			Float.floatToIntBits((float) loaded[i].getIntensity()));
+	    }
+	}
+    }
+
+    /**
+     * Reads all entries of given ZIP file with a ZipInputStream, which checks
+     * their CRCs
+     */
+    private void assertValidEntries(File projectFile) throws IOException {
+	ZipInputStream zipStream = new ZipInputStream(new FileInputStream(
+		projectFile));
+	try {
+	    byte buffer[] = new byte[1 << 16];
+	    int numOfEntries = 0;
+	    while (zipStream.getNextEntry() != null) {
+		while (zipStream.read(buffer) >= 0)
+		    ;
+		numOfEntries++;
+	    }
+	    Assert.assertEquals(2, numOfEntries);
+	} finally {
+	    zipStream.close();
+	}
+    }
+
+    private byte[] readEntry(ZipFile zipFile, ZipEntry entry)
+	    throws IOException {
+	InputStream inputStream = zipFile.getInputStream(entry);
+	try {
+	    byte data[] = new byte[(int) entry.getSize()];
+	    int position = 0;
+	    while (position < data.length) {
+		int n = inputStream.read(data, position, data.length
+			- position);
+		if (n < 0)
+		    throw new IOException("Truncated entry " + entry.getName());
+		position += n;
+	    }
+	    return data;
+	} finally {
+	    inputStream.close();
+	}
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.modules.rawdatamethods.rawdataimport.fileformats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.project.impl.MZmineProjectImpl;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compares the scans read by MzXMLIndexedReader with the scans read by the SAX
+ * handler of MzXMLReadTask from the same file without the index
+ */
+public class MzXMLReadTaskTest {
+
+    private static final File indexedFile = new File(
+	    "src/test/resources/indexed.mzXML");
+    private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadScanOffsets() throws IOException {
+	long scanOffsets[] = MzXMLIndexedReader.readScanOffsets(indexedFile);
+	Assert.assertNotNull(scanOffsets);
+	Assert.assertEquals(13, scanOffsets.length);
+    }
+
+    @Test
+    public void testIndexedAndSaxParsingMatch() throws IOException {
+	File saxFile = modifiedCopy("sax.mzXML", new Modification() {
+	    public String apply(String content) {
+		// Drop the index, so the file is parsed by the SAX handler
+		return content.substring(0, content.indexOf(" <index"))
+			+ "</mzXML>\n";
+	    }
+	});
+	Assert.assertNull(MzXMLIndexedReader.readScanOffsets(saxFile));
+
+	RawDataFile indexed = readFile(indexedFile);
+	RawDataFile sax = readFile(saxFile);
+	assertEqualFiles(sax, indexed);
+    }
+
+    @Test
+    public void testInvalidIndexFallsBackToSax() throws IOException {
+	File overflowFile = modifiedCopy("overflow.mzXML",
+		new Modification() {
+		    public String apply(String content) {
+			return content.replaceFirst(
+				"<offset id=\"5\">\\d+</offset>",
+				"<offset id=\"5\">99999999999999999999999</offset>");
+		    }
+		});
+	Assert.assertNull(MzXMLIndexedReader.readScanOffsets(overflowFile));
+
+	File badOffsetFile = modifiedCopy("badoffset.mzXML",
+		new Modification() {
+		    public String apply(String content) {
+			return content.replaceFirst(
+				"<offset id=\"5\">(\\d+)</offset>",
+				"<offset id=\"5\">$13</offset>");
+		    }
+		});
+	Assert.assertNull(MzXMLIndexedReader.readScanOffsets(badOffsetFile));
+
+	RawDataFile indexed = readFile(indexedFile);
+	assertEqualFiles(indexed, readFile(overflowFile));
+	assertEqualFiles(indexed, readFile(badOffsetFile));
+    }
+
+    private interface Modification {
+	String apply(String content);
+    }
+
+    private File modifiedCopy(String name, Modification modification)
+	    throws IOException {
+	String content = new String(Files.readAllBytes(indexedFile.toPath()),
+		ASCII);
+	String modified = modification.apply(content);
+	Assert.assertNotEquals(content, modified);
+	File file = temporaryFolder.newFile(name);
+	Files.write(file.toPath(), modified.getBytes(ASCII));
+	return file;
+    }
+
+    private RawDataFile readFile(File file) throws IOException {
+	MZmineProject project = new MZmineProjectImpl();
+	RawDataFileImpl rawDataFile = new RawDataFileImpl(file.getName());
+	MzXMLReadTask task = new MzXMLReadTask(project, file, rawDataFile);
+	task.run();
+	Assert.assertEquals(task.getErrorMessage(), TaskStatus.FINISHED,
+		task.getStatus());
+	Assert.assertEquals(1.0, task.getFinishedPercentage(), 0);
+	return rawDataFile;
+    }
+
+    private void assertEqualFiles(RawDataFile expected, RawDataFile actual) {
+	Assert.assertArrayEquals(expected.getScanNumbers(),
+		actual.getScanNumbers());
+	for (int scanNumber : expected.getScanNumbers()) {
+	    Scan expectedScan = expected.getScan(scanNumber);
+	    Scan actualScan = actual.getScan(scanNumber);
+	    final String scanName = "scan " + scanNumber;
+	    Assert.assertEquals(scanName, expectedScan.getMSLevel(),
+		    actualScan.getMSLevel());
+	    Assert.assertEquals(scanName, expectedScan.getRetentionTime(),
+		    actualScan.getRetentionTime(), 0);
+	    Assert.assertEquals(scanName, expectedScan.getPolarity(),
+		    actualScan.getPolarity());
+	    Assert.assertEquals(scanName, expectedScan.getScanDefinition(),
+		    actualScan.getScanDefinition());
+	    Assert.assertEquals(scanName, expectedScan.getPrecursorMZ(),
+		    actualScan.getPrecursorMZ(), 0);
+	    Assert.assertEquals(scanName, expectedScan.getPrecursorCharge(),
+		    actualScan.getPrecursorCharge());
+	    Assert.assertTrue(scanName, Arrays.equals(
+		    expectedScan.getFragmentScanNumbers(),
+		    actualScan.getFragmentScanNumbers()));
+	    Assert.assertEquals(scanName, expectedScan.getSpectrumType(),
+		    actualScan.getSpectrumType());
+
+	    DataPoint expectedDataPoints[] = expectedScan.getDataPoints();
+	    DataPoint actualDataPoints[] = actualScan.getDataPoints();
+	    Assert.assertEquals(scanName, expectedDataPoints.length,
+		    actualDataPoints.length);
+	    for (int i = 0; i < expectedDataPoints.length; i++) {
+		Assert.assertEquals(scanName,
+			expectedDataPoints[i].getMZ(),
+			actualDataPoints[i].getMZ(), 0);
+		Assert.assertEquals(scanName,
+			expectedDataPoints[i].getIntensity(),
+			actualDataPoints[i].getIntensity(), 0);
+	    }
+	}
+    }
+
+}
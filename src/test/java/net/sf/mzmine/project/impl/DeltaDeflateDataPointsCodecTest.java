@@ -0,0 +1,154 @@
+/*
+ * Copyright 2006-2015 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 2; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package net.sf.mzmine.project.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that DeltaDeflateDataPointsCodec restores the m/z values bit for bit
+ * and the intensities with 32-bit float precision
+ */
+public class DeltaDeflateDataPointsCodecTest {
+
+    private final DataPointsCodec codec = DataPointsCodecs.DELTA_DEFLATE;
+
+    @Test
+    public void testEmptyScan() throws IOException {
+	assertRoundTrip(new double[0], new double[0]);
+    }
+
+    @Test
+    public void testSinglePoint() throws IOException {
+	assertRoundTrip(new double[] { 524.2651234567891 },
+		new double[] { 1.5e7 });
+    }
+
+    @Test
+    public void testUnsortedAndSpecialValues() throws IOException {
+	double mzValues[] = { 1500.123456789, 1000.5, 999.999999999,
+		Double.NaN, 50.0, Double.NaN, -0.0, 0.0, Double.MAX_VALUE,
+		Double.MIN_VALUE, Double.POSITIVE_INFINITY, 1e-300, 123.4 };
+	double intensityValues[] = { 0, 1, 2.5, Double.NaN, 0, 1e30, 3, 4,
+		Float.MAX_VALUE, Float.MIN_VALUE, 0, Double.POSITIVE_INFINITY,
+		-1 };
+	assertRoundTrip(mzValues, intensityValues);
+    }
+
+    @Test
+    public void testLargeProfileScan() throws IOException {
+	final int numOfDataPoints = 500000;
+	double mzValues[] = new double[numOfDataPoints];
+	double intensityValues[] = new double[numOfDataPoints];
+	Random random = new Random(1);
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    mzValues[i] = 100 + i * 0.0025;
+	    intensityValues[i] = (i % 7 == 0) ? 0 : random.nextDouble() * 1e6;
+	}
+	byte block[] = assertRoundTrip(mzValues, intensityValues);
+
+	// Regular spacing and zero intensities must compress well
+	Assert.assertTrue(block.length < numOfDataPoints * 8);
+    }
+
+    @Test
+    public void testLargeRandomScan() throws IOException {
+	final int numOfDataPoints = 200000;
+	double mzValues[] = new double[numOfDataPoints];
+	double intensityValues[] = new double[numOfDataPoints];
+	Random random = new Random(2);
+	for (int i = 0; i < numOfDataPoints; i++) {
+	    mzValues[i] = Double.longBitsToDouble(random.nextLong());
+	    intensityValues[i] = Float.intBitsToFloat(random.nextInt());
+	}
+	assertRoundTrip(mzValues, intensityValues);
+    }
+
+    @Test
+    public void testBlockWithTrailingBytes() throws IOException {
+	double mzValues[] = { 100.1, 100.2, 100.3 };
+	double intensityValues[] = { 10, 20, 30 };
+	byte block[] = codec.encode(mzValues, intensityValues, 3);
+
+	// Blocks are read into reused buffers, which may be longer
+	byte buffer[] = Arrays.copyOf(block, block.length + 100);
+	Arrays.fill(buffer, block.length, buffer.length, (byte) 0x55);
+	double decodedMZ[] = new double[3];
+	double decodedIntensity[] = new double[3];
+	codec.decode(buffer, block.length, decodedMZ, decodedIntensity, 3);
+	assertEqualValues(mzValues, intensityValues, decodedMZ,
+		decodedIntensity);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedBlock() throws IOException {
+	double mzValues[] = new double[1000];
+	double intensityValues[] = new double[1000];
+	Random random = new Random(3);
+	for (int i = 0; i < mzValues.length; i++) {
+	    mzValues[i] = random.nextDouble() * 1000;
+	    intensityValues[i] = random.nextDouble();
+	}
+	byte block[] = codec.encode(mzValues, intensityValues, 1000);
+	codec.decode(block, block.length / 2, new double[1000],
+		new double[1000], 1000);
+    }
+
+    private byte[] assertRoundTrip(double mzValues[], double intensityValues[])
+	    throws IOException {
+	final int numOfDataPoints = mzValues.length;
+
+	// Only the first numOfDataPoints values must be encoded
+	double paddedMZ[] = Arrays.copyOf(mzValues, numOfDataPoints + 3);
+	double paddedIntensity[] = Arrays.copyOf(intensityValues,
+		numOfDataPoints + 3);
+	Arrays.fill(paddedMZ, numOfDataPoints, paddedMZ.length, 777.7);
+	Arrays.fill(paddedIntensity, numOfDataPoints, paddedIntensity.length,
+		888.8);
+
+	byte block[] = codec.encode(paddedMZ, paddedIntensity, numOfDataPoints);
+	double decodedMZ[] = new double[numOfDataPoints];
+	double decodedIntensity[] = new double[numOfDataPoints];
+	codec.decode(block, block.length, decodedMZ, decodedIntensity,
+		numOfDataPoints);
+	assertEqualValues(mzValues, intensityValues, decodedMZ,
+		decodedIntensity);
+	return block;
+    }
+
+    private void assertEqualValues(double mzValues[],
+	    double intensityValues[], double decodedMZ[],
+	    double decodedIntensity[]) {
+	for (int i = 0; i < mzValues.length; i++) {
+	    Assert.assertEquals("m/z of data point " + i,
+		    Double.doubleToLongBits(mzValues[i]),
+		    Double.doubleToLongBits(decodedMZ[i]));
+	    Assert.assertEquals("intensity of data point " + i,
+		    Float.floatToIntBits((float) intensityValues[i]),
+		    Float.floatToIntBits((float) decodedIntensity[i]));
+	}
+    }
+
+}